@@ -227,7 +227,8 @@ public class GFF3Converter extends DataConverter
     }
 
     /**
-     * Parse a bufferedReader and process GFF3 record
+     * Parse a bufferedReader and process GFF3 record. The file is read and parsed by another
+     * thread while the records are processed.
      * @param bReader the Reader
      * @throws java.io.IOException if an error occurs reading GFF
      * @throws ObjectStoreException if an error occurs storing items
@@ -241,27 +242,32 @@ public class GFF3Converter extends DataConverter
         boolean duplicates = false;
         Set<String> processedIds = new HashSet<String>();
         Set<String> duplicatedIds = new HashSet<String>();
-        for (Iterator<?> i = GFF3Parser.parse(bReader); i.hasNext();) {
-            record = (GFF3Record) i.next();
+        GFF3Parser.BackgroundIterator i = GFF3Parser.parseInBackground(bReader);
+        try {
+            while (i.hasNext()) {
+                record = i.next();
 
-            // we only care about dupes if we are NOT creating locations
-            if (processedIds.contains(record.getId()) && dontCreateLocations) {
-                duplicates = true;
-                duplicatedIds.add(record.getId());
-            } else {
-                if (record.getId() != null) {
-                    processedIds.add(record.getId());
+                // we only care about dupes if we are NOT creating locations
+                if (processedIds.contains(record.getId()) && dontCreateLocations) {
+                    duplicates = true;
+                    duplicatedIds.add(record.getId());
+                } else {
+                    if (record.getId() != null) {
+                        processedIds.add(record.getId());
+                    }
+                }
+                if (!duplicates) {
+                    process(record);
+                }
+                opCount++;
+                if (opCount % 1000 == 0) {
+                    now = System.currentTimeMillis();
+                    LOG.info("processed " + opCount + " lines --took " + (now - start) + " ms");
+                    start = System.currentTimeMillis();
                 }
             }
-            if (!duplicates) {
-                process(record);
-            }
-            opCount++;
-            if (opCount % 1000 == 0) {
-                now = System.currentTimeMillis();
-                LOG.info("processed " + opCount + " lines --took " + (now - start) + " ms");
-                start = System.currentTimeMillis();
-            }
+        } finally {
+            i.close();
         }
         if (duplicates) {
             LOG.error("Duplicated IDs in GFF file: " + duplicatedIds);
@@ -10,8 +10,13 @@ package org.intermine.bio.io.gff3;
  *
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -24,10 +29,31 @@ import java.io.IOException;
 
 public final class GFF3Parser
 {
+    private static final int BATCH_SIZE = 1000;
+    private static final int BATCHES_AHEAD = 4;
+
     private GFF3Parser() {
         // nothing to do
     }
 
+    /**
+     * Read GFF3 lines from a BufferedReader in a separate thread, so that reading and parsing the
+     * file overlaps with whatever the caller does with each record. The records are returned in
+     * the order of the file. The returned iterator must be closed if it is not read to the end.
+     * @param reader the Reader to reader from
+     * @return an Iterator over the GFF3Record objects from the reader
+     * @throws IOException if there is an error reading or parsing the first record
+     */
+    public static BackgroundIterator parseInBackground(BufferedReader reader)
+        throws IOException {
+        BackgroundIterator retval = new BackgroundIterator(parse(reader));
+        Thread thread = new Thread(retval, "GFF3Parser");
+        thread.setDaemon(true);
+        retval.thread = thread;
+        thread.start();
+        return retval;
+    }
+
     /**
      * Read GFF3 lines from a BufferedReader and return an Iterator over the GFF3Records.
      * @param reader the Reader to reader from
@@ -94,4 +120,98 @@ public final class GFF3Parser
             }
         };
     }
+
+    /**
+     * An Iterator over GFF3Records that are parsed by another thread and passed to the reader in
+     * batches through a bounded queue. An empty batch marks the end of the file.
+     */
+    public static final class BackgroundIterator implements Iterator<GFF3Record>, Runnable
+    {
+        private final Iterator<?> records;
+        private final BlockingQueue<List<GFF3Record>> batches =
+            new ArrayBlockingQueue<List<GFF3Record>>(BATCHES_AHEAD);
+        private Thread thread;
+        private volatile Throwable error = null;
+        private List<GFF3Record> batch = null;
+        private int batchPos = 0;
+
+        private BackgroundIterator(Iterator<?> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void run() {
+            List<GFF3Record> nextBatch = new ArrayList<GFF3Record>(BATCH_SIZE);
+            boolean closed = false;
+            try {
+                while (records.hasNext()) {
+                    nextBatch.add((GFF3Record) records.next());
+                    if (nextBatch.size() == BATCH_SIZE) {
+                        List<GFF3Record> fullBatch = nextBatch;
+                        nextBatch = new ArrayList<GFF3Record>(BATCH_SIZE);
+                        batches.put(fullBatch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the iterator has been closed
+                closed = true;
+            } catch (Throwable t) {
+                // the records before the error are still returned, including after an Error, so
+                // that the reader is never left waiting for the end of the file
+                error = t;
+            } finally {
+                if (!closed) {
+                    try {
+                        if (!nextBatch.isEmpty()) {
+                            batches.put(nextBatch);
+                        }
+                        batches.put(Collections.<GFF3Record>emptyList());
+                    } catch (InterruptedException e) {
+                        // the iterator has been closed
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ((batch == null) || ((batchPos == batch.size()) && !batch.isEmpty())) {
+                try {
+                    batch = batches.take();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("Interrupted while waiting for GFF records", e);
+                }
+                batchPos = 0;
+                if (batch.isEmpty() && (error != null)) {
+                    if (error instanceof RuntimeException) {
+                        throw (RuntimeException) error;
+                    } else if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    throw new RuntimeException("Error while parsing GFF records", error);
+                }
+            }
+            return batchPos < batch.size();
+        }
+
+        @Override
+        public GFF3Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(batchPos++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+
+        /**
+         * Stops the parsing thread, if it has not finished.
+         */
+        public void close() {
+            thread.interrupt();
+        }
+    }
 }
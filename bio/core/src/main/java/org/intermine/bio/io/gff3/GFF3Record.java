@@ -19,7 +19,6 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import org.intermine.metadata.StringUtil;
 import org.intermine.util.XmlUtil;
@@ -66,19 +65,39 @@ public class GFF3Record
     }
 
     private void parseLine(String line) throws IOException {
-        StringTokenizer st = new StringTokenizer(line, "\t", false);
+        // Split on tabs without a regular expression. Runs of tabs count as one, as they did
+        // when this used a StringTokenizer.
+        String[] fields = new String[9];
+        int fieldCount = 0;
+        int length = line.length();
+        int pos = 0;
+        while (pos < length) {
+            if (line.charAt(pos) == '\t') {
+                pos++;
+                continue;
+            }
+            int tab = line.indexOf('\t', pos);
+            if (tab == -1) {
+                tab = length;
+            }
+            if (fieldCount < fields.length) {
+                fields[fieldCount] = line.substring(pos, tab);
+            }
+            fieldCount++;
+            pos = tab;
+        }
 
-        if (st.countTokens() < 8) {
-            throw new IOException("GFF line too short (" + st.countTokens() + " fields): " + line);
+        if (fieldCount < 8) {
+            throw new IOException("GFF line too short (" + fieldCount + " fields): " + line);
         }
 
-        sequenceID = XmlUtil.fixEntityNames(URLDecoder.decode(st.nextToken(), "UTF-8")).trim();
-        source = st.nextToken().trim();
+        sequenceID = XmlUtil.fixEntityNames(decode(fields[0])).trim();
+        source = fields[1].trim();
         if ("".equals(source) || ".".equals(source)) {
             source = null;
         }
-        type = st.nextToken().trim();
-        String startString = st.nextToken().trim();
+        type = fields[2].trim();
+        String startString = fields[3].trim();
         try {
             if (".".equals(startString)) {
                 start = -1;
@@ -90,7 +109,7 @@ public class GFF3Record
                     + " from line: " + line);
         }
 
-        String endString = st.nextToken().trim();
+        String endString = fields[4].trim();
         try {
             if (".".equals(endString)) {
                 end = -1;
@@ -102,7 +121,7 @@ public class GFF3Record
                     + " from line: " + line);
         }
 
-        String scoreString = st.nextToken().trim();
+        String scoreString = fields[5].trim();
 
         if ("".equals(scoreString) || ".".equals(scoreString)) {
             score = null;
@@ -115,22 +134,41 @@ public class GFF3Record
             }
         }
 
-        strand = st.nextToken().trim();
+        strand = fields[6].trim();
 
         if ("".equals(strand) || ".".equals(strand)) {
             strand = null;
         }
 
-        phase = st.nextToken().trim();
+        phase = fields[7].trim();
         if ("".equals(phase) || ".".equals(phase)) {
             phase = null;
         }
 
-        if (st.hasMoreTokens()) {
-            parseAttribute(st.nextToken(), line);
+        if (fieldCount > 8) {
+            parseAttribute(fields[8], line);
         }
     }
 
+    /**
+     * URL-decode a value, without the cost of URLDecoder for the usual value that has nothing to
+     * decode.
+     */
+    private static String decode(String value) throws UnsupportedEncodingException {
+        if ((value.indexOf('%') == -1) && (value.indexOf('+') == -1)) {
+            return value;
+        }
+        return URLDecoder.decode(value, "UTF-8");
+    }
+
+    private static int skipWhitespace(String value, int start, int end) {
+        int pos = start;
+        while ((pos < end) && (value.charAt(pos) <= ' ')) {
+            pos++;
+        }
+        return pos;
+    }
+
     /**
      * Create a new GFF3Record
      * @param sequenceID the sequence name
@@ -163,13 +201,21 @@ public class GFF3Record
 
     private void parseAttribute(String argAttributeString, String line) throws IOException {
         String attributeString = argAttributeString;
-        attributeString = StringUtils.replaceEach(attributeString,
-                new String[] {"&amp;", "&quot;", "&lt;", "&gt;"},
-                new String[] {"&", "\"", "<", ">"});
-        StringTokenizer sTok = new StringTokenizer(attributeString, ";", false);
+        if (attributeString.indexOf('&') != -1) {
+            attributeString = StringUtils.replaceEach(attributeString,
+                    new String[] {"&amp;", "&quot;", "&lt;", "&gt;"},
+                    new String[] {"&", "\"", "<", ">"});
+        }
 
-        while (sTok.hasMoreTokens()) {
-            String attVal = sTok.nextToken().trim();
+        int length = attributeString.length();
+        int tokenStart = 0;
+        while (tokenStart < length) {
+            int tokenEnd = attributeString.indexOf(';', tokenStart);
+            if (tokenEnd == -1) {
+                tokenEnd = length;
+            }
+            String attVal = attributeString.substring(tokenStart, tokenEnd).trim();
+            tokenStart = tokenEnd + 1;
 
             if (attVal.length() == 0) {
                 continue;
@@ -183,32 +229,32 @@ public class GFF3Record
                                       + "while parsing: " + line);
             }
             attName = attVal.substring(0, spaceIndx);
-            attributeString = attVal.substring(spaceIndx + 1).trim();
-
-            if (!"\"\"".equals(attributeString)) {
-                while (attributeString.length() > 0) {
-                    if (attributeString.startsWith("\"")) {
-                        attributeString = attributeString.substring(1);
-                        int quoteIndx = attributeString.indexOf("\"");
-                        if (quoteIndx > 0) {
-                            valList.add(attributeString.substring(0, quoteIndx));
-                            attributeString = attributeString.substring(quoteIndx + 1).trim();
-                            if (attributeString.startsWith(",")) {
-                                attributeString = attributeString.substring(1).trim();
+            int valEnd = attVal.length();
+            int pos = skipWhitespace(attVal, spaceIndx + 1, valEnd);
+
+            if (!((valEnd - pos == 2) && attVal.startsWith("\"\"", pos))) {
+                while (pos < valEnd) {
+                    if (attVal.charAt(pos) == '"') {
+                        int quoteIndx = attVal.indexOf('"', pos + 1);
+                        if (quoteIndx > pos + 1) {
+                            valList.add(attVal.substring(pos + 1, quoteIndx));
+                            pos = skipWhitespace(attVal, quoteIndx + 1, valEnd);
+                            if ((pos < valEnd) && (attVal.charAt(pos) == ',')) {
+                                pos = skipWhitespace(attVal, pos + 1, valEnd);
                             }
                         } else {
                             throw new IOException("unmatched quote in this line: " + line
                                                   + " (reading attribute: " + attName + ", "
-                                                  + attributeString + ")");
+                                                  + attVal.substring(pos + 1) + ")");
                         }
                     } else {
-                        int commaIndx = attributeString.indexOf(",");
+                        int commaIndx = attVal.indexOf(',', pos);
                         if (commaIndx == -1) {
-                            valList.add(attributeString);
-                            attributeString = "";
+                            valList.add(attVal.substring(pos));
+                            pos = valEnd;
                         } else {
-                            valList.add(attributeString.substring(0, commaIndx));
-                            attributeString = attributeString.substring(commaIndx + 1).trim();
+                            valList.add(attVal.substring(pos, commaIndx));
+                            pos = skipWhitespace(attVal, commaIndx + 1, valEnd);
                         }
                     }
                 }
@@ -217,7 +263,7 @@ public class GFF3Record
             for (int i = 0; i < valList.size(); i++) {
                 String value = valList.get(i);
                 if (!"Target".equals(attName) && !"Gap".equals(attName)) {
-                    value = URLDecoder.decode(value, "UTF-8");
+                    value = decode(value);
                 }
                 value = XmlUtil.fixEntityNames(value);
                 valList.set(i, value);
@@ -38,6 +38,7 @@ public class ClobAccessReverseComplement extends ClobAccess
         originalClobAccess = ca;
         os = ca.getOs();
         results = ca.getResultsWithoutInit();
+        file = ca.getClobFileWithoutInit();
         clob = ca.getClob();
         offset = ca.getOffset();
         length = ca.getLengthWithoutInit();
@@ -51,6 +52,16 @@ public class ClobAccessReverseComplement extends ClobAccess
      * @return the complement character
      */
     public char translate(char in) {
+        return complement(in);
+    }
+
+    /**
+     * Returns the complement base of a single DNA character, keeping its case.
+     *
+     * @param in the character to translate
+     * @return the complement character
+     */
+    public static char complement(char in) {
 
         boolean inputWasLowerCase = false;
         if (Character.isLowerCase(in)) {
@@ -133,6 +144,12 @@ public class ClobAccessReverseComplement extends ClobAccess
     public String toString() {
         init();
         StringBuilder retval = new StringBuilder();
+        if (file != null) {
+            for (int i = offset + length - 1; i >= offset; i--) {
+                retval.append(translate(file.charAt(i)));
+            }
+            return retval.toString();
+        }
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = highestPage; page >= lowestPage; page--) {
@@ -157,6 +174,16 @@ public class ClobAccessReverseComplement extends ClobAccess
     @Override
     public void drainToPrintStream(PrintStream out) {
         init();
+        if (file != null) {
+            for (int end = offset + length; end > offset; end -= CLOB_PAGE_SIZE) {
+                StringBuilder retval = new StringBuilder();
+                for (int i = end - 1; i >= Math.max(offset, end - CLOB_PAGE_SIZE); i--) {
+                    retval.append(translate(file.charAt(i)));
+                }
+                out.print(retval.toString());
+            }
+            return;
+        }
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = highestPage; page >= lowestPage; page--) {
@@ -223,7 +223,7 @@ public final class PostProcessUtil
         Results res = os.execute(q, 5000, true, true, true);
 
         @SuppressWarnings("unchecked") Iterator<ResultsRow<InterMineObject>> retval = (Iterator) res
-            .iterator();
+            .streamingIterator();
         return retval;
     }
 
@@ -55,6 +55,19 @@ public class GFF3RecordTest extends TestCase
         assertEquals(expectedAttributes, gff3Record.getAttributes());
     }
 
+    public void testParseEmptyColumnsAndQuotes() throws Exception {
+        String gff = "chr%2B1\t\tsrc\tgene\t5\t100\t.\t-\t.\tName=\"a,b\", c ;Note=x+y%2Cz;;";
+
+        GFF3Record gff3Record = new GFF3Record(gff);
+
+        // runs of tabs count as one separator
+        assertEquals("chr+1", gff3Record.getSequenceID());
+        assertEquals("src", gff3Record.getSource());
+        assertEquals("gene", gff3Record.getType());
+        assertEquals(Arrays.asList("a,b", "c"), gff3Record.getNames());
+        assertEquals("x y,z", gff3Record.getNote());
+    }
+
     /**
      * Test that we throw an exception if an attribute contains an unescaped semicolon (FlyBase was
      * doing this for a while)
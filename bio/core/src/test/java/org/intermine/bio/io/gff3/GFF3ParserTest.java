@@ -18,6 +18,7 @@ import java.util.List;
 import org.intermine.util.XmlUtil;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 
@@ -158,4 +159,59 @@ public class GFF3ParserTest extends TestCase
         assertEquals(expected, record.getParents());
     }
 
+    public void testParseInBackground() throws Exception {
+        StringBuilder gff = new StringBuilder("##gff-version 3\n");
+        for (int i = 1; i <= 2500; i++) {
+            gff.append("4\t.\texon\t" + i + "\t" + (i + 10) + "\t.\t-\t.\tID=exon" + i + "\n");
+        }
+        gff.append(">4\nACGT\n");
+        GFF3Parser.BackgroundIterator iter =
+            GFF3Parser.parseInBackground(new BufferedReader(new StringReader(gff.toString())));
+        int count = 0;
+        while (iter.hasNext()) {
+            GFF3Record record = iter.next();
+            count++;
+            assertEquals("exon" + count, record.getId());
+        }
+        assertFalse(iter.hasNext());
+        assertEquals(2500, count);
+    }
+
+    public void testParseInBackgroundError() throws Exception {
+        String gff = "4\t.\texon\t1\t10\t.\t-\t.\tID=exon1\n"
+            + "4\t.\texon\tone\t10\t.\t-\t.\tID=exon2\n";
+        GFF3Parser.BackgroundIterator iter =
+            GFF3Parser.parseInBackground(new BufferedReader(new StringReader(gff)));
+        assertEquals("exon1", iter.next().getId());
+        try {
+            iter.hasNext();
+            fail("Expected a RuntimeException");
+        } catch (RuntimeException e) {
+            // as expected
+        }
+    }
+
+    public void testParseInBackgroundThrowsError() throws Exception {
+        String gff = "4\t.\texon\t1\t10\t.\t-\t.\tID=exon1\n"
+            + "4\t.\texon\t2\t10\t.\t-\t.\tID=exon2\n";
+        BufferedReader reader = new BufferedReader(new StringReader(gff)) {
+            private int lines = 0;
+
+            @Override
+            public String readLine() throws IOException {
+                if (++lines > 2) {
+                    throw new OutOfMemoryError("test");
+                }
+                return super.readLine();
+            }
+        };
+        GFF3Parser.BackgroundIterator iter = GFF3Parser.parseInBackground(reader);
+        assertEquals("exon1", iter.next().getId());
+        try {
+            iter.hasNext();
+            fail("Expected an OutOfMemoryError");
+        } catch (OutOfMemoryError e) {
+            assertEquals("test", e.getMessage());
+        }
+    }
 }
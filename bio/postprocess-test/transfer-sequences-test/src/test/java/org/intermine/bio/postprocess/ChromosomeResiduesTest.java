@@ -0,0 +1,91 @@
+package org.intermine.bio.postprocess;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.query.Clob.CLOB_PAGE_SIZE;
+
+import junit.framework.TestCase;
+
+import org.intermine.bio.util.ClobAccessReverseComplement;
+import org.intermine.objectstore.query.PendingClob;
+
+/**
+ * Tests for the ChromosomeResidues class
+ */
+public class ChromosomeResiduesTest extends TestCase
+{
+    private String bases;
+    private CountingClob clob;
+
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3 * CLOB_PAGE_SIZE + 100; i++) {
+            sb.append("acgtn".charAt((i * 7 + i / 13) % 5));
+        }
+        bases = sb.toString();
+        clob = new CountingClob(bases);
+    }
+
+    public void testSubSequenceAcrossPages() {
+        ChromosomeResidues residues = new ChromosomeResidues(clob, 10);
+        assertEquals(bases.length(), residues.length());
+        int start = CLOB_PAGE_SIZE - 50;
+        int end = 3 * CLOB_PAGE_SIZE + 20;
+        assertEquals(bases.substring(start, end), residues.getSubSequence(start, end, false));
+        assertEquals(bases.substring(bases.length() - 10),
+                residues.getSubSequence(bases.length() - 10, bases.length(), false));
+        assertEquals(4, clob.reads);
+    }
+
+    public void testReverseComplement() {
+        ChromosomeResidues residues = new ChromosomeResidues(clob, 10);
+        int start = 2 * CLOB_PAGE_SIZE - 5;
+        int end = 2 * CLOB_PAGE_SIZE + 5;
+        StringBuilder expected = new StringBuilder();
+        for (int i = end - 1; i >= start; i--) {
+            expected.append(ClobAccessReverseComplement.complement(bases.charAt(i)));
+        }
+        assertEquals(expected.toString(), residues.getSubSequence(start, end, true));
+    }
+
+    public void testPagesAreBounded() {
+        ChromosomeResidues residues = new ChromosomeResidues(clob, 2);
+        residues.getSubSequence(0, 10, false);
+        residues.getSubSequence(CLOB_PAGE_SIZE, CLOB_PAGE_SIZE + 10, false);
+        residues.getSubSequence(20, 30, false);
+        assertEquals(2, clob.reads);
+        residues.getSubSequence(2 * CLOB_PAGE_SIZE, 2 * CLOB_PAGE_SIZE + 10, false);
+        assertEquals(3, clob.reads);
+        // the first page was used more recently than the second, so the second was dropped
+        residues.getSubSequence(30, 40, false);
+        assertEquals(3, clob.reads);
+        residues.getSubSequence(CLOB_PAGE_SIZE + 20, CLOB_PAGE_SIZE + 30, false);
+        assertEquals(4, clob.reads);
+    }
+
+    /**
+     * A PendingClob that counts the pages read from it.
+     */
+    private static class CountingClob extends PendingClob
+    {
+        private int reads = 0;
+
+        CountingClob(String text) {
+            super(text);
+        }
+
+        @Override
+        public PendingClob subSequence(int start, int end) {
+            reads++;
+            return super.subSequence(start, end);
+        }
+    }
+}
@@ -213,6 +213,51 @@ public class TransferSequencesProcessTest extends TestCase
         checkCDSSequences();
     }
 
+    public void testParallelChromosomes() throws Exception {
+        // more chromosomes than workers, so the sequences are committed in more than one wave
+        String[] residues = new String[3];
+        Exon[] otherExons = new Exon[residues.length];
+        osw.beginTransaction();
+        for (int i = 0; i < residues.length; i++) {
+            StringBuilder bases = new StringBuilder();
+            for (int j = 0; j < 100; j++) {
+                bases.append("acgt".charAt((i + j * (j + i)) % 4));
+            }
+            residues[i] = bases.toString();
+            Chromosome chr =
+                    (Chromosome) DynamicUtil.createObject(Collections.singleton(Chromosome.class));
+            chr.setPrimaryIdentifier("other_chromosome_" + i);
+            chr.setLength(new Integer(residues[i].length()));
+            Sequence chrSequence =
+                    (Sequence) DynamicUtil.createObject(Collections.singleton(Sequence.class));
+            PendingClob clob = new PendingClob(residues[i]);
+            chrSequence.setResidues(clob.subSequence(0, residues[i].length()));
+            chr.setSequence(chrSequence);
+            otherExons[i] = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
+            otherExons[i].setPrimaryIdentifier("other_exon_" + i);
+            Location loc = createLocation(chr, otherExons[i], "1", 11 + i, 40 + i);
+            otherExons[i].setChromosomeLocation(loc);
+            osw.store(chrSequence);
+            osw.store(chr);
+            osw.store(otherExons[i]);
+            osw.store(loc);
+        }
+        osw.commitTransaction();
+
+        TransferSequencesProcess ts = new TransferSequencesProcess(osw);
+        ts.setTransferSequencesWorkers("2");
+        ts.transferToLocatedSequenceFeatures();
+        Assert.assertFalse(osw.isInTransaction());
+        checkExonSequences();
+        checkCDSSequences();
+        ObjectStore os = osw.getObjectStore();
+        for (int i = 0; i < otherExons.length; i++) {
+            Exon resExon = (Exon) os.getObjectById(otherExons[i].getId());
+            Assert.assertEquals(residues[i].substring(10 + i, 40 + i),
+                    resExon.getSequence().getResidues().toString());
+        }
+    }
+
     public void checkExonSequences() throws Exception {
         osw.flushObjectById();
 
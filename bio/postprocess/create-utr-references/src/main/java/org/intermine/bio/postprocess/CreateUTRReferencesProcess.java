@@ -121,7 +121,7 @@ public class CreateUTRReferencesProcess extends PostProcessor
         Class<? extends FastPathObject> fivePrimeUTRCls =
                 model.getClassDescriptorByName("FivePrimeUTR").getType();
 
-        Iterator<?> resIter = res.iterator();
+        Iterator<?> resIter = res.streamingIterator();
         while (resIter.hasNext()) {
             ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
             InterMineObject mrna = (InterMineObject) rr.get(0);
@@ -0,0 +1,102 @@
+package org.intermine.bio.postprocess;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.query.Clob.CLOB_PAGE_SIZE;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.intermine.bio.util.ClobAccessReverseComplement;
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * The residues of one chromosome, read from the database a page at a time as they are needed.
+ * The most recently used pages are held in memory, so slicing the residues for the many
+ * locations of the features in one part of a chromosome reads each page once, where slicing the
+ * ClobAccess reads the pages again through the ObjectStore for every feature. Memory use is
+ * bounded by the number of pages held, whatever the length of the chromosome.
+ *
+ * @author agent
+ */
+final class ChromosomeResidues
+{
+    /** The default number of pages held in memory, about 7 million residues. */
+    static final int DEFAULT_MAX_PAGES = 1000;
+
+    private final ClobAccess clob;
+    private final int length;
+    private final Map<Integer, String> pages;
+
+    /**
+     * Creates an object to read the residues of a chromosome.
+     *
+     * @param clob the residues of the chromosome
+     * @param maxPages the number of pages to hold in memory
+     */
+    ChromosomeResidues(ClobAccess clob, final int maxPages) {
+        this.clob = clob;
+        length = clob.length();
+        pages = new LinkedHashMap<Integer, String>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of residues.
+     *
+     * @return the length of the chromosome
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Returns part of the chromosome.
+     *
+     * @param start the index of the first residue, from zero
+     * @param end the index after the last residue
+     * @param reverseComplement true to return the reverse complement of the residues
+     * @return the residues from start to end
+     */
+    String getSubSequence(int start, int end, boolean reverseComplement) {
+        char[] chars = new char[end - start];
+        int i = start;
+        while (i < end) {
+            int pageStart = (i / CLOB_PAGE_SIZE) * CLOB_PAGE_SIZE;
+            String page = getPage(pageStart);
+            int pageEnd = Math.min(end, pageStart + page.length());
+            for (; i < pageEnd; i++) {
+                char c = page.charAt(i - pageStart);
+                if (reverseComplement) {
+                    chars[end - 1 - i] = ClobAccessReverseComplement.complement(c);
+                } else {
+                    chars[i - start] = c;
+                }
+            }
+        }
+        return new String(chars);
+    }
+
+    private String getPage(int pageStart) {
+        Integer key = Integer.valueOf(pageStart);
+        String page = pages.get(key);
+        if (page == null) {
+            page = clob.subSequence(pageStart, Math.min(pageStart + CLOB_PAGE_SIZE, length))
+                .toString();
+            pages.put(key, page);
+        }
+        return page;
+    }
+}
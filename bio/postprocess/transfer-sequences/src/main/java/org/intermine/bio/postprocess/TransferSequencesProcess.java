@@ -10,10 +10,20 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.intermine.bio.util.ClobAccessReverseComplement;
@@ -54,11 +64,20 @@ import org.intermine.postprocess.PostProcessor;
  * Transfer sequences from the assembly objects to the other objects that are located on the
  * assemblies and to the objects that the assemblies are located on (eg. Chromosomes).
  *
+ * Chromosomes are read in parallel, largest first, in waves of one chromosome per worker
+ * thread. The workers store the new sequences through the ObjectStoreWriter that was passed to
+ * the constructor, and the transaction is committed after each wave, once every worker has
+ * finished its queries, as a commit would stop the queries of the other workers and drop their
+ * precomputed tables. A failure therefore loses only the chromosomes of the current wave, but a
+ * worker that finishes a short chromosome waits for the longest of its wave. The number of
+ * workers can be set with the transfer.sequences.workers property.
+ *
  * @author Kim Rutherford
  */
 public class TransferSequencesProcess extends PostProcessor
 {
     private Model model;
+    private int workers = Math.min(4, Runtime.getRuntime().availableProcessors());
     private static final Logger LOG = Logger.getLogger(TransferSequencesProcess.class);
 
     /**
@@ -68,6 +87,16 @@ public class TransferSequencesProcess extends PostProcessor
      */
     public TransferSequencesProcess(ObjectStoreWriter osw) {
         super(osw);
+        model = Model.getInstanceByName("genomic");
+    }
+
+    /**
+     * Set the number of chromosomes to transfer sequences for at the same time.
+     *
+     * @param workers the number of worker threads
+     */
+    public void setTransferSequencesWorkers(String workers) {
+        this.workers = Math.max(1, Integer.parseInt(workers.trim()));
     }
 
     /**
@@ -79,8 +108,6 @@ public class TransferSequencesProcess extends PostProcessor
     public void postProcess()
             throws ObjectStoreException {
 
-        model = Model.getInstanceByName("genomic");
-
         try {
             transferToLocatedSequenceFeatures();
             transferToTranscripts();
@@ -89,24 +116,25 @@ public class TransferSequencesProcess extends PostProcessor
         }
     }
 
-    private void storeNewSequence(SequenceFeature feature, ClobAccess sequenceString)
-            throws ObjectStoreException {
+    private static void storeNewSequence(ObjectStoreWriter writer, SequenceFeature feature,
+            ClobAccess sequenceString) throws ObjectStoreException {
         Sequence sequence =
                 (Sequence) DynamicUtil.createObject(Collections.singleton(Sequence.class));
         sequence.setResidues(sequenceString);
         sequence.setLength(sequenceString.length());
-        osw.store(sequence);
-        feature.proxySequence(new ProxyReference(osw.getObjectStore(),
+        writer.store(sequence);
+        feature.proxySequence(new ProxyReference(writer.getObjectStore(),
                 sequence.getId(), Sequence.class));
         feature.setLength(new Integer(sequenceString.length()));
-        osw.store(feature);
+        writer.store(feature);
     }
 
     /**
      * Use the Location relations to copy the sequence from the Chromosomes to every
      * SequenceFeature that is located on a Chromosome and which doesn't already have a
-     * sequence (ie. don't copy to Assembly).  Uses the ObjectStoreWriter that was passed to the
-     * constructor.
+     * sequence (ie. don't copy to Assembly).  Everything is stored through the
+     * ObjectStoreWriter that was passed to the constructor, with a commit after each wave of
+     * chromosomes.
      *
      * @throws Exception if there are problems with the transfer
      */
@@ -126,7 +154,7 @@ public class TransferSequencesProcess extends PostProcessor
         SingletonResults res = os.executeSingleton(q);
         Iterator<?> chrIter = res.iterator();
 
-        Set<Chromosome> chromosomes = new HashSet<Chromosome>();
+        List<Chromosome> chromosomes = new ArrayList<Chromosome>();
         while (chrIter.hasNext()) {
             Chromosome chr = (Chromosome) chrIter.next();
             chromosomes.add(chr);
@@ -135,27 +163,94 @@ public class TransferSequencesProcess extends PostProcessor
         LOG.info("Found " + chromosomes.size() + " chromosomes with sequence, took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
 
-        for (Chromosome chr : chromosomes) {
-            String organism = "";
-            if (chr.getOrganism() != null) {
-                organism = chr.getOrganism().getShortName();
+        // start the longest chromosomes first, so that no worker is left with a long one at the end
+        Collections.sort(chromosomes, new Comparator<Chromosome>() {
+            @Override
+            public int compare(Chromosome chr1, Chromosome chr2) {
+                return Integer.compare(getLength(chr2), getLength(chr1));
+            }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TransferSequences");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            for (int waveStart = 0; waveStart < chromosomes.size(); waveStart += workers) {
+                List<Chromosome> wave = chromosomes.subList(waveStart,
+                        Math.min(waveStart + workers, chromosomes.size()));
+                osw.beginTransaction();
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+                for (final Chromosome chr : wave) {
+                    futures.add(pool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            transferForChromosome(chr);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Exception e2 = new Exception("Failed to transfer sequences for a"
+                                + " chromosome");
+                        e2.initCause(e.getCause());
+                        throw e2;
+                    }
+                }
+                // every worker of the wave has drained its results, so nothing is disturbed
+                osw.commitTransaction();
+                LOG.info("Committed sequences for " + (waveStart + wave.size()) + " of "
+                        + chromosomes.size() + " chromosomes");
+            }
+        } finally {
+            pool.shutdownNow();
+            // no worker may store anything after the transaction is aborted
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.info("Waiting for transfer sequences workers to stop");
+            }
+            if (osw.isInTransaction()) {
+                osw.abortTransaction();
             }
-            LOG.info("Starting transfer for " + organism + " chromosome "
-                    + chr.getPrimaryIdentifier());
-            transferForChromosome(chr);
-
-            // CDS can be discontiguous, process them separately
-            transferToCDSs(chr);
         }
     }
 
+    private static int getLength(Chromosome chr) {
+        return chr.getLength() == null ? 0 : chr.getLength().intValue();
+    }
+
     /**
-     * Transfer sequences one chromosome at a time, commit after each one.
+     * Transfer sequences for one chromosome, storing them in the transaction of the
+     * ObjectStoreWriter that was passed to the constructor without committing it.
      *
      * @param chr chromosome
      * @throws Exception if something goes wrong
      */
     protected void transferForChromosome(Chromosome chr) throws Exception {
+        String organism = "";
+        if (chr.getOrganism() != null) {
+            organism = chr.getOrganism().getShortName();
+        }
+        LOG.info("Starting transfer for " + organism + " chromosome "
+                + chr.getPrimaryIdentifier());
+
+        transferToLocatedSequenceFeatures(chr);
+
+        // CDS can be discontiguous, process them separately
+        transferToCDSs(chr);
+    }
+
+    /**
+     * Copy the sequence of a chromosome to the features located on it, in order of their start.
+     * The sequences refer to the residues of the chromosome, so no residues are read or copied.
+     */
+    private void transferToLocatedSequenceFeatures(Chromosome chr) throws Exception {
 
         long startTime = System.currentTimeMillis();
 
@@ -175,11 +270,11 @@ public class TransferSequencesProcess extends PostProcessor
         q.addFrom(qcSub);
         q.addToSelect(qcSub);
 
-        q.addToOrderBy(qcSub);
-
         QueryClass qcLoc = new QueryClass(Location.class);
         q.addFrom(qcLoc);
         q.addToSelect(qcLoc);
+        q.addToOrderBy(new QueryField(qcLoc, "start"));
+        q.addToOrderBy(qcSub);
         QueryObjectReference ref1 = new QueryObjectReference(qcLoc, "locatedOn");
         ContainsConstraint cc1 = new ContainsConstraint(ref1, ConstraintOp.CONTAINS, qcChr);
         cs.addConstraint(cc1);
@@ -194,8 +289,6 @@ public class TransferSequencesProcess extends PostProcessor
 
         q.setConstraint(cs);
 
-        osw.beginTransaction();
-
         Set<QueryNode> indexesToCreate = new HashSet<QueryNode>();
         indexesToCreate.add(qcLoc);
         indexesToCreate.add(qcSub);
@@ -203,19 +296,22 @@ public class TransferSequencesProcess extends PostProcessor
                 Constants.PRECOMPUTE_CATEGORY);
         Results results = os.execute(q, 1000, true, true, true);
 
-        @SuppressWarnings("unchecked") Iterator<ResultsRow> resIter = (Iterator) results.iterator();
+        @SuppressWarnings("unchecked") Iterator<ResultsRow> resIter = (Iterator) results
+            .streamingIterator();
 
+        ClobAccess chrResidues = chr.getSequence().getResidues();
         long start = System.currentTimeMillis();
         int i = 0;
         while (resIter.hasNext()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Transfer for chromosome "
+                        + chr.getPrimaryIdentifier() + " stopped");
+            }
             ResultsRow<?> rr = resIter.next();
 
             SequenceFeature feature = (SequenceFeature) rr.get(0);
             Location locationOnChr = (Location) rr.get(1);
 
-            if (model == null) {
-                model = Model.getInstanceByName("genomic");
-            }
             try {
 
                 if (PostProcessUtil.isInstance(model, feature, "ChromosomeBand")) {
@@ -262,7 +358,7 @@ public class TransferSequencesProcess extends PostProcessor
                     }
                 }
 
-                ClobAccess featureSeq = getSubSequence(chr.getSequence(), locationOnChr);
+                ClobAccess featureSeq = getSubSequence(chrResidues, locationOnChr);
 
                 if (featureSeq == null) {
                     // probably the locationOnChr is out of range
@@ -292,26 +388,55 @@ public class TransferSequencesProcess extends PostProcessor
             }
         }
 
-        osw.commitTransaction();
-
-        String organism = "";
-        if (chr.getOrganism() != null) {
-            organism = chr.getOrganism().getShortName();
-        }
-        LOG.info("Finished setting " + i + " feature sequences for " + organism + " chromosome "
+        LOG.info("Finished setting " + i + " feature sequences for chromosome "
                 + chr.getPrimaryIdentifier() + " - took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
     }
 
-    private static ClobAccess getSubSequence(Sequence chromosomeSequence, Location locationOnChr) {
+    private static ClobAccess getSubSequence(ClobAccess chromosomeSequenceString,
+            Location locationOnChr) {
+        if (!isInRange(chromosomeSequenceString.length(), locationOnChr)) {
+            return null;
+        }
+
+        int startPos = locationOnChr.getStart().intValue() - 1;
+        int endPos = locationOnChr.getEnd().intValue();
+
+        ClobAccess subSeqString;
+
+        if (startPos < endPos) {
+            subSeqString = chromosomeSequenceString.subSequence(startPos, endPos);
+        } else {
+            subSeqString = chromosomeSequenceString.subSequence(endPos, startPos);
+        }
+
+        if ("-1".equals(locationOnChr.getStrand())) {
+            subSeqString = new ClobAccessReverseComplement(subSeqString);
+        }
+
+        return subSeqString;
+    }
+
+    private static String getSubSequence(ChromosomeResidues residues, Location locationOnChr) {
+        if (!isInRange(residues.length(), locationOnChr)) {
+            return null;
+        }
+
+        int startPos = locationOnChr.getStart().intValue() - 1;
+        int endPos = locationOnChr.getEnd().intValue();
+
+        return residues.getSubSequence(Math.min(startPos, endPos), Math.max(startPos, endPos),
+                "-1".equals(locationOnChr.getStrand()));
+    }
+
+    private static boolean isInRange(int chromosomeLength, Location locationOnChr) {
         int charsToCopy =
                 locationOnChr.getEnd().intValue() - locationOnChr.getStart().intValue() + 1;
-        ClobAccess chromosomeSequenceString = chromosomeSequence.getResidues();
 
-        if (charsToCopy > chromosomeSequenceString.length()) {
+        if (charsToCopy > chromosomeLength) {
             LOG.warn("SequenceFeature too long, ignoring - Location: "
                     + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
-            return null;
+            return false;
         }
 
         int startPos = locationOnChr.getStart().intValue() - 1;
@@ -320,29 +445,17 @@ public class TransferSequencesProcess extends PostProcessor
         if (startPos < 0 || endPos < 0) {
             LOG.warn("SequenceFeature has negative coordinate, ignoring Location: "
                     + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
-            return null;
+            return false;
         }
 
-        if (endPos > chromosomeSequenceString.length()) {
+        if (endPos > chromosomeLength) {
             LOG.warn(" has end coordinate greater than chromsome length."
                     + "ignoring Location: "
                     + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
-            return null;
-        }
-
-        ClobAccess subSeqString;
-
-        if (startPos < endPos) {
-            subSeqString = chromosomeSequenceString.subSequence(startPos, endPos);
-        } else {
-            subSeqString = chromosomeSequenceString.subSequence(endPos, startPos);
+            return false;
         }
 
-        if ("-1".equals(locationOnChr.getStrand())) {
-            subSeqString = new ClobAccessReverseComplement(subSeqString);
-        }
-
-        return subSeqString;
+        return true;
     }
 
 
@@ -446,7 +559,7 @@ public class TransferSequencesProcess extends PostProcessor
             if (currentTranscript == null || !transcript.equals(currentTranscript)) {
                 if (currentTranscript != null) {
                     // copy sequence to transcript
-                    storeNewSequence(currentTranscript,
+                    storeNewSequence(osw, currentTranscript,
                             new PendingClob(currentTranscriptBases.toString()));
                     i++;
                     if (i % 100 == 0) {
@@ -472,7 +585,8 @@ public class TransferSequencesProcess extends PostProcessor
         if (currentTranscript == null) {
             LOG.error("in transferToTranscripts(): no Transcripts found");
         } else {
-            storeNewSequence(currentTranscript, new PendingClob(currentTranscriptBases.toString()));
+            storeNewSequence(osw, currentTranscript,
+                    new PendingClob(currentTranscriptBases.toString()));
         }
 
         LOG.info("Finished setting " + i + " Trascript sequences - took "
@@ -486,17 +600,15 @@ public class TransferSequencesProcess extends PostProcessor
      * object for the CDS.  Uses the ObjectStoreWriter that was passed to the constructor
      *
      * CDS.sequence length is a sum of all locations. CDS.sequence residues should be the
-     * combined sequence of all the locations.
+     * combined sequence of all the locations. The residues of the chromosome are read a page at
+     * a time, and the most recently used pages are held in memory.
      *
      * @throws Exception if there are problems with the transfer
      */
-    private void transferToCDSs(Chromosome chr)
-        throws Exception {
+    private void transferToCDSs(Chromosome chr) throws Exception {
 
         long startTime = System.currentTimeMillis();
 
-        osw.beginTransaction();
-
         ObjectStore os = osw.getObjectStore();
         // get all CDSs for this chromosome
         Query q = getCDSQuery(chr);
@@ -506,11 +618,15 @@ public class TransferSequencesProcess extends PostProcessor
 
         SequenceFeature currentCDS = null;
         StringBuffer currentCDSBases = new StringBuffer();
-        Sequence chromosomeSequence = chr.getSequence();
+        ChromosomeResidues residues = null;
 
         long start = System.currentTimeMillis();
         int i = 0;
         while (resIter.hasNext()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Transfer for chromosome "
+                        + chr.getPrimaryIdentifier() + " stopped");
+            }
             ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
             SequenceFeature cds =  (SequenceFeature) rr.get(0);
 
@@ -518,7 +634,8 @@ public class TransferSequencesProcess extends PostProcessor
             if (currentCDS == null || !cds.equals(currentCDS)) {
                 if (currentCDS != null) {
                     // copy sequence to CDS
-                    storeNewSequence(currentCDS, new PendingClob(currentCDSBases.toString()));
+                    storeNewSequence(osw, currentCDS,
+                            new PendingClob(currentCDSBases.toString()));
                     i++;
                     if (i % 100 == 0) {
                         long now = System.currentTimeMillis();
@@ -534,23 +651,29 @@ public class TransferSequencesProcess extends PostProcessor
             Location  location = (Location) rr.get(1);
 
             // add CDS
-            ClobAccess clob = getSubSequence(chromosomeSequence, location);
+            if (residues == null) {
+                residues = new ChromosomeResidues(chr.getSequence().getResidues(),
+                        ChromosomeResidues.DEFAULT_MAX_PAGES);
+            }
+            String bases = getSubSequence(residues, location);
+            if (bases == null) {
+                // the location is out of range
+                continue;
+            }
             if (location.getStrand() != null && "-1".equals(location.getStrand())) {
-                currentCDSBases.insert(0, clob.toString());
+                currentCDSBases.insert(0, bases);
             } else {
-                currentCDSBases.append(clob.toString());
+                currentCDSBases.append(bases);
             }
         }
         if (currentCDS == null) {
             LOG.error("in transferToCDSs(): no CDSs found");
         } else {
-            storeNewSequence(currentCDS, new PendingClob(currentCDSBases.toString()));
+            storeNewSequence(osw, currentCDS, new PendingClob(currentCDSBases.toString()));
         }
 
         LOG.info("Finished setting " + i + " CDS sequences - took "
                  + (System.currentTimeMillis() - startTime) + " ms.");
-
-        osw.commitTransaction();
     }
 
     private Query getCDSQuery(Chromosome chr) {
@@ -0,0 +1,181 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+/**
+ * Runs genomic region searches on a small pool of threads shared by all users, so that many
+ * large searches at once cannot use up the threads and database connections of the webapp. Each
+ * session has its own queue of searches, and the queues take turns, so that one user's searches
+ * do not hold up everyone else's. A session's searches are cancelled and their results deleted
+ * when the session ends.
+ *
+ * @author agent
+ */
+public final class GenomicRegionSearchExecutor
+{
+    private static final int MAX_SEARCH_THREADS = 4;
+    private static final String SESSION_SEARCHES = "genomicRegionSearches";
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            MAX_SEARCH_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "GenomicRegionSearch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    // the queued searches of each session, with the session to be served next first
+    private static final Map<String, Deque<GenomicRegionSearchQueryRunner>> QUEUES =
+        new LinkedHashMap<String, Deque<GenomicRegionSearchQueryRunner>>();
+
+    private GenomicRegionSearchExecutor() {
+        // hidden constructor
+    }
+
+    /**
+     * Queues a search to be run.
+     *
+     * @param session the session of the user running the search
+     * @param runner the search
+     */
+    public static void submit(HttpSession session, GenomicRegionSearchQueryRunner runner) {
+        getSessionSearches(session).add(runner);
+        synchronized (QUEUES) {
+            Deque<GenomicRegionSearchQueryRunner> queue = QUEUES.get(session.getId());
+            if (queue == null) {
+                queue = new ArrayDeque<GenomicRegionSearchQueryRunner>();
+                QUEUES.put(session.getId(), queue);
+            }
+            queue.add(runner);
+        }
+        // each task runs whichever search is next, which may not be this one
+        WORKERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                GenomicRegionSearchQueryRunner next = takeNext();
+                if (next != null) {
+                    next.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels all the searches of a session that have not finished. Their results so far are
+     * kept.
+     *
+     * @param session the session
+     */
+    public static void cancel(HttpSession session) {
+        getSessionSearches(session).cancelAll();
+    }
+
+    private static GenomicRegionSearchQueryRunner takeNext() {
+        synchronized (QUEUES) {
+            Iterator<Map.Entry<String, Deque<GenomicRegionSearchQueryRunner>>> iter =
+                QUEUES.entrySet().iterator();
+            if (!iter.hasNext()) {
+                // the search was cancelled before it started
+                return null;
+            }
+            Map.Entry<String, Deque<GenomicRegionSearchQueryRunner>> entry = iter.next();
+            iter.remove();
+            GenomicRegionSearchQueryRunner next = entry.getValue().poll();
+            if (!entry.getValue().isEmpty()) {
+                // to the back of the line
+                QUEUES.put(entry.getKey(), entry.getValue());
+            }
+            return next;
+        }
+    }
+
+    private static SessionSearches getSessionSearches(HttpSession session) {
+        synchronized (session) {
+            SessionSearches searches = (SessionSearches) session.getAttribute(SESSION_SEARCHES);
+            if (searches == null) {
+                searches = new SessionSearches(session.getId());
+                session.setAttribute(SESSION_SEARCHES, searches);
+            }
+            return searches;
+        }
+    }
+
+    /**
+     * The searches of one session, which are cancelled and deleted when the session ends.
+     */
+    private static class SessionSearches implements HttpSessionBindingListener
+    {
+        private final String sessionId;
+        private final List<GenomicRegionSearchQueryRunner> runners =
+            new ArrayList<GenomicRegionSearchQueryRunner>();
+
+        /**
+         * Constructor.
+         *
+         * @param sessionId the id of the session
+         */
+        SessionSearches(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * Adds a search that has been submitted.
+         *
+         * @param runner the search
+         */
+        synchronized void add(GenomicRegionSearchQueryRunner runner) {
+            runners.add(runner);
+        }
+
+        /**
+         * Removes the searches that have not started from the queues, and stops the rest.
+         */
+        synchronized void cancelAll() {
+            synchronized (QUEUES) {
+                QUEUES.remove(sessionId);
+            }
+            for (GenomicRegionSearchQueryRunner runner : runners) {
+                runner.cancel();
+            }
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+            // nothing to do
+        }
+
+        @Override
+        public synchronized void valueUnbound(HttpSessionBindingEvent event) {
+            cancelAll();
+            for (GenomicRegionSearchQueryRunner runner : runners) {
+                runner.getResults().delete();
+            }
+            runners.clear();
+        }
+    }
+}
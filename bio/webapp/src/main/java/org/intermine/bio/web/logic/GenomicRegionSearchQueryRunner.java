@@ -10,21 +10,21 @@ package org.intermine.bio.web.logic;
  *
  */
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
-import java.util.TreeMap;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 
 import org.intermine.api.InterMineAPI;
 import org.intermine.api.profile.Profile;
@@ -37,6 +37,7 @@ import org.intermine.model.bio.Organism;
 import org.intermine.model.bio.SOTerm;
 import org.intermine.model.bio.SequenceFeature;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -57,9 +58,13 @@ import org.intermine.web.logic.session.SessionMethods;
 public class GenomicRegionSearchQueryRunner implements Runnable
 {
     private HttpServletRequest request = null;
+    private HttpSession session = null;
     private String spanUUIDString = null;
     private GenomicRegionSearchConstraint grsc = null;
     private Map<GenomicRegion, Query> queryMap = null;
+    private boolean useLocationIndex = false;
+    private GenomicRegionSearchResults results = null;
+    private volatile boolean cancelled = false;
     private static Map<String, Map<String, ChromosomeInfo>> chrInfoMap = null;
 
     /**
@@ -80,13 +85,16 @@ public class GenomicRegionSearchQueryRunner implements Runnable
     }
 
     /**
-     * Main body of db search
+     * Main body of db search. The results are added to the session straight away, and are
+     * filled in by the search, which is queued to run on the GenomicRegionSearchExecutor.
+     *
+     * @throws IOException if the file for the results cannot be created
      */
-    public void search() {
+    @SuppressWarnings("unchecked")
+    public void search() throws IOException {
 
         // Use spanConstraintMap to check whether the spanUpload is duplicated, the map is saved in
         // the session
-        @SuppressWarnings("unchecked")
         Map<GenomicRegionSearchConstraint, String> spanConstraintMap =
             (HashMap<GenomicRegionSearchConstraint, String>)  request
             .getSession().getAttribute("spanConstraintMap");
@@ -109,24 +117,19 @@ public class GenomicRegionSearchQueryRunner implements Runnable
         request.getSession().setAttribute("spanConstraintMap", spanConstraintMap);
         request.setAttribute("spanQueryTotalCount", grsc.getGenomicRegionList().size());
 
-        (new Thread(this)).start();
-    }
+        Properties webProperties = SessionMethods.getWebProperties(
+                request.getSession().getServletContext());
+        useLocationIndex = "true".equals(webProperties.getProperty(
+                    "genomicRegionSearch.useLocationIndex"));
 
-    @Override
-    public void run() {
-        // at r27699
-        queryExecutor();
-    }
-
-    /**
-     * The method to run all the queries.
-     */
-    private void queryExecutor() {
+        // the search runs after this request has finished, so must not use it
+        session = request.getSession();
+        request = null;
 
         // Use spanOverlapFullResultMap to store the data in the session
         Map<String, Map<GenomicRegion, List<List<String>>>> spanOverlapFullResultMap =
-             (Map<String, Map<GenomicRegion, List<List<String>>>>) request
-                            .getSession().getAttribute("spanOverlapFullResultMap");
+             (Map<String, Map<GenomicRegion, List<List<String>>>>) session
+                            .getAttribute("spanOverlapFullResultMap");
 
         if (spanOverlapFullResultMap == null) {
             spanOverlapFullResultMap =
@@ -135,82 +138,168 @@ public class GenomicRegionSearchQueryRunner implements Runnable
 
         // map of sequence feature statistics: key - class name. value - count of feature
         Map<String, Map<GenomicRegion, Map<String, Integer>>> spanOverlapFullStatMap =
-             (Map<String, Map<GenomicRegion, Map<String, Integer>>>) request
-                            .getSession().getAttribute("spanOverlapFullStatMap");
+             (Map<String, Map<GenomicRegion, Map<String, Integer>>>) session
+                            .getAttribute("spanOverlapFullStatMap");
 
         if (spanOverlapFullStatMap == null) {
             spanOverlapFullStatMap =
                 new HashMap<String, Map<GenomicRegion, Map<String, Integer>>>();
         }
 
-        Map<GenomicRegion, List<List<String>>> spanOverlapResultDisplayMap = Collections
-                .synchronizedMap(new LinkedHashMap<GenomicRegion, List<List<String>>>());
-
-        Map<GenomicRegion, Map<String, Integer>> spanOverlapResultStatMap = Collections
-                .synchronizedMap(new LinkedHashMap<GenomicRegion, Map<String, Integer>>());
-
         if (!spanOverlapFullResultMap.containsKey(spanUUIDString)
                 && !spanOverlapFullStatMap.containsKey(spanUUIDString)) {
 
-            spanOverlapFullResultMap.put(spanUUIDString, spanOverlapResultDisplayMap);
-            request.getSession().setAttribute("spanOverlapFullResultMap", spanOverlapFullResultMap);
+            results = new GenomicRegionSearchResults();
 
-            spanOverlapFullStatMap.put(spanUUIDString, spanOverlapResultStatMap);
-            request.getSession().setAttribute("spanOverlapFullStatMap", spanOverlapFullStatMap);
+            spanOverlapFullResultMap.put(spanUUIDString, results);
+            session.setAttribute("spanOverlapFullResultMap", spanOverlapFullResultMap);
 
-            try {
-                ObjectStore os = SessionMethods.getInterMineAPI(
-                        request.getSession()).getObjectStore();
+            spanOverlapFullStatMap.put(spanUUIDString, results.getStatistics());
+            session.setAttribute("spanOverlapFullStatMap", spanOverlapFullStatMap);
 
-                for (Entry<GenomicRegion, Query> e : queryMap.entrySet()) {
-                    Results results = os.execute(e.getValue());
+            GenomicRegionSearchExecutor.submit(session, this);
+        }
+    }
 
-                    List<List<String>> spanResults = new ArrayList<List<String>>();
+    @Override
+    public void run() {
+        // at r27699
+        queryExecutor();
+    }
+
+    /**
+     * Stops the search after the region it is searching, if it has started.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (results != null) {
+            results.finish();
+        }
+    }
 
-                    Map<String, Integer> spanStatMap = new HashMap<String, Integer>();
-                    ValueComparator bvc =  new ValueComparator(spanStatMap);
-                    TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
+    /**
+     * Returns the results of the search.
+     *
+     * @return the results, which are filled in as the search runs
+     */
+    public GenomicRegionSearchResults getResults() {
+        return results;
+    }
 
-                    if (results == null || results.isEmpty()) {
-                        spanOverlapResultDisplayMap.put(e.getKey(), null);
+    /**
+     * The method to run all the queries.
+     */
+    private void queryExecutor() {
+        try {
+            ObjectStore os = SessionMethods.getInterMineAPI(session).getObjectStore();
+
+            if (useLocationIndex) {
+                searchLocationIndex(os);
+            } else {
+                for (Entry<GenomicRegion, Query> e : queryMap.entrySet()) {
+                    if (cancelled) {
+                        break;
                     }
-                    else {
-                        for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
-                            ResultsRow<?> row = (ResultsRow<?>) iter.next();
-
-                            List<String> resultRow = new ArrayList<String>();
-
-                            for (Object o : row) {
-                                String item = new String();
-
-                                // NULL for symbol or PID
-                                o = o == null ? new String() : o;
-
-                                if (o instanceof Class) {
-                                    item = ((Class) o).getSimpleName();
-                                    // add class stat to spanStatMap
-                                    if (spanStatMap.containsKey(item)) {
-                                        spanStatMap.put(item, spanStatMap.get(item) + 1);
-                                    } else {
-                                        spanStatMap.put(item, 1);
-                                    }
-                                } else {
-                                    item = o.toString();
-                                }
-
-                                resultRow.add(item);
-                            }
-                            spanResults.add(resultRow);
-                        }
-                        spanOverlapResultDisplayMap.put(e.getKey(), spanResults);
-
-                        sortedStatMap.putAll(spanStatMap);
-                        spanOverlapResultStatMap.put(e.getKey(), sortedStatMap);
+                    Results regionResults = os.execute(e.getValue());
+                    addResults(e.getKey(), regionResults);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            results.finish();
+            // the queries are not needed again, and can be large
+            queryMap = null;
+        }
+    }
+
+    /**
+     * Finds the features in all the regions with the LocationIndex, and then reads the
+     * identifiers of all the features with one query. The rows are the same as those of the
+     * queries in queryMap.
+     */
+    private void searchLocationIndex(ObjectStore os) throws IOException {
+        Map<GenomicRegion, List<LocationIndex.Hit>> hitMap = LocationIndex.getInstance(os)
+            .findOverlaps(grsc.getOrgName(), queryMap.keySet(), grsc.getExtendedRegionSize(),
+                    grsc.getFeatureTypes(), grsc.getStrandSpecific());
+
+        Set<Integer> featureIds = new HashSet<Integer>();
+        for (List<LocationIndex.Hit> hits : hitMap.values()) {
+            for (LocationIndex.Hit hit : hits) {
+                featureIds.add(hit.getFeatureId());
+            }
+        }
+        Map<Integer, Object[]> identifiers = new HashMap<Integer, Object[]>();
+        if (!featureIds.isEmpty()) {
+            Query q = new Query();
+            QueryClass qcFeature = new QueryClass(SequenceFeature.class);
+            q.addFrom(qcFeature);
+            QueryField qfFeatureId = new QueryField(qcFeature, "id");
+            q.addToSelect(qfFeatureId);
+            q.addToSelect(new QueryField(qcFeature, "primaryIdentifier"));
+            q.addToSelect(new QueryField(qcFeature, "symbol"));
+            q.setConstraint(new BagConstraint(qfFeatureId, ConstraintOp.IN, featureIds));
+            Results identifierResults = os.execute(q, 10000, true, false, true);
+            for (Iterator<?> iter = identifierResults.iterator(); iter.hasNext();) {
+                ResultsRow<?> row = (ResultsRow<?>) iter.next();
+                identifiers.put((Integer) row.get(0), new Object[] {row.get(1), row.get(2)});
+            }
+        }
+
+        for (Entry<GenomicRegion, List<LocationIndex.Hit>> e : hitMap.entrySet()) {
+            if (cancelled) {
+                break;
+            }
+            List<List<Object>> rows = new ArrayList<List<Object>>();
+            for (LocationIndex.Hit hit : e.getValue()) {
+                Object[] featureIdentifiers = identifiers.get(hit.getFeatureId());
+                if (featureIdentifiers == null) {
+                    // the feature has gone since the index was read
+                    continue;
+                }
+                List<Object> row = new ArrayList<Object>();
+                row.add(hit.getFeatureId());
+                row.add(featureIdentifiers[0]);
+                row.add(featureIdentifiers[1]);
+                row.add(hit.getFeatureClass());
+                row.add(e.getKey().getChr());
+                row.add(hit.getStart());
+                row.add(hit.getEnd());
+                row.add(hit.getStrand());
+                rows.add(row);
+            }
+            addResults(e.getKey(), rows);
+        }
+    }
+
+    /**
+     * Converts the rows found for a region to Strings, and adds them to the results.
+     */
+    private void addResults(GenomicRegion region, List<?> rows) throws IOException {
+        if (rows == null || rows.isEmpty()) {
+            results.add(region, null);
+        } else {
+            List<List<String>> spanResults = new ArrayList<List<String>>();
+            for (Object row : rows) {
+                List<String> resultRow = new ArrayList<String>();
+
+                for (Object o : (List<?>) row) {
+                    String item = new String();
+
+                    // NULL for symbol or PID
+                    o = o == null ? new String() : o;
+
+                    if (o instanceof Class) {
+                        item = ((Class<?>) o).getSimpleName();
+                    } else {
+                        item = o.toString();
                     }
+
+                    resultRow.add(item);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+                spanResults.add(resultRow);
             }
+            results.add(region, spanResults);
         }
     }
 
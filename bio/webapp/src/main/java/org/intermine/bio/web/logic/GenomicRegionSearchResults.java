@@ -0,0 +1,347 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.intermine.bio.web.model.GenomicRegion;
+
+/**
+ * The results of a genomic region search, as a read-only Map from each region searched so far to
+ * its rows of features, or to null if it has none. The rows are written to a temporary file as
+ * each region is finished, and only the position of each region in the file is kept in memory,
+ * so that a session holding the results of a large search does not fill the heap. Reading a
+ * region, for instance to show a page of the results, reads only that region from the file.
+ *
+ * The file is only held open for writing until the search finishes, and each read opens it
+ * read-only, so idle results hold no file handles. The Map can be read while the search is adding
+ * to it. delete() must be called when the results are no longer needed.
+ *
+ * @author agent
+ */
+public class GenomicRegionSearchResults extends AbstractMap<GenomicRegion, List<List<String>>>
+{
+    /** The column of each row that holds the type of the feature. */
+    public static final int FEATURE_TYPE_COLUMN = 3;
+
+    private final File file;
+    private RandomAccessFile writer;
+    private long fileLength = 0;
+    private final List<GenomicRegion> regions = new ArrayList<GenomicRegion>();
+    private final Map<GenomicRegion, Integer> regionNos = new HashMap<GenomicRegion, Integer>();
+    private long[] offsets = new long[16];
+    // the length of the rows of each region in the file, or -1 for null
+    private int[] lengths = new int[16];
+    private boolean finished = false;
+    private boolean deleted = false;
+
+    /**
+     * Constructor.
+     *
+     * @throws IOException if the temporary file cannot be created
+     */
+    public GenomicRegionSearchResults() throws IOException {
+        file = File.createTempFile("regionsearch", ".tmp");
+        writer = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Adds the rows of a region to the results. Regions added after finish() has been called, as
+     * happens when the search is cancelled, are ignored.
+     *
+     * @param region the region
+     * @param rows the rows of the features in the region, or null if there are none
+     * @throws IOException if the rows cannot be written
+     */
+    public synchronized void add(GenomicRegion region, List<List<String>> rows)
+        throws IOException {
+        if (deleted) {
+            throw new IllegalStateException("Results have been deleted");
+        }
+        if (finished) {
+            return;
+        }
+        if (regionNos.containsKey(region)) {
+            throw new IllegalArgumentException("Region " + region + " is already in results");
+        }
+        int regionNo = regions.size();
+        if (regionNo == offsets.length) {
+            offsets = Arrays.copyOf(offsets, regionNo * 2);
+            lengths = Arrays.copyOf(lengths, regionNo * 2);
+        }
+        offsets[regionNo] = fileLength;
+        if (rows == null) {
+            lengths[regionNo] = -1;
+        } else {
+            byte[] bytes = encode(rows);
+            writer.seek(fileLength);
+            writer.write(bytes);
+            fileLength += bytes.length;
+            lengths[regionNo] = bytes.length;
+        }
+        regions.add(region);
+        regionNos.put(region, Integer.valueOf(regionNo));
+    }
+
+    /**
+     * Marks the results as complete, which happens when every region has been searched or the
+     * search has been cancelled, and closes the file for writing.
+     */
+    public synchronized void finish() {
+        finished = true;
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // everything has already been written, as RandomAccessFile does not buffer
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Returns whether the search has finished adding to the results.
+     *
+     * @return true if finish() has been called
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Deletes the file holding the results. After this, every region reads as having no rows.
+     */
+    public synchronized void delete() {
+        finished = true;
+        closeWriter();
+        if (!deleted) {
+            deleted = true;
+            file.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int size() {
+        return regions.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return regionNos.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<List<String>> get(Object key) {
+        Integer regionNo;
+        synchronized (this) {
+            regionNo = regionNos.get(key);
+        }
+        if (regionNo == null) {
+            return null;
+        }
+        return read(regionNo.intValue());
+    }
+
+    private List<List<String>> read(int regionNo) {
+        long offset;
+        int length;
+        synchronized (this) {
+            offset = offsets[regionNo];
+            length = lengths[regionNo];
+            if ((length == -1) || deleted) {
+                return null;
+            }
+        }
+        try {
+            byte[] bytes = new byte[length];
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.seek(offset);
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            return decode(bytes);
+        } catch (FileNotFoundException e) {
+            synchronized (this) {
+                if (deleted) {
+                    return null;
+                }
+            }
+            throw new IllegalStateException("Could not read region search results from "
+                    + file, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read region search results from "
+                    + file, e);
+        }
+    }
+
+    /**
+     * Returns the regions found so far and their rows, in the order in which they were added.
+     * The rows of each region are read when the value of its entry is fetched.
+     *
+     * @return a Set of entries
+     */
+    @Override
+    public Set<Entry<GenomicRegion, List<List<String>>>> entrySet() {
+        final List<GenomicRegion> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<GenomicRegion>(regions);
+        }
+        return new AbstractSet<Entry<GenomicRegion, List<List<String>>>>() {
+            @Override
+            public int size() {
+                return snapshot.size();
+            }
+
+            @Override
+            public Iterator<Entry<GenomicRegion, List<List<String>>>> iterator() {
+                final Iterator<GenomicRegion> iter = snapshot.iterator();
+                return new Iterator<Entry<GenomicRegion, List<List<String>>>>() {
+                    private int regionNo = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iter.hasNext();
+                    }
+
+                    @Override
+                    public Entry<GenomicRegion, List<List<String>>> next() {
+                        final GenomicRegion region = iter.next();
+                        final int entryRegionNo = regionNo++;
+                        return new AbstractMap.SimpleImmutableEntry<GenomicRegion,
+                               List<List<String>>>(region, null) {
+                            @Override
+                            public List<List<String>> getValue() {
+                                return read(entryRegionNo);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a Map from each region with features to the number of features of each type,
+     * with the most common type first, which is worked out from the rows when it is read.
+     *
+     * @return a Map
+     */
+    public Map<GenomicRegion, Map<String, Integer>> getStatistics() {
+        return new AbstractMap<GenomicRegion, Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> get(Object key) {
+                return countFeatureTypes(GenomicRegionSearchResults.this.get(key));
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Entry<GenomicRegion, Map<String, Integer>>> entrySet() {
+                Map<GenomicRegion, Map<String, Integer>> retval =
+                    new LinkedHashMap<GenomicRegion, Map<String, Integer>>();
+                for (Entry<GenomicRegion, List<List<String>>> e
+                        : GenomicRegionSearchResults.this.entrySet()) {
+                    Map<String, Integer> stat = countFeatureTypes(e.getValue());
+                    if (stat != null) {
+                        retval.put(e.getKey(), stat);
+                    }
+                }
+                return retval.entrySet();
+            }
+        };
+    }
+
+    private static Map<String, Integer> countFeatureTypes(List<List<String>> rows) {
+        if (rows == null) {
+            return null;
+        }
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (List<String> row : rows) {
+            String type = row.get(FEATURE_TYPE_COLUMN);
+            Integer count = counts.get(type);
+            counts.put(type, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+        }
+        TreeMap<String, Integer> sorted = new TreeMap<String, Integer>(
+                new ValueComparator(counts));
+        sorted.putAll(counts);
+        return sorted;
+    }
+
+    private static byte[] encode(List<List<String>> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rows.size());
+        for (List<String> row : rows) {
+            out.writeInt(row.size());
+            for (String value : row) {
+                out.writeUTF(value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<List<String>> decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int rowCount = in.readInt();
+        List<List<String>> rows = new ArrayList<List<String>>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            int columnCount = in.readInt();
+            List<String> row = new ArrayList<String>(columnCount);
+            for (int j = 0; j < columnCount; j++) {
+                row.add(in.readUTF());
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
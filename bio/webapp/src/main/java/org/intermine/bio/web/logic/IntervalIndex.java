@@ -0,0 +1,192 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+import org.intermine.util.IntList;
+
+/**
+ * An index of closed integer intervals, such as the locations of features on a chromosome, that
+ * finds the intervals overlapping a given range. The intervals are sorted by start and held in
+ * primitive arrays, which are treated as an implicit binary tree in which each node also holds
+ * the greatest end in its subtree, as in cgranges. A lookup takes O(log n + k) time to find k
+ * intervals, and the index uses sixteen bytes per interval.
+ *
+ * The intervals are held in order of start, and are referred to by their position in that order.
+ * getItem() gives the position of an interval in the arrays given to the constructor.
+ *
+ * @author agent
+ */
+public class IntervalIndex
+{
+    // below this level of the tree, scanning the intervals is faster than descending
+    private static final int SCAN_LEVEL = 3;
+
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final int[] items;
+    private final int rootLevel;
+
+    /**
+     * Constructor. The arrays are not altered or kept.
+     *
+     * @param starts the start of each interval
+     * @param ends the end of each interval, which must not be less than its start
+     * @param size the number of intervals in the arrays
+     */
+    public IntervalIndex(int[] starts, int[] ends, int size) {
+        this.size = size;
+        // sort the positions by start without creating an object for each
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (((long) starts[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+        this.starts = new int[size];
+        this.ends = new int[size];
+        this.maxEnds = new int[size];
+        this.items = new int[size];
+        for (int i = 0; i < size; i++) {
+            int item = (int) keys[i];
+            this.items[i] = item;
+            this.starts[i] = starts[item];
+            this.ends[i] = ends[item];
+        }
+        rootLevel = buildTree();
+    }
+
+    /**
+     * Fills in maxEnds, level by level from the leaves, which are at the even positions.
+     *
+     * @return the level of the root of the tree
+     */
+    private int buildTree() {
+        if (size == 0) {
+            return -1;
+        }
+        int lastPos = 0;
+        int lastMax = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastPos = i;
+            lastMax = ends[i];
+            maxEnds[i] = ends[i];
+        }
+        int level;
+        for (level = 1; (1 << level) <= size; level++) {
+            int half = 1 << (level - 1);
+            int step = half << 2;
+            for (int i = (half << 1) - 1; i < size; i += step) {
+                int leftMax = maxEnds[i - half];
+                // a missing right subtree stands for the last node at the level below
+                int rightMax = (i + half < size) ? maxEnds[i + half] : lastMax;
+                maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+            }
+            lastPos = ((lastPos >> level) & 1) != 0 ? lastPos - half : lastPos + half;
+            if ((lastPos < size) && (maxEnds[lastPos] > lastMax)) {
+                lastMax = maxEnds[lastPos];
+            }
+        }
+        return level - 1;
+    }
+
+    /**
+     * Returns the number of intervals in the index.
+     *
+     * @return the number of intervals
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the position in the arrays given to the constructor of an interval.
+     *
+     * @param pos the position of the interval in the index
+     * @return the position of the interval in the constructor arrays
+     */
+    public int getItem(int pos) {
+        return items[pos];
+    }
+
+    /**
+     * Returns the start of an interval.
+     *
+     * @param pos the position of the interval in the index
+     * @return the start
+     */
+    public int getStart(int pos) {
+        return starts[pos];
+    }
+
+    /**
+     * Returns the end of an interval.
+     *
+     * @param pos the position of the interval in the index
+     * @return the end
+     */
+    public int getEnd(int pos) {
+        return ends[pos];
+    }
+
+    /**
+     * Finds the intervals that overlap a range, including intervals that only touch it.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param results an IntList to add the position in the index of each overlapping interval
+     * to, so that they are in order of start
+     */
+    public void findOverlaps(int start, int end, IntList results) {
+        if (size == 0) {
+            return;
+        }
+        // a stack of tree nodes, each with its level and whether its left subtree has been done
+        int[] stackNode = new int[64];
+        int[] stackLevel = new int[64];
+        boolean[] stackLeftDone = new boolean[64];
+        int top = 0;
+        stackNode[top] = (1 << rootLevel) - 1;
+        stackLevel[top] = rootLevel;
+        stackLeftDone[top++] = false;
+        while (top > 0) {
+            top--;
+            int node = stackNode[top];
+            int level = stackLevel[top];
+            if (level <= SCAN_LEVEL) {
+                int first = (node >> level) << level;
+                int last = Math.min(first + (1 << (level + 1)) - 1, size);
+                for (int i = first; (i < last) && (starts[i] <= end); i++) {
+                    if (ends[i] >= start) {
+                        results.add(i);
+                    }
+                }
+            } else if (!stackLeftDone[top]) {
+                int left = node - (1 << (level - 1));
+                stackLeftDone[top++] = true;
+                if ((left >= size) || (maxEnds[left] >= start)) {
+                    stackNode[top] = left;
+                    stackLevel[top] = level - 1;
+                    stackLeftDone[top++] = false;
+                }
+            } else if ((node < size) && (starts[node] <= end)) {
+                if (ends[node] >= start) {
+                    results.add(node);
+                }
+                stackNode[top] = node + (1 << (level - 1));
+                stackLevel[top] = level - 1;
+                stackLeftDone[top++] = false;
+            }
+        }
+    }
+}
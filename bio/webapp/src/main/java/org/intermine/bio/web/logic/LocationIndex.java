@@ -0,0 +1,345 @@
+package org.intermine.bio.web.logic;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.intermine.bio.web.model.GenomicRegion;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.bio.Chromosome;
+import org.intermine.model.bio.Location;
+import org.intermine.model.bio.Organism;
+import org.intermine.model.bio.SequenceFeature;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.IntList;
+
+/**
+ * An in-memory index of the Locations of all SequenceFeatures on Chromosomes, by organism and
+ * chromosome, which answers a genomic region search for many regions without running a query for
+ * each of them. The index is read from the production database with one query the first time it
+ * is needed, and again when the database has been rebuilt. It takes about 25 bytes for each
+ * Location, as everything is held in primitive arrays.
+ *
+ * Regions match the same Locations as the queries made by GenomicRegionSearchUtil.
+ *
+ * @author agent
+ */
+public final class LocationIndex
+{
+    private static final Logger LOG = Logger.getLogger(LocationIndex.class);
+    private static final int BATCH_SIZE = 100000;
+
+    private static LocationIndex instance = null;
+    private static String instanceRelease = null;
+
+    // organism short name to chromosome primaryIdentifier to Locations
+    private final Map<String, Map<String, ChromosomeLocations>> organisms =
+        new HashMap<String, Map<String, ChromosomeLocations>>();
+    // the distinct feature classes and strands, referred to by number from the Locations
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+    private final List<String> strands = new ArrayList<String>();
+    private int size = 0;
+
+    /**
+     * Returns the index for an ObjectStore, reading it if this has not been done since the
+     * production database was last built.
+     *
+     * @param os the production ObjectStore
+     * @return a LocationIndex
+     */
+    public static synchronized LocationIndex getInstance(ObjectStore os) {
+        String release = null;
+        if (os instanceof ObjectStoreInterMineImpl) {
+            try {
+                release = MetadataManager.retrieve(((ObjectStoreInterMineImpl) os).getDatabase(),
+                        MetadataManager.SERIAL_NUMBER);
+            } catch (SQLException e) {
+                LOG.warn("Could not read the serial number of the production database", e);
+            }
+        }
+        if ((instance == null) || ((release != null) && !release.equals(instanceRelease))) {
+            long start = System.currentTimeMillis();
+            // let the old index be collected while the new one is read
+            instance = null;
+            instance = new LocationIndex(os);
+            instanceRelease = release;
+            LOG.info("Read " + instance.size + " locations into the location index in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return instance;
+    }
+
+    private LocationIndex(ObjectStore os) {
+        Query q = new Query();
+        QueryClass qcLoc = new QueryClass(Location.class);
+        QueryClass qcFeature = new QueryClass(SequenceFeature.class);
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        QueryClass qcOrg = new QueryClass(Organism.class);
+        q.addFrom(qcLoc);
+        q.addFrom(qcFeature);
+        q.addFrom(qcChr);
+        q.addFrom(qcOrg);
+        q.addToSelect(new QueryField(qcOrg, "shortName"));
+        q.addToSelect(new QueryField(qcChr, "primaryIdentifier"));
+        q.addToSelect(new QueryField(qcLoc, "start"));
+        q.addToSelect(new QueryField(qcLoc, "end"));
+        q.addToSelect(new QueryField(qcLoc, "strand"));
+        q.addToSelect(new QueryField(qcFeature, "id"));
+        q.addToSelect(new QueryField(qcFeature, "class"));
+
+        ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc,
+                        "feature"), ConstraintOp.CONTAINS, qcFeature));
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc,
+                        "locatedOn"), ConstraintOp.CONTAINS, qcChr));
+        constraints.addConstraint(new ContainsConstraint(new QueryObjectReference(qcFeature,
+                        "organism"), ConstraintOp.CONTAINS, qcOrg));
+        q.setConstraint(constraints);
+
+        Map<String, Map<String, LocationsBuilder>> builders =
+            new HashMap<String, Map<String, LocationsBuilder>>();
+        Map<Class<?>, Integer> classNos = new HashMap<Class<?>, Integer>();
+        Map<String, Integer> strandNos = new HashMap<String, Integer>();
+        Results results = os.execute(q, BATCH_SIZE, true, false, false);
+        for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
+            ResultsRow<?> row = (ResultsRow<?>) iter.next();
+            Integer start = (Integer) row.get(2);
+            Integer end = (Integer) row.get(3);
+            if ((start == null) || (end == null)) {
+                // a region query can never match these
+                continue;
+            }
+            Map<String, LocationsBuilder> chromosomes = builders.get((String) row.get(0));
+            if (chromosomes == null) {
+                chromosomes = new HashMap<String, LocationsBuilder>();
+                builders.put((String) row.get(0), chromosomes);
+            }
+            LocationsBuilder builder = chromosomes.get((String) row.get(1));
+            if (builder == null) {
+                builder = new LocationsBuilder();
+                chromosomes.put((String) row.get(1), builder);
+            }
+            builder.starts.add(start.intValue());
+            builder.ends.add(end.intValue());
+            builder.featureIds.add(((Integer) row.get(5)).intValue());
+            builder.classNos.add(number((Class<?>) row.get(6), classNos, classes));
+            builder.strandNos.add(number((String) row.get(4), strandNos, strands));
+            size++;
+        }
+        if ((classes.size() > Short.MAX_VALUE) || (strands.size() > Byte.MAX_VALUE)) {
+            throw new IllegalStateException("Too many feature classes or strands to index");
+        }
+        for (Map.Entry<String, Map<String, LocationsBuilder>> orgEntry : builders.entrySet()) {
+            Map<String, ChromosomeLocations> chromosomes =
+                new HashMap<String, ChromosomeLocations>();
+            for (Map.Entry<String, LocationsBuilder> chrEntry : orgEntry.getValue().entrySet()) {
+                chromosomes.put(chrEntry.getKey(), chrEntry.getValue().build());
+            }
+            organisms.put(orgEntry.getKey(), chromosomes);
+        }
+    }
+
+    private static <T> int number(T value, Map<T, Integer> numbers, List<T> values) {
+        Integer no = numbers.get(value);
+        if (no == null) {
+            no = Integer.valueOf(values.size());
+            numbers.put(value, no);
+            values.add(value);
+        }
+        return no.intValue();
+    }
+
+    /**
+     * Finds the Locations of features that overlap each of a collection of regions, as
+     * GenomicRegionSearchUtil.createQueryList() does with a query for each region.
+     *
+     * @param organism the short name of the organism of the features
+     * @param regions the regions, on chromosomes named by their primaryIdentifier
+     * @param extension the number of bases by which to extend the regions at each end, or zero
+     * @param featureTypes the classes of feature to find
+     * @param strandSpecific true to find only features on the strand of each region
+     * @return a Map from each region to the Locations that overlap it, in order of start
+     */
+    public Map<GenomicRegion, List<Hit>> findOverlaps(String organism,
+            Collection<GenomicRegion> regions, int extension, Set<Class<?>> featureTypes,
+            boolean strandSpecific) {
+        boolean[] wantedClasses = new boolean[classes.size()];
+        for (int i = 0; i < wantedClasses.length; i++) {
+            wantedClasses[i] = featureTypes.contains(classes.get(i));
+        }
+        int plusStrand = strands.indexOf("1");
+        int minusStrand = strands.indexOf("-1");
+        Map<String, ChromosomeLocations> chromosomes = organisms.get(organism);
+        Map<GenomicRegion, List<Hit>> retval = new LinkedHashMap<GenomicRegion, List<Hit>>();
+        IntList found = new IntList();
+        for (GenomicRegion region : regions) {
+            List<Hit> hits = new ArrayList<Hit>();
+            retval.put(region, hits);
+            ChromosomeLocations locations = (chromosomes == null) ? null
+                : chromosomes.get(region.getChr());
+            if (locations == null) {
+                continue;
+            }
+            // extended as by GenomicRegionSearchUtil.extendGenomicRegion()
+            int start = region.getStart().intValue();
+            int end = region.getEnd().intValue();
+            if (extension > 0) {
+                start = Math.max(1, start - extension);
+                end = end + extension;
+            }
+            int wantedStrand = -1;
+            if (strandSpecific) {
+                wantedStrand = region.getMinusStrand() ? minusStrand : plusStrand;
+                if (wantedStrand == -1) {
+                    continue;
+                }
+            }
+            found.clear();
+            locations.index.findOverlaps(start, end, found);
+            for (int i = 0; i < found.size(); i++) {
+                int pos = found.get(i);
+                int item = locations.index.getItem(pos);
+                if (wantedClasses[locations.classNos[item]]
+                        && ((wantedStrand == -1) || (locations.strandNos[item] == wantedStrand))) {
+                    hits.add(new Hit(locations.featureIds[item],
+                                classes.get(locations.classNos[item]),
+                                locations.index.getStart(pos), locations.index.getEnd(pos),
+                                strands.get(locations.strandNos[item])));
+                }
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * A Location found by findOverlaps().
+     */
+    public static class Hit
+    {
+        private final int featureId;
+        private final Class<?> featureClass;
+        private final int start;
+        private final int end;
+        private final String strand;
+
+        /**
+         * Constructor.
+         *
+         * @param featureId the id of the located feature
+         * @param featureClass the class of the located feature
+         * @param start the start of the Location
+         * @param end the end of the Location
+         * @param strand the strand of the Location
+         */
+        Hit(int featureId, Class<?> featureClass, int start, int end, String strand) {
+            this.featureId = featureId;
+            this.featureClass = featureClass;
+            this.start = start;
+            this.end = end;
+            this.strand = strand;
+        }
+
+        /**
+         * @return the id of the located feature
+         */
+        public Integer getFeatureId() {
+            return Integer.valueOf(featureId);
+        }
+
+        /**
+         * @return the class of the located feature
+         */
+        public Class<?> getFeatureClass() {
+            return featureClass;
+        }
+
+        /**
+         * @return the start of the Location
+         */
+        public Integer getStart() {
+            return Integer.valueOf(start);
+        }
+
+        /**
+         * @return the end of the Location
+         */
+        public Integer getEnd() {
+            return Integer.valueOf(end);
+        }
+
+        /**
+         * @return the strand of the Location, which may be null
+         */
+        public String getStrand() {
+            return strand;
+        }
+    }
+
+    /**
+     * The Locations on one chromosome, other than their start and end, which are in the index.
+     */
+    private static class ChromosomeLocations
+    {
+        IntervalIndex index;
+        int[] featureIds;
+        short[] classNos;
+        byte[] strandNos;
+    }
+
+    /**
+     * Collects the Locations on one chromosome as they are read.
+     */
+    private static class LocationsBuilder
+    {
+        IntList starts = new IntList();
+        IntList ends = new IntList();
+        IntList featureIds = new IntList();
+        IntList classNos = new IntList();
+        IntList strandNos = new IntList();
+
+        /**
+         * Creates the index of the Locations collected.
+         *
+         * @return a ChromosomeLocations
+         */
+        ChromosomeLocations build() {
+            ChromosomeLocations retval = new ChromosomeLocations();
+            retval.index = new IntervalIndex(starts.toArray(), ends.toArray(), starts.size());
+            retval.featureIds = featureIds.toArray();
+            retval.classNos = new short[classNos.size()];
+            retval.strandNos = new byte[strandNos.size()];
+            for (int i = 0; i < retval.classNos.length; i++) {
+                retval.classNos[i] = (short) classNos.get(i);
+                retval.strandNos[i] = (byte) strandNos.get(i);
+            }
+            return retval;
+        }
+    }
+}
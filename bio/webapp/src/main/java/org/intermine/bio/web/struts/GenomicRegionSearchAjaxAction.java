@@ -39,6 +39,7 @@ import org.intermine.api.query.WebResultsExecutor;
 import org.intermine.api.results.WebResults;
 import org.intermine.api.util.NameUtil;
 import org.intermine.bio.web.export.GenomicRegionSequenceExporter;
+import org.intermine.bio.web.logic.GenomicRegionSearchExecutor;
 import org.intermine.bio.web.logic.GenomicRegionSearchService;
 import org.intermine.bio.web.logic.GenomicRegionSearchUtil;
 import org.intermine.bio.web.model.GenomicRegion;
@@ -108,6 +109,11 @@ public class GenomicRegionSearchAjaxAction extends Action
             getProgress(response);
         }
 
+        // An ajax call to stop the searches of this session
+        if (request.getParameter("cancelSearch") != null) {
+            GenomicRegionSearchExecutor.cancel(session);
+        }
+
         // An ajax call to request result data
         if (request.getParameter("getData") != null
                 && request.getParameter("fromIdx") != null
@@ -11,6 +11,7 @@ package org.intermine.bio.webservice;
  */
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -23,6 +24,7 @@ import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
 import org.intermine.bio.web.logic.GenomicRegionSearchQueryRunner;
 import org.intermine.bio.web.logic.GenomicRegionSearchUtil;
+import org.intermine.bio.web.logic.LocationIndex;
 import org.intermine.bio.web.model.GenomicRegion;
 import org.intermine.bio.webservice.GenomicRegionSearchListInput.GenomicRegionSearchInfo;
 import org.intermine.objectstore.ObjectStoreException;
@@ -100,6 +102,23 @@ public class GenomicRegionSearchService extends ListMakerService
         UnknownBagTypeException {
         final InterMineBag tempBag = profile.createBag(
                 input.getTemporaryListName(), type, input.getDescription(), im.getClassKeys());
+        if ("true".equals(webProperties.getProperty("genomicRegionSearch.useLocationIndex"))) {
+            GenomicRegionSearchInfo info = input.getSearchInfo();
+            Map<GenomicRegion, List<LocationIndex.Hit>> hitMap = LocationIndex
+                .getInstance(im.getObjectStore()).findOverlaps(info.getOrganism(),
+                        info.getGenomicRegions(), info.getExtension(), info.getFeatureClasses(),
+                        info.getStrandSpecific());
+            Set<Integer> ids = new HashSet<Integer>();
+            for (List<LocationIndex.Hit> hits : hitMap.values()) {
+                for (LocationIndex.Hit hit : hits) {
+                    ids.add(hit.getFeatureId());
+                }
+            }
+            if (!ids.isEmpty()) {
+                tempBag.addIdsToBag(ids, type);
+            }
+            return tempBag;
+        }
         Map<GenomicRegion, Query> queries = createQueries(input.getSearchInfo());
         for (Entry<GenomicRegion, Query> e : queries.entrySet()) {
             Query q = e.getValue();
@@ -118,6 +118,9 @@
           <td>
             <span id="progressbar_status"></span>
           </td>
+          <td>
+            <a id="cancel_search" href="javascript: cancelSearch();" title="Stop searching the remaining regions">Cancel</a>
+          </td>
         </tr>
       </tbody>
     </table>
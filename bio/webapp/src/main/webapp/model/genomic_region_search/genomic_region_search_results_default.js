@@ -1,5 +1,7 @@
 
     var is_all_queries_finished = false;
+    var is_search_cancelled = false;
+    var progressUpdater = null;
     var finishedQueryCount = 0;
     var current_page_size = 10;
     var current_page_no = 1;
@@ -9,7 +11,7 @@
        init();
 
        // polling
-       jQuery.PeriodicalUpdater("genomicRegionSearchAjax.do", {
+       progressUpdater = jQuery.PeriodicalUpdater("genomicRegionSearchAjax.do", {
            method: 'post',         // method; get or post
            data: {spanUUIDString: span_uuid_string, getProgress: "true"}, // array of values to be passed to the page - e.g. {name: "John", greeting: "hello"}
            minTimeout: 500,          // starting value for the timeout in milliseconds
@@ -19,6 +21,9 @@
            maxCalls: 0,            // maximum number of calls. 0 = no limit.
            autoStop: 50            // automatically stop requests after this many returns of the same data. 0 = disabled.
         }, function(data) {
+           if (is_search_cancelled) {
+               return;
+           }
            finishedQueryCount = parseInt(data);
            if (finishedQueryCount < span_query_total_count) {
                var percentage = Math.floor(100 * finishedQueryCount / span_query_total_count);
@@ -152,6 +157,17 @@
         if (to_index > span_query_total_count)
             { to_index = span_query_total_count - 1;}
 
+        if (is_search_cancelled) {
+            // only the regions searched before the search was cancelled have results
+            to_index = Math.min(to_index, finishedQueryCount - 1);
+            if (from_index > to_index) {
+                jQuery("#genomic-region-results-table > tbody").html('These regions were not searched, as the search was cancelled.');
+            } else {
+                paginationGetResult(from_index, to_index);
+            }
+            return;
+        }
+
         if (is_all_queries_finished == true || (finishedQueryCount - 1) > to_index) {
             paginationGetResult(from_index, to_index);
         }
@@ -170,6 +186,16 @@
         }
     }
 
+    function cancelSearch() {
+        jQuery.post("genomicRegionSearchAjax.do", { spanUUIDString: span_uuid_string, cancelSearch: "true" }, function(){
+            is_search_cancelled = true;
+            progressUpdater.stop();
+            jQuery("#cancel_search").hide();
+            jQuery("#progressbar_status").html("Search cancelled: " + finishedQueryCount + "/" + span_query_total_count + " regions searched");
+            loadResultData(current_page_size, current_page_no);
+        });
+    }
+
     function paginationGetResult(from_index, to_index) {
 
         jQuery.post("genomicRegionSearchAjax.do", { spanUUIDString: span_uuid_string, getData: "true", fromIdx: from_index, toIdx: to_index }, function(results){
@@ -0,0 +1,122 @@
+package org.intermine.bio.web.logic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.bio.web.model.GenomicRegion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GenomicRegionSearchResultsTest {
+
+    private GenomicRegionSearchResults results;
+
+    @Before
+    public void setUp() throws Exception {
+        results = new GenomicRegionSearchResults();
+    }
+
+    @After
+    public void tearDown() {
+        results.delete();
+    }
+
+    private static GenomicRegion region(String chr, int start, int end) {
+        GenomicRegion gr = new GenomicRegion();
+        gr.setChr(chr);
+        gr.setStart(start);
+        gr.setEnd(end);
+        return gr;
+    }
+
+    private static List<String> row(String id, String type) {
+        return Arrays.asList(id, "PID" + id, "", type, "2L", "1", "100", "1");
+    }
+
+    @Test
+    public void testAddAndRead() throws Exception {
+        GenomicRegion r1 = region("2L", 1, 1000);
+        GenomicRegion r2 = region("2L", 5000, 6000);
+        GenomicRegion r3 = region("X", 1, 10);
+        List<List<String>> rows1 = new ArrayList<List<String>>();
+        rows1.add(row("1", "Gene"));
+        rows1.add(row("2", "Exon"));
+        rows1.add(row("3", "Exon"));
+        results.add(r1, rows1);
+        results.add(r2, null);
+        assertEquals(2, results.size());
+        assertFalse(results.isFinished());
+
+        assertEquals(rows1, results.get(r1));
+        assertNull(results.get(r2));
+        assertTrue(results.containsKey(r2));
+        assertFalse(results.containsKey(r3));
+        assertNull(results.get(r3));
+
+        results.add(r3, Arrays.asList(row("4", "Gene")));
+        results.finish();
+        assertTrue(results.isFinished());
+
+        Iterator<Map.Entry<GenomicRegion, List<List<String>>>> iter =
+            results.entrySet().iterator();
+        assertEquals(r1, iter.next().getKey());
+        Map.Entry<GenomicRegion, List<List<String>>> entry = iter.next();
+        assertEquals(r2, entry.getKey());
+        assertNull(entry.getValue());
+        assertEquals(Arrays.asList(row("4", "Gene")), iter.next().getValue());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        GenomicRegion r1 = region("2L", 1, 1000);
+        GenomicRegion r2 = region("2L", 5000, 6000);
+        List<List<String>> rows1 = new ArrayList<List<String>>();
+        rows1.add(row("1", "Gene"));
+        rows1.add(row("2", "Exon"));
+        rows1.add(row("3", "Exon"));
+        results.add(r1, rows1);
+        results.add(r2, null);
+
+        Map<GenomicRegion, Map<String, Integer>> stats = results.getStatistics();
+        Map<String, Integer> stat = stats.get(r1);
+        // the most common type comes first
+        assertEquals(Arrays.asList("Exon", "Gene"), new ArrayList<String>(stat.keySet()));
+        assertEquals(Arrays.asList(2, 1), new ArrayList<Integer>(stat.values()));
+        assertNull(stats.get(r2));
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    public void testAddAfterFinish() throws Exception {
+        GenomicRegion r1 = region("2L", 1, 1000);
+        GenomicRegion r2 = region("2L", 5000, 6000);
+        results.add(r1, Arrays.asList(row("1", "Gene")));
+        results.finish();
+        // a cancelled search may still be adding the region it was searching
+        results.add(r2, Arrays.asList(row("2", "Gene")));
+        assertEquals(1, results.size());
+        assertFalse(results.containsKey(r2));
+        // the rows are still read after the file is closed for writing
+        assertEquals(Arrays.asList(row("1", "Gene")), results.get(r1));
+        assertEquals(Arrays.asList(row("1", "Gene")), results.get(r1));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        GenomicRegion r1 = region("2L", 1, 1000);
+        results.add(r1, Arrays.asList(row("1", "Gene")));
+        results.delete();
+        assertTrue(results.isFinished());
+        assertNull(results.get(r1));
+    }
+}
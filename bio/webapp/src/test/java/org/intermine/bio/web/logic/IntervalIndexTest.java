@@ -0,0 +1,85 @@
+package org.intermine.bio.web.logic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.intermine.util.IntList;
+import org.junit.Test;
+
+public class IntervalIndexTest {
+
+    @Test
+    public void testEmpty() {
+        IntList results = new IntList();
+        new IntervalIndex(new int[0], new int[0], 0).findOverlaps(1, 100, results);
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void testSimple() {
+        int[] starts = {50, 10, 200, 1, 90};
+        int[] ends = {60, 20, 300, 1000, 100};
+        IntervalIndex index = new IntervalIndex(starts, ends, 4);
+        assertEquals(4, index.size());
+        assertEquals(list(3, 1), overlaps(index, 15, 15));
+        // touching counts as overlapping
+        assertEquals(list(3, 1, 0), overlaps(index, 20, 50));
+        assertEquals(list(3), overlaps(index, 61, 199));
+        assertEquals(list(), overlaps(index, 1001, 2000));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        for (int size : new int[] {1, 2, 7, 8, 9, 100, 1000, 4097}) {
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            for (int i = 0; i < size; i++) {
+                starts[i] = random.nextInt(100000);
+                // mostly short features, with some very long ones
+                ends[i] = starts[i] + (random.nextInt(20) == 0 ? random.nextInt(50000)
+                        : random.nextInt(500));
+            }
+            IntervalIndex index = new IntervalIndex(starts, ends, size);
+            for (int q = 0; q < 200; q++) {
+                int start = random.nextInt(110000);
+                int end = start + random.nextInt(2000);
+                List<Integer> expected = new ArrayList<Integer>();
+                for (int i = 0; i < size; i++) {
+                    if ((starts[i] <= end) && (ends[i] >= start)) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> found = overlaps(index, start, end);
+                found.sort(null);
+                assertEquals("size " + size + " query " + start + ".." + end, expected, found);
+            }
+        }
+    }
+
+    private static List<Integer> overlaps(IntervalIndex index, int start, int end) {
+        IntList results = new IntList();
+        index.findOverlaps(start, end, results);
+        List<Integer> retval = new ArrayList<Integer>();
+        for (int i = 0; i < results.size(); i++) {
+            int pos = results.get(i);
+            // results come back in order of start
+            if (i > 0) {
+                assertEquals(true, index.getStart(results.get(i - 1)) <= index.getStart(pos));
+            }
+            retval.add(index.getItem(pos));
+        }
+        return retval;
+    }
+
+    private static List<Integer> list(int... values) {
+        List<Integer> retval = new ArrayList<Integer>();
+        for (int value : values) {
+            retval.add(value);
+        }
+        return retval;
+    }
+}
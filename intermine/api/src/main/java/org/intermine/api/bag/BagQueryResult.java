@@ -82,6 +82,8 @@ public class BagQueryResult
 
     private final Set<String> unresolved = new LinkedHashSet<String>();
 
+    private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
     /**
      * Get any results that require some user input before adding to the bag.
      * [issue type -&gt; [query -&gt; [input string -&gt; List of InterMineObjects]]] or for issue
@@ -336,4 +338,27 @@ public class BagQueryResult
     public void addUnresolved(Collection<String> unresolvedIdentifiers) {
         unresolved.addAll(unresolvedIdentifiers);
     }
+
+    /**
+     * Record the time spent in a stage of the search that produced this result. Times recorded
+     * for the same stage more than once are added together.
+     *
+     * @param stage a description of the stage, eg. the bag query that was run
+     * @param millis the time taken, in milliseconds
+     */
+    public synchronized void addTiming(String stage, long millis) {
+        Long soFar = timings.get(stage);
+        timings.put(stage, Long.valueOf(millis + (soFar == null ? 0L : soFar.longValue())));
+    }
+
+    /**
+     * Get the time spent in each stage of the search that produced this result, in the order the
+     * stages were first run.
+     *
+     * Changes to the returned map will not affect the information in this bag query result.
+     * @return a Map from stage description to milliseconds
+     */
+    public synchronized Map<String, Long> getTimings() {
+        return new LinkedHashMap<String, Long>(timings);
+    }
 }
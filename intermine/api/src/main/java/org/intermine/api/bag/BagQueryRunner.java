@@ -18,7 +18,12 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.lang.StringUtils;
 import org.intermine.InterMineException;
@@ -35,6 +40,7 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsBatches;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.util.CollectionUtil;
+import org.intermine.util.IntToObjectMap;
 
 /**
  * For a given list of input strings search for objects using default and configured queries for a
@@ -44,6 +50,22 @@ import org.intermine.util.CollectionUtil;
  */
 public class BagQueryRunner
 {
+    /** The maximum number of identifiers looked up by one query. */
+    public static final int CHUNK_SIZE = 5000;
+    private static final int MAX_QUERY_THREADS = 4;
+
+    // Shared by all runners, so that large uploads cannot open more than a few database
+    // connections between them
+    private static final ExecutorService QUERY_EXECUTOR = Executors.newFixedThreadPool(
+            MAX_QUERY_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "BagQueryRunner");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
     private ObjectStore os;
     private Model model;
     private Map<String, List<FieldDescriptor>> classKeys;
@@ -133,9 +155,8 @@ public class BagQueryRunner
         throws ClassNotFoundException, InterMineException {
 
         Map<String, String> lowerCaseInput = new HashMap<String, String>();
-        List<String> cleanInput = new ArrayList<String>();
+        Set<String> cleanInput = new LinkedHashSet<String>();
         List<String> wildcardInput = new ArrayList<String>();
-        Map<String, Pattern> patterns = new HashMap<String, Pattern>();
 
         for (String inputString : input) {
             if (StringUtils.isNotEmpty(inputString)) {
@@ -148,13 +169,11 @@ public class BagQueryRunner
                 // wildcard + a string
                 } else {
                     wildcardInput.add(inputString);
-                    String patternString = inputString.toLowerCase().replaceAll("\\*", "\\.\\*");
-                    patternString = patternString.replaceAll("\\(", "\\.\\*");
-                    patternString = patternString.replaceAll("\\)", "\\.\\*");
-                    patterns.put(inputString, Pattern.compile(patternString));
                 }
             }
         }
+        InputMatcher matcher = new InputMatcher(cleanInput, lowerCaseInput, caseSensitive);
+        WildcardMatcher wildcardMatcher = new WildcardMatcher(wildcardInput);
 
         // TODO tidy up using type String and Class
 
@@ -180,44 +199,40 @@ public class BagQueryRunner
             matchOnFirst = bagQueryConfig.getMatchOnFirst();
         }
 
-        for (BagQuery bq : queries) {
+        // If every query is run on all the identifiers, the queries do not depend on each other's
+        // results, so start them all now and let them run at the same time.
+        List<PendingFetch> prefetched = new ArrayList<PendingFetch>();
+        if (!matchOnFirst && !unresolvedOriginal.isEmpty()) {
+            for (BagQuery bq : queries) {
+                prefetched.add(startFetch(bq, unresolvedOriginal, extraFieldValue, matcher,
+                        true));
+            }
+        }
+
+        for (int queryNo = 0; queryNo < queries.size(); queryNo++) {
+            BagQuery bq = queries.get(queryNo);
             // run the next query on identifiers not yet resolved
             // OR all identifiers if matchOnFirst = FALSE
             if (!unresolved.isEmpty() || !matchOnFirst) {
+                PendingFetch fetch;
+                if (matchOnFirst) {
+                    fetch = startFetch(bq, unresolved, extraFieldValue, matcher, false);
+                } else if (prefetched.isEmpty()) {
+                    fetch = null;
+                } else {
+                    fetch = prefetched.get(queryNo);
+                }
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
-                try {
-                    Set<String> toProcess = (matchOnFirst) ? unresolved : unresolvedOriginal;
-                    Query q = bq.getQuery(toProcess, extraFieldValue);
-                    Results res = os.execute(q, 10000, true, true, false);
-                    for (Object rowObj : res) {
-                        ResultsRow<?> row = (ResultsRow<?>) rowObj;
-                        Integer id = (Integer) row.get(0);
-                        for (int i = 1; i < row.size(); i++) {
-                            final Object fieldObject = row.get(i);
-                            if (fieldObject != null) {
-                                String field = String.valueOf(fieldObject);
-                                String lowerField = field.toLowerCase();
-                                if (caseSensitive) {
-                                    if (cleanInput.contains(field)) {
-                                        processMatch(resMap, unresolved, id, field);
-                                    }
-                                } else if (lowerCaseInput.containsKey(lowerField)) {
-                                    // because we are converting to lower case we need to match
-                                    // to original input so that 'h' matches 'H' and 'h' becomes
-                                    // a duplicate.
-                                    String originalInput = lowerCaseInput.get(lowerField);
-                                    processMatch(resMap, unresolved, id, originalInput);
-                                }
-                            }
-                        }
-                    }
-                } catch (IllegalArgumentException e) {
-                    // Query couldn't handle extra value
+                if (fetch != null) {
+                    resMap = fetch.getResults();
+                    unresolved.removeAll(resMap.keySet());
+                    bqr.addTiming(bq.getMessage(), fetch.getElapsed());
                 }
                 addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
                             matchOnFirst, bq.matchesAreIssues());
             }
             if (!wildcardInput.isEmpty()) {
+                long start = System.currentTimeMillis();
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
 
                 Query q = bq.getQueryForWildcards(wildcardInput, extraFieldValue);
@@ -227,20 +242,20 @@ public class BagQueryRunner
                     ResultsRow<?> row = (ResultsRow<?>) rowObj;
                     Integer id = (Integer) row.get(0);
                     for (int i = 1; i < row.size(); i++) {
-                        String field = "" + row.get(i);
-                        String lowerField = field.toLowerCase();
-                        for (String wildcard : wildcardInput) {
-                            Pattern pattern = patterns.get(wildcard);
-                            if (pattern.matcher(lowerField).matches()) {
-                                processMatch(resMap, wildcardUnresolved, id, wildcard);
-                            }
+                        for (String wildcard : wildcardMatcher.getMatches("" + row.get(i))) {
+                            processMatch(resMap, id, wildcard);
                         }
                     }
                 }
+                wildcardUnresolved.removeAll(resMap.keySet());
+                bqr.addTiming("wildcards: " + bq.getMessage(),
+                        System.currentTimeMillis() - start);
                 for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
                     // This is a dummy issue just to give a message when running queries
                     bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
                             entry.getKey(), new ArrayList<Object>(entry.getValue()));
+                }
+                if (!resMap.isEmpty()) {
                     if (matchOnFirst) {
                         addResults(resMap, wildcardUnresolved, bqr, bq.getMessage(),
                                 typeCls, true, matchOnFirst, bq.matchesAreIssues());
@@ -248,9 +263,7 @@ public class BagQueryRunner
                         addResults(resMap, wildcardUnresolvedOriginal, bqr, bq.getMessage(),
                                 typeCls, true, matchOnFirst, bq.matchesAreIssues());
                     }
-
                 }
-
             }
         }
 
@@ -260,15 +273,167 @@ public class BagQueryRunner
         return bqr;
     }
 
-    private static void processMatch(Map<String, Set<Integer>> resMap, Set<String> unresolved,
-        Integer id, String field) {
+    private static void processMatch(Map<String, Set<Integer>> resMap, Integer id, String field) {
         Set<Integer> ids = resMap.get(field);
         if (ids == null) {
             ids = new LinkedHashSet<Integer>();
             resMap.put(field, ids);
         }
         ids.add(id);
-        unresolved.remove(field);
+    }
+
+    /**
+     * Start running a bag query on some identifiers. The identifiers are split into chunks of
+     * CHUNK_SIZE, which are run at the same time on the query executor. If there is only one
+     * chunk and runAhead is false, it is run in this thread when the results are asked for.
+     * Chunks not yet started by the executor when the results are asked for are also run in
+     * this thread.
+     */
+    private PendingFetch startFetch(final BagQuery bq, Collection<String> identifiers,
+            final String extraFieldValue, final InputMatcher matcher, boolean runAhead) {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        List<String> chunk = new ArrayList<String>();
+        for (String identifier : identifiers) {
+            if (chunk.size() >= CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<String>();
+            }
+            chunk.add(identifier);
+        }
+        chunks.add(chunk);
+        List<FutureTask<Map<String, Set<Integer>>>> tasks
+            = new ArrayList<FutureTask<Map<String, Set<Integer>>>>();
+        for (final List<String> toProcess : chunks) {
+            FutureTask<Map<String, Set<Integer>>> task
+                = new FutureTask<Map<String, Set<Integer>>>(
+                        new Callable<Map<String, Set<Integer>>>() {
+                            @Override
+                            public Map<String, Set<Integer>> call() throws Exception {
+                                return fetchMatches(bq, toProcess, extraFieldValue, matcher);
+                            }
+                        });
+            if (runAhead || (chunks.size() > 1)) {
+                QUERY_EXECUTOR.execute(task);
+            }
+            tasks.add(task);
+        }
+        return new PendingFetch(tasks);
+    }
+
+    /**
+     * Run a bag query on some identifiers and find which of the input identifiers each of the
+     * resulting objects matches.
+     */
+    private Map<String, Set<Integer>> fetchMatches(BagQuery bq, Collection<String> toProcess,
+            String extraFieldValue, InputMatcher matcher) throws ClassNotFoundException {
+        Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
+        try {
+            Query q = bq.getQuery(toProcess, extraFieldValue);
+            Results res = os.execute(q, 10000, true, true, false);
+            for (Object rowObj : res) {
+                ResultsRow<?> row = (ResultsRow<?>) rowObj;
+                Integer id = (Integer) row.get(0);
+                for (int i = 1; i < row.size(); i++) {
+                    final Object fieldObject = row.get(i);
+                    if (fieldObject != null) {
+                        String originalInput = matcher.getInput(String.valueOf(fieldObject));
+                        if (originalInput != null) {
+                            processMatch(resMap, id, originalInput);
+                        }
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Query couldn't handle extra value
+        }
+        return resMap;
+    }
+
+    /**
+     * Finds the input identifier that a value returned by a bag query matches.
+     */
+    private static class InputMatcher
+    {
+        private final Set<String> cleanInput;
+        private final Map<String, String> lowerCaseInput;
+        private final boolean caseSensitive;
+
+        InputMatcher(Set<String> cleanInput, Map<String, String> lowerCaseInput,
+                boolean caseSensitive) {
+            this.cleanInput = cleanInput;
+            this.lowerCaseInput = lowerCaseInput;
+            this.caseSensitive = caseSensitive;
+        }
+
+        String getInput(String field) {
+            if (caseSensitive) {
+                return cleanInput.contains(field) ? field : null;
+            }
+            // because we are converting to lower case we need to match to original input so
+            // that 'h' matches 'H' and 'h' becomes a duplicate.
+            return lowerCaseInput.get(field.toLowerCase());
+        }
+    }
+
+    /**
+     * The chunks of a bag query that have been started by startFetch.
+     */
+    private static class PendingFetch
+    {
+        private final List<FutureTask<Map<String, Set<Integer>>>> tasks;
+        private final long start = System.currentTimeMillis();
+        private long elapsed = 0;
+
+        PendingFetch(List<FutureTask<Map<String, Set<Integer>>>> tasks) {
+            this.tasks = tasks;
+        }
+
+        /**
+         * Waits for all the chunks to finish, and merges their results in chunk order.
+         */
+        Map<String, Set<Integer>> getResults() throws ClassNotFoundException, InterMineException {
+            Map<String, Set<Integer>> retval = null;
+            for (FutureTask<Map<String, Set<Integer>>> task : tasks) {
+                // Does nothing if the task has already been run by the executor
+                task.run();
+                Map<String, Set<Integer>> chunkResults;
+                try {
+                    chunkResults = task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterMineException("Interrupted while running bag query", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else if (cause instanceof ClassNotFoundException) {
+                        throw (ClassNotFoundException) cause;
+                    }
+                    throw new InterMineException("Error running bag query", cause);
+                }
+                if (retval == null) {
+                    retval = chunkResults;
+                } else {
+                    // An object can match identifiers from more than one chunk
+                    for (Map.Entry<String, Set<Integer>> entry : chunkResults.entrySet()) {
+                        Set<Integer> ids = retval.get(entry.getKey());
+                        if (ids == null) {
+                            retval.put(entry.getKey(), entry.getValue());
+                        } else {
+                            ids.addAll(entry.getValue());
+                        }
+                    }
+                }
+            }
+            elapsed = System.currentTimeMillis() - start;
+            return retval;
+        }
+
+        long getElapsed() {
+            return elapsed;
+        }
     }
 
     /**
@@ -282,21 +447,25 @@ public class BagQueryRunner
         Map<String, Set<Object>> objsOfWrongType = new HashMap<String, Set<Object>>();
 
         // Gather together all the id lookups and perform them in one.
-        Map<Integer, InterMineObject> fetchedObjects = new HashMap<Integer, InterMineObject>();
+        IntToObjectMap<InterMineObject> fetchedObjects = new IntToObjectMap<InterMineObject>();
         Set<Integer> idsToFetch = new HashSet<Integer>();
+        long start = System.currentTimeMillis();
         try {
             for (Map.Entry<String, Set<Integer>> resEntry : resMap.entrySet()) {
                 if (matchesAreIssues || (resEntry.getValue().size() > 1)) {
                     idsToFetch.addAll(resEntry.getValue());
                 }
             }
-            List<InterMineObject> idsFetched = os.getObjectsByIds(idsToFetch);
-            for (InterMineObject fetchedObject : idsFetched) {
-                fetchedObjects.put(fetchedObject.getId(), fetchedObject);
+            if (!idsToFetch.isEmpty()) {
+                List<InterMineObject> idsFetched = os.getObjectsByIds(idsToFetch);
+                for (InterMineObject fetchedObject : idsFetched) {
+                    fetchedObjects.put(fetchedObject.getId().intValue(), fetchedObject);
+                }
             }
         } catch (ObjectStoreException e) {
             throw new InterMineException("can't fetch: " + idsToFetch, e);
         }
+        bqr.addTiming("fetching objects", System.currentTimeMillis() - start);
 
         for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
             String input = entry.getKey();
@@ -359,7 +528,9 @@ public class BagQueryRunner
         }
 
         // now objsOfWrongType contains all wrong types found for this query, try converting
+        start = System.currentTimeMillis();
         convertObjects(bqr, msg, type, objsOfWrongType);
+        bqr.addTiming("converting types", System.currentTimeMillis() - start);
 
         bqr.getUnresolved().putAll(objsOfWrongType);
     }
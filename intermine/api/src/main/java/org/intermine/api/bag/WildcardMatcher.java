@@ -0,0 +1,177 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matches values against a set of wildcard identifiers entered by a user, in which '*', '(' and
+ * ')' each stand for any number of characters. Matching is case-insensitive.
+ * <p>
+ * Checking every value returned by a wildcard bag query against every wildcard with a regular
+ * expression is slow for long lists. Wildcards made only of literal text and '*' are instead
+ * indexed by the text before their first '*' (or, if they start with '*', the text after their
+ * last '*'), so that a value is only compared with the wildcards whose prefix or suffix it
+ * actually has. Wildcards starting and ending with '*' are compared with every value, but by
+ * searching for the literal parts rather than with a regular expression. Wildcards containing
+ * other regular expression characters are matched with a regular expression, as before.
+ *
+ * @author agent
+ */
+class WildcardMatcher
+{
+    private static final String REGEX_CHARS = ".\\[]{}^$|?+";
+
+    private final Map<String, List<Glob>> byPrefix = new HashMap<String, List<Glob>>();
+    private final Map<String, List<Glob>> bySuffix = new HashMap<String, List<Glob>>();
+    private final List<Glob> unanchored = new ArrayList<Glob>();
+    private final Map<String, Pattern> regexes = new HashMap<String, Pattern>();
+    private int maxPrefixLength = 0;
+    private int maxSuffixLength = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param wildcards the wildcard identifiers, as entered by the user
+     */
+    WildcardMatcher(Collection<String> wildcards) {
+        for (String wildcard : new LinkedHashSet<String>(wildcards)) {
+            String lower = wildcard.toLowerCase().replace('(', '*').replace(')', '*');
+            if (hasRegexChars(lower)) {
+                regexes.put(wildcard, Pattern.compile(lower.replaceAll("\\*", "\\.\\*")));
+                continue;
+            }
+            Glob glob = new Glob(wildcard, lower.split("\\*", -1));
+            if (glob.parts.length == 1) {
+                // Cannot happen for real wildcards, but would be a whole-value match
+                add(byPrefix, lower, glob);
+                maxPrefixLength = Math.max(maxPrefixLength, lower.length());
+            } else if (glob.getPrefix().length() > 0) {
+                add(byPrefix, glob.getPrefix(), glob);
+                maxPrefixLength = Math.max(maxPrefixLength, glob.getPrefix().length());
+            } else if (glob.getSuffix().length() > 0) {
+                add(bySuffix, glob.getSuffix(), glob);
+                maxSuffixLength = Math.max(maxSuffixLength, glob.getSuffix().length());
+            } else {
+                unanchored.add(glob);
+            }
+        }
+    }
+
+    /**
+     * Returns the wildcards that match a value.
+     *
+     * @param value a value returned by a bag query
+     * @return a Set of the wildcards, as entered by the user, that match the value
+     */
+    Set<String> getMatches(String value) {
+        String lower = value.toLowerCase();
+        Set<String> retval = new LinkedHashSet<String>();
+        if (!byPrefix.isEmpty()) {
+            int max = Math.min(maxPrefixLength, lower.length());
+            for (int i = 1; i <= max; i++) {
+                addMatches(byPrefix.get(lower.substring(0, i)), lower, retval);
+            }
+        }
+        if (!bySuffix.isEmpty()) {
+            int max = Math.min(maxSuffixLength, lower.length());
+            for (int i = 1; i <= max; i++) {
+                addMatches(bySuffix.get(lower.substring(lower.length() - i)), lower, retval);
+            }
+        }
+        addMatches(unanchored, lower, retval);
+        for (Map.Entry<String, Pattern> entry : regexes.entrySet()) {
+            if (entry.getValue().matcher(lower).matches()) {
+                retval.add(entry.getKey());
+            }
+        }
+        return retval;
+    }
+
+    private static void addMatches(List<Glob> globs, String lower, Set<String> retval) {
+        if (globs != null) {
+            for (Glob glob : globs) {
+                if (glob.matches(lower)) {
+                    retval.add(glob.wildcard);
+                }
+            }
+        }
+    }
+
+    private static void add(Map<String, List<Glob>> map, String key, Glob glob) {
+        List<Glob> globs = map.get(key);
+        if (globs == null) {
+            globs = new ArrayList<Glob>();
+            map.put(key, globs);
+        }
+        globs.add(glob);
+    }
+
+    private static boolean hasRegexChars(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (REGEX_CHARS.indexOf(s.charAt(i)) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A wildcard made of literal parts separated by '*'.
+     */
+    private static class Glob
+    {
+        private final String wildcard;
+        private final String[] parts;
+
+        Glob(String wildcard, String[] parts) {
+            this.wildcard = wildcard;
+            this.parts = parts;
+        }
+
+        String getPrefix() {
+            return parts[0];
+        }
+
+        String getSuffix() {
+            return parts[parts.length - 1];
+        }
+
+        boolean matches(String lower) {
+            if (parts.length == 1) {
+                return lower.equals(parts[0]);
+            }
+            String prefix = getPrefix();
+            String suffix = getSuffix();
+            if ((lower.length() < prefix.length() + suffix.length()) || !lower.startsWith(prefix)
+                    || !lower.endsWith(suffix)) {
+                return false;
+            }
+            int pos = prefix.length();
+            int end = lower.length() - suffix.length();
+            for (int i = 1; i < parts.length - 1; i++) {
+                int found = lower.indexOf(parts[i], pos);
+                if ((found == -1) || (found + parts[i].length() > end)) {
+                    return false;
+                }
+                pos = found + parts[i].length();
+            }
+            return true;
+        }
+    }
+}
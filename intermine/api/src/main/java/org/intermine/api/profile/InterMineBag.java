@@ -16,7 +16,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
@@ -38,6 +37,7 @@ import org.intermine.api.userprofile.SavedBag;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ObjectStoreBag;
@@ -50,6 +50,9 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.util.IntBitmap;
+import org.intermine.util.IntIterator;
+import org.intermine.util.IntSet;
 
 /**
  * An object that represents a bag of objects in our database for the webapp. It is backed by an
@@ -244,15 +247,44 @@ public class InterMineBag extends StorableBag implements Cloneable
      *
      * @return a List of Integers
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public List<Integer> getContentsAsIds() {
+        IntBitmap bitmap = getBitmap();
+        if (bitmap != null) {
+            List<Integer> ids = new ArrayList<Integer>(bitmap.size());
+            IntIterator iter = bitmap.iterator();
+            while (iter.hasNext()) {
+                ids.add(Integer.valueOf(iter.next()));
+            }
+            return ids;
+        }
         Query q = new Query();
         q.addToSelect(osb);
         q.setDistinct(false);
         SingletonResults res = os.executeSingleton(q, 1000, false, true, true);
-        Set resultSet = new HashSet(res);
-        // See #1686
-        return new ArrayList(resultSet);
+        // See #1686 - the bag may hold duplicates, which are removed here
+        IntSet seen = new IntSet();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Object id : res) {
+            if (seen.add(((Integer) id).intValue())) {
+                ids.add((Integer) id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the contents of the ObjectStoreBag as a bitmap held by the ObjectStore, or null if
+     * the ObjectStore does not keep bitmaps of bags, in which case the bag table must be queried.
+     */
+    private IntBitmap getBitmap() {
+        if (os instanceof ObjectStoreInterMineImpl) {
+            try {
+                return ((ObjectStoreInterMineImpl) os).getBagBitmap(osb);
+            } catch (ObjectStoreException e) {
+                LOG.warn("Could not read bitmap of list " + name + ", querying instead", e);
+            }
+        }
+        return null;
     }
 
     /**
@@ -273,12 +305,27 @@ public class InterMineBag extends StorableBag implements Cloneable
             q.addToSelect(idField);
             q.addFrom(qc);
 
-            BagConstraint constraint1 = new BagConstraint(idField, ConstraintOp.IN, ids);
-            BagConstraint constraint2 = new BagConstraint(idField, ConstraintOp.IN, osb);
-            ConstraintSet constraintSet = new ConstraintSet(ConstraintOp.AND);
-            constraintSet.addConstraint(constraint1);
-            constraintSet.addConstraint(constraint2);
-            q.setConstraint(constraintSet);
+            IntBitmap bitmap = getBitmap();
+            if (bitmap != null) {
+                // Check membership in memory, and only ask the database for the type
+                List<Integer> idsInBag = new ArrayList<Integer>();
+                for (Integer id : ids) {
+                    if (bitmap.contains(id.intValue())) {
+                        idsInBag.add(id);
+                    }
+                }
+                if (idsInBag.isEmpty()) {
+                    return idsInBag;
+                }
+                q.setConstraint(new BagConstraint(idField, ConstraintOp.IN, idsInBag));
+            } else {
+                BagConstraint constraint1 = new BagConstraint(idField, ConstraintOp.IN, ids);
+                BagConstraint constraint2 = new BagConstraint(idField, ConstraintOp.IN, osb);
+                ConstraintSet constraintSet = new ConstraintSet(ConstraintOp.AND);
+                constraintSet.addConstraint(constraint1);
+                constraintSet.addConstraint(constraint2);
+                q.setConstraint(constraintSet);
+            }
 
         } catch (ClassNotFoundException nfe) {
             LOG.error("Error retriving class for bag: " + name, nfe);
@@ -437,6 +484,10 @@ public class InterMineBag extends StorableBag implements Cloneable
 
     @Override
     public int getSize() throws ObjectStoreException {
+        IntBitmap bitmap = getBitmap();
+        if (bitmap != null) {
+            return bitmap.size();
+        }
         Query q = new Query();
         q.addToSelect(osb);
         q.setDistinct(false);
@@ -29,6 +29,7 @@ import org.intermine.api.results.ResultElement;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.ResultsCursor;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QuerySelectable;
 import org.intermine.objectstore.query.Results;
@@ -90,6 +91,22 @@ public class PathQueryExecutor extends QueryExecutor
      * @throws ObjectStoreException if something goes wrong with the database
      */
     public ExportResultsIterator execute(PathQuery pathQuery) throws ObjectStoreException {
+        return execute(pathQuery, false);
+    }
+
+    /**
+     * Executes object store query and returns results as iterator over rows.
+     * Every row is a list of result elements. In streaming mode the rows are read from the
+     * database a batch at a time and are not kept in the results cache, which is the right
+     * choice for exports that read each row of a large query once.
+     *
+     * @param pathQuery path query to be executed
+     * @param streaming true to stream the rows rather than cache them
+     * @return results
+     * @throws ObjectStoreException if something goes wrong with the database
+     */
+    public ExportResultsIterator execute(PathQuery pathQuery, boolean streaming)
+        throws ObjectStoreException {
         Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
         Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
 
@@ -101,7 +118,7 @@ public class PathQueryExecutor extends QueryExecutor
             queryToPathToQueryNode.put(q, pathToQueryNode);
         }
 
-        return new ExportResultsIterator(pathQuery, q, results, pathToQueryNode);
+        return new ExportResultsIterator(pathQuery, q, results, pathToQueryNode, streaming);
     }
 
 
@@ -148,6 +165,34 @@ public class PathQueryExecutor extends QueryExecutor
         return new ResultIterator(pathQuery, q, results, pathToQueryNode, start, limit);
     }
 
+    /**
+     * Executes object store query and returns results as iterator over rows, read from a
+     * single database cursor. This is the fastest way to export a large query, as the query is
+     * run only once rather than once per batch, and no rows are cached. The returned iterator
+     * must be closed if it may not be read to the end. If the ObjectStore cannot open cursors
+     * this is the same as execute(pathQuery, start, limit).
+     *
+     * @param pathQuery path query to be executed
+     * @param start index of first result which will be retrieved. Rows before it are read from
+     * the database and thrown away.
+     * @param limit maximum number of results
+     * @return results
+     * @throws ObjectStoreException if fail to execute query
+     */
+    public ExportResultsIterator executeCursor(PathQuery pathQuery, final int start,
+            final int limit) throws ObjectStoreException {
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            return execute(pathQuery, start, limit);
+        }
+        Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
+        Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
+
+        Query q = makeQuery(pathQuery, returnBagQueryResults, pathToQueryNode);
+        ResultsCursor cursor = ((ObjectStoreInterMineImpl) os).executeCursor(q, batchSize, true,
+                true);
+        return new ResultIterator(pathQuery, q, cursor, pathToQueryNode, start, limit);
+    }
+
     private Query makeQuery(PathQuery pathQuery, Map<String, BagQueryResult> pathToBagQueryResult,
             Map<String, QuerySelectable> pathToQueryNode) throws ObjectStoreException {
 
@@ -281,6 +326,24 @@ class ResultIterator extends ExportResultsIterator
         this.start = start;
     }
 
+    /**
+     * Constructor for a ResultIterator reading rows from a database cursor.
+     *
+     * @param pathQuery a PathQuery to run.
+     * @param q The object-store query this path-query corresponds to.
+     * @param cursor the cursor opened for the query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     * @param start the first row of results to be returned
+     * @param limit the number of result rows to return
+     */
+    public ResultIterator(PathQuery pathQuery, Query q, ResultsCursor cursor,
+            Map<String, QuerySelectable> pathToQueryNode, int start, int limit) {
+        super(pathQuery, q, cursor, pathToQueryNode);
+        this.limit = limit;
+        this.start = start;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -296,6 +359,8 @@ class ResultIterator extends ExportResultsIterator
         }
 
         if (counter >= (limit + start)) {
+            // no more rows are wanted, so release the cursor if there is one
+            close();
             return false;
         } else {
             return super.hasNext();
@@ -21,6 +21,7 @@ import org.apache.log4j.Logger;
 import org.intermine.model.FastPathObject;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.ResultsCursor;
 import org.intermine.objectstore.query.PathExpressionField;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryCollectionPathExpression;
@@ -41,7 +42,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
 {
     private static final Logger LOG = Logger.getLogger(ExportResultsIterator.class);
 
-    private Iterator<List> osIter;
+    private Iterator<?> osIter;
     protected Iterator<List<ResultElement>> subIter;
     // This object contains a description of the collections in the input.
     private List columns;
@@ -49,6 +50,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
     private final Query query;
     private int columnCount;
     protected final Results results;
+    private final ResultsCursor cursor;
     private boolean isGoingFaster = false;
     protected final PathQuery originatingQuery;
 
@@ -65,10 +67,54 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
      */
     public ExportResultsIterator(PathQuery pathQuery, Query q, Results results,
             Map<String, QuerySelectable> pathToQueryNode) throws ObjectStoreException {
+        this(pathQuery, q, results, pathToQueryNode, false);
+    }
+
+    /**
+     * Constructor for ExportResultsIterator. This creates a new instance from the given
+     * ObjectStore, PathQuery, and other necessary objects.
+     *
+     * @param pathQuery a PathQuery to run
+     * @param q original query
+     * @param results the results object created when executing the query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     * @param streaming true to read the results with a forward-only streaming iterator, which
+     * holds only one batch of rows in memory at a time
+     * @throws ObjectStoreException if something goes wrong executing the query
+     */
+    public ExportResultsIterator(PathQuery pathQuery, Query q, Results results,
+            Map<String, QuerySelectable> pathToQueryNode, boolean streaming)
+        throws ObjectStoreException {
         this.results = results;
+        this.cursor = null;
+        this.originatingQuery = pathQuery;
+        this.query = q;
+        if (streaming) {
+            init(pathQuery, pathToQueryNode, results.streamingIterator());
+        } else {
+            init(pathQuery, pathToQueryNode, results.iterator());
+        }
+    }
+
+    /**
+     * Constructor for an ExportResultsIterator that reads the rows from a database cursor, so
+     * that rows are neither cached nor fetched again with OFFSET for each batch. The cursor is
+     * closed when the last row has been read, or when close() is called.
+     *
+     * @param pathQuery a PathQuery to run
+     * @param q original query
+     * @param cursor the cursor opened for the query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     */
+    public ExportResultsIterator(PathQuery pathQuery, Query q, ResultsCursor cursor,
+            Map<String, QuerySelectable> pathToQueryNode) {
+        this.results = null;
+        this.cursor = cursor;
         this.originatingQuery = pathQuery;
         this.query = q;
-        init(pathQuery, pathToQueryNode);
+        init(pathQuery, pathToQueryNode, cursor);
     }
 
     /**
@@ -85,8 +131,9 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         return Collections.unmodifiableList(paths);
     }
 
-    private void init(PathQuery pq, Map<String, QuerySelectable> pathToQueryNode) {
-        osIter = ((List) results).iterator();
+    private void init(PathQuery pq, Map<String, QuerySelectable> pathToQueryNode,
+            Iterator<?> rows) {
+        osIter = rows;
 
         List<List<ResultElement>> empty = Collections.emptyList();
         subIter = empty.iterator();
@@ -110,7 +157,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
     @Override
     public boolean hasNext() {
         while ((!subIter.hasNext()) && osIter.hasNext()) {
-            subIter = decodeRow(osIter.next()).iterator();
+            subIter = decodeRow((List<?>) osIter.next()).iterator();
         }
         return subIter.hasNext();
     }
@@ -121,7 +168,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
     @Override
     public List<ResultElement> next() {
         while ((!subIter.hasNext()) && osIter.hasNext()) {
-            subIter = decodeRow(osIter.next()).iterator();
+            subIter = decodeRow((List<?>) osIter.next()).iterator();
         }
         return subIter.next();
     }
@@ -141,6 +188,10 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
      * @throws RuntimeException if something goes wrong
      */
     public void goFaster()  {
+        if (results == null) {
+            // A cursor runs the query only once, so there is nothing to gain
+            return;
+        }
         try {
             if ((!results.isSingleBatch()) && (!isGoingFaster)) {
                 ((ObjectStoreInterMineImpl) results.getObjectStore()).goFaster(results.getQuery());
@@ -167,6 +218,16 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         }
     }
 
+    /**
+     * Releases the database cursor, if the rows are being read from one. This must be called if
+     * the rows may not all be read. It does nothing for rows read from a Results object.
+     */
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
     /** Analyses the select list to predict what the structure of the results will be. It produces
      *  a list with a disjoint type of element.
      *
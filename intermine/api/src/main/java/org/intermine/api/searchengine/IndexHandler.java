@@ -40,4 +40,19 @@ public interface IndexHandler
     void createIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys)
             throws IOException, SolrServerException;
 
+    /**
+     * Bring the index up to date with the objects that have changed since it was built, as
+     * recorded by the IntegrationWriter. If the changes are not known, the whole index is built
+     * again.
+     *
+     * @param os Objectstore that is passed CreateSearchIndexTask
+     * @param classKeys
+     *                  classKeys from InterMineAPI, map of classname to all key field
+     *                  descriptors
+     * @throws IOException IOException is thrown from Objectstore
+     * @throws SolrServerException is thrown from solr
+     */
+    void updateIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys)
+            throws IOException, SolrServerException;
+
 }
@@ -72,6 +72,12 @@ public final class KeywordSearchPropertiesManager
 
     private boolean enableOptimize = false;
 
+    private int indexThreads = 4;
+
+    private int indexPartitionSize = 1000000;
+
+    private int indexBatchesInFlight = 4;
+
     private KeywordSearchPropertiesManager(ObjectStore objectStore) {
 
         parseProperties(objectStore);
@@ -234,6 +240,14 @@ public final class KeywordSearchPropertiesManager
                         indexBatchSize = Integer.parseInt(value);
                     } else if ("index.optimize".equals(key) && !StringUtils.isBlank(value)) {
                         enableOptimize = Boolean.parseBoolean(value);
+                    } else if ("index.threads".equals(key) && !StringUtils.isBlank(value)) {
+                        indexThreads = Math.max(1, Integer.parseInt(value));
+                    } else if ("index.partition.size".equals(key)
+                            && !StringUtils.isBlank(value)) {
+                        indexPartitionSize = Math.max(1, Integer.parseInt(value));
+                    } else if ("index.batches.inflight".equals(key)
+                            && !StringUtils.isBlank(value)) {
+                        indexBatchesInFlight = Math.max(1, Integer.parseInt(value));
                     }
 
                 }
@@ -415,6 +429,27 @@ public final class KeywordSearchPropertiesManager
         return enableOptimize;
     }
 
+    /**
+     * @return number of threads fetching objects and creating documents
+     */
+    public int getIndexThreads() {
+        return indexThreads;
+    }
+
+    /**
+     * @return size of the range of object ids indexed as one partition
+     */
+    public int getIndexPartitionSize() {
+        return indexPartitionSize;
+    }
+
+    /**
+     * @return maximum number of batches of documents being sent to solr at once
+     */
+    public int getIndexBatchesInFlight() {
+        return indexBatchesInFlight;
+    }
+
     /**
      * @return classkeys that is used for boosting
      */
@@ -0,0 +1,250 @@
+package org.intermine.api.searchengine.solr;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The division of the objects to be indexed into partitions of consecutive ids, and a record of
+ * which partitions have been indexed and committed to solr. The record is stored in the
+ * database as a String after each partition, so that a failed index build can be restarted from
+ * where it stopped rather than from the beginning.
+ *
+ * @author agent
+ */
+public class IndexProgress
+{
+    private final int minId;
+    private final int maxId;
+    private final int partitionSize;
+    private final Set<Integer> done = new TreeSet<Integer>();
+
+    /**
+     * Constructor.
+     *
+     * @param minId the lowest id of any object to be indexed
+     * @param maxId the highest id of any object to be indexed
+     * @param partitionSize the number of ids in each partition
+     */
+    public IndexProgress(int minId, int maxId, int partitionSize) {
+        if (partitionSize < 1) {
+            throw new IllegalArgumentException("partitionSize must be positive: "
+                    + partitionSize);
+        }
+        this.minId = minId;
+        this.maxId = maxId;
+        this.partitionSize = partitionSize;
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return an int
+     */
+    public int getPartitionCount() {
+        if (maxId < minId) {
+            return 0;
+        }
+        return (int) ((((long) maxId) - minId) / partitionSize) + 1;
+    }
+
+    /**
+     * Returns the partitions that have not yet been indexed, in id order.
+     *
+     * @return a List of Partitions
+     */
+    public synchronized List<Partition> getRemainingPartitions() {
+        List<Partition> retval = new ArrayList<Partition>();
+        int count = getPartitionCount();
+        for (int i = 0; i < count; i++) {
+            if (!done.contains(Integer.valueOf(i))) {
+                long firstId = ((long) minId) + ((long) i) * partitionSize;
+                long lastId = Math.min(firstId + partitionSize - 1, maxId);
+                retval.add(new Partition(i, (int) firstId, (int) lastId));
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Records that a partition has been indexed and committed.
+     *
+     * @param partition the index of the partition
+     */
+    public synchronized void partitionDone(int partition) {
+        done.add(Integer.valueOf(partition));
+    }
+
+    /**
+     * Returns the number of partitions that have been indexed and committed.
+     *
+     * @return an int
+     */
+    public synchronized int getDoneCount() {
+        return done.size();
+    }
+
+    /**
+     * Returns true if another IndexProgress divides the objects into the same partitions as
+     * this one, so that its record of finished partitions applies to this index build.
+     *
+     * @param other another IndexProgress
+     * @return true or false
+     */
+    public boolean samePartitions(IndexProgress other) {
+        return (minId == other.minId) && (maxId == other.maxId)
+            && (partitionSize == other.partitionSize);
+    }
+
+    /**
+     * Adds the finished partitions recorded in another IndexProgress to this one, if it has the
+     * same partitions.
+     *
+     * @param stored an IndexProgress read from the database, or null
+     * @return true if the finished partitions were added
+     */
+    public boolean resumeFrom(IndexProgress stored) {
+        if ((stored == null) || !samePartitions(stored)) {
+            return false;
+        }
+        Set<Integer> storedDone;
+        synchronized (stored) {
+            storedDone = new TreeSet<Integer>(stored.done);
+        }
+        synchronized (this) {
+            done.addAll(storedDone);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a String that can be read by parse().
+     *
+     * @return a String
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder retval = new StringBuilder();
+        retval.append(minId).append(':').append(maxId).append(':').append(partitionSize)
+            .append(':');
+        boolean needComma = false;
+        for (Integer partition : done) {
+            retval.append(needComma ? "," : "").append(partition);
+            needComma = true;
+        }
+        return retval.toString();
+    }
+
+    /**
+     * Reads a String written by toString().
+     *
+     * @param stored the String, or null
+     * @return an IndexProgress, or null if the String is null or cannot be read
+     */
+    public static IndexProgress parse(String stored) {
+        if (stored == null) {
+            return null;
+        }
+        String[] parts = stored.split(":", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            IndexProgress retval = new IndexProgress(Integer.parseInt(parts[0]),
+                    Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            if (parts[3].length() > 0) {
+                for (String partition : parts[3].split(",")) {
+                    retval.partitionDone(Integer.parseInt(partition));
+                }
+            }
+            return retval;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A range of object ids to be indexed together.
+     */
+    public static class Partition
+    {
+        private final int index;
+        private final int firstId;
+        private final int lastId;
+        private final List<Integer> ids;
+
+        /**
+         * Constructor.
+         *
+         * @param index the number of this partition
+         * @param firstId the first id in the partition
+         * @param lastId the last id in the partition, inclusive
+         */
+        public Partition(int index, int firstId, int lastId) {
+            this(index, firstId, lastId, null);
+        }
+
+        /**
+         * Constructor for a partition of only some of the ids in a range.
+         *
+         * @param index the number of this partition
+         * @param firstId the first id in the partition
+         * @param lastId the last id in the partition, inclusive
+         * @param ids the ids in the partition, or null for every id in the range
+         */
+        public Partition(int index, int firstId, int lastId, List<Integer> ids) {
+            this.index = index;
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.ids = ids;
+        }
+
+        /**
+         * @return the number of this partition
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the first id in the partition
+         */
+        public int getFirstId() {
+            return firstId;
+        }
+
+        /**
+         * @return the last id in the partition, inclusive
+         */
+        public int getLastId() {
+            return lastId;
+        }
+
+        /**
+         * @return the ids in the partition, or null for every id in the range
+         */
+        public List<Integer> getIds() {
+            return ids;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "partition " + index + " (" + (ids == null ? "" : ids.size() + " of the ")
+                + "ids " + firstId + " to " + lastId + ")";
+        }
+    }
+}
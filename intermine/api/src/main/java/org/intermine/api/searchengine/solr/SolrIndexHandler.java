@@ -23,19 +23,60 @@ import org.apache.solr.common.SolrInputDocument;
 import org.intermine.api.searchengine.IndexHandler;
 import org.intermine.api.searchengine.KeywordSearchFacetData;
 import org.intermine.api.searchengine.KeywordSearchPropertiesManager;
+import org.intermine.dataloader.ChangedObjectLog;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.ConstraintOp;
 import org.intermine.metadata.FieldDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.model.InterMineObject;
+import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryCollectionReference;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.pathquery.Path;
+import org.intermine.pathquery.PathException;
+import org.intermine.sql.Database;
+import org.intermine.util.IntBitmap;
+import org.intermine.util.IntIterator;
 import org.intermine.util.ObjectPipe;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Solr Implementation of IndexHandler
  *
+ * The objects are divided into partitions by id, which are fetched and turned into documents by
+ * several SolrObjectHandler threads at once. The documents are sent to solr in batches, several
+ * at a time. Each partition is committed and recorded in the database once all its documents
+ * have been sent, so that a failed build can be resumed.
+ *
+ * The index can also be updated by re-indexing only the objects recorded as changed in the
+ * ChangedObjectLog, and the objects whose documents include them.
+ *
  * @author arunans23
  */
 public final class SolrIndexHandler implements IndexHandler
@@ -48,8 +89,6 @@ public final class SolrIndexHandler implements IndexHandler
     //this field type is not analyzed
     private static final String RAW_FIELD_TYPE_NAME = "raw_string";
 
-    private ObjectPipe<SolrInputDocument> indexingQueue = new ObjectPipe<SolrInputDocument>(100000);
-
     //ArrayLists to store the existing schema data in Solr
     //Based on the existence, schema will be created or updated
     private List<String> existingFields;
@@ -61,27 +100,183 @@ public final class SolrIndexHandler implements IndexHandler
     @Override
     public void createIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys)
             throws IOException, SolrServerException {
+        createIndex(os, SolrClientManager.getClientInstance(os));
+    }
+
+    /**
+     * Create the index using a given solr client, for example an EmbeddedSolrServer.
+     *
+     * If an earlier index build on the same objects failed part way through, only the
+     * partitions of the objects that it did not commit are indexed.
+     *
+     * @param os Objectstore to index
+     * @param solrClient the client to send documents to
+     * @throws IOException IOException is thrown from Objectstore
+     * @throws SolrServerException is thrown from solr
+     */
+    public void createIndex(ObjectStore os, SolrClient solrClient)
+            throws IOException, SolrServerException {
         long time = System.currentTimeMillis();
         LOG.debug("Creating keyword search index...");
 
-        SolrClient solrClient = SolrClientManager.getClientInstance(os);
+        KeywordSearchPropertiesManager keywordSearchPropertiesManager
+                = KeywordSearchPropertiesManager.getInstance(os);
 
-        //delete previous documents in solr
+        ObjectStore fetchOs = getFetchObjectStore(os);
+        Database db = getDatabase(fetchOs);
 
-        LOG.debug("Delete previous index begins");
-        long deleteStartTime = System.currentTimeMillis();
+        IndexProgress progress = createProgress(fetchOs,
+                keywordSearchPropertiesManager.getIndexPartitionSize());
+        if (progress.resumeFrom(readProgress(db))) {
+            LOG.info("Resuming index build, " + progress.getDoneCount() + " of "
+                    + progress.getPartitionCount() + " partitions already indexed");
+        } else {
+            //delete previous documents in solr
 
-        try {
-            solrClient.deleteByQuery("*:*");
-            solrClient.commit();
+            LOG.debug("Delete previous index begins");
+            long deleteStartTime = System.currentTimeMillis();
 
-        } catch (SolrServerException e) {
-            LOG.error("Deleting old index failed", e);
+            try {
+                solrClient.deleteByQuery("*:*");
+                solrClient.commit();
+
+            } catch (SolrServerException e) {
+                LOG.error("Deleting old index failed", e);
+            }
+
+            LOG.debug("Delete previous index ends and it took "
+                    + (System.currentTimeMillis() - deleteStartTime) + "ms");
+        }
+
+        prepareSchema(solrClient, keywordSearchPropertiesManager);
+
+        long indexStartTime = System.currentTimeMillis();
+
+        int indexed = runFetchers(fetchOs, solrClient, keywordSearchPropertiesManager,
+                progress.getRemainingPartitions(), progress, db, time);
+
+        commit(solrClient);
+        storeProgress(db, null);
+        // The whole index is up to date, so no changes are waiting to be indexed
+        clearChangedObjects(db);
+
+        if (keywordSearchPropertiesManager.getEnableOptimize()) {
+            optimize(solrClient);
         }
 
-        LOG.debug("Delete previous index ends and it took "
-                + (System.currentTimeMillis() - deleteStartTime) + "ms");
+        LOG.debug("Solr indexing ends and it took "
+                + (System.currentTimeMillis() - indexStartTime) + "ms");
+
+        time = System.currentTimeMillis() - time;
+        int seconds = (int) Math.floor(time / 1000);
+        LOG.info("Indexing of " + indexed + " documents finished in "
+                + String.format("%02d:%02d.%03d", (int) Math.floor(seconds / 60), seconds % 60,
+                time % 1000) + " minutes");
+    }
+
+    @Override
+    public void updateIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys)
+            throws IOException, SolrServerException {
+        updateIndex(os, SolrClientManager.getClientInstance(os));
+    }
 
+    /**
+     * Update the index using a given solr client, for example an EmbeddedSolrServer.
+     *
+     * The objects recorded in the ChangedObjectLog are re-indexed, along with the objects whose
+     * documents include them through the references configured in keyword_search.properties.
+     * The documents of changed objects that no longer exist, or are now of an ignored class,
+     * are deleted. If the changes were not recorded, or an earlier index build did not finish,
+     * the whole index is built instead.
+     *
+     * @param os Objectstore to index
+     * @param solrClient the client to send documents to
+     * @throws IOException IOException is thrown from Objectstore
+     * @throws SolrServerException is thrown from solr
+     */
+    public void updateIndex(ObjectStore os, SolrClient solrClient)
+            throws IOException, SolrServerException {
+        long time = System.currentTimeMillis();
+
+        KeywordSearchPropertiesManager keywordSearchPropertiesManager
+                = KeywordSearchPropertiesManager.getInstance(os);
+
+        ObjectStore fetchOs = getFetchObjectStore(os);
+        Database db = getDatabase(fetchOs);
+
+        ChangedObjectLog changes = null;
+        if (db != null) {
+            try {
+                changes = ChangedObjectLog.read(db);
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not read the changed objects", e);
+            }
+        }
+        if ((changes == null) || changes.isAllChanged() || (readProgress(db) != null)) {
+            LOG.info("The changes since the index was built are not known, rebuilding the whole "
+                    + "index");
+            createIndex(os, solrClient);
+            return;
+        }
+        if (changes.getIds().isEmpty()) {
+            LOG.info("No objects have changed since the index was built");
+            return;
+        }
+
+        int chunkSize = keywordSearchPropertiesManager.getIndexBatchSize();
+        IntBitmap affected = IntBitmap.or(changes.getIds(),
+                findReferencingObjects(fetchOs, keywordSearchPropertiesManager,
+                    changes.getIds(), chunkSize));
+        IntBitmap existing = findIndexableObjects(fetchOs, keywordSearchPropertiesManager,
+                affected, chunkSize);
+        IntBitmap removed = IntBitmap.andNot(affected, existing);
+        LOG.info(changes.getIds().size() + " objects have changed, updating " + existing.size()
+                + " documents and deleting " + removed.size());
+
+        List<String> toDelete = new ArrayList<String>();
+        IntIterator iter = removed.iterator();
+        while (iter.hasNext()) {
+            toDelete.add(Integer.toString(iter.next()));
+            if ((toDelete.size() >= chunkSize) || !iter.hasNext()) {
+                solrClient.deleteById(toDelete);
+                toDelete.clear();
+            }
+        }
+
+        prepareSchema(solrClient, keywordSearchPropertiesManager);
+
+        List<IndexProgress.Partition> partitions = new ArrayList<IndexProgress.Partition>();
+        for (List<Integer> chunk : split(existing, chunkSize)) {
+            partitions.add(new IndexProgress.Partition(partitions.size(), chunk.get(0).intValue(),
+                        chunk.get(chunk.size() - 1).intValue(), chunk));
+        }
+        int indexed = runFetchers(fetchOs, solrClient, keywordSearchPropertiesManager,
+                partitions, null, null, time);
+
+        commit(solrClient);
+        clearChangedObjects(db);
+
+        LOG.info("Updating the index with " + indexed + " documents finished in "
+                + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    // The fetchers query the objectstore in parallel, which a writer would serialise
+    private static ObjectStore getFetchObjectStore(ObjectStore os) {
+        if (os instanceof ObjectStoreWriter) {
+            return ((ObjectStoreWriter) os).getObjectStore();
+        }
+        return os;
+    }
+
+    private static Database getDatabase(ObjectStore os) {
+        if (os instanceof ObjectStoreInterMineImpl) {
+            return ((ObjectStoreInterMineImpl) os).getDatabase();
+        }
+        return null;
+    }
+
+    private void prepareSchema(SolrClient solrClient,
+            KeywordSearchPropertiesManager keywordSearchPropertiesManager) throws IOException {
         try {
             this.existingFields = getAllExistingFieldsFromSolr(solrClient);
             this.existingFieldTypes = getAllExisitingFieldTypesFromSolr(solrClient);
@@ -95,10 +290,6 @@ public final class SolrIndexHandler implements IndexHandler
 
         createFieldTypeDefinitions(solrClient);
 
-
-        KeywordSearchPropertiesManager keywordSearchPropertiesManager
-                = KeywordSearchPropertiesManager.getInstance(os);
-
         addFieldNameToSchema("classname", ANALYZED_FIELD_TYPE_NAME, false, true, solrClient);
         addFieldNameToSchema("Category", "string", false, true, solrClient);
 
@@ -109,88 +300,391 @@ public final class SolrIndexHandler implements IndexHandler
                 addCopyFieldToSchema(field, "facet_" + field, solrClient);
             }
         }
+    }
 
-        LOG.info("Starting fetcher thread...");
-        SolrObjectHandler fetchThread =
-                new SolrObjectHandler(os,
-                        keywordSearchPropertiesManager.getClassKeys(),
-                        indexingQueue,
-                        keywordSearchPropertiesManager.getIgnoredClasses(),
-                        keywordSearchPropertiesManager.getIgnoredFields(),
-                        keywordSearchPropertiesManager.getSpecialReferences(),
-                        keywordSearchPropertiesManager.getClassBoost(),
-                        keywordSearchPropertiesManager.getFacets(),
-                        keywordSearchPropertiesManager.getAttributePrefixes(),
-                        solrClient,
-                        indexedFields,
-                        existingFields);
-        fetchThread.start();
-
-        int indexed = 0;
-
-        List<SolrInputDocument> solrInputDocuments = new ArrayList<SolrInputDocument>();
+    /**
+     * Fetch the objects in some partitions with several SolrObjectHandler threads and send their
+     * documents to solr. If progress is not null, each partition is committed and recorded in
+     * the database as it finishes.
+     */
+    private int runFetchers(ObjectStore fetchOs, SolrClient solrClient,
+            KeywordSearchPropertiesManager keywordSearchPropertiesManager,
+            List<IndexProgress.Partition> partitionList, IndexProgress progress, Database db,
+            long time) throws IOException, SolrServerException {
+        ObjectPipe<SolrInputDocument> indexingQueue
+            = new ObjectPipe<SolrInputDocument>(100000);
+        Queue<IndexProgress.Partition> partitions
+            = new ConcurrentLinkedQueue<IndexProgress.Partition>(partitionList);
+        int threadCount = Math.max(1, Math.min(keywordSearchPropertiesManager.getIndexThreads(),
+                    partitions.size()));
+        AtomicInteger runningHandlers = new AtomicInteger(threadCount);
+        List<SolrObjectHandler> fetchThreads = new ArrayList<SolrObjectHandler>();
+
+        LOG.info("Starting " + threadCount + " fetcher threads for " + partitions.size()
+                + " partitions...");
+        for (int i = 0; i < threadCount; i++) {
+            SolrObjectHandler fetchThread =
+                    new SolrObjectHandler(fetchOs,
+                            keywordSearchPropertiesManager,
+                            indexingQueue,
+                            solrClient,
+                            indexedFields,
+                            existingFields,
+                            partitions,
+                            runningHandlers);
+            fetchThread.setName("SolrObjectHandler-" + i);
+            fetchThread.start();
+            fetchThreads.add(fetchThread);
+        }
 
         // loop and index while we still have fetchers running
         LOG.debug("Starting to index...");
 
-        long indexStartTime = System.currentTimeMillis();
+        DocumentSender sender = new DocumentSender(solrClient,
+                keywordSearchPropertiesManager.getIndexBatchesInFlight());
+        int indexed = 0;
+        try {
+            indexed = sendDocuments(indexingQueue, solrClient, sender, progress, db,
+                    keywordSearchPropertiesManager.getIndexBatchSize(), time);
+        } catch (IOException | SolrServerException | RuntimeException e) {
+            for (SolrObjectHandler fetchThread : fetchThreads) {
+                fetchThread.cancel();
+            }
+            // Let the fetchers finish, so that they release their temporary tables
+            while (indexingQueue.hasNext()) {
+                indexingQueue.next();
+            }
+            throw e;
+        } finally {
+            sender.shutdown();
+        }
+
+        for (SolrObjectHandler fetchThread : fetchThreads) {
+            if (fetchThread.getException() != null) {
+                throw new RuntimeException("Indexing failed. Running the index build again "
+                        + "will resume from the last committed partition.",
+                        fetchThread.getException());
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Take documents from the indexing queue and send them to solr in batches. When the marker
+     * for the end of a partition is seen, all the documents of that partition have been taken
+     * from the queue, so once the batches sent so far have been added and committed, the
+     * partition is recorded as done.
+     */
+    private int sendDocuments(ObjectPipe<SolrInputDocument> indexingQueue,
+            SolrClient solrClient, DocumentSender sender,
+            IndexProgress progress, Database db, int batchSize, long time)
+        throws IOException, SolrServerException {
+        int indexed = 0;
+        int reported = 0;
+        long reportTime = System.currentTimeMillis();
 
-        int tempDocs = 0;
-        long tempTime = System.currentTimeMillis();
+        List<SolrInputDocument> solrInputDocuments = new ArrayList<SolrInputDocument>();
 
         while (indexingQueue.hasNext()) {
             SolrInputDocument doc = indexingQueue.next();
 
+            Integer donePartition = SolrObjectHandler.getDonePartition(doc);
+            if ((donePartition != null) && (progress == null)) {
+                continue;
+            } else if (donePartition != null) {
+                sender.send(solrInputDocuments);
+                solrInputDocuments = new ArrayList<SolrInputDocument>();
+                sender.waitForBatches();
+                solrClient.commit();
+                progress.partitionDone(donePartition.intValue());
+                storeProgress(db, progress);
+                LOG.info("Committed partition " + donePartition + ", "
+                        + progress.getDoneCount() + " of " + progress.getPartitionCount()
+                        + " partitions done");
+                continue;
+            }
+
             solrInputDocuments.add(doc);
 
             indexed++;
 
-            if (solrInputDocuments.size() == keywordSearchPropertiesManager.getIndexBatchSize()) {
+            if (solrInputDocuments.size() >= batchSize) {
 
-                tempTime = System.currentTimeMillis();
+                sender.send(solrInputDocuments);
+                solrInputDocuments = new ArrayList<SolrInputDocument>();
 
-                addSolrDocuments(solrClient, solrInputDocuments);
+                if (indexed - reported >= 10 * batchSize) {
+                    long now = System.currentTimeMillis();
+                    LOG.info("docs indexed=" + indexed + "; docs/ms=" + (indexed - reported)
+                            * 1.0F / Math.max(1, now - reportTime) + "; memory="
+                            + Runtime.getRuntime().freeMemory() / 1024 + "k/"
+                            + Runtime.getRuntime().maxMemory() / 1024 + "k" + "; time="
+                            + (now - time) + "ms");
+                    reported = indexed;
+                    reportTime = now;
+                }
+            }
 
-                tempDocs = indexed - tempDocs;
+        }
 
-                LOG.info("docs indexed=" + indexed + "; thread state="
-                        + fetchThread.getState() + "; docs/ms=" + tempDocs * 1.0F
-                        / (System.currentTimeMillis() - tempTime) + "; memory="
-                        + Runtime.getRuntime().freeMemory() / 1024 + "k/"
-                        + Runtime.getRuntime().maxMemory() / 1024 + "k" + "; time="
-                        + (System.currentTimeMillis() - time) + "ms");
+        sender.send(solrInputDocuments);
+        sender.waitForBatches();
+        return indexed;
+    }
 
-                solrInputDocuments.clear();
+    private static IndexProgress createProgress(ObjectStore os, int partitionSize) {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(InterMineObject.class);
+        q.addFrom(qc);
+        QueryField id = new QueryField(qc, "id");
+        q.addToSelect(new QueryFunction(id, QueryFunction.MIN));
+        q.addToSelect(new QueryFunction(id, QueryFunction.MAX));
+        List<?> row = (List<?>) os.execute(q, 2, false, false, false).get(0);
+        if (row.get(0) == null) {
+            // No objects at all
+            return new IndexProgress(0, -1, partitionSize);
+        }
+        return new IndexProgress(((Number) row.get(0)).intValue(),
+                ((Number) row.get(1)).intValue(), partitionSize);
+    }
+
+    /**
+     * Find the objects whose documents include any of some objects, through the references
+     * configured in keyword_search.properties. A document includes the objects at the end of
+     * each reference path, and depends on the objects along the way to reach them.
+     */
+    private static IntBitmap findReferencingObjects(ObjectStore os,
+            KeywordSearchPropertiesManager keywordSearchPropertiesManager, IntBitmap ids,
+            int chunkSize) {
+        IntBitmap retval = new IntBitmap();
+        for (Map.Entry<Class<? extends InterMineObject>, String[]> entry
+                : keywordSearchPropertiesManager.getSpecialReferences().entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
             }
+            for (String reference : entry.getValue()) {
+                String path = entry.getKey().getSimpleName() + "." + reference;
+                for (List<Integer> chunk : split(ids, chunkSize)) {
+                    Query q = getReferencingQuery(os.getModel(), path, chunk);
+                    for (Object row : os.execute(q, 10000, true, false, false)) {
+                        retval.add(((Integer) ((List<?>) row).get(0)).intValue());
+                    }
+                }
+            }
+        }
+        return retval;
+    }
 
+    private static Query getReferencingQuery(Model model, String pathString,
+            List<Integer> ids) {
+        Path path;
+        try {
+            path = new Path(model, pathString);
+        } catch (PathException e) {
+            throw new IllegalArgumentException("Invalid reference in keyword_search.properties: "
+                    + pathString, e);
+        }
+        List<ClassDescriptor> classDescriptors = path.getElementClassDescriptors();
+        List<String> fields = path.getElements();
+
+        Query q = new Query();
+        q.setDistinct(true);
+        ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+        ConstraintSet idConstraints = new ConstraintSet(ConstraintOp.OR);
+        QueryClass parent = null;
+        for (int i = 0; i < classDescriptors.size(); i++) {
+            QueryClass qc = new QueryClass(classDescriptors.get(i).getType());
+            q.addFrom(qc);
+            if (parent == null) {
+                q.addToSelect(new QueryField(qc, "id"));
+            } else {
+                String fieldName = fields.get(i - 1);
+                if (classDescriptors.get(i - 1).getReferenceDescriptorByName(fieldName, true)
+                        != null) {
+                    constraints.addConstraint(new ContainsConstraint(
+                                new QueryObjectReference(parent, fieldName),
+                                ConstraintOp.CONTAINS, qc));
+                } else {
+                    constraints.addConstraint(new ContainsConstraint(
+                                new QueryCollectionReference(parent, fieldName),
+                                ConstraintOp.CONTAINS, qc));
+                }
+                idConstraints.addConstraint(new BagConstraint(new QueryField(qc, "id"),
+                            ConstraintOp.IN, ids));
+            }
+            parent = qc;
         }
+        constraints.addConstraint(idConstraints);
+        q.setConstraint(constraints);
+        return q;
+    }
 
-        addSolrDocuments(solrClient, solrInputDocuments);
+    /**
+     * Find which of some objects exist and are not of a class that is not indexed.
+     */
+    private static IntBitmap findIndexableObjects(ObjectStore os,
+            KeywordSearchPropertiesManager keywordSearchPropertiesManager, IntBitmap ids,
+            int chunkSize) {
+        IntBitmap retval = new IntBitmap();
+        for (List<Integer> chunk : split(ids, chunkSize)) {
+            Query q = new Query();
+            QueryClass qc = new QueryClass(InterMineObject.class);
+            q.addFrom(qc);
+            QueryField id = new QueryField(qc, "id");
+            q.addToSelect(id);
+            ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+            constraints.addConstraint(new BagConstraint(id, ConstraintOp.IN, chunk));
+            constraints.addConstraint(new BagConstraint(new QueryField(qc, "class"),
+                        ConstraintOp.NOT_IN, keywordSearchPropertiesManager.getIgnoredClasses()));
+            q.setConstraint(constraints);
+            for (Object row : os.execute(q, 10000, true, false, false)) {
+                retval.add(((Integer) ((List<?>) row).get(0)).intValue());
+            }
+        }
+        return retval;
+    }
 
-        commit(solrClient);
+    private static List<List<Integer>> split(IntBitmap ids, int chunkSize) {
+        List<List<Integer>> retval = new ArrayList<List<Integer>>();
+        List<Integer> chunk = new ArrayList<Integer>();
+        IntIterator iter = ids.iterator();
+        while (iter.hasNext()) {
+            chunk.add(Integer.valueOf(iter.next()));
+            if (chunk.size() >= chunkSize) {
+                retval.add(chunk);
+                chunk = new ArrayList<Integer>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            retval.add(chunk);
+        }
+        return retval;
+    }
 
-        if (keywordSearchPropertiesManager.getEnableOptimize()) {
-            optimize(solrClient);
+    private static void clearChangedObjects(Database db) {
+        if (db == null) {
+            return;
         }
+        try {
+            ChangedObjectLog.clear(db);
+        } catch (SQLException e) {
+            LOG.warn("Could not clear the changed objects, they will be indexed again", e);
+        }
+    }
 
-        LOG.debug("Solr indexing ends and it took "
-                + (System.currentTimeMillis() - indexStartTime) + "ms");
+    private static IndexProgress readProgress(Database db) {
+        if (db == null) {
+            return null;
+        }
+        try {
+            return IndexProgress.parse(MetadataManager.retrieve(db,
+                        MetadataManager.SEARCH_INDEX_PROGRESS));
+        } catch (SQLException e) {
+            LOG.warn("Could not read the progress of an earlier index build", e);
+            return null;
+        }
+    }
 
-        if (fetchThread.getException() != null) {
+    private static void storeProgress(Database db, IndexProgress progress) {
+        if (db == null) {
+            return;
+        }
+        try {
+            MetadataManager.store(db, MetadataManager.SEARCH_INDEX_PROGRESS,
+                    progress == null ? null : progress.toString());
+        } catch (SQLException e) {
+            LOG.warn("Could not store the progress of the index build", e);
+        }
+    }
 
-            throw new RuntimeException("Indexing failed.", fetchThread.getException());
+    /**
+     * Sends batches of documents to solr from a pool of threads, with at most a fixed number of
+     * batches in flight at once.
+     */
+    private static class DocumentSender
+    {
+        private final SolrClient solrClient;
+        private final ExecutorService executor;
+        private final Semaphore inFlight;
+        private final int maxInFlight;
+        private final List<Future<?>> pending = new ArrayList<Future<?>>();
+
+        DocumentSender(SolrClient solrClient, int maxInFlight) {
+            this.solrClient = solrClient;
+            this.maxInFlight = maxInFlight;
+            this.executor = Executors.newFixedThreadPool(maxInFlight);
+            this.inFlight = new Semaphore(maxInFlight);
         }
 
-        time = System.currentTimeMillis() - time;
-        int seconds = (int) Math.floor(time / 1000);
-        LOG.info("Indexing of " + indexed + " documents finished in "
-                + String.format("%02d:%02d.%03d", (int) Math.floor(seconds / 60), seconds % 60,
-                time % 1000) + " minutes");
-    }
+        /**
+         * Start sending a batch, waiting first if too many batches are already in flight.
+         */
+        void send(final List<SolrInputDocument> batch) throws IOException, SolrServerException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            inFlight.acquireUninterruptibly();
+            try {
+                pending.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            addSolrDocuments(solrClient, batch);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return null;
+                    }
+                }));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            if (pending.size() > 2 * maxInFlight) {
+                checkFinished(false);
+            }
+        }
 
+        /**
+         * Wait for all the batches sent so far to be added.
+         */
+        void waitForBatches() throws IOException, SolrServerException {
+            checkFinished(true);
+        }
 
-    private void addSolrDocuments(SolrClient solrClient, List<SolrInputDocument> solrDocumentList)
-            throws IOException, SolrServerException {
+        void shutdown() {
+            executor.shutdownNow();
+        }
+
+        private void checkFinished(boolean wait) throws IOException, SolrServerException {
+            Iterator<Future<?>> iter = pending.iterator();
+            while (iter.hasNext()) {
+                Future<?> future = iter.next();
+                if (wait || future.isDone()) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while sending documents to solr", e);
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        } else if (cause instanceof SolrServerException) {
+                            throw (SolrServerException) cause;
+                        } else if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        throw new RuntimeException("Error sending documents to solr", cause);
+                    }
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    private static void addSolrDocuments(SolrClient solrClient,
+            List<SolrInputDocument> solrDocumentList) throws IOException, SolrServerException {
 
         if (solrDocumentList.size() != 0) {
 
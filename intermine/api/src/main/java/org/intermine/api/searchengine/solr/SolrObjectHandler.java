@@ -17,9 +17,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -33,6 +35,7 @@ import org.intermine.api.searchengine.ClassAttributes;
 import org.intermine.api.searchengine.InterMineResultsContainer;
 import org.intermine.api.searchengine.KeywordSearchFacetData;
 import org.intermine.api.searchengine.KeywordSearchFacetType;
+import org.intermine.api.searchengine.KeywordSearchPropertiesManager;
 import org.intermine.api.searchengine.ObjectValueContainer;
 import org.intermine.metadata.AttributeDescriptor;
 import org.intermine.metadata.ClassDescriptor;
@@ -53,15 +56,23 @@ import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
 import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.pathquery.PathException;
 import org.intermine.util.ObjectPipe;
 
 /**
  * Thread to fetch all intermineobjects (with exceptions) from database, create
  * a solr document for them, add references (if applicable) and put the final
- * document in the indexing queue
+ * document in the indexing queue.
+ *
+ * Several of these threads run at once, each taking partitions (ranges of object ids) from a
+ * shared queue until it is empty. The objects and references of each partition are fetched with
+ * queries restricted to its id range. After the last document of a partition, a marker document
+ * is put in the indexing queue, so that the indexer knows when the partition is complete. The
+ * last thread to finish closes the indexing queue.
  * @author nils
  * @author arunans23
  */
@@ -76,6 +87,9 @@ public class SolrObjectHandler extends Thread
     //this field type is not analyzed
     private static final String RAW_FIELD_TYPE_NAME = "raw_string";
 
+    //only used in the marker documents, which are never sent to solr
+    private static final String PARTITION_DONE_FIELD = "_partition_done";
+
     final ObjectStore os;
     final Map<String, List<FieldDescriptor>> classKeys;
     final ObjectPipe<SolrInputDocument> indexingQueue;
@@ -96,61 +110,83 @@ public class SolrObjectHandler extends Thread
     private List<String> indexedFields;
     private List<String> existingFields;
 
+    private final Queue<IndexProgress.Partition> partitions;
+    private final AtomicInteger runningHandlers;
+
     private volatile Exception error;
+    private volatile boolean cancelled = false;
 
     /**
      * initialize the documentfetcher thread
      * @param os
      *            intermine objectstore
-     * @param classKeys
-     *            classKeys from InterMineAPI, map of classname to all key field
-     *            descriptors
+     * @param properties
+     *            the keyword search configuration, giving the class keys, classes and fields
+     *            to ignore, references to index, class boosts, facets and attribute prefixes
      * @param indexingQueue
      *            queue shared with indexer
-     * @param ignoredClasses
-     *            classes that should not be indexed (as specified in config +
-     *            subclasses)
-     * @param ignoredFields fields to ignore
-     * @param specialReferences
-     *            map of classname to references to index in additional to
-     *            normal attributes
-     * @param classBoost
-     *            apply per-class doc boost as specified here (all other classes
-     *            get 1.0)
-     * @param facets
-     *            fields used for faceting - will be indexed untokenized in
-     *            addition to the normal indexing
-     * @param attributePrefixes prefixes to be ignored
      * @param solrClient solrClient Instance
-     * @param indexedFields List of fieldnames that are indexed in the current postprocess
+     * @param indexedFields List of fieldnames that are indexed in the current postprocess,
+     * shared with the other handlers
      * @param existingFields List of fieldnames that are already exisiting
+     * @param partitions queue of partitions to index, shared with the other handlers
+     * @param runningHandlers the number of handlers that have not finished, shared with the
+     * other handlers, the last of which finishes the indexing queue
      */
-    SolrObjectHandler(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys,
+    SolrObjectHandler(ObjectStore os, KeywordSearchPropertiesManager properties,
                       ObjectPipe<SolrInputDocument> indexingQueue,
-                      Set<Class<? extends InterMineObject>> ignoredClasses,
-                      Map<Class<? extends InterMineObject>, Set<String>> ignoredFields,
-                      Map<Class<? extends InterMineObject>, String[]> specialReferences,
-                      Map<ClassDescriptor, Float> classBoost, Vector<KeywordSearchFacetData> facets,
-                      Map<String, String> attributePrefixes,
                       SolrClient solrClient,
                       List<String> indexedFields,
-                      List<String> existingFields
+                      List<String> existingFields,
+                      Queue<IndexProgress.Partition> partitions,
+                      AtomicInteger runningHandlers
     ) {
         super();
 
         this.os = os;
-        this.classKeys = classKeys;
+        this.classKeys = properties.getClassKeys();
         this.indexingQueue = indexingQueue;
-        this.ignoredClasses = ignoredClasses;
-        this.ignoredFields = ignoredFields;
-        this.specialReferences = specialReferences;
-        this.classBoost = classBoost;
-        this.facets = facets;
-        this.attributePrefixes = attributePrefixes;
+        this.ignoredClasses = properties.getIgnoredClasses();
+        this.ignoredFields = properties.getIgnoredFields();
+        this.specialReferences = properties.getSpecialReferences();
+        this.classBoost = properties.getClassBoost();
+        this.facets = properties.getFacets();
+        this.attributePrefixes = properties.getAttributePrefixes();
 
         this.solrClient = solrClient;
         this.indexedFields = indexedFields;
         this.existingFields = existingFields;
+        this.partitions = partitions;
+        this.runningHandlers = runningHandlers;
+    }
+
+    /**
+     * Stop indexing as soon as possible, without finishing the current partition.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns a document that marks the end of a partition in the indexing queue.
+     *
+     * @param partition the partition that has finished
+     * @return a SolrInputDocument that should not be sent to solr
+     */
+    static SolrInputDocument createPartitionDoneMarker(IndexProgress.Partition partition) {
+        SolrInputDocument marker = new SolrInputDocument();
+        marker.addField(PARTITION_DONE_FIELD, Integer.valueOf(partition.getIndex()));
+        return marker;
+    }
+
+    /**
+     * Returns the partition ended by a document from the indexing queue.
+     *
+     * @param doc a document from the indexing queue
+     * @return the index of the partition, or null if the document is a normal document
+     */
+    static Integer getDonePartition(SolrInputDocument doc) {
+        return (Integer) doc.getFieldValue(PARTITION_DONE_FIELD);
     }
 
     /**
@@ -165,65 +201,93 @@ public class SolrObjectHandler extends Thread
      * fetch objects from database, create documents and add them to the queue
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void run() {
         try {
-            long time = System.currentTimeMillis();
-            long objectParseTime = 0;
-
-            LOG.info("Fetching all InterMineObjects...");
-
-            HashSet<Class<? extends InterMineObject>> seenClasses =
-                    new HashSet<Class<? extends InterMineObject>>();
-            HashMap<String, InterMineResultsContainer> referenceResults =
-                    new HashMap<String, InterMineResultsContainer>();
-
-            try {
-
-                //query all objects except the ones we are ignoring
-                Query q = new Query();
-                QueryClass qc = new QueryClass(InterMineObject.class);
-                q.addFrom(qc);
-                q.addToSelect(qc);
-
-                QueryField qf = new QueryField(qc, "class");
-                q.setConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
-
-                LOG.info("QUERY: " + q.toString());
-
-                Results results = os.execute(q, 1000, true, false, true);
-
-                @SuppressWarnings("rawtypes")
-                ListIterator<ResultsRow<InterMineObject>> it = (ListIterator) results
-                        .listIterator();
-                int i = iterateOverObjects(time, objectParseTime, seenClasses,
-                        referenceResults, results, it);
-                StringBuilder doneMessage = new StringBuilder();
-                for (String fieldName : fieldNames) {
-                    if (doneMessage.length() > 0) {
-                        doneMessage.append(", ");
-                    }
-                    doneMessage.append(fieldName);
-                    if (normFields.contains(fieldName)) {
-                        doneMessage.append(" NO_NORMS");
-                    }
+            IndexProgress.Partition partition = partitions.poll();
+            while ((partition != null) && !cancelled) {
+                indexPartition(partition);
+                if (!cancelled) {
+                    indexingQueue.put(createPartitionDoneMarker(partition));
                 }
-                LOG.info("COMPLETED index with " + i + " records.  Fields: " + doneMessage);
-
-            } finally {
-                for (InterMineResultsContainer resultsContainer : referenceResults.values()) {
-                    ((ObjectStoreInterMineImpl) os).releaseGoFaster(resultsContainer.getResults()
-                            .getQuery());
+                partition = partitions.poll();
+            }
+            StringBuilder doneMessage = new StringBuilder();
+            for (String fieldName : fieldNames) {
+                if (doneMessage.length() > 0) {
+                    doneMessage.append(", ");
+                }
+                doneMessage.append(fieldName);
+                if (normFields.contains(fieldName)) {
+                    doneMessage.append(" NO_NORMS");
                 }
             }
-
+            LOG.info(getName() + " COMPLETED.  Fields: " + doneMessage);
         } catch (Exception e) {
             LOG.warn("Error occurred during processing", e);
             setException(e);
+        } finally {
+            //notify main thread that we're done, if we are the last one
+            if (runningHandlers.decrementAndGet() == 0) {
+                indexingQueue.finish();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void indexPartition(IndexProgress.Partition partition)
+        throws PathException, ObjectStoreException, IllegalAccessException {
+        long time = System.currentTimeMillis();
+        long objectParseTime = 0;
+
+        LOG.info(getName() + ": fetching InterMineObjects in " + partition);
+
+        HashSet<Class<? extends InterMineObject>> seenClasses =
+                new HashSet<Class<? extends InterMineObject>>();
+        HashMap<String, InterMineResultsContainer> referenceResults =
+                new HashMap<String, InterMineResultsContainer>();
+
+        try {
+
+            //query all objects in the partition except the ones we are ignoring
+            Query q = new Query();
+            QueryClass qc = new QueryClass(InterMineObject.class);
+            q.addFrom(qc);
+            q.addToSelect(qc);
+
+            ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+            QueryField qf = new QueryField(qc, "class");
+            constraints.addConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+            addIdRange(constraints, new QueryField(qc, "id"), partition);
+            q.setConstraint(constraints);
+
+            LOG.info("QUERY: " + q.toString());
+
+            Results results = os.execute(q, 1000, true, false, true);
+
+            @SuppressWarnings("rawtypes")
+            ListIterator<ResultsRow<InterMineObject>> it = (ListIterator) results
+                    .listIterator();
+            int i = iterateOverObjects(time, objectParseTime, seenClasses,
+                    referenceResults, results, it, partition);
+            LOG.info(getName() + ": indexed " + i + " records in " + partition);
+
+        } finally {
+            for (InterMineResultsContainer resultsContainer : referenceResults.values()) {
+                ((ObjectStoreInterMineImpl) os).releaseGoFaster(resultsContainer.getResults()
+                        .getQuery());
+            }
         }
+    }
 
-        //notify main thread that we're done
-        indexingQueue.finish();
+    private static void addIdRange(ConstraintSet constraints, QueryField id,
+            IndexProgress.Partition partition) {
+        constraints.addConstraint(new SimpleConstraint(id, ConstraintOp.GREATER_THAN_EQUALS,
+                    new QueryValue(Integer.valueOf(partition.getFirstId()))));
+        constraints.addConstraint(new SimpleConstraint(id, ConstraintOp.LESS_THAN_EQUALS,
+                    new QueryValue(Integer.valueOf(partition.getLastId()))));
+        if (partition.getIds() != null) {
+            constraints.addConstraint(new BagConstraint(id, ConstraintOp.IN, partition.getIds()));
+        }
     }
 
     private void setException(Exception e) {
@@ -241,7 +305,8 @@ public class SolrObjectHandler extends Thread
     private SolrInputDocument handleObject(
             InterMineObject object,
             HashSet<Class<? extends InterMineObject>> seenClasses,
-            HashMap<String, InterMineResultsContainer> referenceResults)
+            HashMap<String, InterMineResultsContainer> referenceResults,
+            IndexProgress.Partition partition)
             throws PathException, ObjectStoreException, IllegalAccessException {
 
         long objectParseStart = System.currentTimeMillis();
@@ -293,7 +358,7 @@ public class SolrObjectHandler extends Thread
             for (String reference : references) {
                 // LOG.info("Querying reference " + reference);
 
-                Query queryReference = getPathQuery(reference);
+                Query queryReference = getPathQuery(reference, partition);
 
                 // do not count this towards objectParseTime
                 objectParseTime += (System.currentTimeMillis() - objectParseStart);
@@ -421,14 +486,15 @@ public class SolrObjectHandler extends Thread
     private int iterateOverObjects(long time, long objectParseTime,
                                    HashSet<Class<? extends InterMineObject>> seenClasses,
                                    HashMap<String, InterMineResultsContainer> referenceResults,
-                                   Results results, ListIterator<ResultsRow<InterMineObject>> it)
+                                   Results results, ListIterator<ResultsRow<InterMineObject>> it,
+                                   IndexProgress.Partition partition)
             throws PathException, ObjectStoreException, IllegalAccessException {
         int i = 0;
         int size = results.size();
         LOG.info("Query returned " + size + " results");
 
         //iterate over objects
-        while (it.hasNext()) {
+        while (it.hasNext() && !cancelled) {
             ResultsRow<InterMineObject> row = it.next();
 
             if (i % 10000 == 1) {
@@ -438,7 +504,8 @@ public class SolrObjectHandler extends Thread
             }
 
             for (InterMineObject object : row) {
-                SolrInputDocument doc = handleObject(object, seenClasses, referenceResults);
+                SolrInputDocument doc = handleObject(object, seenClasses, referenceResults,
+                        partition);
 
                 // finally add doc to queue
                 indexingQueue.put(doc);
@@ -618,7 +685,8 @@ public class SolrObjectHandler extends Thread
         return attributes;
     }
 
-    private Query getPathQuery(String pathString) throws PathException {
+    private Query getPathQuery(String pathString, IndexProgress.Partition partition)
+        throws PathException {
         Query q = new Query();
         ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
 
@@ -643,6 +711,7 @@ public class SolrObjectHandler extends Thread
                 QueryField topId = new QueryField(queryClass, "id");
                 q.addToSelect(topId);
                 q.addToOrderBy(topId); // important for optimization in run()
+                addIdRange(constraints, topId, partition);
             } else {
                 if (parentClassDescriptor == null) {
                     continue;
@@ -689,31 +758,32 @@ public class SolrObjectHandler extends Thread
         if (!fieldNames.contains(fieldName)) {
             fieldNames.add(fieldName);
 
-            if (!indexedFields.contains(fieldName)) {
-                if (existingFields != null) {
-                    if (!existingFields.contains(fieldName)) {
-                        Map<String, Object> fieldAttributes = new HashMap();
-                        fieldAttributes.put("name", fieldName);
-                        fieldAttributes.put("type", fieldType);
-                        fieldAttributes.put("stored", stored);
-                        fieldAttributes.put("indexed", indexed);
-                        fieldAttributes.put("multiValued", true);
-                        fieldAttributes.put("required", false);
-
-                        try {
-                            SchemaRequest.AddField schemaRequest
-                                    = new SchemaRequest.AddField(fieldAttributes);
-                            SchemaResponse.UpdateResponse response
-                                    = schemaRequest.process(solrClient);
-
-                            indexedFields.add(fieldName);
-
-                        } catch (Exception e) {
-                            LOG.error("Error while adding fields to the solrclient.", e);
-
-                            e.printStackTrace();
-                        }
-                    }
+            // indexedFields is shared with the other handlers
+            synchronized (indexedFields) {
+                if (indexedFields.contains(fieldName) || (existingFields == null)
+                        || existingFields.contains(fieldName)) {
+                    return;
+                }
+                Map<String, Object> fieldAttributes = new HashMap();
+                fieldAttributes.put("name", fieldName);
+                fieldAttributes.put("type", fieldType);
+                fieldAttributes.put("stored", stored);
+                fieldAttributes.put("indexed", indexed);
+                fieldAttributes.put("multiValued", true);
+                fieldAttributes.put("required", false);
+
+                try {
+                    SchemaRequest.AddField schemaRequest
+                            = new SchemaRequest.AddField(fieldAttributes);
+                    SchemaResponse.UpdateResponse response
+                            = schemaRequest.process(solrClient);
+
+                    indexedFields.add(fieldName);
+
+                } catch (Exception e) {
+                    LOG.error("Error while adding fields to the solrclient.", e);
+
+                    e.printStackTrace();
                 }
             }
         }
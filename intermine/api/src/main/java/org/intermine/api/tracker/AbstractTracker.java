@@ -14,6 +14,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.tracker.track.Track;
@@ -27,9 +28,11 @@ import org.intermine.sql.DatabaseUtil;
 public abstract class AbstractTracker implements Tracker
 {
     private static final Logger LOG = Logger.getLogger(AbstractTracker.class);
+    private static final int DROP_LOG_INTERVAL = 1000;
     protected Queue<Track> trackQueue = null;
     protected String trackTableName;
     protected TrackerLogger trackerLogger = null;
+    private final AtomicLong droppedTracks = new AtomicLong(0);
 
     /**
      * Construct a Tracker setting the tracks queue and the table name
@@ -78,10 +81,13 @@ public abstract class AbstractTracker implements Tracker
     public void storeTrack(Track track) {
         if (trackTableName != null) {
             if (track.validate()) {
-                try {
-                    trackQueue.add(track);
-                } catch (IllegalStateException ise) {
-                    LOG.error("Problem adding the track to the queue", ise);
+                // Never hold up the request: if the queue is full the track is dropped
+                if (!trackQueue.offer(track)) {
+                    long dropped = droppedTracks.incrementAndGet();
+                    if (dropped % DROP_LOG_INTERVAL == 1) {
+                        LOG.warn("Track queue full, " + dropped + " tracks dropped by "
+                                + getName() + " so far");
+                    }
                 }
             } else {
                 LOG.error("Failed to write to track table: input non valid");
@@ -91,6 +97,14 @@ public abstract class AbstractTracker implements Tracker
         }
     }
 
+    /**
+     * Return the number of tracks that have been dropped because the queue was full
+     * @return the number of tracks dropped
+     */
+    public long getDroppedTracks() {
+        return droppedTracks.get();
+    }
+
     /**
      * Return the tracker's name
      * @return String tracker's name
@@ -10,7 +10,6 @@ package org.intermine.api.tracker;
  *
  */
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -18,16 +17,16 @@ import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.profile.Profile;
-import org.intermine.api.tag.TagNames;
-import org.intermine.api.tag.TagTypes;
 import org.intermine.api.template.TemplateManager;
 import org.intermine.api.tracker.track.TemplateTrack;
 import org.intermine.api.tracker.track.Track;
@@ -43,6 +42,7 @@ public class TemplateTracker extends AbstractTracker
     private static final Logger LOG = Logger.getLogger(TemplateTracker.class);
     private static TemplateTracker templateTracker = null;
     private static TemplatesExecutionMap templatesExecutionCache;
+    private volatile RankCache rankCache = null;
 
     /**
      *
@@ -76,27 +76,31 @@ public class TemplateTracker extends AbstractTracker
     }
 
     /**
-     * Load the tracks retrieved from the database into TemplateExecutionMap object.
+     * Load the tracks retrieved from the database into TemplateExecutionMap object. The tracks
+     * are counted by the database, so only one row is read for each template executed by each
+     * user or during each session.
      */
     private static void loadTemplatesExecutionCache(Connection con) {
-        PreparedStatement stm = null;
+        Statement stm = null;
         ResultSet rs = null;
         try {
-            String sql = "SELECT tt.templatename, tt.username, tt.sessionidentifier"
-                         + " FROM templatetrack tt"
-                         + " LEFT JOIN tag t ON tt.templatename = t.objectidentifier"
-                         + " WHERE t.type = ? AND t.tagname = ?";
-            stm = con.prepareStatement(sql);
-            stm.setString(1, TagTypes.TEMPLATE);
-            stm.setString(2, TagNames.IM_PUBLIC);
-            rs = stm.executeQuery();
-            TemplateTrack tt;
+            String sql = "SELECT templatename, username, sessionidentifier, COUNT(*)"
+                         + " FROM templatetrack"
+                         + " GROUP BY templatename, username, sessionidentifier";
+            stm = con.createStatement();
+            rs = stm.executeQuery(sql);
             while (rs.next()) {
-                tt = new TemplateTrack(rs.getString(1), rs.getString(2), rs.getString(3));
-                templatesExecutionCache.addExecution(tt);
+                String userName = rs.getString(2);
+                String executionKey = (userName != null && !"".equals(userName))
+                                      ? userName
+                                      : rs.getString(3);
+                templatesExecutionCache.addExecutions(rs.getString(1), executionKey,
+                                                      rs.getInt(4));
             }
         } catch (SQLException sqle) {
             LOG.error("Error during loading template tracks into the cache", sqle);
+        } finally {
+            templateTracker.releaseResources(rs, stm);
         }
     }
 
@@ -132,15 +136,17 @@ public class TemplateTracker extends AbstractTracker
         Statement stm = null;
         Map<String, Integer> templateRank = new HashMap<String, Integer>();
         try {
+            // The executions are counted in memory, so only the (small) tag table is read
             stm = con.createStatement();
-            String sql = "SELECT tt.templatename, COUNT(tt.templatename) as accessnumbers "
-                        + "FROM templatetrack tt, tag t "
-                        + "WHERE tt.templatename=t.objectidentifier "
-                        + "AND t.tagname LIKE '%public' AND t.type='template' "
-                        + "GROUP BY tt.templatename";
+            String sql = "SELECT DISTINCT t.objectidentifier FROM tag t "
+                        + "WHERE t.tagname LIKE '%public' AND t.type='template'";
             rs = stm.executeQuery(sql);
+            Map<String, Integer> executionCounts = templatesExecutionCache.getExecutionCounts();
             while (rs.next()) {
-                templateRank.put(rs.getString(1), rs.getInt(2));
+                Integer count = executionCounts.get(rs.getString(1));
+                if (count != null) {
+                    templateRank.put(rs.getString(1), count);
+                }
             }
             return templateRank;
         } catch (SQLException sqle) {
@@ -162,9 +168,24 @@ public class TemplateTracker extends AbstractTracker
      * @return map with key the template name and rank
      */
     protected Map<String, Integer> getRank(TemplateManager templateManager) {
+        if (templateManager == null) {
+            return calculateRank(new HashMap<String, Double>());
+        }
+        Set<String> publicTemplates =
+            new HashSet<String>(templateManager.getValidGlobalTemplates().keySet());
+        long version = templatesExecutionCache.getVersion();
+        RankCache cached = rankCache;
+        if (cached == null || cached.version != version
+                || !cached.publicTemplates.equals(publicTemplates)) {
+            cached = new RankCache(version, publicTemplates,
+                    calculateRank(templatesExecutionCache.getLogarithmMap(publicTemplates)));
+            rankCache = cached;
+        }
+        return new HashMap<String, Integer>(cached.ranks);
+    }
+
+    private static Map<String, Integer> calculateRank(Map<String, Double> templateMergedRank) {
         Map<String, Integer> templateRank = new HashMap<String, Integer>();
-        Map<String, Double> templateMergedRank = templatesExecutionCache.getLogarithmMap(null,
-                                                                              templateManager);
 
         //order the templateMergedRank by value descending
         List<Entry<String, Double>> listOrdered =
@@ -202,6 +223,22 @@ public class TemplateTracker extends AbstractTracker
         return ranks.get(templateName);
     }
 
+    /**
+     * The ranks calculated for a version of the executions map and a set of public templates.
+     */
+    private static final class RankCache
+    {
+        private final long version;
+        private final Set<String> publicTemplates;
+        private final Map<String, Integer> ranks;
+
+        RankCache(long version, Set<String> publicTemplates, Map<String, Integer> ranks) {
+            this.version = version;
+            this.publicTemplates = publicTemplates;
+            this.ranks = ranks;
+        }
+    }
+
     /**
      * Return a map containing the logarithm of accesses for each template. The map is obtained
      * merging the map of logarithm of accesses for single users and the map of logarithm of
@@ -272,6 +309,7 @@ public class TemplateTracker extends AbstractTracker
                         + " SET templatename = '" + newTemplateName + "'"
                         + " WHERE templatename = '" + oldTemplateName + "'";
             stm.executeUpdate(sql);
+            templatesExecutionCache.renameTemplate(oldTemplateName, newTemplateName);
         } catch (SQLException sqe) {
             LOG.error("Problem during updating templatename in updateTemplateName() ,method", sqe);
         } finally {
@@ -11,9 +11,9 @@ package org.intermine.api.tracker;
  */
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.intermine.api.tracker.track.TemplateTrack;
-import org.intermine.api.template.ApiTemplate;
 import org.intermine.api.template.TemplateManager;
 
 /**
@@ -26,6 +26,7 @@ public class TemplatesExecutionMap
 {
     protected Map<String, Map<String, Integer>> templateExecutions =
                                               new HashMap<String, Map<String, Integer>>();
+    private long version = 0;
 
     /**
      * Add a new template track into the map
@@ -36,23 +37,74 @@ public class TemplatesExecutionMap
                               && !"".equals(templateTrack.getUserName()))
                               ? templateTrack.getUserName()
                               : templateTrack.getSessionIdentifier();
-        String templateName = templateTrack.getTemplateName();
-        Map<String, Integer> execution;
-        if (!templateExecutions.containsKey(templateName)) {
+        addExecutions(templateTrack.getTemplateName(), executionKey, 1);
+    }
+
+    /**
+     * Add a number of executions of a template by the same user (or during the same session)
+     * into the map
+     * @param templateName the template name
+     * @param executionKey the user's name or the session identifier
+     * @param count the number of executions
+     */
+    public synchronized void addExecutions(String templateName, String executionKey, int count) {
+        Map<String, Integer> execution = templateExecutions.get(templateName);
+        if (execution == null) {
             execution = new HashMap<String, Integer>();
-            execution.put(executionKey, 1);
             templateExecutions.put(templateName, execution);
         }
-        else {
-            execution = templateExecutions.get(templateName);
-            if (!execution.containsKey(executionKey)) {
-                execution.put(executionKey, 1);
-            } else {
-                execution.put(executionKey, execution.get(executionKey).intValue() + 1);
+        Integer previous = execution.get(executionKey);
+        execution.put(executionKey, (previous == null) ? count : previous.intValue() + count);
+        version++;
+    }
+
+    /**
+     * Return the total number of executions for each template in the map
+     * @return map having as key the template's name and as value the number of executions
+     */
+    public synchronized Map<String, Integer> getExecutionCounts() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Map.Entry<String, Map<String, Integer>> entry : templateExecutions.entrySet()) {
+            int count = 0;
+            for (Integer executions : entry.getValue().values()) {
+                count += executions.intValue();
+            }
+            counts.put(entry.getKey(), count);
+        }
+        return counts;
+    }
+
+    /**
+     * Move the executions of a template to its new name
+     * @param oldTemplateName the old name
+     * @param newTemplateName the new name
+     */
+    public synchronized void renameTemplate(String oldTemplateName, String newTemplateName) {
+        Map<String, Integer> execution = templateExecutions.remove(oldTemplateName);
+        if (execution != null) {
+            for (Map.Entry<String, Integer> entry : execution.entrySet()) {
+                Map<String, Integer> newExecution = templateExecutions.get(newTemplateName);
+                if (newExecution == null) {
+                    newExecution = new HashMap<String, Integer>();
+                    templateExecutions.put(newTemplateName, newExecution);
+                }
+                Integer previous = newExecution.get(entry.getKey());
+                newExecution.put(entry.getKey(), (previous == null) ? entry.getValue()
+                        : previous.intValue() + entry.getValue().intValue());
             }
+            version++;
         }
     }
 
+    /**
+     * Return a number that changes whenever the executions in the map change, so that values
+     * calculated from the map can be cached
+     * @return the version of the map
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
     /**
      * Return a map containing the logarithm's sum of the templates executions launched by
      * the same users or during the same sessions. If the user name is specified, we only
@@ -63,23 +115,15 @@ public class TemplatesExecutionMap
      */
     public Map<String, Double> getLogarithmMap(String executionKey,
                                                TemplateManager templateManager) {
-        Map<String, Double> logarithmMap = new HashMap<String, Double>();
         if (executionKey == null) {
-            if (templateManager != null) {
-                Map<String, ApiTemplate> publicTemplates =
-                    templateManager.getValidGlobalTemplates();
-                for (String templateName : templateExecutions.keySet()) {
-                    if (publicTemplates.containsKey(templateName)) {
-                        Map<String, Integer> execution = templateExecutions.get(templateName);
-                        double accessLn = 0;
-                        for (String key : execution.keySet()) {
-                            accessLn = accessLn + Math.log(execution.get(key) + 1);
-                        }
-                        logarithmMap.put(templateName, accessLn);
-                    }
-                }
+            if (templateManager == null) {
+                return new HashMap<String, Double>();
             }
-        } else {
+            // fetched outside the lock, as validating the templates may be slow
+            return getLogarithmMap(templateManager.getValidGlobalTemplates().keySet());
+        }
+        Map<String, Double> logarithmMap = new HashMap<String, Double>();
+        synchronized (this) {
             for (String templateName : templateExecutions.keySet()) {
                 Map<String, Integer> execution = templateExecutions.get(templateName);
                 if (execution.containsKey(executionKey)) {
@@ -90,4 +134,25 @@ public class TemplatesExecutionMap
         }
         return logarithmMap;
     }
+
+    /**
+     * Return a map containing the logarithm's sum of the executions of the public templates
+     * specified, launched by the same users or during the same sessions.
+     * @param publicTemplates the names of the public templates
+     * @return map having as key the template's name and as value the logarithm sum
+     */
+    public synchronized Map<String, Double> getLogarithmMap(Set<String> publicTemplates) {
+        Map<String, Double> logarithmMap = new HashMap<String, Double>();
+        for (String templateName : templateExecutions.keySet()) {
+            if (publicTemplates.contains(templateName)) {
+                Map<String, Integer> execution = templateExecutions.get(templateName);
+                double accessLn = 0;
+                for (String key : execution.keySet()) {
+                    accessLn = accessLn + Math.log(execution.get(key) + 1);
+                }
+                logarithmMap.put(templateName, accessLn);
+            }
+        }
+        return logarithmMap;
+    }
 }
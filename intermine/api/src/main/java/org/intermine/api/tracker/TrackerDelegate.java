@@ -13,10 +13,10 @@ import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.profile.Profile;
@@ -40,6 +40,8 @@ import org.intermine.util.Shutdownable;
 public class TrackerDelegate implements Shutdownable
 {
     private static final Logger LOG = Logger.getLogger(TrackerDelegate.class);
+    /** The maximum number of tracks waiting to be stored, beyond which tracks are dropped. */
+    public static final int MAX_QUEUED_TRACKS = 10000;
     protected Map<String, Tracker> trackers = new HashMap<String, Tracker>();
     protected ObjectStoreWriter osw;
     protected final Connection connection;
@@ -52,7 +54,9 @@ public class TrackerDelegate implements Shutdownable
      * @param osw the object store witer used to retrieve the connections
      */
     public TrackerDelegate(String[] trackerClassNames, ObjectStoreWriter osw) {
-        Queue<Track> trackQueue = new LinkedList<Track>();
+        // Request threads offer tracks without waiting for the logger thread, which takes them
+        // under a separate lock
+        BlockingQueue<Track> trackQueue = new LinkedBlockingQueue<Track>(MAX_QUEUED_TRACKS);
         this.osw = osw;
         ShutdownHook.registerObject(new WeakReference<Object>(this));
         try {
@@ -367,6 +371,14 @@ public class TrackerDelegate implements Shutdownable
         } catch (InterruptedException ie) {
             LOG.error(ie);
         }
+        for (Tracker tracker : trackers.values()) {
+            if (tracker instanceof AbstractTracker
+                    && ((AbstractTracker) tracker).getDroppedTracks() > 0) {
+                LOG.warn(tracker.getName() + " dropped "
+                        + ((AbstractTracker) tracker).getDroppedTracks()
+                        + " tracks because the queue was full");
+            }
+        }
         releaseConnection(connection);
         isClosed = true;
     }
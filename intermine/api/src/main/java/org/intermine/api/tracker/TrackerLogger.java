@@ -10,28 +10,46 @@ package org.intermine.api.tracker;
  *
  */
 import java.sql.Connection;
-import java.util.Queue;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.log4j.Logger;
 import org.intermine.api.tracker.track.Track;
+import org.intermine.api.tracker.track.TrackAbstract;
 
 /**
  * Runnable object providing insertion into the database. TrackerLogger is created
- * for a specific connection and table.
+ * for a specific connection and queue. It waits for tracks to arrive on the queue, and
+ * stores all the tracks waiting (up to BATCH_SIZE) together, with one batched INSERT statement
+ * per table and a single commit, rather than a database round trip for each track.
+ * When interrupted, the tracks still in the queue are stored before the thread finishes.
  * @author dbutano
  *
  */
 public class TrackerLogger implements Runnable
 {
+    private static final Logger LOG = Logger.getLogger(TrackerLogger.class);
+    /** The maximum number of tracks stored in one batch. */
+    public static final int BATCH_SIZE = 500;
 
     private Connection connection;
-    private Queue<Track> trackQueue;
+    private BlockingQueue<Track> trackQueue;
+    private final AtomicLong stored = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
 
     /**
      * Construct a TrackerLogger for a specific connection and table
      * @param connection the connection to the database
      * @param trackQueue track queue
      */
-    public TrackerLogger(Connection connection, Queue<Track> trackQueue) {
+    public TrackerLogger(Connection connection, BlockingQueue<Track> trackQueue) {
         this.connection = connection;
         this.trackQueue = trackQueue;
         if (connection == null || trackQueue == null) {
@@ -44,21 +62,101 @@ public class TrackerLogger implements Runnable
      */
     @Override
     public void run() {
-        for (;;) {
-            if (Thread.interrupted()) {
-                return;
+        List<Track> batch = new ArrayList<Track>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(trackQueue.take());
+                trackQueue.drainTo(batch, BATCH_SIZE - 1);
+                storeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Fall through to store whatever is left
+        } finally {
+            batch.clear();
+            while (trackQueue.drainTo(batch, BATCH_SIZE) > 0) {
+                storeBatch(batch);
+                batch.clear();
             }
+            LOG.info("TrackerLogger finished: " + stored.get() + " tracks stored in "
+                    + batches.get() + " batches, " + failed.get() + " failed");
+        }
+    }
 
-            Track track = trackQueue.poll();
-            if (track != null) {
-                track.store(connection);
+    /**
+     * Store a batch of tracks, grouped by table, in a single transaction. If the batch fails,
+     * the tracks are stored one at a time so that one bad track does not lose the others.
+     * @param batch the tracks to store
+     */
+    protected void storeBatch(List<Track> batch) {
+        Map<String, List<Track>> byTable = new LinkedHashMap<String, List<Track>>();
+        for (Track track : batch) {
+            List<Track> tableTracks = byTable.get(track.getTableName());
+            if (tableTracks == null) {
+                tableTracks = new ArrayList<Track>();
+                byTable.put(track.getTableName(), tableTracks);
             }
+            tableTracks.add(track);
+        }
+        try {
+            connection.setAutoCommit(false);
             try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
+                for (Map.Entry<String, List<Track>> entry : byTable.entrySet()) {
+                    insertTracks(entry.getKey(), entry.getValue());
+                }
+                connection.commit();
+                stored.addAndGet(batch.size());
+                batches.incrementAndGet();
                 return;
+            } catch (SQLException e) {
+                LOG.warn("Problem storing a batch of " + batch.size()
+                        + " tracks, storing them individually", e);
+                connection.rollback();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOG.error("Problem with the tracker connection", e);
+        }
+        for (Track track : batch) {
+            try {
+                track.store(connection);
+                stored.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                LOG.error("Problem storing track into " + track.getTableName(), e);
             }
+        }
+    }
 
+    private void insertTracks(String tableName, List<Track> tracks) throws SQLException {
+        String sql = TrackAbstract.getInsertStatement(tableName,
+                tracks.get(0).getFormattedTrack().length);
+        PreparedStatement stm = connection.prepareStatement(sql);
+        try {
+            for (Track track : tracks) {
+                TrackAbstract.setValues(stm, track.getFormattedTrack());
+                stm.addBatch();
+            }
+            stm.executeBatch();
+        } finally {
+            stm.close();
         }
     }
+
+    /**
+     * Return the number of tracks stored into the database
+     * @return the number of tracks
+     */
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    /**
+     * Return the number of tracks that couldn't be stored into the database
+     * @return the number of tracks
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
 }
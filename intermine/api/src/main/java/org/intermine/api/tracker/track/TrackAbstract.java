@@ -31,32 +31,16 @@ public abstract class TrackAbstract implements Track
 
     @Override
     public void store(Connection con) {
-        String sql = "";
-        PreparedStatement stm = null;
-        StringBuffer valuesBuffer = new StringBuffer();
         Object[] values = getFormattedTrack();
-        int valuesSize = values.length;
-        for (int index = 0; index < valuesSize; index++) {
-            valuesBuffer = valuesBuffer.append("?,");
-        }
-        valuesBuffer = valuesBuffer.deleteCharAt(valuesBuffer.length() - 1);
+        String sql = getInsertStatement(getTableName(), values.length);
+        PreparedStatement stm = null;
         try {
-            sql = "INSERT INTO " + getTableName() + " VALUES(" + valuesBuffer + ")";
             stm = con.prepareStatement(sql);
-            Object value = null;
-            for (int index = 0; index < valuesSize; ) {
-                value = values[index];
-                if (value instanceof Integer) {
-                    stm.setInt(++index, (Integer) value);
-                } else if (value instanceof Timestamp) {
-                    stm.setTimestamp(++index, (Timestamp) value);
-                } else {
-                    stm.setString(++index, value.toString());
-                }
-            }
+            setValues(stm, values);
             stm.executeUpdate();
         } catch (SQLException sqe) {
             LOG.error("Problem executing the statement: " + sql, sqe);
+        } finally {
             if (stm != null) {
                 try {
                     stm.close();
@@ -67,6 +51,40 @@ public abstract class TrackAbstract implements Track
         }
     }
 
+    /**
+     * Return the SQL statement inserting a track into the table specified, with a parameter for
+     * each value of the track
+     * @param tableName the table name
+     * @param valuesSize the number of values in the track
+     * @return String the sql statement
+     */
+    public static String getInsertStatement(String tableName, int valuesSize) {
+        StringBuilder valuesBuffer = new StringBuilder();
+        for (int index = 0; index < valuesSize; index++) {
+            valuesBuffer.append(index == 0 ? "?" : ",?");
+        }
+        return "INSERT INTO " + tableName + " VALUES(" + valuesBuffer + ")";
+    }
+
+    /**
+     * Set the parameters of a statement created with getInsertStatement to the values of a track
+     * @param stm the prepared statement
+     * @param values the formatted track
+     * @throws SQLException if the parameters can't be set
+     */
+    public static void setValues(PreparedStatement stm, Object[] values) throws SQLException {
+        for (int index = 0; index < values.length; ) {
+            Object value = values[index];
+            if (value instanceof Integer) {
+                stm.setInt(++index, (Integer) value);
+            } else if (value instanceof Timestamp) {
+                stm.setTimestamp(++index, (Timestamp) value);
+            } else {
+                stm.setString(++index, (value == null) ? null : value.toString());
+            }
+        }
+    }
+
     /**
      * Return the timestamp of the event
      * @return Timestamp the timestamp
@@ -205,7 +205,7 @@ public class PermanentToken implements org.intermine.model.InterMineObject
         return sb;
     }
     public void setoBJECT(String notXml, ObjectStore os) {
-        setoBJECT(NotXmlParser.SPLITTER.split(notXml), os);
+        setoBJECT(NotXmlParser.split(notXml), os);
     }
     public void setoBJECT(final String[] notXml, final ObjectStore os) {
         if (!org.intermine.api.userprofile.PermanentToken.class.equals(getClass())) {
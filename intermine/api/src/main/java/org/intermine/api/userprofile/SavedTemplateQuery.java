@@ -142,7 +142,7 @@ public class SavedTemplateQuery implements org.intermine.model.InterMineObject
         return sb;
     }
     public void setoBJECT(String notXml, ObjectStore os) {
-        setoBJECT(NotXmlParser.SPLITTER.split(notXml), os);
+        setoBJECT(NotXmlParser.split(notXml), os);
     }
     public void setoBJECT(final String[] notXml, final ObjectStore os) {
         if (!org.intermine.api.userprofile.SavedTemplateQuery.class.equals(getClass())) {
@@ -0,0 +1,66 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+public class WildcardMatcherTest extends TestCase
+{
+    private static final List<String> WILDCARDS = Arrays.asList("EmployeeA*", "*B3", "*oye*",
+            "Emp*ee*1", "a*b*c", "Emp(loyee)*", "E.*A1", "x+*", "**");
+    private static final List<String> VALUES = Arrays.asList("EmployeeA1", "employeea2",
+            "EmployeeB3", "B3", "abc", "abbc", "ac", "ab", "Employ", "EA1", "E..A1", "x+y", "xxy",
+            "", "Employee");
+
+    public WildcardMatcherTest(String arg) {
+        super(arg);
+    }
+
+    public void testPrefix() throws Exception {
+        WildcardMatcher matcher = new WildcardMatcher(Collections.singleton("EmployeeA*"));
+        assertEquals(Collections.singleton("EmployeeA*"), matcher.getMatches("EMPLOYEEA1"));
+        assertEquals(Collections.singleton("EmployeeA*"), matcher.getMatches("employeea"));
+        assertTrue(matcher.getMatches("EmployeeB1").isEmpty());
+        assertTrue(matcher.getMatches("Employee").isEmpty());
+    }
+
+    public void testSuffixAndContains() throws Exception {
+        WildcardMatcher matcher = new WildcardMatcher(Arrays.asList("*B3", "*oye*"));
+        assertEquals(new HashSet<String>(Arrays.asList("*B3", "*oye*")),
+                matcher.getMatches("EmployeeB3"));
+        assertEquals(Collections.singleton("*B3"), matcher.getMatches("b3"));
+        assertTrue(matcher.getMatches("B33").isEmpty());
+    }
+
+    public void testSameAsRegularExpressions() throws Exception {
+        WildcardMatcher matcher = new WildcardMatcher(WILDCARDS);
+        for (String value : VALUES) {
+            Set<String> expected = new LinkedHashSet<String>();
+            for (String wildcard : WILDCARDS) {
+                String patternString = wildcard.toLowerCase().replaceAll("\\*", "\\.\\*");
+                patternString = patternString.replaceAll("\\(", "\\.\\*");
+                patternString = patternString.replaceAll("\\)", "\\.\\*");
+                if (Pattern.compile(patternString).matcher(value.toLowerCase()).matches()) {
+                    expected.add(wildcard);
+                }
+            }
+            assertEquals(value, expected, new HashSet<String>(matcher.getMatches(value)));
+        }
+    }
+}
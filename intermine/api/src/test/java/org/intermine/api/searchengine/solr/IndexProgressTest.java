@@ -0,0 +1,72 @@
+package org.intermine.api.searchengine.solr;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class IndexProgressTest extends TestCase
+{
+    public IndexProgressTest(String arg) {
+        super(arg);
+    }
+
+    public void testPartitions() throws Exception {
+        IndexProgress progress = new IndexProgress(5, 29, 10);
+        assertEquals(3, progress.getPartitionCount());
+        List<IndexProgress.Partition> partitions = progress.getRemainingPartitions();
+        assertEquals(3, partitions.size());
+        assertEquals(5, partitions.get(0).getFirstId());
+        assertEquals(14, partitions.get(0).getLastId());
+        assertEquals(25, partitions.get(2).getFirstId());
+        assertEquals(29, partitions.get(2).getLastId());
+
+        progress.partitionDone(1);
+        partitions = progress.getRemainingPartitions();
+        assertEquals(2, partitions.size());
+        assertEquals(0, partitions.get(0).getIndex());
+        assertEquals(2, partitions.get(1).getIndex());
+    }
+
+    public void testNoObjects() throws Exception {
+        IndexProgress progress = new IndexProgress(0, -1, 10);
+        assertEquals(0, progress.getPartitionCount());
+        assertTrue(progress.getRemainingPartitions().isEmpty());
+    }
+
+    public void testLargeIds() throws Exception {
+        IndexProgress progress = new IndexProgress(Integer.MIN_VALUE, Integer.MAX_VALUE,
+                Integer.MAX_VALUE);
+        assertEquals(3, progress.getPartitionCount());
+        List<IndexProgress.Partition> partitions = progress.getRemainingPartitions();
+        assertEquals(Integer.MAX_VALUE, partitions.get(2).getLastId());
+        assertEquals(Integer.MAX_VALUE - 1, partitions.get(2).getFirstId());
+    }
+
+    public void testResume() throws Exception {
+        IndexProgress stored = new IndexProgress(1, 100, 10);
+        stored.partitionDone(3);
+        stored.partitionDone(0);
+        assertEquals("1:100:10:0,3", stored.toString());
+
+        IndexProgress progress = new IndexProgress(1, 100, 10);
+        assertTrue(progress.resumeFrom(IndexProgress.parse(stored.toString())));
+        assertEquals(2, progress.getDoneCount());
+        assertEquals(8, progress.getRemainingPartitions().size());
+
+        assertFalse(new IndexProgress(1, 101, 10).resumeFrom(stored));
+        assertFalse(progress.resumeFrom(null));
+        assertNull(IndexProgress.parse("rubbish"));
+        assertNull(IndexProgress.parse("1:2:x:"));
+        assertEquals(0, IndexProgress.parse("1:100:10:").getDoneCount());
+    }
+}
@@ -171,4 +171,21 @@ public class TemplateExecutionMapTest extends TestCase
         assertEquals(Math.log(2),
                     templateExecutionsMap.getLogarithmMap(null, templateManager).get("template2"));
     }
+
+    public void testGetExecutionCounts() {
+        Map<String, Integer> counts = templateExecutionsMap.getExecutionCounts();
+        assertEquals(5, counts.get("template1").intValue());
+        assertEquals(1, counts.get("template2").intValue());
+    }
+
+    public void testRenameTemplate() {
+        long version = templateExecutionsMap.getVersion();
+        templateExecutionsMap.renameTemplate("template2", "template1");
+        assertTrue(templateExecutionsMap.getVersion() != version);
+        assertNull(templateExecutionsMap.getTemplateExecutions().get("template2"));
+        Map<String, Integer> templateExecutions = templateExecutionsMap.getTemplateExecutions()
+                                                                       .get("template1");
+        assertEquals(2, templateExecutions.get("userName2").intValue());
+        assertEquals(6, templateExecutionsMap.getExecutionCounts().get("template1").intValue());
+    }
 }
@@ -58,12 +58,13 @@ public class TrackerLoggerTest extends TestCase {
                           new Timestamp(System.currentTimeMillis())));
         }
         trackerLogger = new TrackerLogger(con, trackQueue);
-        new Thread(trackerLogger).start();
-        synchronized (trackQueue) {
-            while (!trackQueue.isEmpty()) {
-                Thread.sleep(100);
-            }
-        }
+        Thread thread = new Thread(trackerLogger);
+        thread.start();
+        // the logger stores any tracks still queued before it finishes
+        thread.interrupt();
+        thread.join();
+        assertTrue(trackQueue.isEmpty());
+        assertEquals(count, trackerLogger.getStoredCount());
         String sql = "SELECT COUNT(*) FROM logintrack";
         Statement stm = con.createStatement();
         ResultSet rs = stm.executeQuery(sql);
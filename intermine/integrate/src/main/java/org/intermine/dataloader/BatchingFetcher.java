@@ -48,6 +48,7 @@ import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SingletonResults;
 import org.intermine.util.CollectionUtil;
+import org.intermine.util.IntSet;
 import org.intermine.util.ShutdownHook;
 import org.intermine.util.Shutdownable;
 
@@ -276,7 +277,7 @@ public class BatchingFetcher extends HintingFetcher
             Map<InterMineObject, Set<InterMineObject>> results,
             Map<ClassDescriptor, List<InterMineObject>> cldToObjectsForCld,
             long time1) throws ObjectStoreException {
-        Set<Integer> fetchedObjectIds = Collections.synchronizedSet(new HashSet<Integer>());
+        IntSet fetchedObjectIds = new IntSet();
         Map<PrimaryKey, ClassDescriptor> pksNotDone
             = new IdentityHashMap<PrimaryKey, ClassDescriptor>(pksToDo);
         while (!pksToDo.isEmpty()) {
@@ -344,13 +345,13 @@ public class BatchingFetcher extends HintingFetcher
      * @param cld the ClassDescriptor of the PrimaryKey
      * @param results a Map to hold results that are to be added to the cache
      * @param objectsForCld a List of objects relevant to this PrimaryKey
-     * @param fetchedObjectIds a Set to hold ids of objects that are fetched, to prefetch from the
-     * data tracker later
+     * @param fetchedObjectIds an IntSet to hold ids of objects that are fetched, to prefetch from
+     * the data tracker later
      * @throws ObjectStoreException if something goes wrong
      */
     protected void doPk(PrimaryKey pk, ClassDescriptor cld, Map<InterMineObject,
             Set<InterMineObject>> results, List<InterMineObject> objectsForCld,
-            Set<Integer> fetchedObjectIds) throws ObjectStoreException {
+            IntSet fetchedObjectIds) throws ObjectStoreException {
         Iterator<InterMineObject> objectsForCldIter = objectsForCld.iterator();
         while (objectsForCldIter.hasNext()) {
             int objCount = 0;
@@ -485,7 +486,7 @@ public class BatchingFetcher extends HintingFetcher
                         set.add((InterMineObject) row.get(0));
                         matches++;
                     }
-                    fetchedObjectIds.add(((InterMineObject) row.get(0)).getId());
+                    fetchedObjectIds.add(((InterMineObject) row.get(0)).getId().intValue());
                 }
                 //LOG.info("Fetched " + res.size() + " equivalent objects for " + objCount
                 //        + " objects in " + (System.currentTimeMillis() - time) + " ms for "
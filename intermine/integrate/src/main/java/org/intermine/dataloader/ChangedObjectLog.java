@@ -0,0 +1,211 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.log4j.Logger;
+import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseUtil;
+import org.intermine.sql.writebatch.Batch;
+import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
+import org.intermine.util.IntBitmap;
+import org.intermine.util.IntIterator;
+
+/**
+ * A record of the ids of the objects stored or deleted by an IntegrationWriter, so that indexes
+ * built from the objects (such as the keyword search index) can be brought up to date by
+ * processing only the objects that have changed.
+ * <p>
+ * The ids are collected in memory while a source is loaded, and added to a table in the
+ * production database when the IntegrationWriter is closed. The table accumulates the changes
+ * of every source loaded until a consumer reads them and clears it. A row with a null id means
+ * that objects were changed in a way that could not be recorded, and everything must be
+ * reprocessed.
+ *
+ * @author agent
+ */
+public class ChangedObjectLog
+{
+    private static final Logger LOG = Logger.getLogger(ChangedObjectLog.class);
+    /** The name of the table holding the ids of changed objects. */
+    public static final String TABLE_NAME = "changed_objects";
+    private static final String[] COLUMNS = new String[] {"id"};
+
+    private final IntBitmap ids = new IntBitmap();
+    private boolean allChanged = false;
+
+    /**
+     * Records that an object has been stored or deleted.
+     *
+     * @param id the id of the object
+     */
+    public synchronized void objectChanged(int id) {
+        ids.add(id);
+    }
+
+    /**
+     * Records that objects have been changed without their ids being known.
+     */
+    public synchronized void allChanged() {
+        allChanged = true;
+    }
+
+    /**
+     * Returns true if objects have been changed without their ids being known, so that every
+     * object must be treated as changed.
+     *
+     * @return a boolean
+     */
+    public synchronized boolean isAllChanged() {
+        return allChanged;
+    }
+
+    /**
+     * Returns the ids of the objects recorded as changed.
+     *
+     * @return an IntBitmap, which must not be altered
+     */
+    public synchronized IntBitmap getIds() {
+        return ids;
+    }
+
+    /**
+     * Adds the changes recorded in this log to the table in a database, and empties this log.
+     *
+     * @param db the database
+     * @throws SQLException if there is a problem writing to the database
+     */
+    public synchronized void write(Database db) throws SQLException {
+        if (ids.isEmpty() && !allChanged) {
+            return;
+        }
+        Connection c = db.getConnection();
+        try {
+            c.setAutoCommit(false);
+            createTable(c);
+            Batch batch = new Batch(new BatchWriterPostgresCopyImpl());
+            if (allChanged) {
+                batch.addRow(c, TABLE_NAME, null, COLUMNS, new Object[] {null});
+            }
+            IntIterator iter = ids.iterator();
+            while (iter.hasNext()) {
+                Integer id = Integer.valueOf(iter.next());
+                batch.addRow(c, TABLE_NAME, id, COLUMNS, new Object[] {id});
+            }
+            batch.close(c);
+            c.commit();
+            LOG.info("Recorded " + ids.size() + " changed objects in " + TABLE_NAME
+                    + (allChanged ? ", and that all objects have changed" : ""));
+            ids.clear();
+            allChanged = false;
+        } finally {
+            c.setAutoCommit(true);
+            c.close();
+        }
+    }
+
+    /**
+     * Records in the table in a database that objects have been changed without their ids being
+     * known, if changes are being recorded in that database.
+     *
+     * @param db the database
+     * @throws SQLException if there is a problem writing to the database
+     */
+    public static void recordAllChanged(Database db) throws SQLException {
+        Connection c = db.getConnection();
+        try {
+            if (DatabaseUtil.tableExists(c, TABLE_NAME)) {
+                Statement s = c.createStatement();
+                try {
+                    s.execute("INSERT INTO " + TABLE_NAME + " (id) VALUES (NULL)");
+                } finally {
+                    s.close();
+                }
+                LOG.info("Recorded in " + TABLE_NAME + " that all objects have changed");
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Reads all the changes recorded in the table in a database.
+     *
+     * @param db the database
+     * @return a ChangedObjectLog, or null if the table does not exist because changes have never
+     * been recorded
+     * @throws SQLException if there is a problem reading the database
+     */
+    public static ChangedObjectLog read(Database db) throws SQLException {
+        Connection c = db.getConnection();
+        try {
+            if (!DatabaseUtil.tableExists(c, TABLE_NAME)) {
+                return null;
+            }
+            ChangedObjectLog retval = new ChangedObjectLog();
+            Statement s = c.createStatement();
+            try {
+                ResultSet r = s.executeQuery("SELECT DISTINCT id FROM " + TABLE_NAME);
+                while (r.next()) {
+                    int id = r.getInt(1);
+                    if (r.wasNull()) {
+                        retval.allChanged();
+                    } else {
+                        retval.objectChanged(id);
+                    }
+                }
+            } finally {
+                s.close();
+            }
+            return retval;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Removes all the changes recorded in the table in a database, once they have been
+     * processed. This must not be run while a source is being loaded.
+     *
+     * @param db the database
+     * @throws SQLException if there is a problem writing to the database
+     */
+    public static void clear(Database db) throws SQLException {
+        Connection c = db.getConnection();
+        try {
+            if (DatabaseUtil.tableExists(c, TABLE_NAME)) {
+                Statement s = c.createStatement();
+                try {
+                    s.execute("DELETE FROM " + TABLE_NAME);
+                } finally {
+                    s.close();
+                }
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void createTable(Connection c) throws SQLException {
+        if (!DatabaseUtil.tableExists(c, TABLE_NAME)) {
+            Statement s = c.createStatement();
+            try {
+                s.execute("CREATE TABLE " + TABLE_NAME + " (id integer)");
+            } finally {
+                s.close();
+            }
+        }
+    }
+}
@@ -19,14 +19,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.intermine.sql.Database;
+import org.intermine.util.IntIterator;
+import org.intermine.util.IntList;
+import org.intermine.util.IntSet;
+import org.intermine.util.IntToObjectMap;
 
 /**
  * Interface providing access to data tracking.
@@ -52,27 +57,35 @@ public class DataTracker
      * The LinkedHashMap has a threshold size. When it grows bigger than maxSize, a database write
      * occurs, which stores commitSize least-recently-used entries in the database, which then
      * become type 4.
+     *
+     * So that many integration threads can use the tracker at once, the entries are split by
+     * object id into a number of stripes, each with its own LinkedHashMap, write-back map and
+     * lock, and each with its share of maxSize and commitSize. All operations on one object go
+     * to the same stripe. Small trackers have only one stripe, and behave exactly as before.
+     *
+     * Locks are always taken in the order writeLock, then a Stripe, then the CacheStorer.
      */
-    private int maxSize;
-    private int commitSize;
-    private LinkedHashMap<Integer, ObjectDescription> cache;
-    private HashMap<Integer, ObjectDescription> writeBack =
-        new HashMap<Integer, ObjectDescription>();
-    private HashMap<String, Source> nameToSource = new HashMap<String, Source>();
-    private HashMap<Source, String> sourceToName = new HashMap<Source, String>();
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_SIZE = 10000;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final Object writeLock = new Object();
+    private final Map<String, Source> nameToSource = new ConcurrentHashMap<String, Source>();
+    private final Map<Source, String> sourceToName = new ConcurrentHashMap<Source, String>();
     private Connection conn;
     private Connection storeConn;
-    protected Exception broken = null;
+    protected volatile Exception broken = null;
     private CacheStorer cacheStorer;
-    private int version = 0;
+    private final AtomicInteger version = new AtomicInteger(0);
     // This reference is here so that the Database doesn't get garbage collected.
     private Database db;
 
-    private int ops = 0;
-    private int misses = 0;
-    private int batched = 0;
-    private long timeSpentReading = 0;
-    private long timeSpentPrefetching = 0;
+    private final AtomicInteger ops = new AtomicInteger(0);
+    private final AtomicInteger misses = new AtomicInteger(0);
+    private final AtomicInteger batched = new AtomicInteger(0);
+    private final AtomicLong timeSpentReading = new AtomicLong(0);
+    private final AtomicLong timeSpentPrefetching = new AtomicLong(0);
 
     /**
      * Constructor for DataTracker.
@@ -82,10 +95,16 @@ public class DataTracker
      * @param commitSize number of entries to write to the database at a time
      */
     public DataTracker(Database db, int maxSize, int commitSize) {
-        this.maxSize = maxSize;
-        this.commitSize = commitSize;
         this.db = db;
-        cache = new LinkedHashMap<Integer, ObjectDescription>(maxSize * 14 / 10, 0.75F, true);
+        int stripeCount = 1;
+        while ((stripeCount < MAX_STRIPES) && (maxSize / (stripeCount * 2) >= MIN_STRIPE_SIZE)) {
+            stripeCount *= 2;
+        }
+        stripes = new Stripe[stripeCount];
+        stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxSize / stripeCount, Math.max(1, commitSize / stripeCount));
+        }
         try {
             conn = db.getConnection();
             conn.setAutoCommit(true);
@@ -130,43 +149,44 @@ public class DataTracker
     /**
      * Prefetches data for a specified set of object ids.
      *
-     * @param ids a Set of Integers
+     * @param ids an IntSet of object ids
      */
-    public void prefetchIds(Set<Integer> ids) {
+    public void prefetchIds(IntSet ids) {
         Connection prefetchConn = null;
         try {
             prefetchConn = db.getConnection();
             prefetchConn.setAutoCommit(true);
             prefetchConn.createStatement().execute("SET enable_seqscan = off;");
             long startTime = System.currentTimeMillis();
-            Set<Integer> toFetch = new HashSet<Integer>();
-            synchronized (this) {
-                if (broken != null) {
-                    IllegalArgumentException e = new IllegalArgumentException();
-                    e.initCause(broken);
-                    throw e;
-                }
-                for (Integer id : ids) {
-                    ObjectDescription desc = cache.get(id);
+            IntList toFetch = new IntList();
+            checkBroken();
+            IntIterator idIter = ids.iterator();
+            while (idIter.hasNext()) {
+                int id = idIter.next();
+                Stripe stripe = stripeFor(id);
+                synchronized (stripe) {
+                    ObjectDescription desc = stripe.cache.get(id);
                     if (desc == null) {
-                        desc = writeBack.get(id);
-                        cache.put(id, desc);
+                        desc = stripe.writeBack.get(id);
+                        if (desc != null) {
+                            stripe.cache.put(id, desc);
+                        }
                     }
                     if (desc == null) {
                         toFetch.add(id);
                     }
                 }
             }
-            Map<Integer, ObjectDescription> idsFetched = new HashMap<Integer, ObjectDescription>();
+            IntToObjectMap<ObjectDescription> idsFetched
+                = new IntToObjectMap<ObjectDescription>(toFetch.size());
             int highestVersionSeen = Integer.MIN_VALUE;
             if (!toFetch.isEmpty()) {
                 int count = 0;
                 StringBuffer sql = new StringBuffer();
                 boolean needComma = false;
-                Iterator<Integer> idIter = toFetch.iterator();
-                while (idIter.hasNext()) {
+                for (int i = 0; i < toFetch.size(); i++) {
                     count++;
-                    Integer id = idIter.next();
+                    int id = toFetch.get(i);
                     if (needComma) {
                         sql.append(", ");
                     } else {
@@ -176,7 +196,7 @@ public class DataTracker
                     needComma = true;
                     sql.append("" + id);
                     idsFetched.put(id, new ObjectDescription());
-                    if ((count % 500 == 0) || (!idIter.hasNext())) {
+                    if ((count % 500 == 0) || (i == toFetch.size() - 1)) {
                         sql.append(") ORDER BY version");
                         try {
                             Statement s = prefetchConn.createStatement();
@@ -187,7 +207,7 @@ public class DataTracker
                             //            - beforeExecute) + " ms");
                             while (r.next()) {
                                 ObjectDescription objectDescription =
-                                    idsFetched.get(new Integer(r.getInt(1)));
+                                    idsFetched.get(r.getInt(1));
                                 highestVersionSeen = Math.max(highestVersionSeen, r.getInt(4));
                                 objectDescription.putClean(r.getString(2).intern(),
                                                            stringToSource(r.getString(3)));
@@ -203,15 +223,24 @@ public class DataTracker
                     }
                 }
             }
-            synchronized (this) {
-                if (version <= highestVersionSeen) {
-                    version = highestVersionSeen + 1;
+            updateVersion(highestVersionSeen);
+            IntToObjectMap.EntryIterator<ObjectDescription> fetchedIter = idsFetched
+                .entryIterator();
+            while (fetchedIter.hasNext()) {
+                fetchedIter.next();
+                int id = fetchedIter.getKey();
+                Stripe stripe = stripeFor(id);
+                synchronized (stripe) {
+                    // Another thread may have fetched or changed the entry in the meantime, in
+                    // which case its copy is at least as new as ours.
+                    if ((stripe.cache.get(id) == null) && (stripe.writeBack.get(id) == null)) {
+                        stripe.cache.put(id, fetchedIter.getValue());
+                    }
+                    maybePoke(stripe);
                 }
-                cache.putAll(idsFetched);
-                maybePoke();
-                batched += idsFetched.size();
             }
-            timeSpentPrefetching += System.currentTimeMillis() - startTime;
+            batched.addAndGet(idsFetched.size());
+            timeSpentPrefetching.addAndGet(System.currentTimeMillis() - startTime);
         } catch (SQLException e) {
             broken = e;
             IllegalArgumentException e2 = new IllegalArgumentException();
@@ -235,35 +264,72 @@ public class DataTracker
      * @param field the name of the field
      * @return the Source
      */
-    public synchronized Source getSource(Integer id, String field) {
+    public Source getSource(Integer id, String field) {
         if (id == null) {
             throw new NullPointerException("id cannot be null");
         }
+        checkBroken();
+        Stripe stripe = stripeFor(id);
+        synchronized (stripe) {
+            ObjectDescription desc = getDesc(stripe, id, false);
+            return desc.getSource(field);
+        }
+    }
+
+    /**
+     * Returns the stripe that holds the entries for the given object id.
+     *
+     * @param id the ID
+     * @return a Stripe
+     */
+    private Stripe stripeFor(int id) {
+        int h = id * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    /**
+     * Throws an exception if a previous operation on the backing database has failed.
+     */
+    private void checkBroken() {
         if (broken != null) {
             IllegalArgumentException e = new IllegalArgumentException();
             e.initCause(broken);
             throw e;
         }
-        ObjectDescription desc = getDesc(id, false);
-        return desc.getSource(field);
     }
 
     /**
-     * Gets the object descriptor for a given object id
+     * Makes sure that the next version written is higher than the given version.
+     *
+     * @param versionSeen a version read from the backing database
+     */
+    private void updateVersion(int versionSeen) {
+        int current = version.get();
+        while ((current <= versionSeen) && !version.compareAndSet(current, versionSeen + 1)) {
+            current = version.get();
+        }
+    }
+
+    /**
+     * Gets the object descriptor for a given object id. The caller must hold the lock on the
+     * stripe.
      *
+     * @param stripe the stripe for the ID
      * @param id the ID
      * @param forWrite true if the returned value is going to be modified
      * @return an ObjectDescriptor
      */
-    private ObjectDescription getDesc(Integer id, boolean forWrite) {
+    private ObjectDescription getDesc(Stripe stripe, Integer id, boolean forWrite) {
         long startTime = System.currentTimeMillis();
-        ObjectDescription desc = cache.get(id);
+        ObjectDescription desc = stripe.cache.get(id);
         if (desc == null) {
-            desc = writeBack.get(id);
+            desc = stripe.writeBack.get(id);
             if (forWrite && (desc != null)) {
                 desc = new ObjectDescription(desc);
             }
-            cache.put(id, desc);
+            if (desc != null) {
+                stripe.cache.put(id, desc);
+            }
         }
         if (desc == null) {
             desc = new ObjectDescription();
@@ -274,10 +340,7 @@ public class DataTracker
                         + " where objectid = " + id + " ORDER BY version");
                 while (r.next()) {
                     desc.putClean(r.getString(1).intern(), stringToSource(r.getString(2)));
-                    int rowVersion = r.getInt(3);
-                    if (version <= rowVersion) {
-                        version = rowVersion + 1;
-                    }
+                    updateVersion(r.getInt(3));
                 }
                 long now = System.currentTimeMillis();
                 //LOG.debug("Fetched entry from DB (time = " + (now - start) + " ms)");
@@ -292,15 +355,15 @@ public class DataTracker
                 e2.initCause(broken);
                 throw e2;
             }
-            cache.put(id, desc);
-            maybePoke();
-            misses++;
+            stripe.cache.put(id, desc);
+            maybePoke(stripe);
+            misses.incrementAndGet();
         }
-        timeSpentReading += System.currentTimeMillis() - startTime;
-        ops++;
-        if (ops % 1000000 == 0) {
-            LOG.info("Operations: " + ops + ", cache misses: " + misses + ", time spent reading: "
-                    + timeSpentReading);
+        timeSpentReading.addAndGet(System.currentTimeMillis() - startTime);
+        int opCount = ops.incrementAndGet();
+        if (opCount % 1000000 == 0) {
+            LOG.info("Operations: " + opCount + ", cache misses: " + misses
+                    + ", time spent reading: " + timeSpentReading);
         }
         return desc;
     }
@@ -312,7 +375,7 @@ public class DataTracker
      * @param field the name of the field
      * @param source the Source of the field
      */
-    public synchronized void setSource(Integer id, String field, Source source) {
+    public void setSource(Integer id, String field, Source source) {
         if (id == null) {
             throw new NullPointerException("id cannot be null");
         }
@@ -320,18 +383,17 @@ public class DataTracker
             throw new NullPointerException("Could not find given source (" + source
                     + ") in tracker. sourceToName = " + sourceToName);
         }
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
+        checkBroken();
+        Stripe stripe = stripeFor(id);
+        synchronized (stripe) {
+            ObjectDescription desc = getDesc(stripe, id, true);
+            desc.put(field.intern(), source);
+            // Lastly, we put the description into the cache, just in case we got it out of the
+            // write-back cache. This guarantees that we won't lose data by forgetting to write it
+            // to the database.
+            stripe.cache.put(id, desc);
+            maybePoke(stripe);
         }
-        ObjectDescription desc = getDesc(id, true);
-        desc.put(field.intern(), source);
-        // Lastly, we put the description into the cache, just in case we got it out of the
-        // write-back cache. This guarantees that we won't lose data by forgetting to write it to
-        // the database.
-        cache.put(id, desc);
-        maybePoke();
     }
 
     /**
@@ -342,15 +404,14 @@ public class DataTracker
      *
      * @param id the ID of the object
      */
-    public synchronized void clearObj(Integer id) {
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
-        }
+    public void clearObj(Integer id) {
+        checkBroken();
         ObjectDescription desc = new ObjectDescription();
-        cache.put(id, desc);
-        maybePoke();
+        Stripe stripe = stripeFor(id);
+        synchronized (stripe) {
+            stripe.cache.put(id, desc);
+            maybePoke(stripe);
+        }
     }
 
     /**
@@ -359,17 +420,23 @@ public class DataTracker
      * @return true if some action was performed
      */
     public boolean doWrite() {
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
-        }
-        synchronized (writeBack) {
-            int cacheSize = cache.size();
-            Map<Integer, ObjectDescription> writeBatch = getWriteBatch();
+        checkBroken();
+        synchronized (writeLock) {
+            int cacheSize = cacheSize();
+            Map<Integer, ObjectDescription> writeBatch = null;
+            for (Stripe stripe : stripes) {
+                Map<Integer, ObjectDescription> stripeBatch = getWriteBatch(stripe);
+                if (stripeBatch != null) {
+                    if (writeBatch == null) {
+                        writeBatch = stripeBatch;
+                    } else {
+                        writeBatch.putAll(stripeBatch);
+                    }
+                }
+            }
             if (writeBatch != null) {
                 LOG.info("Writing cache batch - batch size: " + writeBatch.size()
-                        + ", cache size: " + cacheSize + "->" + cache.size());
+                        + ", cache size: " + cacheSize + "->" + cacheSize());
                 try {
                     writeMap(writeBatch, false);
                 } catch (SQLException e) {
@@ -387,26 +454,39 @@ public class DataTracker
         }
     }
 
+    /**
+     * Returns the total number of entries in the main cache of all the stripes.
+     *
+     * @return an int
+     */
+    private int cacheSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.cache.size();
+            }
+        }
+        return size;
+    }
+
     /**
      * Flushes everything to the backing database.
      */
     public void flush() {
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
-        }
-        LOG.info("Flushing cache - size: " + cache.size());
+        checkBroken();
+        LOG.info("Flushing cache - size: " + cacheSize());
         // Synchronise in this order to prevent deadlocks.
-        synchronized (writeBack) {
-            synchronized (this) {
-                try {
-                    writeMap(cache, true);
-                } catch (SQLException e) {
-                    broken = e;
-                    IllegalArgumentException e2 = new IllegalArgumentException();
-                    e2.initCause(broken);
-                    throw e2;
+        synchronized (writeLock) {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    try {
+                        writeMap(stripe.cache, true);
+                    } catch (SQLException e) {
+                        broken = e;
+                        IllegalArgumentException e2 = new IllegalArgumentException();
+                        e2.initCause(broken);
+                        throw e2;
+                    }
                 }
             }
         }
@@ -422,7 +502,7 @@ public class DataTracker
                 + ", time spent prefetching: " + timeSpentPrefetching);
         cacheStorer.die();
         flush();
-        synchronized (this) {
+        synchronized (writeLock) {
             try {
                 conn.close();
                 storeConn.close();
@@ -437,36 +517,40 @@ public class DataTracker
     }
 
     /**
-     * Returns a Map created from cache, containing the entries that should be flushed to the
-     * backing database. The entries are removed from the cache and put in a special write-back
-     * cache before this method terminates. Once you have finished storing the entries, you should
-     * call clearWriteBack() to clear this write-back cache.
+     * Returns a Map created from the cache of a stripe, containing the entries that should be
+     * flushed to the backing database. The entries are removed from the cache and put in a
+     * special write-back cache before this method terminates. Once you have finished storing the
+     * entries, you should call clearWriteBack() to clear this write-back cache.
      * This method will return null if it does not recommend flushing any entries to the backing
      * database. The Map will probably only contain those entries that are dirty, however the method
      * that uses this method should not rely on this fact, because such a method may be passed the
      * cache instead in the instance of a flush().
      *
+     * @param stripe the Stripe to take entries from
      * @return a Map from Integer to ObjectDescription
      */
-    private synchronized Map<Integer, ObjectDescription> getWriteBatch() {
-        if (cache.size() > maxSize) {
-            Map<Integer, ObjectDescription> retval = new HashMap<Integer, ObjectDescription>();
-            int count = 0;
-            Iterator<Map.Entry<Integer, ObjectDescription>> iter = cache.entrySet().iterator();
-            while ((count < commitSize) && iter.hasNext()) {
-                Map.Entry<Integer, ObjectDescription> iterEntry = iter.next();
-                Integer id = iterEntry.getKey();
-                ObjectDescription desc = iterEntry.getValue();
-                if (desc.isDirty()) {
-                    retval.put(id, desc);
-                    writeBack.put(id, desc);
+    private Map<Integer, ObjectDescription> getWriteBatch(Stripe stripe) {
+        synchronized (stripe) {
+            if (stripe.cache.size() > stripe.maxSize) {
+                Map<Integer, ObjectDescription> retval = new HashMap<Integer, ObjectDescription>();
+                int count = 0;
+                Iterator<Map.Entry<Integer, ObjectDescription>> iter = stripe.cache.entrySet()
+                    .iterator();
+                while ((count < stripe.commitSize) && iter.hasNext()) {
+                    Map.Entry<Integer, ObjectDescription> iterEntry = iter.next();
+                    Integer id = iterEntry.getKey();
+                    ObjectDescription desc = iterEntry.getValue();
+                    if (desc.isDirty()) {
+                        retval.put(id, desc);
+                        stripe.writeBack.put(id, desc);
+                    }
+                    iter.remove();
+                    count++;
                 }
-                iter.remove();
-                count++;
+                return retval;
+            } else {
+                return null;
             }
-            return retval;
-        } else {
-            return null;
         }
     }
 
@@ -476,13 +560,17 @@ public class DataTracker
      * write-back cache. Data loss is avoided by the fact that such entries are placed back in the
      * main cache.
      */
-    private synchronized void clearWriteBack() {
-        writeBack.clear();
+    private void clearWriteBack() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.writeBack.clear();
+            }
+        }
     }
 
     /**
      * Writes the contents of the given Map to the backing database. Attempts to make use of all the
-     * SQL tricks to speed this operation up.
+     * SQL tricks to speed this operation up. The caller must hold writeLock.
      *
      * @param map a Map from Integer to ObjectDesciption
      * @param clean true if this method should call clean() on all the entries in the given Map, or
@@ -491,6 +579,8 @@ public class DataTracker
      */
     private void writeMap(Map<Integer, ObjectDescription> map, boolean clean) throws SQLException {
         long start = System.currentTimeMillis();
+        // All the rows in one batch share a version, which is higher than any written before.
+        int batchVersion = version.getAndIncrement();
         try {
             org.postgresql.copy.CopyManager copyManager = null;
             ByteArrayOutputStream baos = null;
@@ -532,11 +622,11 @@ public class DataTracker
                                 dos.writeInt(sourceName.length()); // Length of source name
                                 dos.writeBytes(sourceName); // Source name
                                 dos.writeInt(4); // Length of an integer
-                                dos.writeInt(version); // version
+                                dos.writeInt(batchVersion); // version
                             } else {
                                 s.addBatch("INSERT INTO tracker (objectid, fieldname, sourcename,"
                                         + " version) VALUES (" + id + ", '" + field + "', '"
-                                        + sourceToString(source) + "', " + version + ")");
+                                        + sourceToString(source) + "', " + batchVersion + ")");
                             }
                         }
                     }
@@ -553,7 +643,6 @@ public class DataTracker
             } else {
                 s.executeBatch();
             }
-            version++;
             storeConn.commit();
         } catch (IOException e) {
             throw new SQLException(e.toString());
@@ -563,10 +652,13 @@ public class DataTracker
     }
 
     /**
-     * Pokes the CacheStorer thread if there are too many entries in the cache.
+     * Pokes the CacheStorer thread if there are too many entries in the cache of a stripe. The
+     * caller must hold the lock on the stripe.
+     *
+     * @param stripe the Stripe that has just grown
      */
-    private void maybePoke() {
-        if (cache.size() > maxSize) {
+    private void maybePoke(Stripe stripe) {
+        if (stripe.cache.size() > stripe.maxSize) {
             cacheStorer.poke();
         }
     }
@@ -577,7 +669,7 @@ public class DataTracker
      * @param name a string source name
      * @return a Source
      */
-    public synchronized Source stringToSource(String name) {
+    public Source stringToSource(String name) {
         return stringToSource(name, null);
     }
 
@@ -588,16 +680,21 @@ public class DataTracker
      * @param type the source type
      * @return a Source
      */
-    public synchronized Source stringToSource(String name, String type) {
+    public Source stringToSource(String name, String type) {
         Source retval = nameToSource.get(name);
         if (retval == null) {
-            if (name.startsWith("skel_")) {
-                retval = new Source(name.substring(5), type, true);
-            } else {
-                retval = new Source(name, type, false);
+            synchronized (nameToSource) {
+                retval = nameToSource.get(name);
+                if (retval == null) {
+                    if (name.startsWith("skel_")) {
+                        retval = new Source(name.substring(5), type, true);
+                    } else {
+                        retval = new Source(name, type, false);
+                    }
+                    sourceToName.put(retval, name);
+                    nameToSource.put(name, retval);
+                }
             }
-            nameToSource.put(name, retval);
-            sourceToName.put(retval, name);
         }
         return retval;
     }
@@ -608,7 +705,7 @@ public class DataTracker
      * @param source a Source
      * @return the name
      */
-    public synchronized String sourceToString(Source source) {
+    public String sourceToString(Source source) {
         String retval = sourceToName.get(source);
         if (retval == null) {
             throw new NullPointerException("Could not find given source in tracker");
@@ -616,6 +713,24 @@ public class DataTracker
         return retval;
     }
 
+    /**
+     * One share of the entries in the tracker, with its own lock.
+     */
+    private static final class Stripe
+    {
+        private final int maxSize;
+        private final int commitSize;
+        private final LinkedHashMap<Integer, ObjectDescription> cache;
+        private final IntToObjectMap<ObjectDescription> writeBack =
+            new IntToObjectMap<ObjectDescription>();
+
+        Stripe(int maxSize, int commitSize) {
+            this.maxSize = maxSize;
+            this.commitSize = commitSize;
+            cache = new LinkedHashMap<Integer, ObjectDescription>(maxSize * 14 / 10, 0.75F, true);
+        }
+    }
+
     private class CacheStorer implements Runnable
     {
         private boolean needAction = false;
@@ -30,6 +30,7 @@ import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.proxy.ProxyReference;
 import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
+import org.intermine.objectstore.query.ClobFile;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.Query;
@@ -561,6 +562,13 @@ public abstract class IntegrationWriterAbstractImpl implements IntegrationWriter
         return osw.createClob();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ClobFile getClobFile(Clob clob) {
+        return osw.getClobFile(clob);
+    }
+
     /**
      * {@inheritDoc}
      */
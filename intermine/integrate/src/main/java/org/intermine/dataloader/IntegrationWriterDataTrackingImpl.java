@@ -11,6 +11,7 @@ package org.intermine.dataloader;
  */
 
 import java.lang.reflect.Constructor;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -35,6 +36,8 @@ import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.objectstore.intermine.ObjectStoreWriterInterMineImpl;
 import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.query.Constraint;
+import org.intermine.objectstore.query.QueryClass;
 import org.intermine.sql.Database;
 import org.intermine.util.DynamicUtil;
 import org.intermine.util.IntPresentSet;
@@ -66,6 +69,8 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
     protected IntPresentSet duplicateObjects = new IntPresentSet();
     protected boolean isDuplicates = false;
     protected PriorityConfig priorityConfig;
+    /** The ids of the objects stored and deleted, or null if they are not being recorded */
+    protected ChangedObjectLog changedObjectLog = null;
 
     /**
      * Creates a new instance of this class, given the properties defining it.
@@ -139,7 +144,12 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
             Constructor<? extends IntegrationWriterDataTrackingImpl> con2 =
                 iwClass.getConstructor(new Class[] {ObjectStoreWriter.class, DataTracker.class,
                     Set.class});
-            return con2.newInstance(new Object[] {writer, newDataTracker, trackerMissingClasses});
+            IntegrationWriterDataTrackingImpl retval = con2.newInstance(new Object[] {writer,
+                newDataTracker, trackerMissingClasses});
+            if ("true".equals(props.getProperty("changeLog"))) {
+                retval.setChangedObjectLog(new ChangedObjectLog());
+            }
+            return retval;
         } catch (Exception e) {
             IllegalArgumentException e2 = new IllegalArgumentException("Problem instantiating"
                     + " IntegrationWriterDataTrackingImpl " + props.getProperty("alias"));
@@ -178,6 +188,62 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
         priorityConfig = new PriorityConfig(osw.getModel());
     }
 
+    /**
+     * Sets a log in which to record the ids of the objects stored and deleted. The log is added
+     * to the production database when this IntegrationWriter is closed.
+     *
+     * @param changedObjectLog a ChangedObjectLog, or null to stop recording changes
+     */
+    public void setChangedObjectLog(ChangedObjectLog changedObjectLog) {
+        this.changedObjectLog = changedObjectLog;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Object o) throws ObjectStoreException {
+        super.store(o);
+        if ((changedObjectLog != null) && (o instanceof InterMineObject)) {
+            changedObjectLog.objectChanged(((InterMineObject) o).getId().intValue());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addToCollection(Integer hasId, Class<?> clazz, String fieldName, Integer hadId)
+        throws ObjectStoreException {
+        super.addToCollection(hasId, clazz, fieldName, hadId);
+        if (changedObjectLog != null) {
+            changedObjectLog.objectChanged(hasId.intValue());
+            changedObjectLog.objectChanged(hadId.intValue());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(InterMineObject o) throws ObjectStoreException {
+        super.delete(o);
+        if (changedObjectLog != null) {
+            changedObjectLog.objectChanged(o.getId().intValue());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete(QueryClass qc, Constraint c) throws ObjectStoreException {
+        super.delete(qc, c);
+        if (changedObjectLog != null) {
+            changedObjectLog.allChanged();
+        }
+    }
+
     /**
      * Resets the IntegrationWriter, clearing the id map and the hints
      */
@@ -669,6 +735,14 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
      */
     @Override
     public void close() throws ObjectStoreException {
+        // Record the changes first, as reprocessing too much is better than missing changes
+        if ((changedObjectLog != null) && (osw instanceof ObjectStoreWriterInterMineImpl)) {
+            try {
+                changedObjectLog.write(((ObjectStoreWriterInterMineImpl) osw).getDatabase());
+            } catch (SQLException e) {
+                throw new ObjectStoreException("Could not record the changed objects", e);
+            }
+        }
         super.close();
         dataTracker.close();
 
@@ -12,35 +12,50 @@ package org.intermine.dataloader;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.PrimaryKey;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.ObjectPipe;
+import org.intermine.util.IntSet;
+import org.intermine.util.PropertiesUtil;
 
 import org.apache.log4j.Logger;
 
 /**
  * Class providing EquivalentObjectFetcher functionality that fetches batches of equivalent objects
  * in parallel to improve performance.
+ * <p>
+ * The primary keys for a batch form a dependency graph - a key that references a class cannot be
+ * fetched until the keys for that class have been fetched. Each key is submitted to a fixed pool
+ * of worker threads as soon as all the keys it depends on have completed.
  *
  * @author Matthew Wakeling
  */
 public class ParallelBatchingFetcher extends BatchingFetcher
 {
     private static final Logger LOG = Logger.getLogger(ParallelBatchingFetcher.class);
-    private ObjectPipe<WorkUnit> jobs = new ObjectPipe<WorkUnit>();
+    /** The number of worker threads used if none is configured. */
+    public static final int DEFAULT_THREADS = 10;
+
+    private final ExecutorService workers;
+    private final int threads;
+    // Total time in milliseconds spent fetching each primary key, by class and key name.
+    private final Map<String, Long> pkTimes = new TreeMap<String, Long>();
 
     /**
-     * Constructor
+     * Constructor, using the number of worker threads configured in the properties for the
+     * source (see getConfiguredThreads).
      *
      * @param fetcher another EquivalentObjectFetcher
      * @param dataTracker a DataTracker object to pass prefetch instructions to
@@ -48,10 +63,63 @@ public class ParallelBatchingFetcher extends BatchingFetcher
      */
     public ParallelBatchingFetcher(BaseEquivalentObjectFetcher fetcher, DataTracker dataTracker,
             Source source) {
+        this(fetcher, dataTracker, source, getConfiguredThreads(source));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param fetcher another EquivalentObjectFetcher
+     * @param dataTracker a DataTracker object to pass prefetch instructions to
+     * @param source the data Source that is being loaded
+     * @param threads the number of worker threads to fetch with
+     */
+    public ParallelBatchingFetcher(BaseEquivalentObjectFetcher fetcher, DataTracker dataTracker,
+            Source source, int threads) {
         super(fetcher, dataTracker, source);
-        for (int i = 0; i < 10; i++) {
-            Thread t = new Thread(new Worker(), "ParallelBatchingFetcher Worker " + (i + 1));
-            t.start();
+        if (threads < 1) {
+            throw new IllegalArgumentException("ParallelBatchingFetcher needs at least one "
+                    + "thread, not " + threads);
+        }
+        this.threads = threads;
+        final AtomicInteger threadNo = new AtomicInteger(0);
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ParallelBatchingFetcher Worker "
+                        + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of worker threads configured for a source. The property
+     * equivalentObjectFetcher.&lt;source name&gt;.threads is used if it is set, then
+     * equivalentObjectFetcher.threads, and otherwise DEFAULT_THREADS.
+     *
+     * @param source the data Source that is being loaded
+     * @return the number of threads
+     */
+    public static int getConfiguredThreads(Source source) {
+        Properties props = PropertiesUtil.getPropertiesStartingWith("equivalentObjectFetcher");
+        String value = null;
+        if ((source != null) && (source.getName() != null)) {
+            value = props.getProperty("equivalentObjectFetcher." + source.getName() + ".threads");
+        }
+        if (value == null) {
+            value = props.getProperty("equivalentObjectFetcher.threads");
+        }
+        if (value == null) {
+            return DEFAULT_THREADS;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid number of equivalentObjectFetcher threads \"" + value
+                    + "\" - using " + DEFAULT_THREADS);
+            return DEFAULT_THREADS;
         }
     }
 
@@ -60,10 +128,18 @@ public class ParallelBatchingFetcher extends BatchingFetcher
      */
     @Override
     public void close(Source source) {
-        jobs.finish();
-        LOG.info("Parallel Batching equivalent object query summary for source " + source + " :"
-                + getSummary(source).toString() + "\nQueried " + batchQueried
-                + " objects by batch, cache misses: " + cacheMisses);
+        workers.shutdown();
+        StringBuffer pkSummary = new StringBuffer();
+        synchronized (pkTimes) {
+            for (Map.Entry<String, Long> entry : pkTimes.entrySet()) {
+                pkSummary.append("\n    ").append(entry.getKey()).append(": ")
+                    .append(entry.getValue()).append(" ms");
+            }
+        }
+        LOG.info("Parallel Batching equivalent object query summary for source " + source + " ("
+                + threads + " threads):" + getSummary(source).toString() + "\nQueried "
+                + batchQueried + " objects by batch, cache misses: " + cacheMisses
+                + "\nTime spent fetching each primary key:" + pkSummary);
     }
 
     /**
@@ -74,97 +150,134 @@ public class ParallelBatchingFetcher extends BatchingFetcher
             Map<InterMineObject, Set<InterMineObject>> results,
             Map<ClassDescriptor, List<InterMineObject>> cldToObjectsForCld,
             long time1) throws ObjectStoreException {
-        Map<PrimaryKey, ClassDescriptor> pksNotDone
-            = new IdentityHashMap<PrimaryKey, ClassDescriptor>(pksToDo);
-        List<Exception> exceptions = Collections.synchronizedList(new ArrayList<Exception>());
-        synchronized (pksNotDone) {
-            while (!pksToDo.isEmpty()) {
-                Iterator<PrimaryKey> pkIter = pksToDo.keySet().iterator();
-                while (pkIter.hasNext()) {
-                    PrimaryKey pk = pkIter.next();
-                    ClassDescriptor cld = pksToDo.get(pk);
-                    if (canDoPkNow(pk, cld, pksNotDone)) {
-                        jobs.put(new WorkUnit(pk, cld, results, cldToObjectsForCld.get(cld),
-                                    pksNotDone, exceptions));
-                        pkIter.remove();
-                    //} else {
-                    //    LOG.error("Cannot do pk " + cld.getName() + "." + pk.getName() + " yet");
+        Batch batch = new Batch(results, cldToObjectsForCld);
+        // Build the dependency graph. A key depends on another key (possibly itself) if it
+        // could not be done while that other key is not done.
+        for (Map.Entry<PrimaryKey, ClassDescriptor> entry : pksToDo.entrySet()) {
+            PrimaryKey pk = entry.getKey();
+            batch.clds.put(pk, entry.getValue());
+            int prerequisites = 0;
+            for (Map.Entry<PrimaryKey, ClassDescriptor> other : pksToDo.entrySet()) {
+                if (!canDoPkNow(pk, entry.getValue(), Collections.singletonMap(other.getKey(),
+                                other.getValue()))) {
+                    prerequisites++;
+                    List<PrimaryKey> dependents = batch.dependents.get(other.getKey());
+                    if (dependents == null) {
+                        dependents = new ArrayList<PrimaryKey>();
+                        batch.dependents.put(other.getKey(), dependents);
                     }
+                    dependents.add(pk);
                 }
-                try {
-                    pksNotDone.wait();
-                } catch (InterruptedException e) {
-                }
-                if (!exceptions.isEmpty()) {
-                    throw new ObjectStoreException("Error in worker thread", exceptions.iterator()
-                            .next());
+            }
+            batch.prerequisites.put(pk, Integer.valueOf(prerequisites));
+        }
+        synchronized (batch) {
+            for (Map.Entry<PrimaryKey, ClassDescriptor> entry : pksToDo.entrySet()) {
+                if (batch.prerequisites.get(entry.getKey()).intValue() == 0) {
+                    batch.submit(entry.getKey());
                 }
             }
-            while (!pksNotDone.isEmpty()) {
+            pksToDo.keySet().removeAll(batch.submitted);
+            while (batch.running > 0) {
                 try {
-                    pksNotDone.wait();
+                    batch.wait();
                 } catch (InterruptedException e) {
+                    // Ignore interruption
                 }
-            }
-            if (!exceptions.isEmpty()) {
-                throw new ObjectStoreException("Error in worker thread", exceptions.iterator()
-                        .next());
+                pksToDo.keySet().removeAll(batch.submitted);
             }
         }
+        if (!batch.exceptions.isEmpty()) {
+            throw new ObjectStoreException("Error in worker thread", batch.exceptions.get(0));
+        }
+        if (!pksToDo.isEmpty()) {
+            throw new RuntimeException("Error - cannot fetch any pks: " + pksToDo.keySet());
+        }
         long time2 = System.currentTimeMillis();
         timeSpentPrefetchEquiv += time2 - time1;
     }
 
-    private class WorkUnit
+    /**
+     * The state of one call to doPks. All fields are accessed while synchronised on the Batch.
+     */
+    private class Batch
     {
-        private PrimaryKey pk;
-        private ClassDescriptor cld;
-        private Map<InterMineObject, Set<InterMineObject>> results;
-        private List<InterMineObject> objectsForCld;
-        private Map<PrimaryKey, ClassDescriptor> pksNotDone;
-        private List<Exception> exceptions;
-
-        public WorkUnit(PrimaryKey pk, ClassDescriptor cld,
-                Map<InterMineObject, Set<InterMineObject>> results,
-                List<InterMineObject> objectsForCld,
-                Map<PrimaryKey, ClassDescriptor> pksNotDone, List<Exception> exceptions) {
-            this.pk = pk;
-            this.cld = cld;
+        private final Map<InterMineObject, Set<InterMineObject>> results;
+        private final Map<ClassDescriptor, List<InterMineObject>> cldToObjectsForCld;
+        private final Map<PrimaryKey, List<PrimaryKey>> dependents
+            = new IdentityHashMap<PrimaryKey, List<PrimaryKey>>();
+        private final Map<PrimaryKey, Integer> prerequisites
+            = new IdentityHashMap<PrimaryKey, Integer>();
+        private final Map<PrimaryKey, ClassDescriptor> clds
+            = new IdentityHashMap<PrimaryKey, ClassDescriptor>();
+        private final Set<PrimaryKey> submitted = Collections.newSetFromMap(
+                new IdentityHashMap<PrimaryKey, Boolean>());
+        private final List<Exception> exceptions = new ArrayList<Exception>();
+        private int running = 0;
+
+        Batch(Map<InterMineObject, Set<InterMineObject>> results,
+                Map<ClassDescriptor, List<InterMineObject>> cldToObjectsForCld) {
             this.results = results;
-            this.objectsForCld = objectsForCld;
-            this.pksNotDone = pksNotDone;
-            this.exceptions = exceptions;
+            this.cldToObjectsForCld = cldToObjectsForCld;
         }
 
-        public void fetch() {
-            try {
-                Set<Integer> fetchedObjectIds = new HashSet<Integer>();
-                doPk(pk, cld, results, objectsForCld, fetchedObjectIds);
-                dataTracker.prefetchIds(fetchedObjectIds);
-            } catch (Exception e) {
-                exceptions.add(e);
-            }
-            synchronized (pksNotDone) {
-                pksNotDone.remove(pk);
-                pksNotDone.notify();
+        void submit(PrimaryKey pk) {
+            submitted.add(pk);
+            running++;
+            workers.execute(new WorkUnit(this, pk, clds.get(pk)));
+        }
+
+        synchronized void done(PrimaryKey pk, Exception exception) {
+            running--;
+            if (exception != null) {
+                exceptions.add(exception);
+            } else {
+                List<PrimaryKey> pkDependents = dependents.get(pk);
+                if (pkDependents != null) {
+                    for (PrimaryKey dependent : pkDependents) {
+                        int remaining = prerequisites.get(dependent).intValue() - 1;
+                        prerequisites.put(dependent, Integer.valueOf(remaining));
+                        if ((remaining == 0) && exceptions.isEmpty()) {
+                            submit(dependent);
+                        }
+                    }
+                }
             }
+            notifyAll();
         }
     }
 
-    private class Worker implements Runnable
+    private class WorkUnit implements Runnable
     {
-        public Worker() {
+        private final Batch batch;
+        private final PrimaryKey pk;
+        private final ClassDescriptor cld;
+
+        WorkUnit(Batch batch, PrimaryKey pk, ClassDescriptor cld) {
+            this.batch = batch;
+            this.pk = pk;
+            this.cld = cld;
         }
 
+        @Override
         public void run() {
+            Exception exception = null;
+            long start = System.currentTimeMillis();
             try {
-                while (true) {
-                    WorkUnit u = jobs.next();
-                    u.fetch();
-                }
-            } catch (NoSuchElementException e) {
-                // Fetcher has been closed
+                IntSet fetchedObjectIds = new IntSet();
+                doPk(pk, cld, batch.results, batch.cldToObjectsForCld.get(cld),
+                        fetchedObjectIds);
+                dataTracker.prefetchIds(fetchedObjectIds);
+            } catch (Exception e) {
+                exception = e;
+            }
+            String pkName = cld.getUnqualifiedName() + "." + pk.getName();
+            long time = System.currentTimeMillis() - start;
+            synchronized (pkTimes) {
+                Long total = pkTimes.get(pkName);
+                pkTimes.put(pkName, Long.valueOf(total == null ? time : total.longValue() + time));
             }
+            batch.done(pk, exception);
         }
     }
 }
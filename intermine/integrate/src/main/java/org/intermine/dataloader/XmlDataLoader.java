@@ -11,20 +11,44 @@ package org.intermine.dataloader;
  */
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.log4j.Logger;
 import org.intermine.InterMineException;
+import org.intermine.metadata.Model;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.ObjectStoreException;
-import org.intermine.util.XmlBinding;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.util.IntSet;
+import org.intermine.xml.full.FullHandler;
+import org.intermine.xml.full.FullParser;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
 
 /**
  * Provides a method for unmarshalling XML given source into java
  * business objects then calls store on each.
  * store() is AbstractDataLoader.store().
+ * <p>
+ * The XML is read by a separate thread and passed to the loader in windows of Items, so that
+ * storing overlaps with parsing and the whole file is never held in memory. An Item is stored
+ * once every Item it refers to has either been stored or is being stored along with it; an
+ * Item that refers to one later in the file is held back until that one has been stored.
+ * References to Items that have already been stored are passed to the IntegrationWriter as
+ * ProxyReferences, which it resolves through its id map. Memory use therefore depends on how
+ * far ahead in the file the references point, rather than on the size of the file.
  *
  * @author Richard Smith
  */
@@ -32,15 +56,32 @@ import org.intermine.util.XmlBinding;
 public class XmlDataLoader extends DataLoader
 {
     private static final Logger LOG = Logger.getLogger(XmlDataLoader.class);
+    // The number of Items passed from the parser to the loader at a time
+    private static final int WINDOW_SIZE = 1000;
+    // The number of windows that the parser may read ahead of the loader
+    private static final int WINDOWS_AHEAD = 4;
     private static int idCounter = 1;
 
+    private final int windowSize;
+
     /**
      * @see DataLoader#DataLoader(IntegrationWriter)
      *
      * @param iw an IntegrationWriter to use to write objects
      */
     public XmlDataLoader(IntegrationWriter iw) {
+        this(iw, WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a loader that passes Items from the parser in windows of the given size.
+     *
+     * @param iw an IntegrationWriter to use to write objects
+     * @param windowSize the number of Items passed from the parser to the loader at a time
+     */
+    XmlDataLoader(IntegrationWriter iw, int windowSize) {
         super(iw);
+        this.windowSize = windowSize;
     }
 
     /**
@@ -54,70 +95,371 @@ public class XmlDataLoader extends DataLoader
      */
     public void processXml(InputStream is, Source source, Source skelSource)
         throws InterMineException {
+        LOG.info("Starting XmlDataLoader. Streaming XML file.");
+        ItemReader reader = new ItemReader(is, windowSize, WINDOWS_AHEAD);
+        Thread readerThread = new Thread(reader, "XmlDataLoader reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        StreamingLoad load = new StreamingLoad(source, skelSource);
+        boolean finished = false;
         try {
-            long[] times = new long[20];
+            getIntegrationWriter().beginTransaction();
+            List<Item> window = reader.nextWindow();
+            while (!window.isEmpty()) {
+                load.addItems(window);
+                window = reader.nextWindow();
+            }
+            load.finish();
+            getIntegrationWriter().commitTransaction();
+            finished = true;
+        } catch (ObjectStoreException e) {
+            throw new InterMineException("Problem with store method", e);
+        } catch (ClassNotFoundException e) {
+            throw new InterMineException("Error during unmarshalling", e);
+        } finally {
+            if (!finished) {
+                readerThread.interrupt();
+            }
+        }
+        long now = System.currentTimeMillis();
+        LOG.info("Finished dataloading " + load.opCount + " objects at "
+                + ((60000L * load.opCount) / Math.max(now - load.startTime, 1))
+                + " objects per minute (" + (now - load.startTime) + " ms total) for source "
+                + source.getName());
+    }
+
+    /**
+     * Perform any necessary clean-up and close the integration writer
+     * @throws Exception if an error occurs
+     */
+    public void close() throws Exception {
+        getIntegrationWriter().close();
+    }
+
+    /**
+     * Parses the XML in its own thread, passing windows of Items to the loader through a bounded
+     * queue. An empty window marks the end of the file.
+     */
+    static class ItemReader extends FullHandler implements Runnable
+    {
+        private final InputStream is;
+        private final int windowSize;
+        private final BlockingQueue<List<Item>> windows;
+        private List<Item> window;
+        private volatile int itemsRead = 0;
+        private volatile Exception error = null;
+        private volatile boolean aborted = false;
+
+        /**
+         * Creates a reader.
+         *
+         * @param is the XML to read
+         * @param windowSize the number of Items in each window
+         * @param windowsAhead the number of windows that may be read before the loader takes them
+         */
+        ItemReader(InputStream is, int windowSize, int windowsAhead) {
+            this.is = is;
+            this.windowSize = windowSize;
+            windows = new ArrayBlockingQueue<List<Item>>(windowsAhead);
+            window = new ArrayList<Item>(windowSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                FullParser.parse(is, this);
+                if (!window.isEmpty()) {
+                    windows.put(window);
+                }
+            } catch (InterruptedException e) {
+                // The loader has given up
+                return;
+            } catch (Exception e) {
+                if (aborted) {
+                    return;
+                }
+                error = e;
+            }
+            try {
+                windows.put(Collections.<Item>emptyList());
+            } catch (InterruptedException e) {
+                // The loader has given up
+            }
+        }
+
+        @Override
+        public void finishedItem(Item item) {
+            itemsRead++;
+            window.add(item);
+            if (window.size() >= windowSize) {
+                try {
+                    windows.put(window);
+                } catch (InterruptedException e) {
+                    aborted = true;
+                    throw new RuntimeException("Interrupted while reading XML", e);
+                }
+                window = new ArrayList<Item>(windowSize);
+            }
+        }
+
+        /**
+         * Returns the number of Items parsed so far, including those not yet passed to the loader.
+         *
+         * @return an int
+         */
+        int getItemsRead() {
+            return itemsRead;
+        }
+
+        /**
+         * Returns the next window of Items, waiting for the parser if necessary.
+         *
+         * @return a List of Items, which is empty at the end of the file
+         * @throws InterMineException if the XML could not be parsed
+         */
+        List<Item> nextWindow() throws InterMineException {
+            List<Item> retval;
+            try {
+                retval = windows.take();
+            } catch (InterruptedException e) {
+                throw new InterMineException("Interrupted while waiting for XML", e);
+            }
+            if (retval.isEmpty() && (error != null)) {
+                throw new InterMineException("Error during unmarshalling", error);
+            }
+            return retval;
+        }
+    }
+
+    /**
+     * The state of the loading of one file.
+     */
+    private class StreamingLoad
+    {
+        private final Source source;
+        private final Source skelSource;
+        private final Model model;
+        // The id given to the object for each Item identifier that has been read
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        // The ids of the objects that have been stored
+        private final IntSet storedIds = new IntSet();
+        // Items waiting for the Item with a given identifier to be stored
+        private final Map<String, List<Item>> waiting = new HashMap<String, List<Item>>();
+        private final long[] times = new long[20];
+        private long opCount = 0;
+        private long time;
+        private long startTime;
+
+        StreamingLoad(Source source, Source skelSource) {
+            this.source = source;
+            this.skelSource = skelSource;
+            this.model = getIntegrationWriter().getObjectStore().getModel();
             for (int i = 0; i < 20; i++) {
                 times[i] = -1;
             }
-            long opCount = 0;
-            long time = (new Date()).getTime();
-            long startTime = time;
-            LOG.info("Starting XmlDataLoader. Loading XML file.");
-            XmlBinding binding = new XmlBinding(getIntegrationWriter().getObjectStore().getModel());
+            time = (new Date()).getTime();
+            startTime = time;
+        }
 
-            List<FastPathObject> objects = binding.unmarshal(is);
-            LOG.info("Loaded XML file to list of " + objects.size() + " objects");
+        /**
+         * Stores a window of Items, and any held-back Items that they allow to be stored.
+         *
+         * @param window a List of Items
+         * @throws ObjectStoreException if there is a problem storing
+         * @throws ClassNotFoundException if an Item has a class that is not in the model
+         */
+        void addItems(List<Item> window) throws ObjectStoreException, ClassNotFoundException {
+            for (Item item : window) {
+                if ((item.getIdentifier() != null) && (!ids.containsKey(item.getIdentifier()))) {
+                    ids.put(item.getIdentifier(), new Integer(idCounter++));
+                }
+            }
+            List<Item> candidates = window;
+            while (!candidates.isEmpty()) {
+                candidates = storeReady(candidates);
+            }
+        }
 
-            for (FastPathObject o : objects) {
-                if (o instanceof InterMineObject) {
-                    LOG.info("InterMine Id " + ((InterMineObject) o).getId());
-                    LOG.info("InterMine Id " + ((InterMineObject) o).toString());
-                    InterMineObject io = (InterMineObject) o;
-                    io.setId(new Integer(idCounter++));
+        /**
+         * Stores all the Items still held back at the end of the file. Any references they have
+         * to Items that were never read are dropped, as they always have been.
+         *
+         * @throws ObjectStoreException if there is a problem storing
+         * @throws ClassNotFoundException if an Item has a class that is not in the model
+         */
+        void finish() throws ObjectStoreException, ClassNotFoundException {
+            if (!waiting.isEmpty()) {
+                List<Item> remaining = new ArrayList<Item>();
+                for (List<Item> items : waiting.values()) {
+                    remaining.addAll(items);
                 }
+                waiting.clear();
+                LOG.info("Storing " + remaining.size() + " objects with unresolved references at "
+                        + "the end of the file");
+                store(remaining);
             }
+        }
 
-            getIntegrationWriter().beginTransaction();
+        /**
+         * Stores those of the candidate Items whose references can all be satisfied, and holds
+         * back the rest.
+         *
+         * @param candidates a List of Items
+         * @return a List of held-back Items that can now be tried again
+         */
+        private List<Item> storeReady(List<Item> candidates) throws ObjectStoreException,
+            ClassNotFoundException {
+            Map<String, Item> byIdentifier = new HashMap<String, Item>();
+            Set<Item> ready = Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>());
+            for (Item item : candidates) {
+                if (item.getIdentifier() != null) {
+                    byIdentifier.put(item.getIdentifier(), item);
+                }
+                ready.add(item);
+            }
+            // Hold back Items that refer to an unstored Item that is not itself ready, until
+            // nothing changes.
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Item item : candidates) {
+                    if (ready.contains(item)) {
+                        String missing = findMissing(item, byIdentifier, ready);
+                        if (missing != null) {
+                            ready.remove(item);
+                            List<Item> waiters = waiting.get(missing);
+                            if (waiters == null) {
+                                waiters = new ArrayList<Item>();
+                                waiting.put(missing, waiters);
+                            }
+                            waiters.add(item);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            List<Item> toStore = new ArrayList<Item>();
+            for (Item item : candidates) {
+                if (ready.contains(item)) {
+                    toStore.add(item);
+                }
+            }
+            store(toStore);
+            List<Item> released = new ArrayList<Item>();
+            for (Item item : toStore) {
+                if (item.getIdentifier() != null) {
+                    List<Item> waiters = waiting.remove(item.getIdentifier());
+                    if (waiters != null) {
+                        released.addAll(waiters);
+                    }
+                }
+            }
+            return released;
+        }
+
+        /**
+         * Returns the identifier of an Item that the given Item refers to that has not been
+         * stored and is not ready to be stored, or null if there is none.
+         */
+        private String findMissing(Item item, Map<String, Item> byIdentifier, Set<Item> ready) {
+            for (Reference ref : item.getReferences()) {
+                if (!isAvailable(ref.getRefId(), byIdentifier, ready)) {
+                    return ref.getRefId();
+                }
+            }
+            for (ReferenceList refList : item.getCollections()) {
+                for (String refId : refList.getRefIds()) {
+                    if (!isAvailable(refId, byIdentifier, ready)) {
+                        return refId;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean isAvailable(String identifier, Map<String, Item> byIdentifier,
+                Set<Item> ready) {
+            Integer id = ids.get(identifier);
+            if ((id != null) && storedIds.contains(id.intValue())) {
+                return true;
+            }
+            Item target = byIdentifier.get(identifier);
+            return (target != null) && ready.contains(target);
+        }
+
+        /**
+         * Realises and stores a List of Items. References to Items outside the List that have
+         * already been stored become ProxyReferences.
+         */
+        private void store(List<Item> items) throws ObjectStoreException,
+            ClassNotFoundException {
+            if (items.isEmpty()) {
+                return;
+            }
+            Map<String, FastPathObject> objMap = new LinkedHashMap<String, FastPathObject>();
+            for (Item item : items) {
+                for (Reference ref : item.getReferences()) {
+                    addProxy(objMap, ref.getRefId());
+                }
+                for (ReferenceList refList : item.getCollections()) {
+                    for (String refId : refList.getRefIds()) {
+                        addProxy(objMap, refId);
+                    }
+                }
+            }
+            List<FastPathObject> objects = FullParser.realiseObjects(items, model, false, true,
+                    objMap);
+            for (int i = 0; i < objects.size(); i++) {
+                FastPathObject o = objects.get(i);
+                if (o instanceof InterMineObject) {
+                    String identifier = items.get(i).getIdentifier();
+                    Integer id = (identifier == null) ? null : ids.get(identifier);
+                    if (id == null) {
+                        id = new Integer(idCounter++);
+                    }
+                    ((InterMineObject) o).setId(id);
+                }
+            }
             for (FastPathObject o : objects) {
                 getIntegrationWriter().store(o, source, skelSource);
+                if (o instanceof InterMineObject) {
+                    storedIds.add(((InterMineObject) o).getId().intValue());
+                }
                 opCount++;
                 if (opCount % 1000 == 0) {
-                    long now = (new Date()).getTime();
-                    if (times[(int) ((opCount / 1000) % 20)] == -1) {
-                        LOG.info("Dataloaded " + opCount + " objects - running at "
-                                + (60000000 / (now - time)) + " (avg "
-                                + ((60000L * opCount) / (now - startTime))
-                                + ") objects per minute");
-                    } else {
-                        LOG.info("Dataloaded " + opCount + " objects - running at "
-                                + (60000000 / (now - time)) + " (20000 avg "
-                                + (1200000000 / (now - times[(int) ((opCount / 1000) % 20)]))
-                                + ") (avg = " + ((60000L * opCount) / (now - startTime))
-                                + ") objects per minute");
-                    }
-                    time = now;
-                    times[(int) ((opCount / 1000) % 20)] = now;
-                    if (opCount % 500000 == 0) {
-                        getIntegrationWriter().commitTransaction();
-                        getIntegrationWriter().beginTransaction();
-                    }
+                    logProgress();
                 }
             }
-            getIntegrationWriter().commitTransaction();
-            long now = System.currentTimeMillis();
-            LOG.info("Finished dataloading " + opCount + " objects at " + ((60000L * opCount)
-                        / (now - startTime)) + " objects per minute (" + (now - startTime)
-                    + " ms total) for source " + source.getName());
-        } catch (ObjectStoreException e) {
-            throw new InterMineException("Problem with store method", e);
         }
-    }
 
-    /**
-     * Perform any necessary clean-up and close the integration writer
-     * @throws Exception if an error occurs
-     */
-    public void close() throws Exception {
-        getIntegrationWriter().close();
+        private void addProxy(Map<String, FastPathObject> objMap, String identifier) {
+            Integer id = ids.get(identifier);
+            if ((id != null) && storedIds.contains(id.intValue())) {
+                objMap.put(identifier, new ProxyReference(getIntegrationWriter().getObjectStore(),
+                            id, InterMineObject.class));
+            }
+        }
+
+        private void logProgress() throws ObjectStoreException {
+            long now = (new Date()).getTime();
+            if (times[(int) ((opCount / 1000) % 20)] == -1) {
+                LOG.info("Dataloaded " + opCount + " objects - running at "
+                        + (60000000 / Math.max(now - time, 1)) + " (avg "
+                        + ((60000L * opCount) / Math.max(now - startTime, 1))
+                        + ") objects per minute");
+            } else {
+                LOG.info("Dataloaded " + opCount + " objects - running at "
+                        + (60000000 / Math.max(now - time, 1)) + " (20000 avg "
+                        + (1200000000 / Math.max(now - times[(int) ((opCount / 1000) % 20)], 1))
+                        + ") (avg = " + ((60000L * opCount) / Math.max(now - startTime, 1))
+                        + ") objects per minute");
+            }
+            time = now;
+            times[(int) ((opCount / 1000) % 20)] = now;
+            if (opCount % 500000 == 0) {
+                getIntegrationWriter().commitTransaction();
+                getIntegrationWriter().beginTransaction();
+            }
+        }
     }
 }
@@ -11,9 +11,12 @@ package org.intermine.task;
  */
 
 import org.apache.tools.ant.BuildException;
+import org.intermine.dataloader.ChangedObjectLog;
 import org.intermine.postprocess.PostProcessor;
+import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreWriterFactory;
 import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import java.lang.reflect.Constructor;
 
 /**
@@ -67,8 +70,21 @@ public class PostProcessorTask extends DynamicAttributeTask
 
             configureDynamicAttributes(pp);
 
+            ObjectStore os = osw.getObjectStore();
+            long alterationsBefore = 0;
+            if (os instanceof ObjectStoreInterMineImpl) {
+                alterationsBefore = ((ObjectStoreInterMineImpl) os).getObjectAlterationCount();
+            }
+
             pp.postProcess();
 
+            // The postprocessor does not record which objects it changed, so anything built
+            // incrementally from the objects, like the search index, must be rebuilt
+            if ((os instanceof ObjectStoreInterMineImpl) && (alterationsBefore
+                        != ((ObjectStoreInterMineImpl) os).getObjectAlterationCount())) {
+                ChangedObjectLog.recordAllChanged(((ObjectStoreInterMineImpl) os).getDatabase());
+            }
+
         } catch (Exception e) {
             throw new BuildException(e);
         }
@@ -0,0 +1,212 @@
+package org.intermine.dataloader;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.InterMineException;
+import org.intermine.metadata.Model;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.testmodel.Address;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+import org.intermine.objectstore.dummy.ObjectStoreWriterDummyImpl;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.xml.full.Item;
+
+/**
+ * Tests for the way XmlDataLoader streams Items from the parser to the IntegrationWriter. The
+ * objects are recorded rather than stored, so no database is needed.
+ */
+public class XmlDataLoaderStreamingTest extends TestCase
+{
+    private RecordingIntegrationWriter iw;
+    private Source source;
+
+    public XmlDataLoaderStreamingTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        ObjectStoreDummyImpl os = new ObjectStoreDummyImpl();
+        os.setModel(Model.getInstanceByName("testmodel"));
+        iw = new RecordingIntegrationWriter(new ObjectStoreWriterDummyImpl(os));
+        source = new Source("testsource", "testsource");
+    }
+
+    public void testBackwardReference() throws Exception {
+        load(1, department("1") + employee("2", "1"));
+
+        assertEquals(2, iw.stored.size());
+        Department department = (Department) iw.stored.get(0);
+        Employee employee = (Employee) iw.stored.get(1);
+        InterMineObject proxy = employee.proxGetDepartment();
+        assertTrue(proxy instanceof ProxyReference);
+        assertEquals(department.getId(), proxy.getId());
+    }
+
+    public void testForwardReferenceHeldBack() throws Exception {
+        load(1, employee("1", "3") + address("2") + department("3"));
+
+        assertEquals(3, iw.stored.size());
+        assertTrue(iw.stored.get(0) instanceof Address);
+        Department department = (Department) iw.stored.get(1);
+        Employee employee = (Employee) iw.stored.get(2);
+        InterMineObject proxy = employee.proxGetDepartment();
+        assertTrue(proxy instanceof ProxyReference);
+        assertEquals(department.getId(), proxy.getId());
+    }
+
+    public void testForwardReferenceInSameWindow() throws Exception {
+        load(10, employee("1", "2") + department("2"));
+
+        assertEquals(2, iw.stored.size());
+        Employee employee = (Employee) iw.stored.get(0);
+        Department department = (Department) iw.stored.get(1);
+        assertSame(department, employee.proxGetDepartment());
+    }
+
+    public void testUnresolvedReference() throws Exception {
+        load(1, employee("1", "99") + address("2"));
+
+        assertEquals(2, iw.stored.size());
+        assertTrue(iw.stored.get(0) instanceof Address);
+        Employee employee = (Employee) iw.stored.get(1);
+        assertNull(employee.proxGetDepartment());
+    }
+
+    public void testCycleAcrossWindows() throws Exception {
+        load(1, "<item id=\"1\" class=\"Department\" implements=\"\">"
+                + "<attribute name=\"name\" value=\"department1\"/>"
+                + "<collection name=\"employees\"><reference ref_id=\"2\"/></collection></item>"
+                + employee("2", "1"));
+
+        assertEquals(2, iw.stored.size());
+        Department department = null;
+        Employee employee = null;
+        for (FastPathObject o : iw.stored) {
+            if (o instanceof Department) {
+                department = (Department) o;
+            } else {
+                employee = (Employee) o;
+            }
+        }
+        assertNotNull(department);
+        assertNotNull(employee);
+        assertSame(department, employee.proxGetDepartment());
+    }
+
+    public void testParseError() throws Exception {
+        try {
+            load(1, address("1") + address("2") + "<item id=\"3\" class=\"Address\">");
+            fail("Expected an InterMineException");
+        } catch (InterMineException e) {
+            assertEquals("Error during unmarshalling", e.getMessage());
+            assertNotNull(e.getCause());
+        }
+        assertEquals(2, iw.stored.size());
+    }
+
+    public void testReaderWindowIsBounded() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            xml.append(address(Integer.toString(i)));
+        }
+        XmlDataLoader.ItemReader reader = new XmlDataLoader.ItemReader(items(xml.toString()), 2,
+                3);
+        Thread thread = new Thread(reader);
+        thread.setDaemon(true);
+        thread.start();
+        for (int i = 0; (i < 500) && (thread.getState() != Thread.State.WAITING); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+        // Three windows in the queue, and a full one waiting to be added
+        assertEquals(8, reader.getItemsRead());
+
+        List<Item> read = new ArrayList<Item>();
+        List<Item> window = reader.nextWindow();
+        while (!window.isEmpty()) {
+            assertEquals(2, window.size());
+            read.addAll(window);
+            window = reader.nextWindow();
+        }
+        assertEquals(100, read.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i + 1), read.get(i).getIdentifier());
+        }
+    }
+
+    private void load(int windowSize, String items) throws Exception {
+        new XmlDataLoader(iw, windowSize).processXml(items(items), source, source);
+    }
+
+    private static InputStream items(String items) throws Exception {
+        return new ByteArrayInputStream(("<items>" + items + "</items>").getBytes("UTF-8"));
+    }
+
+    private static String address(String identifier) {
+        return "<item id=\"" + identifier + "\" class=\"Address\" implements=\"\">"
+            + "<attribute name=\"address\" value=\"address" + identifier + "\"/></item>";
+    }
+
+    private static String department(String identifier) {
+        return "<item id=\"" + identifier + "\" class=\"Department\" implements=\"\">"
+            + "<attribute name=\"name\" value=\"department" + identifier + "\"/></item>";
+    }
+
+    private static String employee(String identifier, String departmentIdentifier) {
+        return "<item id=\"" + identifier + "\" class=\"Employee\" implements=\"\">"
+            + "<attribute name=\"name\" value=\"employee" + identifier + "\"/>"
+            + "<reference name=\"department\" ref_id=\"" + departmentIdentifier + "\"/></item>";
+    }
+
+    /**
+     * An IntegrationWriter that records the objects it is given to store.
+     */
+    private static class RecordingIntegrationWriter extends IntegrationWriterAbstractImpl
+    {
+        private final List<FastPathObject> stored = new ArrayList<FastPathObject>();
+
+        RecordingIntegrationWriter(ObjectStoreWriterDummyImpl osw) {
+            super(osw);
+        }
+
+        @Override
+        public void store(FastPathObject o, Source source, Source skelSource) {
+            stored.add(o);
+        }
+
+        @Override
+        public Source getMainSource(String name, String type) {
+            return new Source(name, type);
+        }
+
+        @Override
+        public Source getSkeletonSource(String name, String type) {
+            return new Source(name, type, true);
+        }
+
+        @Override
+        protected InterMineObject store(FastPathObject o, Source source, Source skelSource,
+                int type) throws ObjectStoreException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -19,9 +19,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.intermine.model.testmodel.*;
 import org.intermine.metadata.Model;
+import org.intermine.model.FastPathObject;
 
 public class FullParserTest extends TestCase
 {
@@ -89,6 +92,18 @@ public class FullParserTest extends TestCase
         assertEquals(exampleItems, FullParser.parse(is));
     }
 
+    public void testParseWithHandler() throws Exception {
+        InputStream is = getClass().getClassLoader().getResourceAsStream("FullParserTest.xml");
+        final List<Item> finished = new ArrayList<Item>();
+        FullParser.parse(is, new FullHandler() {
+            @Override
+            public void finishedItem(Item item) {
+                finished.add(item);
+            }
+        });
+        assertEquals(exampleItems, finished);
+    }
+
     public void testParseNull() throws Exception {
         try {
             FullParser.parse(null);
@@ -135,6 +150,22 @@ public class FullParserTest extends TestCase
         assertEquals(new Integer(4), d2.getId());
     }
 
+    public void testRealiseObjectsWithExistingObjects() throws Exception {
+        Address a1 = new Address();
+        a1.setAddress("Existing street");
+        Map<String, FastPathObject> objMap = new HashMap<String, FastPathObject>();
+        objMap.put("2", a1);
+        List<Item> items = new ArrayList<Item>(exampleItems);
+        items.remove(1);
+        List<FastPathObject> objects = FullParser.realiseObjects(items,
+                Model.getInstanceByName("testmodel"), false, true, objMap);
+        assertEquals(3, objects.size());
+        Company c1 = (Company) objects.get(0);
+        assertSame(a1, c1.getAddress());
+        assertSame(c1, objMap.get("1"));
+        assertSame(objects.get(1), objMap.get("3"));
+    }
+
     public void testRealiseObjectsWithUnderscoreID() throws Exception {
         departmentItem.setIdentifier("1_4");
         try {
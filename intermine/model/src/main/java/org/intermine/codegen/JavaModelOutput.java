@@ -656,7 +656,7 @@ public class JavaModelOutput
         sb.append(INDENT)
             .append("public void setoBJECT(String notXml, ObjectStore os) {\n")
             .append(INDENT + INDENT)
-            .append("setoBJECT(NotXmlParser.SPLITTER.split(notXml), os);\n")
+            .append("setoBJECT(NotXmlParser.split(notXml), os);\n")
             .append(INDENT)
             .append("}\n")
             .append(INDENT)
@@ -80,6 +80,12 @@ public final class MetadataManager
      * The name of the key to use to store the search Directory.
      */
     public static final String SEARCH_INDEX_DIRECTORY = "search_directory";
+
+    /**
+     * The name of the key to use to store the progress of a search index build, so that a
+     * failed build can be resumed.
+     */
+    public static final String SEARCH_INDEX_PROGRESS = "search_progress";
     /**
      * Name of the key under which to store the serialized version of the class descriptions
      */
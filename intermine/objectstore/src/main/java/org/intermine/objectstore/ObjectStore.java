@@ -19,6 +19,7 @@ import java.util.Set;
 import org.intermine.metadata.Model;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.query.Clob;
+import org.intermine.objectstore.query.ClobFile;
 import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.Results;
@@ -327,4 +328,13 @@ public interface ObjectStore
      * @throws ObjectStoreException if an error occurs fetching a new ID
      */
     Clob createClob() throws ObjectStoreException;
+
+    /**
+     * Returns the text of a Clob if this ObjectStore holds it outside the database, so that
+     * ClobAccess can read it without querying the clob table.
+     *
+     * @param clob the Clob
+     * @return a ClobFile, or null if the Clob must be read from the database
+     */
+    ClobFile getClobFile(Clob clob);
 }
@@ -13,6 +13,7 @@ package org.intermine.objectstore;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,12 +27,15 @@ import org.intermine.metadata.MetaDataException;
 import org.intermine.metadata.Model;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.query.Clob;
+import org.intermine.objectstore.query.ClobFile;
 import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.PrefetchManager;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryCreator;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.util.BoundedCacheMap;
 import org.intermine.util.CacheMap;
 import org.intermine.util.PropertiesUtil;
 
@@ -47,6 +51,7 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
     private static final Logger LOG = Logger.getLogger(ObjectStoreAbstractImpl.class);
 
     protected static Random rand = new Random();
+    private static final Object NOT_CACHED = new Object();
 
     protected Model model;
     protected int maxOffset = Integer.MAX_VALUE;
@@ -54,7 +59,7 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
     protected long maxTime = Long.MAX_VALUE;
     // Optimiser will use a default query parse time if none is provided from properties
     protected Long maxQueryParseTime = null;
-    protected CacheMap<Integer, InterMineObject> cache;
+    protected Map<Integer, InterMineObject> cache;
 
     protected int getObjectOps = 0;
     protected int getObjectHits = 0;
@@ -95,10 +100,54 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
             maxQueryParseTime = Long.parseLong((String) props.get("max-query-parse-time"));
         }
 
+        if (props.get("prefetch-threads") != null) {
+            PrefetchManager.setMaxServiceThreads(Integer.parseInt((String) props
+                        .get("prefetch-threads")));
+        }
+
         LOG.info("Creating new " + getClass().getName() + " with sequence = " + sequenceNumber
                 + ", model = \"" + model.getName() + "\"");
-        cache = new CacheMap<Integer, InterMineObject>(getClass().getName() + " with sequence = "
-                + sequenceNumber + ", model = \"" + model.getName() + "\" getObjectById cache");
+        cache = Collections.synchronizedMap(new CacheMap<Integer, InterMineObject>(
+                    getObjectCacheName()));
+    }
+
+    private String getObjectCacheName() {
+        return getClass().getName() + " with sequence = " + sequenceNumber + ", model = \""
+            + model.getName() + "\" getObjectById cache";
+    }
+
+    /**
+     * Sets the maximum number of objects held in the getObjectById cache. By default the cache
+     * holds its values softly and leaves it to the garbage collector to decide what to evict.
+     * Setting a size replaces the cache with one that holds at most that many objects, evicting
+     * the least recently used and only admitting new objects that have been asked for at least
+     * as often as the objects they would displace. The current contents of the cache are
+     * discarded, so this should be called before the ObjectStore is used.
+     *
+     * @param objectCacheSize the maximum number of objects, or zero or less for the default
+     * garbage-collector managed cache
+     */
+    public void setObjectCacheSize(int objectCacheSize) {
+        if (objectCacheSize > 0) {
+            cache = new BoundedCacheMap<Integer, InterMineObject>(getObjectCacheName(),
+                    objectCacheSize, true);
+        } else {
+            cache = Collections.synchronizedMap(new CacheMap<Integer, InterMineObject>(
+                        getObjectCacheName()));
+        }
+    }
+
+    /**
+     * Returns the cached object for the given ID, which may be null if the object is known not
+     * to exist, or NOT_CACHED if there is no cache entry. Both cache implementations answer this
+     * atomically, so no lock on the cache is needed.
+     *
+     * @param id the ID of the object
+     * @return an InterMineObject, null, or NOT_CACHED
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object lookupObjectById(Integer id) {
+        return ((Map) cache).getOrDefault(id, NOT_CACHED);
     }
 
     /**
@@ -189,27 +238,20 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
         if (getObjectOps % 10000 == 0) {
             LOG.info("getObjectById called " + getObjectOps + " times. Cache hits: "
                     + getObjectHits + ". Prefetches: " + getObjectPrefetches);
-        }
-        boolean contains = true;
-        InterMineObject cached = null;
-        synchronized (cache) {
-            cached = cache.get(id);
-            if (cached == null) {
-                contains = cache.containsKey(id);
+            if (cache instanceof BoundedCacheMap<?, ?>) {
+                LOG.info(((BoundedCacheMap<?, ?>) cache).getStatistics());
             }
         }
-        if (contains) {
+        Object cached = lookupObjectById(id);
+        if (cached != NOT_CACHED) {
             getObjectHits++;
-            return cached;
+            return (InterMineObject) cached;
         }
         InterMineObject fromDb = internalGetObjectById(id, clazz);
         synchronized (cache) {
-            cached = cache.get(id);
-            if (cached == null) {
-                contains = cache.containsKey(id);
-            }
-            if (contains) {
-                fromDb = cached;
+            cached = lookupObjectById(id);
+            if (cached != NOT_CACHED) {
+                fromDb = (InterMineObject) cached;
             } else {
                 cacheObjectById(id, fromDb);
             }
@@ -323,9 +365,7 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public InterMineObject pilferObjectById(Integer id) {
-        synchronized (cache) {
-            return cache.get(id);
-        }
+        return cache.get(id);
     }
 
     /**
@@ -511,4 +551,13 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
     public Clob createClob() throws ObjectStoreException {
         return new Clob(getSerial().intValue());
     }
+
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * This ObjectStore reads every Clob from the database.
+     */
+    public ClobFile getClobFile(Clob clob) {
+        return null;
+    }
 }
@@ -18,6 +18,7 @@ import java.util.Set;
 import org.intermine.metadata.Model;
 import org.intermine.model.InterMineObject;
 import org.intermine.objectstore.query.Clob;
+import org.intermine.objectstore.query.ClobFile;
 import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.Results;
@@ -246,4 +247,11 @@ public class ObjectStorePassthruImpl implements ObjectStore
     public Clob createClob() throws ObjectStoreException {
         return os.createClob();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ClobFile getClobFile(Clob clob) {
+        return os.getClobFile(clob);
+    }
 }
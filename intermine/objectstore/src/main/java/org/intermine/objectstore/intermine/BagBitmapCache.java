@@ -0,0 +1,300 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.BAGID_COLUMN;
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.BAGVAL_COLUMN;
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.INT_BAG_TABLE_NAME;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+
+import org.apache.log4j.Logger;
+import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseUtil;
+import org.intermine.util.BoundedCacheMap;
+import org.intermine.util.IntBitmap;
+
+/**
+ * A cache of the contents of ObjectStoreBags as IntBitmaps, so that the size of a bag, membership
+ * tests and set operations between bags can be done in memory rather than with SQL on the bag
+ * table.
+ * <p>
+ * The cache holds a bounded number of bags, evicting the least recently used. Bitmaps of large
+ * bags are also saved in a table next to the bag table, so that a bag evicted from the cache (or
+ * from the cache of another ObjectStore on the same database) can be read back as a single row
+ * rather than one row per element. The table is created with the rest of the database; if it does
+ * not exist, bitmaps are only held in memory.
+ * <p>
+ * A saved bitmap must never be older than the bag it was read from, even when the bag is changed
+ * by another process. The ObjectStoreWriter calls deleteSaved() in every transaction that changes
+ * a bag, before it commits, and a bitmap is only saved in a transaction that reads the bag after
+ * taking the same lock on the bitmap table. Either the change commits first, and the bitmap
+ * includes it, or the bitmap is saved first, and the change deletes it.
+ * <p>
+ * The ObjectStore tells the cache about bags that have been changed, after the change has been
+ * committed. A bitmap that was being read while a change was committed is not kept, so the cache
+ * never holds contents older than the last change made through this ObjectStore. Changes made by
+ * other processes are not seen in memory, in the same way as for the results caches.
+ *
+ * @author agent
+ */
+public class BagBitmapCache
+{
+    private static final Logger LOG = Logger.getLogger(BagBitmapCache.class);
+    /** The name of the table that holds saved bitmaps. */
+    public static final String BAG_BITMAP_TABLE_NAME = "osbag_bitmap";
+    /** The name of the column in the bitmap table that holds the bitmap. */
+    public static final String BITMAP_COLUMN = "bitmap";
+    /** The default maximum number of bags held in memory. */
+    public static final int DEFAULT_MAX_BAGS = 100;
+    /** Bags smaller than this are quick enough to read from the bag table, and are not saved. */
+    public static final int MIN_SAVED_SIZE = 1000;
+
+    private final Database db;
+    private final BoundedCacheMap<Integer, IntBitmap> bitmaps;
+    // Incremented whenever a bag is changed, to detect bitmaps read during a change
+    private long alterations = 0;
+    private Boolean tableAvailable = null;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param db the Database holding the bags
+     * @param maxBags the maximum number of bags to hold in memory
+     */
+    public BagBitmapCache(Database db, int maxBags) {
+        this.db = db;
+        bitmaps = new BoundedCacheMap<Integer, IntBitmap>("BagBitmapCache", maxBags);
+    }
+
+    /**
+     * Returns the contents of a bag. The returned IntBitmap is shared, and must not be altered.
+     *
+     * @param bagId the id of the ObjectStoreBag
+     * @return an IntBitmap
+     * @throws SQLException if there is a problem reading the bag
+     */
+    public IntBitmap getBitmap(int bagId) throws SQLException {
+        IntBitmap bitmap = bitmaps.get(Integer.valueOf(bagId));
+        if (bitmap != null) {
+            return bitmap;
+        }
+        long alterationsBefore;
+        synchronized (this) {
+            alterationsBefore = alterations;
+        }
+        Connection c = db.getConnection();
+        try {
+            c.setAutoCommit(true);
+            boolean saved = false;
+            if (isTableAvailable(c)) {
+                bitmap = readSaved(c, bagId);
+                saved = bitmap != null;
+            }
+            if (bitmap == null) {
+                bitmap = readFromBagTable(c, bagId);
+            }
+            if ((!saved) && (bitmap.size() >= MIN_SAVED_SIZE) && isTableAvailable(c)) {
+                IntBitmap savedBitmap = save(c, bagId);
+                if (savedBitmap != null) {
+                    bitmap = savedBitmap;
+                }
+            }
+        } finally {
+            c.close();
+        }
+        synchronized (this) {
+            if (alterations == alterationsBefore) {
+                bitmaps.put(Integer.valueOf(bagId), bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Discards the in-memory contents of some bags that have been changed. This must be called
+     * after the change has been committed.
+     *
+     * @param bagIds the ids of the changed ObjectStoreBags
+     */
+    public synchronized void bagsAltered(Collection<Integer> bagIds) {
+        if (bagIds.isEmpty()) {
+            return;
+        }
+        alterations++;
+        for (Integer bagId : bagIds) {
+            bitmaps.remove(bagId);
+        }
+    }
+
+    /**
+     * Deletes the saved bitmaps of some bags. This must be called in the transaction that changes
+     * the bags, after the changes have been written and before the transaction is committed, and
+     * holds a lock on the bitmap table until the transaction ends.
+     *
+     * @param c a Connection that is in a transaction
+     * @param bagIds the ids of the ObjectStoreBags being changed
+     * @throws SQLException if there is a problem deleting the bitmaps
+     */
+    public static void deleteSaved(Connection c, Collection<Integer> bagIds) throws SQLException {
+        if (bagIds.isEmpty() || !DatabaseUtil.tableExists(c, BAG_BITMAP_TABLE_NAME)) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (Integer bagId : bagIds) {
+            ids.append(ids.length() == 0 ? "" : ", ").append(bagId);
+        }
+        Statement s = c.createStatement();
+        try {
+            s.execute("LOCK TABLE " + BAG_BITMAP_TABLE_NAME + " IN SHARE ROW EXCLUSIVE MODE");
+            s.execute("DELETE FROM " + BAG_BITMAP_TABLE_NAME + " WHERE " + BAGID_COLUMN + " IN ("
+                    + ids + ")");
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Empties the in-memory cache.
+     */
+    public synchronized void flush() {
+        alterations++;
+        bitmaps.clear();
+    }
+
+    /**
+     * Returns a description of the size and hit rate of the cache, suitable for logging.
+     *
+     * @return a String
+     */
+    public String getStatistics() {
+        return bitmaps.getStatistics();
+    }
+
+    /**
+     * Reads the contents of a bag from the bag table.
+     *
+     * @param c a Connection
+     * @param bagId the id of the ObjectStoreBag
+     * @return a new IntBitmap
+     * @throws SQLException if there is a problem reading the bag
+     */
+    public static IntBitmap readFromBagTable(Connection c, int bagId) throws SQLException {
+        IntBitmap retval = new IntBitmap();
+        PreparedStatement s = c.prepareStatement("SELECT " + BAGVAL_COLUMN + " FROM "
+                + INT_BAG_TABLE_NAME + " WHERE " + BAGID_COLUMN + " = ?");
+        try {
+            s.setInt(1, bagId);
+            ResultSet r = s.executeQuery();
+            while (r.next()) {
+                retval.add(r.getInt(1));
+            }
+        } finally {
+            s.close();
+        }
+        return retval;
+    }
+
+    private synchronized boolean isTableAvailable(Connection c) {
+        if (tableAvailable == null) {
+            try {
+                tableAvailable = Boolean.valueOf(DatabaseUtil.tableExists(c,
+                            BAG_BITMAP_TABLE_NAME));
+            } catch (SQLException e) {
+                LOG.warn("Could not look for table " + BAG_BITMAP_TABLE_NAME
+                        + ", bag bitmaps will only be held in memory", e);
+                tableAvailable = Boolean.FALSE;
+            }
+            if (!tableAvailable.booleanValue()) {
+                LOG.info("There is no " + BAG_BITMAP_TABLE_NAME + " table, bag bitmaps will only"
+                        + " be held in memory");
+            }
+        }
+        return tableAvailable.booleanValue();
+    }
+
+    private static IntBitmap readSaved(Connection c, int bagId) throws SQLException {
+        PreparedStatement s = c.prepareStatement("SELECT " + BITMAP_COLUMN + " FROM "
+                + BAG_BITMAP_TABLE_NAME + " WHERE " + BAGID_COLUMN + " = ?");
+        try {
+            s.setInt(1, bagId);
+            ResultSet r = s.executeQuery();
+            if (r.next()) {
+                try {
+                    return IntBitmap.readFrom(new DataInputStream(
+                                new ByteArrayInputStream(r.getBytes(1))));
+                } catch (IOException e) {
+                    LOG.warn("Ignoring unreadable saved bitmap for bag " + bagId, e);
+                }
+            }
+            return null;
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Reads a bag again and saves its bitmap, in a transaction that holds the lock that
+     * deleteSaved() takes, so that no change to the bag can be committed in between.
+     *
+     * @return the bitmap that was saved, or null if it could not be saved
+     */
+    private static IntBitmap save(Connection c, int bagId) throws SQLException {
+        c.setAutoCommit(false);
+        try {
+            Statement s = c.createStatement();
+            try {
+                s.execute("LOCK TABLE " + BAG_BITMAP_TABLE_NAME + " IN SHARE ROW EXCLUSIVE MODE");
+            } finally {
+                s.close();
+            }
+            // Each statement after the lock sees every change committed before it
+            IntBitmap bitmap = readSaved(c, bagId);
+            if (bitmap == null) {
+                bitmap = readFromBagTable(c, bagId);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                bitmap.writeTo(out);
+                out.flush();
+                PreparedStatement ps = c.prepareStatement("INSERT INTO " + BAG_BITMAP_TABLE_NAME
+                        + " (" + BAGID_COLUMN + ", " + BITMAP_COLUMN + ") VALUES (?, ?)");
+                try {
+                    ps.setInt(1, bagId);
+                    ps.setBytes(2, bytes.toByteArray());
+                    ps.executeUpdate();
+                } finally {
+                    ps.close();
+                }
+            }
+            c.commit();
+            return bitmap;
+        } catch (SQLException e) {
+            c.rollback();
+            LOG.warn("Could not save bitmap for bag " + bagId, e);
+            return null;
+        } catch (IOException e) {
+            c.rollback();
+            throw new RuntimeException("Unexpected IOException writing to a byte array", e);
+        } finally {
+            c.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOBID_COLUMN;
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOBPAGE_COLUMN;
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOBVAL_COLUMN;
+import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOB_TABLE_NAME;
+import static org.intermine.objectstore.query.Clob.CLOB_PAGE_SIZE;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.modelproduction.MetadataManager;
+import org.intermine.objectstore.query.Clob;
+import org.intermine.sql.Database;
+
+/**
+ * A directory of MappedClob files, written from the clob table of a finished database so that
+ * ClobAccess can read large clobs, such as the residues of chromosomes, from memory-mapped files
+ * instead of a page at a time from the database. Clobs without a file are read from the database
+ * as before.
+ *
+ * The directory holds the serial number of the database it was written from, and is ignored by
+ * any other database, so a directory left over from a previous release is never used.
+ *
+ * @author agent
+ */
+public final class ClobFileStore
+{
+    private static final Logger LOG = Logger.getLogger(ClobFileStore.class);
+    private static final String SERIAL_FILE = "serialNumber";
+    private static final String SUFFIX = ".clob";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final Set<Integer> clobIds;
+    private final Map<Integer, MappedClob> mapped = new ConcurrentHashMap<Integer, MappedClob>();
+
+    private ClobFileStore(File dir, Set<Integer> clobIds) {
+        this.dir = dir;
+        this.clobIds = clobIds;
+    }
+
+    /**
+     * Opens a directory of clob files.
+     *
+     * @param dir the directory
+     * @param serialNumber the serial number of the database being read
+     * @return a ClobFileStore, or null if the directory was not written from that database
+     * @throws IOException if the directory cannot be read
+     */
+    public static ClobFileStore open(File dir, String serialNumber) throws IOException {
+        String dirSerialNumber;
+        try {
+            dirSerialNumber = new String(Files.readAllBytes(new File(dir, SERIAL_FILE).toPath()),
+                    StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            LOG.warn("Not using clob files in " + dir + " - they have not been written");
+            return null;
+        }
+        if (!dirSerialNumber.equals(serialNumber)) {
+            LOG.warn("Not using clob files in " + dir + " - they were written from a different"
+                    + " database");
+            return null;
+        }
+        Set<Integer> clobIds = ConcurrentHashMap.newKeySet();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(SUFFIX)) {
+                    clobIds.add(Integer.valueOf(name.substring(0, name.length()
+                                    - SUFFIX.length())));
+                }
+            }
+        }
+        LOG.info("Reading " + clobIds.size() + " clobs from files in " + dir);
+        return new ClobFileStore(dir, clobIds);
+    }
+
+    /**
+     * Returns the file of a clob, mapping it the first time it is asked for.
+     *
+     * @param clob the Clob
+     * @return a MappedClob, or null if the clob has no file
+     */
+    public MappedClob getMappedClob(Clob clob) {
+        Integer clobId = Integer.valueOf(clob.getClobId());
+        if (!clobIds.contains(clobId)) {
+            return null;
+        }
+        MappedClob retval = mapped.get(clobId);
+        if (retval == null) {
+            try {
+                retval = MappedClob.open(new File(dir, clobId + SUFFIX));
+            } catch (IOException e) {
+                LOG.error("Could not read clob file for clob " + clobId
+                        + ", reading it from the database", e);
+                remove(clob);
+                return null;
+            }
+            mapped.put(clobId, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * Stops using the file of a clob, because the clob has been changed in the database.
+     *
+     * @param clob the Clob
+     */
+    public void remove(Clob clob) {
+        Integer clobId = Integer.valueOf(clob.getClobId());
+        clobIds.remove(clobId);
+        mapped.remove(clobId);
+    }
+
+    /**
+     * Writes a file for each clob in a database of at least a given length, replacing any files
+     * already in the directory. This should be run once the database is complete, as the files
+     * are not updated when the clobs change.
+     *
+     * @param db the database
+     * @param dir the directory, which is created if necessary
+     * @param minLength the length of the shortest clob to write
+     * @throws IOException if the files cannot be written
+     * @throws SQLException if the clobs cannot be read
+     */
+    public static void write(Database db, File dir, int minLength)
+        throws IOException, SQLException {
+        Files.createDirectories(dir.toPath());
+        // readers must not use the directory while it is being written
+        Files.deleteIfExists(new File(dir, SERIAL_FILE).toPath());
+        File[] oldFiles = dir.listFiles();
+        if (oldFiles != null) {
+            for (File oldFile : oldFiles) {
+                if (oldFile.getName().endsWith(SUFFIX)) {
+                    Files.delete(oldFile.toPath());
+                }
+            }
+        }
+
+        String serialNumber = MetadataManager.retrieve(db, MetadataManager.SERIAL_NUMBER);
+        if (serialNumber == null) {
+            throw new IllegalArgumentException("Database " + db.getURL()
+                    + " has no serial number");
+        }
+        Connection c = db.getConnection();
+        try {
+            c.setAutoCommit(false);
+            List<Integer> clobIds = new ArrayList<Integer>();
+            PreparedStatement idsStatement = c.prepareStatement("SELECT " + CLOBID_COLUMN
+                    + " FROM " + CLOB_TABLE_NAME + " GROUP BY " + CLOBID_COLUMN
+                    + " HAVING COUNT(*) >= ?");
+            idsStatement.setInt(1, Math.max(1, (minLength + CLOB_PAGE_SIZE - 1)
+                        / CLOB_PAGE_SIZE));
+            ResultSet ids = idsStatement.executeQuery();
+            while (ids.next()) {
+                clobIds.add(Integer.valueOf(ids.getInt(1)));
+            }
+            idsStatement.close();
+
+            PreparedStatement pages = c.prepareStatement("SELECT " + CLOBVAL_COLUMN + " FROM "
+                    + CLOB_TABLE_NAME + " WHERE " + CLOBID_COLUMN + " = ? ORDER BY "
+                    + CLOBPAGE_COLUMN);
+            pages.setFetchSize(100);
+            long start = System.currentTimeMillis();
+            int written = 0;
+            for (Integer clobId : clobIds) {
+                pages.setInt(1, clobId.intValue());
+                if (writeClob(pages, clobId, dir)) {
+                    written++;
+                }
+            }
+            pages.close();
+            c.commit();
+            LOG.info("Wrote " + written + " of " + clobIds.size() + " clobs to " + dir
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            try {
+                c.setAutoCommit(true);
+            } finally {
+                c.close();
+            }
+        }
+        Files.write(new File(dir, SERIAL_FILE).toPath(),
+                serialNumber.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean writeClob(PreparedStatement pages, Integer clobId, File dir)
+        throws IOException, SQLException {
+        File raw = File.createTempFile("clob", TEMP_SUFFIX, dir);
+        File temp = new File(dir, clobId + SUFFIX + TEMP_SUFFIX);
+        try {
+            boolean[] seen = new boolean[256];
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(raw));
+            try {
+                ResultSet rs = pages.executeQuery();
+                try {
+                    while (rs.next()) {
+                        String page = rs.getString(1);
+                        for (int i = 0; i < page.length(); i++) {
+                            char ch = page.charAt(i);
+                            if (ch > 255) {
+                                LOG.info("Not writing clob " + clobId
+                                        + " to a file - it is not single-byte text");
+                                return false;
+                            }
+                            seen[ch] = true;
+                            out.write(ch);
+                        }
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                out.close();
+            }
+            MappedClob.write(raw, temp, seen);
+            Files.move(temp.toPath(), new File(dir, clobId + SUFFIX).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(raw.toPath());
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
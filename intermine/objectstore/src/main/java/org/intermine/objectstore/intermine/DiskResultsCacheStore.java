@@ -0,0 +1,225 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A ResultsCacheStore that keeps each value and version in a file in a directory, which may be
+ * on a filesystem mounted by several servers so that they share the cache. Files are named by a
+ * hash of their key, and contain the key itself, which is checked when the file is read. Files
+ * are written under a temporary name and then renamed, so that a reader never sees a partly
+ * written file.
+ *
+ * When the values take up more than a limit, the least recently used are deleted. The versions
+ * are never deleted.
+ *
+ * @author agent
+ */
+public class DiskResultsCacheStore implements ResultsCacheStore
+{
+    private static final Logger LOG = Logger.getLogger(DiskResultsCacheStore.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    // check the size of the directory after this many values have been written
+    private static final int CLEANUP_INTERVAL = 100;
+
+    private final File valuesDir;
+    private final File versionsDir;
+    private final long maxBytes;
+    private int putsSinceCleanup = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param dir the directory to keep the cache in, which is created if necessary
+     * @param maxBytes the maximum total size of the values held
+     * @throws IOException if the directory cannot be created
+     */
+    public DiskResultsCacheStore(File dir, long maxBytes) throws IOException {
+        valuesDir = new File(dir, "values");
+        versionsDir = new File(dir, "versions");
+        this.maxBytes = maxBytes;
+        Files.createDirectories(valuesDir.toPath());
+        Files.createDirectories(versionsDir.toPath());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] get(String key) throws IOException {
+        File file = new File(valuesDir, hash(key));
+        byte[] contents = read(file, key);
+        if (contents != null) {
+            // keep track of use for eviction
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return contents;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        if (value.length > maxBytes) {
+            return;
+        }
+        write(new File(valuesDir, hash(key)), key, value);
+        boolean cleanup;
+        synchronized (this) {
+            putsSinceCleanup++;
+            cleanup = putsSinceCleanup >= CLEANUP_INTERVAL;
+            if (cleanup) {
+                putsSinceCleanup = 0;
+            }
+        }
+        if (cleanup) {
+            cleanup();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getVersion(String component) throws IOException {
+        byte[] contents = read(new File(versionsDir, hash(component)), component);
+        return contents == null ? null : new String(contents, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setVersion(String component, String version) throws IOException {
+        write(new File(versionsDir, hash(component)), component,
+                version.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes the least recently used values until the values fit within the limit.
+     */
+    protected void cleanup() {
+        File[] files = valuesDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().endsWith(TEMP_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        final long[] modified = new long[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            total += files[i].length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a.intValue()], modified[b.intValue()]);
+            }
+        });
+        int deleted = 0;
+        for (int i = 0; (i < order.length) && (total > maxBytes); i++) {
+            File file = files[order[i].intValue()];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                deleted++;
+            }
+        }
+        LOG.info("Deleted " + deleted + " old values from results cache in " + valuesDir);
+    }
+
+    private static byte[] read(File file, String key) throws IOException {
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        if ((contents.length < 4) || (buffer.getInt() != keyBytes.length)
+                || (contents.length < 4 + keyBytes.length)) {
+            return null;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (contents[4 + i] != keyBytes[i]) {
+                // a different key with the same hash
+                return null;
+            }
+        }
+        return Arrays.copyOfRange(contents, 4 + keyBytes.length, contents.length);
+    }
+
+    private static void write(File file, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + keyBytes.length + value.length);
+        buffer.putInt(keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(value);
+        File temp = File.createTempFile(file.getName(), TEMP_SUFFIX, file.getParentFile());
+        try {
+            Files.write(temp.toPath(), buffer.array());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder retval = new StringBuilder();
+            for (byte b : digest) {
+                retval.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            }
+            return retval.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "disk store in " + valuesDir.getParentFile();
+    }
+}
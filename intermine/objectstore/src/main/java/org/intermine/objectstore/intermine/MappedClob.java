@@ -0,0 +1,207 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.intermine.objectstore.query.ClobFile;
+
+/**
+ * The text of a Clob, held in a file that is mapped into memory, so that any character can be
+ * read without a database query. The characters are packed into 2, 4 or 8 bits each, depending
+ * on how many different characters the text contains, so that a DNA sequence of ACGT takes a
+ * quarter of its length, and one that also has N or other ambiguity codes takes half. The file is
+ * shared between all the threads that read it, and by the operating system's page cache between
+ * processes.
+ *
+ * The file starts with a header of the magic number, the length of the text, the number of bits
+ * per character, and the characters that the codes stand for.
+ *
+ * @author agent
+ */
+public final class MappedClob implements ClobFile
+{
+    private static final int MAGIC = 0x494d434c;
+    private static final int MAX_ALPHABET = 16;
+    private static final int DATA_OFFSET = 32;
+
+    private final ByteBuffer data;
+    private final int length;
+    private final int bits;
+    private final int mask;
+    private final int charsPerByte;
+    private final char[] alphabet;
+
+    private MappedClob(ByteBuffer data, int length, int bits, char[] alphabet) {
+        this.data = data;
+        this.length = length;
+        this.bits = bits;
+        this.alphabet = alphabet;
+        mask = (1 << bits) - 1;
+        charsPerByte = 8 / bits;
+    }
+
+    /**
+     * Maps a file written by write().
+     *
+     * @param file the file
+     * @return a MappedClob
+     * @throws IOException if the file cannot be read, or is not a clob file
+     */
+    public static MappedClob open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the file is closed
+            ByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    raf.length());
+            if ((data.capacity() < DATA_OFFSET) || (data.getInt(0) != MAGIC)) {
+                throw new IOException(file + " is not a clob file");
+            }
+            int length = data.getInt(4);
+            int bits = data.get(8);
+            int alphabetSize = data.get(9);
+            if (((bits != 2) && (bits != 4) && (bits != 8)) || (alphabetSize > MAX_ALPHABET)
+                    || (data.capacity() < DATA_OFFSET + ((long) length * bits + 7) / 8)) {
+                throw new IOException(file + " is corrupt");
+            }
+            char[] alphabet = new char[alphabetSize];
+            for (int i = 0; i < alphabetSize; i++) {
+                alphabet[i] = (char) (data.get(10 + i) & 0xff);
+            }
+            return new MappedClob(data, length, bits, alphabet);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the length of the text.
+     *
+     * @return the number of characters
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns one character of the text.
+     *
+     * @param index the position of the character, from zero
+     * @return a character
+     */
+    public char charAt(int index) {
+        if (bits == 8) {
+            return (char) (data.get(DATA_OFFSET + index) & 0xff);
+        }
+        int b = data.get(DATA_OFFSET + index / charsPerByte);
+        return alphabet[(b >>> ((index % charsPerByte) * bits)) & mask];
+    }
+
+    /**
+     * Appends part of the text to a StringBuilder.
+     *
+     * @param sb the StringBuilder
+     * @param start the position of the first character, from zero
+     * @param end the position after the last character
+     */
+    public void appendTo(StringBuilder sb, int start, int end) {
+        sb.ensureCapacity(sb.length() + end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+    }
+
+    /**
+     * Packs text that has already been written to a file as one byte per character into a clob
+     * file.
+     *
+     * @param raw the file of one byte per character
+     * @param file the clob file to write
+     * @param seen which byte values occur in the raw file
+     * @throws IOException if the files cannot be read or written
+     */
+    static void write(File raw, File file, boolean[] seen) throws IOException {
+        char[] alphabet = new char[MAX_ALPHABET];
+        int alphabetSize = 0;
+        byte[] codes = new byte[256];
+        for (int c = 0; c < 256; c++) {
+            if (seen[c]) {
+                if (alphabetSize < MAX_ALPHABET) {
+                    alphabet[alphabetSize] = (char) c;
+                    codes[c] = (byte) alphabetSize;
+                }
+                alphabetSize++;
+            }
+        }
+        int bits;
+        if (alphabetSize <= 4) {
+            bits = 2;
+        } else if (alphabetSize <= MAX_ALPHABET) {
+            bits = 4;
+        } else {
+            bits = 8;
+            alphabetSize = 0;
+        }
+        long length = raw.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Clob too long: " + length);
+        }
+
+        InputStream in = new BufferedInputStream(new FileInputStream(raw));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt((int) length);
+            out.writeByte(bits);
+            out.writeByte(alphabetSize);
+            for (int i = 0; i < MAX_ALPHABET; i++) {
+                out.writeByte(i < alphabetSize ? alphabet[i] : 0);
+            }
+            for (int i = 10 + MAX_ALPHABET; i < DATA_OFFSET; i++) {
+                out.writeByte(0);
+            }
+            int charsPerByte = 8 / bits;
+            int packed = 0;
+            int count = 0;
+            int c;
+            while ((c = in.read()) != -1) {
+                if (bits == 8) {
+                    out.writeByte(c);
+                } else {
+                    packed |= codes[c] << (count * bits);
+                    count++;
+                    if (count == charsPerByte) {
+                        out.writeByte(packed);
+                        packed = 0;
+                        count = 0;
+                    }
+                }
+            }
+            if (count > 0) {
+                out.writeByte(packed);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.proxy.ProxyCollection;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * Decodes the fields of NotXml for one class of object, for the classes that do not have a
+ * generated setoBJECT method. The ClassDescriptors of the class are looked at once, when the
+ * decoder is created, to work out how each section of the NotXml is converted, so decoding an
+ * object does no reflection, no model lookups, and no search for the conversion of each
+ * attribute.
+ *
+ * @author agent
+ */
+final class NotXmlClassDecoder
+{
+    private static final int STRING = 0;
+    private static final int INTEGER = 1;
+    private static final int LONG = 2;
+    private static final int SHORT = 3;
+    private static final int BYTE = 4;
+    private static final int DOUBLE = 5;
+    private static final int FLOAT = 6;
+    private static final int BOOLEAN = 7;
+    private static final int CLOB = 8;
+    private static final int OTHER = 9;
+    private static final int REFERENCE = 10;
+
+    private final Map<String, FieldDecoder> fields = new HashMap<String, FieldDecoder>();
+    private final Map<String, Class<?>> collections;
+
+    /**
+     * Creates a decoder for a class.
+     *
+     * @param clazz the class of the objects to decode
+     * @param model the model that the class belongs to
+     */
+    NotXmlClassDecoder(Class<? extends FastPathObject> clazz, Model model) {
+        for (Map.Entry<String, TypeUtil.FieldInfo> entry : TypeUtil.getFieldInfos(clazz)
+                .entrySet()) {
+            Class<?> type = entry.getValue().getType();
+            if (type != null) {
+                String fieldName = entry.getKey().intern();
+                fields.put("a" + fieldName, new FieldDecoder(fieldName, conversionFor(type),
+                            type));
+            }
+        }
+        for (FieldDescriptor field : model.getFieldDescriptorsForClass(clazz).values()) {
+            if (field.isReference()) {
+                String fieldName = field.getName().intern();
+                fields.put("r" + fieldName, new FieldDecoder(fieldName, REFERENCE,
+                            ((ReferenceDescriptor) field).getReferencedClassDescriptor()
+                            .getType()));
+            }
+        }
+        collections = model.getCollectionsForClass(clazz);
+    }
+
+    private static int conversionFor(Class<?> type) {
+        if (String.class.equals(type)) {
+            return STRING;
+        } else if (Integer.class.equals(type) || Integer.TYPE.equals(type)) {
+            return INTEGER;
+        } else if (Long.class.equals(type) || Long.TYPE.equals(type)) {
+            return LONG;
+        } else if (Short.class.equals(type) || Short.TYPE.equals(type)) {
+            return SHORT;
+        } else if (Byte.class.equals(type) || Byte.TYPE.equals(type)) {
+            return BYTE;
+        } else if (Double.class.equals(type) || Double.TYPE.equals(type)) {
+            return DOUBLE;
+        } else if (Float.class.equals(type) || Float.TYPE.equals(type)) {
+            return FLOAT;
+        } else if (Boolean.class.equals(type) || Boolean.TYPE.equals(type)) {
+            return BOOLEAN;
+        } else if (ClobAccess.class.equals(type)) {
+            return CLOB;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Decodes the sections of a NotXml String into the fields of an object, and sets every
+     * collection of the object to a lazy ProxyCollection.
+     *
+     * @param a the NotXml String, split on the delimiter
+     * @param os the ObjectStore from which to create lazy objects
+     * @param obj the object to set the fields of
+     * @param valueMap the map of values of the object, if it is a dynamic object, or null to set
+     * the fields with setFieldValue
+     * @param fetchFromInterMineObject true to make references to InterMineObject rather than to
+     * the referenced class
+     */
+    void decode(String[] a, ObjectStore os, InterMineObject obj, Map<String, Object> valueMap,
+            boolean fetchFromInterMineObject) {
+        for (int i = 2; i < a.length; i += 2) {
+            FieldDecoder field = fields.get(a[i]);
+            if (field == null) {
+                if (a[i].startsWith("a") || a[i].startsWith("r")) {
+                    throw new RuntimeException("failed to get field " + a[i].substring(1)
+                            + " for object of class " + a[1]);
+                }
+                continue;
+            }
+            Object value;
+            if (field.conversion == REFERENCE) {
+                value = field.reference(os, a[i + 1], fetchFromInterMineObject);
+            } else {
+                String firstString = (i + 1 == a.length ? "" : a[i + 1]);
+                StringBuilder string = null;
+                while ((i + 2 < a.length) && a[i + 2].startsWith(NotXmlParser.ENCODED_DELIM)) {
+                    i++;
+                    if (string == null) {
+                        string = new StringBuilder(firstString);
+                    }
+                    string.append(NotXmlParser.DELIM).append(a[i + 1].substring(1));
+                }
+                value = field.attribute(os, string == null ? firstString : string.toString());
+            }
+            if (valueMap == null) {
+                obj.setFieldValue(field.name, value);
+            } else {
+                valueMap.put(field.name, value);
+            }
+        }
+        for (Map.Entry<String, Class<?>> collEntry : collections.entrySet()) {
+            Collection<Object> lazyColl = new ProxyCollection<Object>(os, obj,
+                    collEntry.getKey(), collEntry.getValue());
+            if (valueMap == null) {
+                obj.setFieldValue(collEntry.getKey(), lazyColl);
+            } else {
+                valueMap.put(collEntry.getKey(), lazyColl);
+            }
+        }
+    }
+
+    /**
+     * How to decode one section of NotXml.
+     */
+    private static final class FieldDecoder
+    {
+        private final String name;
+        private final int conversion;
+        private final Class<?> type;
+
+        FieldDecoder(String name, int conversion, Class<?> type) {
+            this.name = name;
+            this.conversion = conversion;
+            this.type = type;
+        }
+
+        Object attribute(ObjectStore os, String value) {
+            switch (conversion) {
+                case STRING:
+                    return value;
+                case INTEGER:
+                    return Integer.valueOf(withoutCommas(value));
+                case LONG:
+                    return Long.valueOf(withoutCommas(value));
+                case SHORT:
+                    return Short.valueOf(withoutCommas(value));
+                case BYTE:
+                    return Byte.valueOf(withoutCommas(value));
+                case DOUBLE:
+                    return Double.valueOf(withoutCommas(value));
+                case FLOAT:
+                    return Float.valueOf(withoutCommas(value));
+                case BOOLEAN:
+                    return "NULL".equals(value) ? value : Boolean.valueOf(value);
+                case CLOB:
+                    return ClobAccess.decodeDbDescription(os, value);
+                default:
+                    return TypeUtil.stringToObject(type, value);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Object reference(ObjectStore os, String id, boolean fetchFromInterMineObject) {
+            return new ProxyReference(os, Integer.valueOf(id), fetchFromInterMineObject
+                    ? InterMineObject.class : (Class<? extends InterMineObject>) type);
+        }
+
+        // TypeUtil.stringToObject() accepts numbers with thousands separators
+        private static String withoutCommas(String value) {
+            return value.indexOf(',') == -1 ? value : value.replace(",", "");
+        }
+    }
+}
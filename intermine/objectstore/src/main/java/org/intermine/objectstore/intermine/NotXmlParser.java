@@ -10,26 +10,20 @@ package org.intermine.objectstore.intermine;
  *
  */
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import net.sf.cglib.proxy.Factory;
 
 import org.apache.log4j.Logger;
-import org.intermine.metadata.CollectionDescriptor;
-import org.intermine.metadata.FieldDescriptor;
-import org.intermine.metadata.ReferenceDescriptor;
-import org.intermine.metadata.TypeUtil;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
-import org.intermine.objectstore.proxy.ProxyCollection;
-import org.intermine.objectstore.proxy.ProxyReference;
-import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.util.DynamicBean;
 import org.intermine.util.DynamicUtil;
 
@@ -53,7 +47,7 @@ public final class NotXmlParser
      */
     public static final String ENCODED_DELIM = "d";
     /**
-     * A Pattern that will find delimiters.
+     * A Pattern that will find delimiters. The split method gives the same result faster.
      */
     public static final Pattern SPLITTER = Pattern.compile(DELIM, Pattern.LITERAL);
     private static final Pattern SPACE_SPLITTER = Pattern.compile(" ", Pattern.LITERAL);
@@ -64,6 +58,43 @@ public final class NotXmlParser
     private static long parseTime = 0;
     private static Map<String, Class<? extends FastPathObject>> classCache
         = Collections.synchronizedMap(new HashMap<String, Class<? extends FastPathObject>>());
+    private static Map<Class<?>, NotXmlClassDecoder> decoderCache
+        = new ConcurrentHashMap<Class<?>, NotXmlClassDecoder>();
+
+    /**
+     * Splits the given NotXml String on the delimiter. This gives exactly the same result as
+     * SPLITTER.split(notXml) - including dropping trailing empty strings - but scans the String
+     * with indexOf rather than running a regular expression matcher, and allocates nothing but
+     * the result.
+     *
+     * @param notXml the NotXml String
+     * @return an array of the sections of the String
+     */
+    public static String[] split(String notXml) {
+        int delimLength = DELIM.length();
+        int count = 1;
+        int pos = notXml.indexOf(DELIM);
+        while (pos != -1) {
+            count++;
+            pos = notXml.indexOf(DELIM, pos + delimLength);
+        }
+        if (count == 1) {
+            return new String[] {notXml};
+        }
+        String[] retval = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = notXml.indexOf(DELIM, start);
+            retval[i] = notXml.substring(start, end);
+            start = end + delimLength;
+        }
+        retval[count - 1] = notXml.substring(start);
+        int length = count;
+        while ((length > 0) && (retval[length - 1].length() == 0)) {
+            length--;
+        }
+        return length == count ? retval : Arrays.copyOf(retval, length);
+    }
 
     /**
      * Parse the given NotXml String into an Object.
@@ -81,7 +112,7 @@ public final class NotXmlParser
             LOG.warn("Parsing " + xml, e);
         }
         long time1 = System.currentTimeMillis();
-        String[] a = SPLITTER.split(xml);
+        String[] a = split(xml);
         long time2 = System.currentTimeMillis();
         splitTime += time2 - time1;
 
@@ -112,59 +143,8 @@ public final class NotXmlParser
 
         if (retval instanceof Factory) {
             DynamicBean bean = (DynamicBean) ((Factory) retval).getCallback(0);
-            Map<String, Object> valueMap = bean.getMap();
-            Map<String, FieldDescriptor> fields = os.getModel()
-                .getFieldDescriptorsForClass(retval.getClass());
-            Map<String, TypeUtil.FieldInfo> fieldInfos = TypeUtil.getFieldInfos(clazz);
-            boolean fetchFromInterMineObject = os.getSchema().isFetchFromInterMineObject();
-            for (int i = 2; i < a.length; i += 2) {
-                if (a[i].startsWith("a")) {
-                    String fieldName = a[i].substring(1).intern();
-                    Class<?> fieldClass = fieldInfos.get(fieldName).getType();
-                    String firstString = (i + 1 == a.length ? "" : a[i + 1]);
-                    StringBuffer string = null;
-                    while ((i + 2 < a.length) && (a[i + 2].startsWith(ENCODED_DELIM))) {
-                        i++;
-                        if (string == null) {
-                            string = new StringBuffer(firstString);
-                        }
-                        string.append(DELIM).append(a[i + 1].substring(1));
-                    }
-                    if (ClobAccess.class.equals(fieldClass)) {
-                        valueMap.put(fieldName, ClobAccess.decodeDbDescription(os, string == null
-                                ? firstString : string.toString()));
-                    } else {
-                        valueMap.put(fieldName,
-                                TypeUtil.stringToObject(fieldClass, (string == null ? firstString
-                                        : string.toString())));
-                    }
-                } else if (a[i].startsWith("r")) {
-                    String fieldName = a[i].substring(1).intern();
-                    Integer id = Integer.valueOf(a[i + 1]);
-                    if (fetchFromInterMineObject) {
-                        valueMap.put(fieldName, new ProxyReference(os, id,
-                                    InterMineObject.class));
-                    } else {
-                        ReferenceDescriptor ref = (ReferenceDescriptor) fields.get(fieldName);
-                        if (ref == null) {
-                            throw new RuntimeException("failed to get field " + fieldName
-                                    + " for object from XML: " + xml);
-                        }
-                        @SuppressWarnings("unchecked")
-                        Class<? extends InterMineObject> tmpType =
-                            (Class<? extends InterMineObject>) ref.getReferencedClassDescriptor()
-                                                                   .getType();
-                        valueMap.put(fieldName, new ProxyReference(os, id, tmpType));
-                    }
-                }
-            }
-
-            for (Map.Entry<String, Class<?>> collEntry : os.getModel().getCollectionsForClass(clazz)
-                    .entrySet()) {
-                Collection<Object> lazyColl = new ProxyCollection<Object>(os, retval,
-                        collEntry.getKey(), collEntry.getValue());
-                valueMap.put(collEntry.getKey(), lazyColl);
-            }
+            getDecoder(clazz, os).decode(a, os, retval, bean.getMap(),
+                    os.getSchema().isFetchFromInterMineObject());
             time1 = System.currentTimeMillis();
             parseTime += time1 - time2;
             opCount++;
@@ -192,57 +172,7 @@ public final class NotXmlParser
 
                 //LOG.error("Falling back to slow parsing for " + retval.getClass(), e);
 
-                Map<String, FieldDescriptor> fields = os.getModel()
-                    .getFieldDescriptorsForClass(retval.getClass());
-                Map<String, TypeUtil.FieldInfo> fieldInfos = TypeUtil.getFieldInfos(clazz);
-                for (int i = 2; i < a.length; i += 2) {
-                    if (a[i].startsWith("a")) {
-                        String fieldName = a[i].substring(1);
-                        Class<?> fieldClass = fieldInfos.get(fieldName).getType();
-                        String firstString = (i + 1 == a.length ? "" : a[i + 1]);
-                        StringBuffer string = null;
-                        if (firstString.length() * 10 < xml.length() * 9) {
-                            string = new StringBuffer(firstString);
-                        }
-                        while ((i + 2 < a.length) && (a[i + 2].startsWith(ENCODED_DELIM))) {
-                            i++;
-                            if (string == null) {
-                                string = new StringBuffer(firstString);
-                            }
-                            string.append(DELIM).append(a[i + 1].substring(1));
-                        }
-                        if (ClobAccess.class.equals(fieldClass)) {
-                            retval.setFieldValue(fieldName, ClobAccess.decodeDbDescription(os,
-                                    string == null ? firstString : string.toString()));
-                        } else {
-                            retval.setFieldValue(fieldName, TypeUtil.stringToObject(fieldClass,
-                                    (string == null ? firstString : string.toString())));
-                        }
-                    } else if (a[i].startsWith("r")) {
-                        String fieldName = a[i].substring(1);
-                        Integer id = Integer.valueOf(a[i + 1]);
-                        ReferenceDescriptor ref = (ReferenceDescriptor) fields.get(fieldName);
-                        if (ref == null) {
-                            throw new RuntimeException("failed to get field " + fieldName
-                                    + " for object from XML: " + xml);
-                        }
-                        @SuppressWarnings("unchecked")
-                        Class<? extends InterMineObject> tmpType =
-                            (Class<? extends InterMineObject>) ref.getReferencedClassDescriptor()
-                                                                   .getType();
-                        retval.setFieldValue(fieldName, new ProxyReference(os, id, tmpType));
-                    }
-                }
-
-                for (Map.Entry<String, FieldDescriptor> collEntry : fields.entrySet()) {
-                    FieldDescriptor maybeColl = collEntry.getValue();
-                    if (maybeColl instanceof CollectionDescriptor) {
-                        CollectionDescriptor coll = (CollectionDescriptor) maybeColl;
-                        Collection<Object> lazyColl = new ProxyCollection<Object>(os, retval,
-                                coll.getName(), coll.getReferencedClassDescriptor().getType());
-                        retval.setFieldValue(coll.getName(), lazyColl);
-                    }
-                }
+                getDecoder(clazz, os).decode(a, os, retval, null, false);
                 time1 = System.currentTimeMillis();
                 parseTime += time1 - time2;
                 opCount++;
@@ -255,4 +185,14 @@ public final class NotXmlParser
             }
         }
     }
+
+    private static NotXmlClassDecoder getDecoder(Class<? extends FastPathObject> clazz,
+            ObjectStoreInterMineImpl os) {
+        NotXmlClassDecoder decoder = decoderCache.get(clazz);
+        if (decoder == null) {
+            decoder = new NotXmlClassDecoder(clazz, os.getModel());
+            decoderCache.put(clazz, decoder);
+        }
+        return decoder;
+    }
 }
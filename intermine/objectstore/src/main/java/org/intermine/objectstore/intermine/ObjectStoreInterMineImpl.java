@@ -13,6 +13,7 @@ package org.intermine.objectstore.intermine;
 import static org.intermine.objectstore.query.ResultsBatches.DEFAULT_BATCH_SIZE;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
@@ -35,6 +36,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.intermine.metadata.ClassDescriptor;
@@ -52,6 +54,7 @@ import org.intermine.objectstore.ObjectStoreQueryDurationException;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.Clob;
+import org.intermine.objectstore.query.ClobFile;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ConstraintHelper;
 import org.intermine.objectstore.query.ConstraintSet;
@@ -59,6 +62,7 @@ import org.intermine.objectstore.query.ConstraintTraverseAction;
 import org.intermine.objectstore.query.ConstraintWithBag;
 import org.intermine.objectstore.query.FromElement;
 import org.intermine.objectstore.query.MultipleInBagConstraint;
+import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.OrderDescending;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -90,7 +94,9 @@ import org.intermine.sql.query.ExplainResult;
 import org.intermine.sql.query.PostgresExplainResult;
 import org.intermine.sql.writebatch.Batch;
 import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
+import org.intermine.util.BoundedCacheMap;
 import org.intermine.util.CacheMap;
+import org.intermine.util.IntBitmap;
 import org.intermine.util.ShutdownHook;
 import org.intermine.util.Shutdownable;
 
@@ -147,11 +153,18 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     protected Map<Query, Integer> goFasterCountMap = new IdentityHashMap<Query, Integer>();
     protected ReferenceQueue<String> bagTablesToRemove = new ReferenceQueue<String>();
     protected String description;
-    protected Map<String, Results> resultsCache = new CacheMap<String, Results>();
-    protected Map<String, SingletonResults> singletonResultsCache
-        = new CacheMap<String, SingletonResults>();
+    protected File optimiserCacheFile = null;
+    protected BagBitmapCache bagBitmapCache;
+    protected Map<String, Results> resultsCache = Collections.synchronizedMap(
+            new CacheMap<String, Results>());
+    protected Map<String, SingletonResults> singletonResultsCache = Collections.synchronizedMap(
+            new CacheMap<String, SingletonResults>());
     protected Map<String, Map<Integer, ResultsBatches>> batchesCache
-        = new CacheMap<String, Map<Integer, ResultsBatches>>();
+        = Collections.synchronizedMap(new CacheMap<String, Map<Integer, ResultsBatches>>());
+    protected SharedResultsCache sharedResultsCache = null;
+    protected ClobFileStore clobFileStore = null;
+    // Incremented by every commit that changes something other than ObjectStoreBags
+    private final AtomicLong objectAlterations = new AtomicLong();
 
     private static final String[] LOG_TABLE_COLUMNS = new String[] {"timestamp", "optimise",
         "estimated", "execute", "permitted", "convert", "iql", "sql"};
@@ -207,6 +220,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             limitedContext.setMaxQueryParseTime(maxQueryParseTime);
         }
         description = "ObjectStoreInterMineImpl(" + db + ")";
+        bagBitmapCache = new BagBitmapCache(db, BagBitmapCache.DEFAULT_MAX_BAGS);
     }
 
     /**
@@ -508,6 +522,8 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                     os.setDisableResultsCache(true);
                 }
 
+                setCacheProperties(os, props);
+
                 instances.put(osAlias, os);
             }
 
@@ -515,6 +531,93 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         }
     }
 
+    private static void setCacheProperties(ObjectStoreInterMineImpl os, Properties props) {
+        String objectCacheSizeString = props.getProperty("objectCacheSize");
+        String resultsCacheSizeString = props.getProperty("resultsCacheSize");
+        String bagBitmapCacheSizeString = props.getProperty("bagBitmapCacheSize");
+
+        if (objectCacheSizeString != null) {
+            try {
+                os.setObjectCacheSize(Integer.parseInt(objectCacheSizeString));
+            } catch (NumberFormatException e) {
+                LOG.warn("Error setting objectCacheSize: " + e);
+            }
+        }
+
+        if (resultsCacheSizeString != null) {
+            try {
+                os.setResultsCacheSize(Integer.parseInt(resultsCacheSizeString));
+            } catch (NumberFormatException e) {
+                LOG.warn("Error setting resultsCacheSize: " + e);
+            }
+        }
+
+        if (bagBitmapCacheSizeString != null) {
+            try {
+                os.setBagBitmapCacheSize(Integer.parseInt(bagBitmapCacheSizeString));
+            } catch (NumberFormatException e) {
+                LOG.warn("Error setting bagBitmapCacheSize: " + e);
+            }
+        }
+
+        if (props.getProperty("optimiserCacheFile") != null) {
+            os.setOptimiserCacheFile(new File(props.getProperty("optimiserCacheFile")));
+        }
+
+        String sharedResultsCacheString = props.getProperty("sharedResultsCache");
+        if (sharedResultsCacheString != null) {
+            try {
+                long maxBytes = Long.parseLong(props.getProperty("sharedResultsCacheSize",
+                            "256")) * 1024 * 1024;
+                long minTime = Long.parseLong(props.getProperty("sharedResultsCacheMinTime",
+                            "100"));
+                long versionTtl = Long.parseLong(props.getProperty(
+                            "sharedResultsCacheVersionTtl", "1000"));
+                ResultsCacheStore store;
+                if ("offheap".equals(sharedResultsCacheString)) {
+                    store = new OffHeapResultsCacheStore(maxBytes);
+                } else if ("disk".equals(sharedResultsCacheString)) {
+                    String dir = props.getProperty("sharedResultsCacheDir");
+                    if (dir == null) {
+                        throw new IllegalArgumentException("sharedResultsCacheDir is not set");
+                    }
+                    store = new DiskResultsCacheStore(new File(dir), maxBytes);
+                } else {
+                    throw new IllegalArgumentException("unknown store "
+                            + sharedResultsCacheString + ", expected offheap or disk");
+                }
+                // The serial number changes whenever the database is rebuilt
+                String databaseId = MetadataManager.retrieve(os.getDatabase(),
+                        MetadataManager.SERIAL_NUMBER);
+                if (databaseId == null) {
+                    databaseId = os.getDatabase().getURL();
+                }
+                os.setSharedResultsCache(new SharedResultsCache(store, databaseId, minTime,
+                            versionTtl));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Error setting sharedResultsCache: " + e);
+            } catch (IOException e) {
+                LOG.warn("Error setting sharedResultsCache: " + e);
+            } catch (SQLException e) {
+                LOG.warn("Error setting sharedResultsCache - could not read serial number: "
+                        + e);
+            }
+        }
+
+        String clobFileDir = props.getProperty("clobFileDir");
+        if (clobFileDir != null) {
+            try {
+                String serialNumber = MetadataManager.retrieve(os.getDatabase(),
+                        MetadataManager.SERIAL_NUMBER);
+                os.setClobFileStore(ClobFileStore.open(new File(clobFileDir), serialNumber));
+            } catch (IOException e) {
+                LOG.warn("Error setting clobFileDir: " + e);
+            } catch (SQLException e) {
+                LOG.warn("Error setting clobFileDir - could not read serial number: " + e);
+            }
+        }
+    }
+
     /**
      * Returns the log used by this objectstore.
      *
@@ -705,6 +808,150 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         this.minBagTableSize = minBagTableSize;
     }
 
+    /**
+     * Sets a file to keep the contents of the optimiser cache in between restarts. The cache is
+     * loaded from the file now if it exists, and written back to it on shutdown. Optimised
+     * queries that refer to precomputed tables that no longer exist, or that have been replaced
+     * by a different table of the same name, are not loaded.
+     *
+     * @param optimiserCacheFile the file, or null to not keep the cache
+     */
+    public void setOptimiserCacheFile(File optimiserCacheFile) {
+        this.optimiserCacheFile = optimiserCacheFile;
+        if ((optimiserCacheFile != null) && optimiserCacheFile.exists()) {
+            try {
+                Set<PrecomputedTable> precomputedTables = PrecomputedTableManager
+                    .getInstance(getDatabase()).getPrecomputedTables();
+                OptimiserCache.getInstance(getDatabase()).load(optimiserCacheFile,
+                        precomputedTables);
+            } catch (IOException e) {
+                LOG.warn("Could not load optimiser cache from " + optimiserCacheFile + ": " + e);
+            } catch (SQLException e) {
+                LOG.warn("Could not load optimiser cache from " + optimiserCacheFile
+                        + " - unable to list precomputed tables: " + e);
+            }
+        }
+    }
+
+    /**
+     * Sets a second-level cache of batches of results, which may be shared with the ObjectStores
+     * of other servers reading the same database.
+     *
+     * @param sharedResultsCache the cache, or null for none
+     */
+    public void setSharedResultsCache(SharedResultsCache sharedResultsCache) {
+        this.sharedResultsCache = sharedResultsCache;
+    }
+
+    /**
+     * Returns the second-level cache of batches of results.
+     *
+     * @return a SharedResultsCache, or null if there is none
+     */
+    public SharedResultsCache getSharedResultsCache() {
+        return sharedResultsCache;
+    }
+
+    /**
+     * Sets the memory-mapped files that large clobs are read from instead of the database.
+     *
+     * @param clobFileStore the files, or null to read all clobs from the database
+     */
+    public void setClobFileStore(ClobFileStore clobFileStore) {
+        this.clobFileStore = clobFileStore;
+    }
+
+    /**
+     * Returns the memory-mapped files that large clobs are read from.
+     *
+     * @return a ClobFileStore, or null if there is none
+     */
+    public ClobFileStore getClobFileStore() {
+        return clobFileStore;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * The text is read from the ClobFileStore, if there is one and it has a file for the Clob.
+     */
+    @Override
+    public ClobFile getClobFile(Clob clob) {
+        ClobFileStore clobFiles = clobFileStore;
+        return (clobFiles == null ? null : clobFiles.getMappedClob(clob));
+    }
+
+    /**
+     * Sets the maximum number of entries held in each of the Results, SingletonResults and
+     * batches caches. By default these caches hold their values softly and leave it to the
+     * garbage collector to decide what to evict, which on a busy webapp can mean that they are
+     * emptied all at once when the heap fills. With a size set, each cache holds at most that
+     * many entries and evicts the least recently used. The current contents of the caches are
+     * discarded, so this should be called before the ObjectStore is used.
+     *
+     * @param resultsCacheSize the maximum number of entries in each cache, or zero or less for
+     * the default garbage-collector managed caches
+     */
+    public void setResultsCacheSize(int resultsCacheSize) {
+        if (resultsCacheSize > 0) {
+            resultsCache = new BoundedCacheMap<String, Results>(description + " results cache",
+                    resultsCacheSize, true);
+            singletonResultsCache = new BoundedCacheMap<String, SingletonResults>(description
+                    + " singleton results cache", resultsCacheSize, true);
+            batchesCache = new BoundedCacheMap<String, Map<Integer, ResultsBatches>>(description
+                    + " batches cache", resultsCacheSize, true);
+        } else {
+            resultsCache = Collections.synchronizedMap(new CacheMap<String, Results>());
+            singletonResultsCache = Collections.synchronizedMap(
+                    new CacheMap<String, SingletonResults>());
+            batchesCache = Collections.synchronizedMap(
+                    new CacheMap<String, Map<Integer, ResultsBatches>>());
+        }
+    }
+
+    /**
+     * Sets the maximum number of ObjectStoreBags whose contents are held in memory as bitmaps.
+     * The current contents of the cache are discarded.
+     *
+     * @param bagBitmapCacheSize the maximum number of bags, or zero or less to read the contents
+     * of a bag from the database every time
+     */
+    public void setBagBitmapCacheSize(int bagBitmapCacheSize) {
+        if (bagBitmapCacheSize > 0) {
+            bagBitmapCache = new BagBitmapCache(db, bagBitmapCacheSize);
+        } else {
+            bagBitmapCache = null;
+        }
+    }
+
+    /**
+     * Returns the contents of an ObjectStoreBag as an IntBitmap, from the bag bitmap cache if
+     * possible. The returned IntBitmap may be shared, and must not be altered. Bags that are
+     * empty or do not exist return an empty bitmap.
+     *
+     * @param osb an ObjectStoreBag
+     * @return an IntBitmap
+     * @throws ObjectStoreException if there is a problem reading the bag
+     */
+    public IntBitmap getBagBitmap(ObjectStoreBag osb) throws ObjectStoreException {
+        try {
+            BagBitmapCache cache = bagBitmapCache;
+            if (cache != null) {
+                return cache.getBitmap(osb.getBagId());
+            }
+            Connection c = null;
+            try {
+                c = getConnection();
+                return BagBitmapCache.readFromBagTable(c, osb.getBagId());
+            } finally {
+                releaseConnection(c);
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Could not read the contents of bag "
+                    + osb.getBagId(), e);
+        }
+    }
+
     /**
      * Returns the cutoff value used to decide if a bag should be put in a table.
      *
@@ -730,44 +977,37 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             boolean prefetch) {
         String cacheKey = "Batchsize: " + batchSize + ", optimise: " + optimise + ", explain: "
             + explain + ", prefetch: " + prefetch + ", query: " + q;
-        synchronized (resultsCache) {
-            // if this query has been executed before return a cached copy of the Results
-            Results retval = resultsCache.get(cacheKey);
-            if (retval != null) {
-                try {
-                    checkSequence(retval.getSequence(), null, null);
-                } catch (DataChangedException e) {
-                    retval = null;
-                }
+        // if this query has been executed before return a cached copy of the Results
+        Results cached = resultsCache.get(cacheKey);
+        if ((cached != null) && isCurrent(cached.getSequence())) {
+            return cached;
+        }
+        Map<Integer, ResultsBatches> batches = getBatchesForQuery(q);
+        Results retval;
+        synchronized (batches) {
+            ResultsBatches batch = getResultsBatches(batches, batchSize);
+            if (batch != null) {
+                // We've executed this query before but with a different batch size, we may
+                // be able to use the rows from previous batches to seed a new Results. This
+                // is here because running a query in the webapp and exporting use different
+                // batch sizes, this way we avoid re-executing queries that have results
+                // already in cache.
+                retval = new Results(batch, optimise, explain, prefetch);
+            } else {
+                retval = super.execute(q, batchSize, optimise, explain, prefetch);
+                batches.put(new Integer(batchSize), retval.getResultsBatches());
             }
-            if (retval == null) {
-                String batchesKey = q.toString();
-                synchronized (batchesCache) {
-                    Map<Integer, ResultsBatches> batches = batchesCache.get(batchesKey);
-                    if (batches == null) {
-                        batches = new CacheMap<Integer, ResultsBatches>();
-                        batchesCache.put(batchesKey, batches);
-                    }
-                    ResultsBatches batch = getResultsBatches(batches, batchSize);
-                    if (batch != null) {
-                        // We've executed this query before but with a different batch size, we may
-                        // be able to use the rows from previous batches to seed a new Results. This
-                        // is here because running a query in the webapp and exporting use different
-                        // batch sizes, this way we avoid re-executing queries that have results
-                        // already in cache.
-                        retval = new Results(batch, optimise, explain, prefetch);
-                    } else {
-                        retval = super.execute(q, batchSize, optimise, explain, prefetch);
-                        batches.put(new Integer(batchSize), retval.getResultsBatches());
-                    }
-                    resultsCache.put(cacheKey, retval);
-                }
-                //LOG.error("Results cache miss for " + q);
-            //} else {
-                //LOG.error("Results cache hit for " + q);
+        }
+        if (cached == null) {
+            Results raced = resultsCache.putIfAbsent(cacheKey, retval);
+            if (raced == null) {
+                return retval;
+            } else if (isCurrent(raced.getSequence())) {
+                return raced;
             }
-            return retval;
         }
+        resultsCache.put(cacheKey, retval);
+        return retval;
     }
 
     /**
@@ -786,42 +1026,57 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             boolean explain, boolean prefetch) {
         String cacheKey = "Batchsize: " + batchSize + ", optimise: " + optimise + ", explain: "
             + explain + ", prefetch: " + prefetch + ", query: " + q;
-        synchronized (singletonResultsCache) {
-            SingletonResults retval = singletonResultsCache.get(cacheKey);
-            if (retval != null) {
-                try {
-                    checkSequence(retval.getSequence(), null, null);
-                } catch (DataChangedException e) {
-                    retval = null;
-                }
+        SingletonResults cached = singletonResultsCache.get(cacheKey);
+        if ((cached != null) && isCurrent(cached.getSequence())) {
+            return cached;
+        }
+        Map<Integer, ResultsBatches> batches = getBatchesForQuery(q);
+        SingletonResults retval;
+        synchronized (batches) {
+            ResultsBatches batch = getResultsBatches(batches, batchSize);
+            if (batch != null) {
+                retval = new SingletonResults(batch, optimise, explain, prefetch);
+            } else {
+                retval = super.executeSingleton(q, batchSize, optimise, explain, prefetch);
+                batches.put(batchSize, retval.getResultsBatches());
             }
+        }
+        if (cached == null) {
+            SingletonResults raced = singletonResultsCache.putIfAbsent(cacheKey, retval);
+            if (raced == null) {
+                return retval;
+            } else if (isCurrent(raced.getSequence())) {
+                return raced;
+            }
+        }
+        singletonResultsCache.put(cacheKey, retval);
+        return retval;
+    }
 
-            if (retval == null) {
-                String batchesKey = q.toString();
-                synchronized (batchesCache) {
-                    Map<Integer, ResultsBatches> batches = batchesCache.get(batchesKey);
-                    if (batches == null) {
-                        batches = new CacheMap<Integer, ResultsBatches>();
-                        batchesCache.put(batchesKey, batches);
-                    }
-
-                    ResultsBatches batch = getResultsBatches(batches, batchSize);
-                    if (batch != null) {
-                        retval = new SingletonResults(batch, optimise, explain, prefetch);
-                    } else {
-                        retval = super.executeSingleton(q, batchSize, optimise, explain, prefetch);
-                        batches.put(batchSize, retval.getResultsBatches());
-                    }
+    private boolean isCurrent(Map<Object, Integer> sequence) {
+        try {
+            checkSequence(sequence, null, null);
+            return true;
+        } catch (DataChangedException e) {
+            return false;
+        }
+    }
 
-                    singletonResultsCache.put(cacheKey, retval);
-                }
-                //LOG.error("Results cache miss for " + q);
-            //} else {
-                //LOG.error("Results cache hit for " + q);
+    /**
+     * Returns the batches of a query by batch size, from the batches cache. The returned Map is
+     * not thread-safe, and must be used while holding its monitor.
+     */
+    private Map<Integer, ResultsBatches> getBatchesForQuery(Query q) {
+        String batchesKey = q.toString();
+        Map<Integer, ResultsBatches> batches = batchesCache.get(batchesKey);
+        if (batches == null) {
+            batches = new CacheMap<Integer, ResultsBatches>();
+            Map<Integer, ResultsBatches> raced = batchesCache.putIfAbsent(batchesKey, batches);
+            if (raced != null) {
+                batches = raced;
             }
-
-            return retval;
         }
+        return batches;
     }
 
     private ResultsBatches getResultsBatches(Map<Integer, ResultsBatches> batches, int batchSize) {
@@ -1019,6 +1274,77 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         }
     }
 
+    /**
+     * Runs a query and returns its rows from a single database cursor, reading fetchSize rows
+     * from the database at a time. The rows are not cached, and are not stored in a Results
+     * object, so any number of rows can be read with constant memory. This is the fastest way to
+     * read every row of a large query once, for example to export it.
+     *
+     * The cursor holds a database connection until it has been read to the end or closed, so
+     * callers that may stop early must close it.
+     *
+     * @param q the Query
+     * @param fetchSize the number of rows to read from the database at a time
+     * @param optimise true to optimise the query
+     * @param explain true to check that the whole query is not estimated to take longer than
+     * the maximum time, as execute does for each batch
+     * @return a ResultsCursor
+     * @throws ObjectStoreException if the query cannot be run
+     */
+    public ResultsCursor executeCursor(Query q, int fetchSize, boolean optimise, boolean explain)
+        throws ObjectStoreException {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+        }
+        Map<Object, Integer> sequence = getSequence(getComponentsForQuery(q));
+        Connection c = null;
+        try {
+            c = getConnection();
+            if (getMinBagTableSize() != -1) {
+                createTempBagTables(c, q);
+                flushOldTempBagTables(c);
+            }
+            String sql;
+            try {
+                sql = SqlGenerator.generate(q, 0, Integer.MAX_VALUE, schema, db,
+                        bagConstraintTables);
+            } catch (CompletelyFalseException e) {
+                // A query that can never match anything
+                sql = "SELECT 1 WHERE false";
+            }
+            ExplainResult explainResult = null;
+            if (optimise && everOptimise()) {
+                BestQuery bestQuery = QueryOptimiser.optimise(sql, null, db, c,
+                        (explain ? limitedContext : QueryOptimiserContext.DEFAULT));
+                sql = bestQuery.getBestQueryString();
+                if (bestQuery instanceof BestQueryExplainer) {
+                    explainResult = ((BestQueryExplainer) bestQuery).getBestExplainResult();
+                }
+            }
+            if (explain) {
+                if (explainResult == null) {
+                    explainResult = ExplainResult.getInstance(sql, c);
+                }
+                if (explainResult.getTime() > getMaxTime()) {
+                    throw (new ObjectStoreQueryDurationException("Estimated time to run query("
+                                + explainResult.getTime() + ") greater than permitted maximum ("
+                                + getMaxTime() + "): IQL query: " + q + ", SQL query: " + sql));
+                }
+            }
+            if (getLogBeforeExecute()) {
+                SQLLOGGER.info("(BEFORE CURSOR) iql: " + q + "\n" + "sql: " + sql);
+            }
+            // The cursor now owns the connection, and releases it even if it fails
+            Connection cursorConnection = c;
+            c = null;
+            return new ResultsCursor(this, q, sequence, cursorConnection, sql, fetchSize);
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Could not get connection to database", e);
+        } finally {
+            releaseConnection(c);
+        }
+    }
+
     /**
      * Overrides Object.finalize - release the DB log connection.
      *
@@ -1096,6 +1422,25 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     public synchronized void shutdown() {
         LOG.info("Shutting down open ObjectStoreInterMineImpl with sequence = " + sequenceNumber
                 + " and Database " + getDatabase().getURL());
+        OptimiserCache optimiserCache = OptimiserCache.getInstance(getDatabase());
+        LOG.info(optimiserCache.getStatistics());
+        if (bagBitmapCache != null) {
+            LOG.info(bagBitmapCache.getStatistics());
+        }
+        if (sharedResultsCache != null) {
+            LOG.info(sharedResultsCache.getStatistics());
+        }
+        if (optimiserCacheFile != null) {
+            try {
+                optimiserCache.save(optimiserCacheFile, PrecomputedTableManager
+                        .getInstance(getDatabase()).getPrecomputedTables());
+            } catch (IOException e) {
+                LOG.warn("Could not save optimiser cache to " + optimiserCacheFile + ": " + e);
+            } catch (SQLException e) {
+                LOG.warn("Could not save optimiser cache to " + optimiserCacheFile
+                        + " - unable to list precomputed tables: " + e);
+            }
+        }
         try {
             close();
         } catch (ObjectStoreException e) {
@@ -1160,6 +1505,17 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             return Collections.emptyList();
         }
         String generatedSql = sql;
+        SharedResultsCache sharedCache = sharedResultsCache;
+        String sharedCacheKey = null;
+        if (sharedCache != null) {
+            sharedCacheKey = sharedCache.getKey(generatedSql, getComponentsForQuery(q));
+            if (sharedCacheKey != null) {
+                List<ResultsRow<Object>> cached = sharedCache.get(sharedCacheKey, this);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
         try {
             long estimatedTime = 0;
             long startOptimiseTime = System.currentTimeMillis();
@@ -1228,6 +1584,9 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             List<ResultsRow<Object>>  objResults = ResultsConverter.convert(sqlResults, q, this, c,
                     sequence, optimise, extra, goFasterTables, goFasterCache);
             long postConvert = System.currentTimeMillis();
+            if (sharedCacheKey != null) {
+                sharedCache.put(sharedCacheKey, objResults, postConvert - preExecute);
+            }
             long permittedTime = (objResults.size() * 2) + start + (150 * q.getFrom().size())
                     + (sql.length() / 20) - (q.getFrom().size() == 0 ? 0 : 100);
             boolean doneExplainLog = false;
@@ -1715,6 +2074,17 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         }
     }
 
+    /**
+     * Returns the number of commits through writers of this ObjectStore that have changed
+     * anything other than ObjectStoreBags. Comparing the number before and after some work shows
+     * whether the work changed any objects.
+     *
+     * @return a long
+     */
+    public long getObjectAlterationCount() {
+        return objectAlterations.get();
+    }
+
     /**
      * Internal method called by the ObjectStoreWriter, to notify the ObjectStore that some of the
      * data in the database has changed.
@@ -1724,12 +2094,28 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     public void databaseAltered(Set<Object> tablesAltered) {
         if (tablesAltered.size() > 0) {
             changeSequence(tablesAltered);
+            SharedResultsCache sharedCache = sharedResultsCache;
+            if (sharedCache != null) {
+                sharedCache.componentsAltered(tablesAltered);
+            }
             Set<String> tableNames = new HashSet<String>();
+            Set<Integer> bagsAltered = new HashSet<Integer>();
+            boolean objectsAltered = false;
             for (Object o : tablesAltered) {
                 if (o instanceof String) {
                     tableNames.add((String) o);
+                    objectsAltered = objectsAltered || !INT_BAG_TABLE_NAME.equals(o);
+                } else if (o instanceof ObjectStoreBag) {
+                    bagsAltered.add(Integer.valueOf(((ObjectStoreBag) o).getBagId()));
                 }
             }
+            if (objectsAltered) {
+                objectAlterations.incrementAndGet();
+            }
+            BagBitmapCache cache = bagBitmapCache;
+            if (cache != null) {
+                cache.bagsAltered(bagsAltered);
+            }
             // We have just removed the ObjectStoreBags from the Set of altered things. This means
             // that although the DataChangedException stuff is ObjectStoreBag-specific, the dropping
             // precomputed tables bit is not. Changing any ObjectStoreBag will result in all
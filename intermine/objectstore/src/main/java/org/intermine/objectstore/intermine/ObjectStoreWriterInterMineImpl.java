@@ -19,6 +19,7 @@ import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -49,6 +50,7 @@ import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.ObjectStoreBagCombination;
 import org.intermine.objectstore.query.PendingClob;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -66,6 +68,8 @@ import org.intermine.sql.writebatch.Batch;
 import org.intermine.sql.writebatch.BatchWriter;
 import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
 import org.intermine.util.DynamicUtil;
+import org.intermine.util.IntBitmap;
+import org.intermine.util.IntIterator;
 import org.intermine.util.PropertiesUtil;
 import org.intermine.util.ShutdownHook;
 
@@ -1199,6 +1203,19 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             throw new IllegalArgumentException("The type of the result colum (" + type.getName()
                     + ") is not an Integer or InterMineObject");
         }
+        if ((select.get(0) instanceof ObjectStoreBagCombination) && query.getFrom().isEmpty()
+                && (query.getConstraint() == null)) {
+            // Combine the bags in memory, and write only the new elements
+            IntBitmap combined = getBagCombinationBitmap((ObjectStoreBagCombination) select.get(0));
+            combined = IntBitmap.andNot(combined, getBagBitmap(osb));
+            IntIterator iter = combined.iterator();
+            List<Integer> elements = new ArrayList<Integer>(combined.size());
+            while (iter.hasNext()) {
+                elements.add(Integer.valueOf(iter.next()));
+            }
+            addAllToBag(osb, elements);
+            return;
+        }
         try {
             Connection c = null;
             try {
@@ -1215,6 +1232,73 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * Bags that have been altered in the current transaction are read through this writer's
+     * connection, so that the changes are visible.
+     */
+    @Override
+    public IntBitmap getBagBitmap(ObjectStoreBag osb) throws ObjectStoreException {
+        if (!tablesAltered.contains(osb)) {
+            return os.getBagBitmap(osb);
+        }
+        try {
+            Connection c = null;
+            try {
+                c = getConnection();
+                batch.flush(c, Collections.singleton(INT_BAG_TABLE_NAME));
+                return BagBitmapCache.readFromBagTable(c, osb.getBagId());
+            } finally {
+                releaseConnection(c);
+            }
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Could not read the contents of bag "
+                    + osb.getBagId(), e);
+        }
+    }
+
+    /**
+     * Calculates the contents of an ObjectStoreBagCombination from the bitmaps of its bags, in
+     * the same way as the SQL generated for it.
+     *
+     * @param osbc an ObjectStoreBagCombination
+     * @return an IntBitmap, which may be shared and must not be altered
+     * @throws ObjectStoreException if there is a problem reading a bag
+     */
+    protected IntBitmap getBagCombinationBitmap(ObjectStoreBagCombination osbc)
+        throws ObjectStoreException {
+        IntBitmap union = new IntBitmap();
+        IntBitmap retval = null;
+        for (QuerySelectable qs : osbc.getBags()) {
+            IntBitmap bitmap;
+            if (qs instanceof ObjectStoreBag) {
+                bitmap = getBagBitmap((ObjectStoreBag) qs);
+            } else {
+                bitmap = getBagCombinationBitmap((ObjectStoreBagCombination) qs);
+            }
+            if (retval == null) {
+                retval = bitmap;
+            } else if (osbc.getOp() == ObjectStoreBagCombination.EXCEPT) {
+                retval = IntBitmap.andNot(retval, bitmap);
+            } else if (osbc.getOp() != ObjectStoreBagCombination.UNION) {
+                // INTERSECT, or the intersection part of ALLBUTINTERSECT
+                retval = IntBitmap.and(retval, bitmap);
+            }
+            if ((osbc.getOp() == ObjectStoreBagCombination.UNION)
+                    || (osbc.getOp() == ObjectStoreBagCombination.ALLBUTINTERSECT)) {
+                union = IntBitmap.or(union, bitmap);
+            }
+        }
+        if (retval == null) {
+            return new IntBitmap();
+        } else if (osbc.getOp() == ObjectStoreBagCombination.UNION) {
+            return union;
+        } else if (osbc.getOp() == ObjectStoreBagCombination.ALLBUTINTERSECT) {
+            return IntBitmap.andNot(union, retval);
+        }
+        return retval;
+    }
+
     /**
      * Adds elements to a bag from the results of a query.
      *
@@ -1327,6 +1411,11 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
 
         try {
             Integer clobId = new Integer(clob.getClobId());
+            ClobFileStore clobFiles = os.getClobFileStore();
+            if (clobFiles != null) {
+                // the file no longer matches the database
+                clobFiles.remove(clob);
+            }
             batch.deleteRow(c, CLOB_TABLE_NAME, CLOBID_COLUMN, clobId);
             int length = text.length();
             for (int i = 0; i < length; i += CLOB_PAGE_SIZE) {
@@ -1564,6 +1653,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             if (c.getAutoCommit()) {
                 throw new ObjectStoreException("commitTransaction called, but not in transaction");
             }
+            deleteSavedBagBitmaps(c);
             c.commit();
             c.setAutoCommit(true);
             os.databaseAltered(tablesAltered);
@@ -1635,6 +1725,7 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
      */
     public void batchCommitTransactionWithConnection(Connection c) throws ObjectStoreException {
         try {
+            deleteSavedBagBitmaps(c);
             batch.batchCommit(c);
             os.databaseAltered(tablesAltered);
             tablesAltered.clear();
@@ -1643,6 +1734,28 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * Deletes the saved bitmaps of the bags changed in the current transaction, so that no other
+     * process reads a bitmap older than the changes about to be committed. This must be called
+     * before the transaction is committed.
+     *
+     * @param c the Connection
+     * @throws SQLException if there is a problem deleting the bitmaps
+     */
+    private void deleteSavedBagBitmaps(Connection c) throws SQLException {
+        List<Integer> bagsAltered = new ArrayList<Integer>();
+        for (Object altered : tablesAltered) {
+            if (altered instanceof ObjectStoreBag) {
+                bagsAltered.add(Integer.valueOf(((ObjectStoreBag) altered).getBagId()));
+            }
+        }
+        if (!bagsAltered.isEmpty()) {
+            // A batch commit may still be writing to the Connection in the background
+            batch.flush(c);
+            BagBitmapCache.deleteSaved(c, bagsAltered);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * This method should never be called on an ObjectStoreWriter.
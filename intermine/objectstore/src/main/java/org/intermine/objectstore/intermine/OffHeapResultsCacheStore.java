@@ -0,0 +1,109 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A ResultsCacheStore that holds the values in direct buffers outside the Java heap, so that a
+ * large cache does not add to the work of the garbage collector. The least recently used values
+ * are evicted when the total size of the values exceeds a limit. The JVM must be allowed enough
+ * direct memory for the limit, with -XX:MaxDirectMemorySize.
+ *
+ * This store is private to one JVM.
+ *
+ * @author agent
+ */
+public class OffHeapResultsCacheStore implements ResultsCacheStore
+{
+    private final long maxBytes;
+    private long usedBytes = 0;
+    private final Map<String, ByteBuffer> values = new LinkedHashMap<String, ByteBuffer>(16,
+            0.75F, true);
+    private final Map<String, String> versions = new HashMap<String, String>();
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes the maximum total size of the values held
+     */
+    public OffHeapResultsCacheStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized byte[] get(String key) {
+        ByteBuffer buffer = values.get(key);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] retval = new byte[buffer.capacity()];
+        ByteBuffer reader = buffer.duplicate();
+        reader.clear();
+        reader.get(retval);
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(String key, byte[] value) {
+        ByteBuffer old = values.remove(key);
+        if (old != null) {
+            usedBytes -= old.capacity();
+        }
+        if (value.length > maxBytes) {
+            return;
+        }
+        Iterator<ByteBuffer> iter = values.values().iterator();
+        while ((usedBytes + value.length > maxBytes) && iter.hasNext()) {
+            usedBytes -= iter.next().capacity();
+            iter.remove();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(value.length);
+        buffer.put(value);
+        values.put(key, buffer);
+        usedBytes += value.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String getVersion(String component) {
+        return versions.get(component);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setVersion(String component, String version) {
+        versions.put(component, version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "off-heap store holding " + values.size() + " values in " + usedBytes + " of "
+            + maxBytes + " bytes";
+    }
+}
@@ -0,0 +1,60 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+
+/**
+ * Storage for a SharedResultsCache. A store holds serialised batches of results, which it may
+ * evict at any time, and the current version of each component of the database, which it must
+ * keep. If the store is shared by several ObjectStores, for instance on several servers, then a
+ * version set by one of them must be seen by all of them.
+ *
+ * @author agent
+ */
+public interface ResultsCacheStore
+{
+    /**
+     * Returns the value stored for a key.
+     *
+     * @param key the key
+     * @return the value, or null if there is none
+     * @throws IOException if the store cannot be read
+     */
+    byte[] get(String key) throws IOException;
+
+    /**
+     * Stores a value for a key, replacing any value already stored.
+     *
+     * @param key the key
+     * @param value the value
+     * @throws IOException if the store cannot be written
+     */
+    void put(String key, byte[] value) throws IOException;
+
+    /**
+     * Returns the version of a component of the database.
+     *
+     * @param component the name of the component
+     * @return the version, or null if the component has never been changed
+     * @throws IOException if the store cannot be read
+     */
+    String getVersion(String component) throws IOException;
+
+    /**
+     * Sets the version of a component of the database.
+     *
+     * @param component the name of the component
+     * @param version the new version
+     * @throws IOException if the store cannot be written
+     */
+    void setVersion(String component, String version) throws IOException;
+}
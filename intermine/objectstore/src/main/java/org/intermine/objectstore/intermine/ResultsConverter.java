@@ -88,6 +88,35 @@ public final class ResultsConverter
             ObjectStoreInterMineImpl os, Connection c, Map<Object, Integer> sequence,
             boolean optimise, ExtraQueryTime extra, Set<PrecomputedTable> goFasterTables,
             OptimiserCache goFasterCache) throws ObjectStoreException {
+        return convert(sqlResults, q, os, c, sequence, optimise, extra, goFasterTables,
+                goFasterCache, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Method to convert at most a given number of rows from SQL results to InterMine
+     * object-based results, leaving the ResultSet positioned so that the remaining rows can be
+     * converted by another call. This allows a ResultSet read through a database cursor to be
+     * converted a batch at a time.
+     *
+     * @param sqlResults the ResultSet
+     * @param q the Query
+     * @param os the ObjectStoreInterMineImpl with which to associate any new lazy objects
+     * @param c a Connection with which to make extra requests
+     * @param sequence an object representing the state of the database
+     * @param optimise whether to use optimisation on path expression queries
+     * @param extra object to record extra query execution time
+     * @param goFasterTables a Set of PrecomputedTables that may help with extra queries
+     * @param goFasterCache an OptimiserCache that may help with extra queries
+     * @param maxRows the maximum number of rows to convert
+     * @return a List of ResultsRow objects, which is shorter than maxRows only if the ResultSet
+     * has been exhausted
+     * @throws ObjectStoreException if the ResultSet does not match the Query in any way, or if a
+     * SQL exception occurs
+     */
+    public static List<ResultsRow<Object>> convert(ResultSet sqlResults, Query q,
+            ObjectStoreInterMineImpl os, Connection c, Map<Object, Integer> sequence,
+            boolean optimise, ExtraQueryTime extra, Set<PrecomputedTable> goFasterTables,
+            OptimiserCache goFasterCache, int maxRows) throws ObjectStoreException {
         Object currentColumn = null;
         HashSet<QuerySelectable> noObjectColumns = new HashSet<QuerySelectable>();
         HashSet<String> noObjectClassColumns = new HashSet<String>();
@@ -102,7 +131,7 @@ public final class ResultsConverter
                 aliases.put(node, DatabaseUtil.generateSqlCompatibleName(q.getAliases().get(node)));
             }
 
-            while (sqlResults.next()) {
+            while ((retval.size() < maxRows) && sqlResults.next()) {
                 ResultsRow<Object> row = new ResultsRow<Object>();
                 for (QuerySelectable node : q.getSelect()) {
                     String alias = aliases.get(node);
@@ -0,0 +1,181 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * An Iterator over the rows of a Query, read from a single server-side database cursor.
+ *
+ * Unlike a Results object, which fetches each batch with a separate query using OFFSET and
+ * LIMIT and keeps the batches in a cache, a ResultsCursor runs the query once and reads the
+ * rows from the database a batch at a time, so the time taken to read each row does not grow
+ * with its position in the results, and only one batch is held in memory. The rows can only be
+ * read once, in order. This is intended for exporting the whole of a large query.
+ *
+ * The cursor holds a database connection from when it is created until all the rows have been
+ * read, or close() is called. Users that may stop reading early must call close().
+ *
+ * @author agent
+ */
+public class ResultsCursor implements Iterator<ResultsRow<Object>>, AutoCloseable
+{
+    private static final Logger LOG = Logger.getLogger(ResultsCursor.class);
+
+    private final ObjectStoreInterMineImpl os;
+    private final Query q;
+    private final Map<Object, Integer> sequence;
+    private final int fetchSize;
+    private Connection c;
+    private Statement s;
+    private ResultSet sqlResults;
+    private List<ResultsRow<Object>> batch = Collections.emptyList();
+    private int batchPos = 0;
+    private boolean finished = false;
+
+    /**
+     * Constructor, which runs the query. This is called by ObjectStoreInterMineImpl.
+     *
+     * @param os the ObjectStore that runs the query
+     * @param q the Query
+     * @param sequence an object representing the state of the database
+     * @param c a Connection not in a transaction, which the cursor will release
+     * @param sql the SQL for the query
+     * @param fetchSize the number of rows to read from the database at a time
+     * @throws ObjectStoreException if the query cannot be run
+     */
+    ResultsCursor(ObjectStoreInterMineImpl os, Query q, Map<Object, Integer> sequence,
+            Connection c, String sql, int fetchSize) throws ObjectStoreException {
+        this.os = os;
+        this.q = q;
+        this.sequence = sequence;
+        this.c = c;
+        this.fetchSize = fetchSize;
+        try {
+            // PostgreSQL only uses a cursor for a forward-only ResultSet inside a transaction
+            c.setAutoCommit(false);
+            s = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            s.setFetchSize(fetchSize);
+            os.registerStatement(s);
+            try {
+                sqlResults = s.executeQuery(sql);
+            } finally {
+                os.deregisterStatement(s);
+            }
+        } catch (SQLException e) {
+            release();
+            throw new ObjectStoreException("Could not open a cursor for query " + q + ", SQL: "
+                    + sql, e);
+        } catch (ObjectStoreException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        if (batchPos < batch.size()) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        fetchBatch();
+        return batchPos < batch.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultsRow<Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(batchPos++);
+    }
+
+    /**
+     * This method is not supported.
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void fetchBatch() {
+        try {
+            os.checkSequence(sequence, q, "Cursor ");
+            batch = ResultsConverter.convert(sqlResults, q, os, c, sequence, false,
+                    new ExtraQueryTime(), null, null, fetchSize);
+            batchPos = 0;
+        } catch (ObjectStoreException e) {
+            release();
+            throw new RuntimeException("ObjectStore error has occurred (in cursor)", e);
+        }
+        if (batch.size() < fetchSize) {
+            // all the rows have been read, so the connection is no longer needed
+            release();
+        }
+    }
+
+    /**
+     * Closes the cursor and releases its database connection. No more rows are returned by the
+     * iterator. This method may be called more than once.
+     */
+    @Override
+    public synchronized void close() {
+        batch = Collections.emptyList();
+        release();
+    }
+
+    private synchronized void release() {
+        finished = true;
+        if (c == null) {
+            return;
+        }
+        try {
+            if (sqlResults != null) {
+                sqlResults.close();
+            }
+            if (s != null) {
+                s.close();
+            }
+            // The cursor only read data, so there is nothing to keep
+            c.rollback();
+            c.setAutoCommit(true);
+        } catch (SQLException e) {
+            LOG.warn("Error closing cursor for query " + q, e);
+        } finally {
+            os.releaseConnection(c);
+            c = null;
+            s = null;
+            sqlResults = null;
+        }
+    }
+}
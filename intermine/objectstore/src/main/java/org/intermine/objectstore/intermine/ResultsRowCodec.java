@@ -0,0 +1,252 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.intermine.metadata.Util;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.query.ClobAccess;
+import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.util.DynamicUtil;
+
+/**
+ * A compact binary format for a batch of results rows, for the SharedResultsCache. Each value
+ * is a tag byte followed by its data. Objects are stored as their NotXml, and an object that
+ * appears more than once in a batch is stored only the first time.
+ *
+ * Only the types of value produced by ResultsConverter for simple columns can be stored, so the
+ * results of queries with path expressions cannot.
+ *
+ * @author agent
+ */
+final class ResultsRowCodec
+{
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte OBJECT = 1;
+    private static final byte OBJECT_AGAIN = 2;
+    private static final byte STRING = 3;
+    private static final byte INTEGER = 4;
+    private static final byte LONG = 5;
+    private static final byte SHORT = 6;
+    private static final byte TRUE = 7;
+    private static final byte FALSE = 8;
+    private static final byte FLOAT = 9;
+    private static final byte DOUBLE = 10;
+    private static final byte BIG_DECIMAL = 11;
+    private static final byte DATE = 12;
+    private static final byte CLASS = 13;
+    private static final byte CLOB = 14;
+
+    private ResultsRowCodec() {
+        // hidden constructor
+    }
+
+    /**
+     * Encodes a batch of results rows.
+     *
+     * @param rows the rows
+     * @return the encoded rows, or null if they contain a value that cannot be encoded
+     */
+    static byte[] encode(List<ResultsRow<Object>> rows) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(rows.size());
+            Set<Integer> objectsDone = new HashSet<Integer>();
+            for (ResultsRow<Object> row : rows) {
+                out.writeInt(row.size());
+                for (Object value : row) {
+                    if (!encodeValue(out, value, objectsDone)) {
+                        return null;
+                    }
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // not possible with a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean encodeValue(DataOutputStream out, Object value,
+            Set<Integer> objectsDone) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof InterMineObject) {
+            Integer id = ((InterMineObject) value).getId();
+            if (id == null) {
+                return false;
+            }
+            if (objectsDone.add(id)) {
+                out.writeByte(OBJECT);
+                out.writeInt(id.intValue());
+                writeString(out, NotXmlRenderer.render(value).toString());
+            } else {
+                out.writeByte(OBJECT_AGAIN);
+                out.writeInt(id.intValue());
+            }
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort(((Short) value).shortValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat(((Float) value).floatValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Class<?>) {
+            out.writeByte(CLASS);
+            StringBuilder names = new StringBuilder();
+            for (Class<?> c : Util.decomposeClass((Class<?>) value)) {
+                names.append(names.length() == 0 ? "" : " ").append(c.getName());
+            }
+            writeString(out, names.toString());
+        } else if (value instanceof ClobAccess) {
+            out.writeByte(CLOB);
+            writeString(out, ((ClobAccess) value).getDbDescription());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a batch of results rows.
+     *
+     * @param data the encoded rows
+     * @param os the ObjectStore with which to associate objects
+     * @return a List of rows
+     * @throws IOException if the data is not valid
+     * @throws ClassNotFoundException if the data names a class that does not exist
+     */
+    static List<ResultsRow<Object>> decode(byte[] data, ObjectStoreInterMineImpl os)
+        throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown results cache format " + version);
+        }
+        int rowCount = in.readInt();
+        List<ResultsRow<Object>> retval = new ArrayList<ResultsRow<Object>>(rowCount);
+        Map<Integer, InterMineObject> objects = new HashMap<Integer, InterMineObject>();
+        for (int rowNo = 0; rowNo < rowCount; rowNo++) {
+            int columnCount = in.readInt();
+            ResultsRow<Object> row = new ResultsRow<Object>();
+            for (int columnNo = 0; columnNo < columnCount; columnNo++) {
+                row.add(decodeValue(in, os, objects));
+            }
+            retval.add(row);
+        }
+        return retval;
+    }
+
+    private static Object decodeValue(DataInputStream in, ObjectStoreInterMineImpl os,
+            Map<Integer, InterMineObject> objects) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case OBJECT:
+                Integer id = Integer.valueOf(in.readInt());
+                String notXml = readString(in);
+                InterMineObject obj = os.pilferObjectById(id);
+                if (obj == null) {
+                    obj = NotXmlParser.parse(notXml, os);
+                    os.cacheObjectById(id, obj);
+                }
+                objects.put(id, obj);
+                return obj;
+            case OBJECT_AGAIN:
+                return objects.get(Integer.valueOf(in.readInt()));
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return Integer.valueOf(in.readInt());
+            case LONG:
+                return Long.valueOf(in.readLong());
+            case SHORT:
+                return Short.valueOf(in.readShort());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case FLOAT:
+                return Float.valueOf(in.readFloat());
+            case DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case DATE:
+                return new Date(in.readLong());
+            case CLASS:
+                Set<Class<?>> classes = new HashSet<Class<?>>();
+                for (String name : readString(in).split(" ")) {
+                    classes.add(Class.forName(name));
+                }
+                if (classes.size() == 1) {
+                    return classes.iterator().next();
+                }
+                return DynamicUtil.composeClass(classes);
+            case CLOB:
+                return ClobAccess.decodeDbDescription(os, readString(in));
+            default:
+                throw new IOException("Unknown value type " + tag + " in results cache");
+        }
+    }
+
+    // writeUTF() cannot write Strings longer than 64k, which NotXml often is
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
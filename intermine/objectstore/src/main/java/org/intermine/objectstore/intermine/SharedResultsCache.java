@@ -0,0 +1,252 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * A second-level cache of batches of results, below the Results objects cached in each
+ * ObjectStoreInterMineImpl, which can be shared by the ObjectStores of several webapp servers
+ * reading the same database, if its ResultsCacheStore is shared.
+ *
+ * A batch is stored under a key made of an identifier for the database, the SQL generated for
+ * the batch (before optimisation), and the version of each database component (table or
+ * ObjectStoreBag) that the query reads. The versions are kept in the store, and when an
+ * ObjectStore alters a component it gives the component a new random version, so that every
+ * server stops using the batches that read it. The sequence numbers of an ObjectStore cannot be
+ * used for this, as they are different in each JVM. The versions read from the store are kept in
+ * memory for a short time, so a change made by another server may not be seen for that long.
+ * Changes made through this cache are seen at once.
+ *
+ * Only batches that took longer than a minimum time to execute are stored, as reading the store
+ * is not free. Problems with the store are logged and treated as cache misses. If altered
+ * components cannot be given new versions the cache is disabled, as its batches can no longer be
+ * trusted.
+ *
+ * @author agent
+ */
+public class SharedResultsCache
+{
+    private static final Logger LOG = Logger.getLogger(SharedResultsCache.class);
+
+    private final ResultsCacheStore store;
+    private final String databaseId;
+    private final long minTime;
+    private final long versionTtl;
+    private final ConcurrentMap<String, CachedVersion> versions =
+        new ConcurrentHashMap<String, CachedVersion>();
+    private volatile boolean disabled = false;
+    private int hits = 0;
+    private int misses = 0;
+    private int stored = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param store the store to keep the batches in
+     * @param databaseId a String that identifies the contents of the database, such as its serial
+     * number, which must be the same for every ObjectStore sharing the store
+     * @param minTime the minimum time in milliseconds a batch must take to execute to be stored
+     * @param versionTtl the time in milliseconds for which a version read from the store is used
+     * before it is read again
+     */
+    public SharedResultsCache(ResultsCacheStore store, String databaseId, long minTime,
+            long versionTtl) {
+        this.store = store;
+        this.databaseId = databaseId;
+        this.minTime = minTime;
+        this.versionTtl = versionTtl;
+    }
+
+    /**
+     * Returns the key under which a batch of results is stored.
+     *
+     * @param sql the SQL generated for the batch
+     * @param components the database components read by the query
+     * @return a key, or null if the versions of the components could not be read or the cache is
+     * disabled
+     */
+    public String getKey(String sql, Set<Object> components) {
+        if (disabled) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(databaseId).append('\n').append(sql);
+        Set<String> names = new TreeSet<String>();
+        for (Object component : components) {
+            names.add(getComponentName(component));
+        }
+        try {
+            for (String name : names) {
+                key.append('\n').append(name).append('=').append(getVersion(name));
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read versions from results cache " + store, e);
+            return null;
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns a batch of results from the cache.
+     *
+     * @param key the key from getKey()
+     * @param os the ObjectStore with which to associate the objects in the results
+     * @return a List of rows, or null if the batch is not in the cache
+     */
+    public List<ResultsRow<Object>> get(String key, ObjectStoreInterMineImpl os) {
+        if (disabled) {
+            return null;
+        }
+        try {
+            byte[] data = store.get(key);
+            if (data != null) {
+                List<ResultsRow<Object>> retval = ResultsRowCodec.decode(data, os);
+                synchronized (this) {
+                    hits++;
+                }
+                return retval;
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read from results cache " + store, e);
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Could not read from results cache " + store, e);
+        }
+        synchronized (this) {
+            misses++;
+        }
+        return null;
+    }
+
+    /**
+     * Stores a batch of results in the cache, if it took long enough to execute and contains only
+     * values that can be stored.
+     *
+     * @param key the key from getKey()
+     * @param rows the rows
+     * @param executeTime the time in milliseconds taken to execute the query
+     */
+    public void put(String key, List<ResultsRow<Object>> rows, long executeTime) {
+        if ((executeTime < minTime) || disabled) {
+            return;
+        }
+        byte[] data = ResultsRowCodec.encode(rows);
+        if (data == null) {
+            return;
+        }
+        try {
+            store.put(key, data);
+            synchronized (this) {
+                stored++;
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write to results cache " + store, e);
+        }
+    }
+
+    /**
+     * Returns the version of a component, from memory if it was read from the store recently
+     * enough.
+     */
+    private String getVersion(String name) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedVersion cached = versions.get(name);
+        if ((cached != null) && (now - cached.time <= versionTtl)) {
+            return cached.version;
+        }
+        String version = store.getVersion(name);
+        CachedVersion read = new CachedVersion(version == null ? "0" : version, now);
+        // Do not replace a version set by componentsAltered() while the store was being read
+        if (cached == null) {
+            versions.putIfAbsent(name, read);
+        } else {
+            versions.replace(name, cached, read);
+        }
+        return read.version;
+    }
+
+    /**
+     * Gives new versions to database components that have been altered, so that no batch that
+     * reads them is used again. This is called after the alteration has been committed, so if
+     * the store cannot be written the error is logged and the cache is disabled.
+     *
+     * @param components the altered components
+     */
+    public void componentsAltered(Set<Object> components) {
+        if (disabled) {
+            return;
+        }
+        for (Object component : components) {
+            String name = getComponentName(component);
+            String version = UUID.randomUUID().toString();
+            try {
+                store.setVersion(name, version);
+            } catch (IOException e) {
+                // There is no safe way to carry on using the store
+                disabled = true;
+                LOG.error("Could not invalidate " + name + " in results cache " + store
+                        + " - disabling the cache. Other servers sharing the cache may use stale"
+                        + " results until it is cleared", e);
+                return;
+            }
+            versions.put(name, new CachedVersion(version, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Returns whether the cache has been disabled because the store could not be written.
+     *
+     * @return true if the cache is no longer used
+     */
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    private static String getComponentName(Object component) {
+        if (component instanceof ObjectStoreBag) {
+            return "bag " + ((ObjectStoreBag) component).getBagId();
+        }
+        return "table " + component;
+    }
+
+    /**
+     * Returns a description of how well the cache is working.
+     *
+     * @return a String
+     */
+    public synchronized String getStatistics() {
+        return "Shared results cache (" + store + "): " + hits + " hits, " + misses
+            + " misses, " + stored + " batches stored" + (disabled ? ", disabled" : "");
+    }
+
+    /**
+     * A version of a component, and when it was read or set.
+     */
+    private static final class CachedVersion
+    {
+        private final String version;
+        private final long time;
+
+        CachedVersion(String version, long time) {
+            this.version = version;
+            this.time = time;
+        }
+    }
+}
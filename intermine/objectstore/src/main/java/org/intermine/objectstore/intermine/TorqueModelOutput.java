@@ -10,6 +10,8 @@ package org.intermine.objectstore.intermine;
  *
  */
 
+import static org.intermine.objectstore.intermine.BagBitmapCache.BAG_BITMAP_TABLE_NAME;
+import static org.intermine.objectstore.intermine.BagBitmapCache.BITMAP_COLUMN;
 import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.BAGID_COLUMN;
 import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.BAGVAL_COLUMN;
 import static org.intermine.objectstore.intermine.ObjectStoreInterMineImpl.CLOBID_COLUMN;
@@ -155,6 +157,16 @@ public class TorqueModelOutput
                     + ENDL)
             .append(INDENT + INDENT + "</index>" + ENDL)
             .append(INDENT + "</table>" + ENDL);
+        // Create the table of saved bag bitmaps
+        sb.append(INDENT + "<table name=\"" + BAG_BITMAP_TABLE_NAME + "\">" + ENDL)
+            .append(generateColumn(BAGID_COLUMN, "java.lang.Integer"))
+            .append(generateColumn(BITMAP_COLUMN, LONG_VAR_BINARY_TYPE))
+            .append(INDENT + INDENT + "<unique name=\"" + BAG_BITMAP_TABLE_NAME + "_index\">"
+                    + ENDL)
+            .append(INDENT + INDENT + INDENT + "<unique-column name=\"" + BAGID_COLUMN + "\"/>"
+                    + ENDL)
+            .append(INDENT + INDENT + "</unique>" + ENDL)
+            .append(INDENT + "</table>" + ENDL);
         // Create the Clob table
         sb.append(INDENT + "<table name=\"" + CLOB_TABLE_NAME + "\">" + ENDL)
             .append(generateColumn(CLOBID_COLUMN, "java.lang.Integer"))
@@ -22,7 +22,8 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.proxy.Lazy;
 
 /**
- * Class used to read a Clob from the ObjectStore.
+ * Class used to read a Clob from the ObjectStore. If the ObjectStore has a ClobFile for the Clob,
+ * the text is read from the file instead of the database.
  *
  * @author Matthew Wakeling
  */
@@ -30,6 +31,7 @@ public class ClobAccess implements CharSequence, Lazy
 {
     protected ObjectStore os;
     protected SingletonResults results;
+    protected ClobFile file;
     protected Clob clob;
     protected int offset;
     protected int length;
@@ -58,17 +60,21 @@ public class ClobAccess implements CharSequence, Lazy
     /**
      * Construct a ClobAccess object representing a subsequence of an existing ClobAccess object.
      *
-     * @param results the SingletonResults object backing the object
+     * @param os the ObjectStore that the Clob is stored in
+     * @param results the SingletonResults object backing the object, or null if it has a file
+     * @param file the file backing the object, or null if it is read from the database
      * @param clob the Clob to access
      * @param offset the offset
      * @param length the length
      */
-    private ClobAccess(SingletonResults results, Clob clob, int offset, int length) {
+    private ClobAccess(ObjectStore os, SingletonResults results, ClobFile file, Clob clob,
+            int offset, int length) {
+        this.os = os;
         this.results = results;
+        this.file = file;
         this.clob = clob;
         this.offset = offset;
         this.length = length;
-        os = results.getObjectStore();
         subSequence = true;
     }
 
@@ -78,7 +84,12 @@ public class ClobAccess implements CharSequence, Lazy
      * the ObjectStoreWriter while it has exclusive use of the connection.
      */
     protected void init() {
-        if (results == null) {
+        if ((results == null) && (file == null)) {
+            file = os.getClobFile(clob);
+            if (file != null) {
+                length = file.length();
+                return;
+            }
             Query q = new Query();
             q.addToSelect(clob);
             results = os.executeSingleton(q, 20, false, false, true);
@@ -126,9 +137,12 @@ public class ClobAccess implements CharSequence, Lazy
         if (index >= length) {
             throw new IndexOutOfBoundsException("index is not less than length");
         }
-        int page = index / CLOB_PAGE_SIZE;
+        if (file != null) {
+            return file.charAt(offset + index);
+        }
+        int page = (offset + index) / CLOB_PAGE_SIZE;
         String pageText = (String) results.get(page);
-        return pageText.charAt(index - page * CLOB_PAGE_SIZE);
+        return pageText.charAt(offset + index - page * CLOB_PAGE_SIZE);
     }
 
     /**
@@ -167,7 +181,7 @@ public class ClobAccess implements CharSequence, Lazy
         if ((start == 0) && (end == length)) {
             return this;
         }
-        return new ClobAccess(results, clob, start + offset, end - start);
+        return new ClobAccess(os, results, file, clob, start + offset, end - start);
     }
 
     /**
@@ -190,7 +204,9 @@ public class ClobAccess implements CharSequence, Lazy
         init();
         StringBuilder retval = new StringBuilder();
 
-        if (length > 0) {
+        if (file != null) {
+            file.appendTo(retval, offset, offset + length);
+        } else if (length > 0) {
             int lowestPage = offset / CLOB_PAGE_SIZE;
             int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
             for (int page = lowestPage; page <= highestPage; page++) {
@@ -216,6 +232,15 @@ public class ClobAccess implements CharSequence, Lazy
      */
     public void drainToPrintStream(PrintStream out) {
         init();
+        if (file != null) {
+            for (int start = offset; start < offset + length; start += CLOB_PAGE_SIZE) {
+                StringBuilder pageText = new StringBuilder();
+                file.appendTo(pageText, start, Math.min(start + CLOB_PAGE_SIZE,
+                            offset + length));
+                out.print(pageText);
+            }
+            return;
+        }
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = lowestPage; page <= highestPage; page++) {
@@ -273,6 +298,16 @@ public class ClobAccess implements CharSequence, Lazy
         return results;
     }
 
+    /**
+     * Returns the (possibly uninitialised) file used internally by this object, for use by
+     * subclass constructors.
+     *
+     * @return a ClobFile, or null if the Clob is read from the database
+     */
+    public ClobFile getClobFileWithoutInit() {
+        return file;
+    }
+
     /**
      * Returns true if this object is a subsequence of a main Clob.
      *
@@ -0,0 +1,44 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The text of a Clob held outside the database by an ObjectStore, so that any part of it can be
+ * read without a query.
+ *
+ * @author agent
+ */
+public interface ClobFile
+{
+    /**
+     * Returns the length of the text.
+     *
+     * @return the number of characters
+     */
+    int length();
+
+    /**
+     * Returns one character of the text.
+     *
+     * @param index the position of the character, from zero
+     * @return a character
+     */
+    char charAt(int index);
+
+    /**
+     * Appends part of the text to a StringBuilder.
+     *
+     * @param sb the StringBuilder
+     * @param start the position of the first character, from zero
+     * @param end the position after the last character
+     */
+    void appendTo(StringBuilder sb, int start, int end);
+}
@@ -12,6 +12,8 @@ package org.intermine.objectstore.query;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -20,6 +22,12 @@ import org.intermine.objectstore.ObjectStoreException;
 
 /**
  * A manager for the prefetch mechanism for the Results object.
+ * <p>
+ * Prefetch requests are serviced by a pool of daemon threads, which grows on demand up to a fixed
+ * maximum (see setMaxServiceThreads) and shrinks again when threads have been idle for a while.
+ * Pending requests are serviced oldest first, and as they are only a hint, the oldest are dropped
+ * if too many build up. A thread that actually needs a batch never waits for the pool - it takes
+ * the request over and services it itself.
  *
  * @author Matthew Wakeling
  */
@@ -29,15 +37,27 @@ public final class PrefetchManager
     }
 
     private static final Logger LOG = Logger.getLogger(PrefetchManager.class);
-    /** Pending set of requests - always accessed inside a synchronise on sync. */
-    protected static Set<Request> pending = new HashSet<Request>();
+    /** Pending set of requests, in the order they were added - always accessed inside a
+     * synchronise on sync. */
+    protected static Set<Request> pending = new LinkedHashSet<Request>();
     /** Set of requests currently being serviced. This Set is not accessed inside a block
      * synchronised on any global object, so it must be able to handle concurrent access. */
     protected static Set<Request> serviced = Collections.synchronizedSet(new HashSet<Request>());
     protected static int serviceThreads = 0;
+    protected static int maxServiceThreads = 8;
     private static Object sync = new Object();
 
     protected static final int LOADING = 3;
+    /** The maximum number of pending requests - older ones are dropped beyond this. */
+    protected static final int MAX_PENDING = 1000;
+    /** The time in milliseconds that a service thread waits for work before exiting. */
+    protected static final long IDLE_TIMEOUT = 60000;
+
+    // Statistics - always accessed inside a synchronise on sync.
+    private static long requestsQueued = 0;
+    private static long requestsDropped = 0;
+    private static long requestsServiced = 0;
+    private static long totalWaitTime = 0;
 
     /*
      * This class provides methods for cancelling requests, so here is an explanation of how this
@@ -81,6 +101,60 @@ public final class PrefetchManager
      *         jeopardising the thread that is performing the work.
      */
 
+    /**
+     * Sets the maximum number of threads used to service prefetch requests. Threads are only
+     * started when there is enough work for them, so this is an upper limit.
+     *
+     * @param threads the maximum number of service threads - at least one
+     */
+    public static void setMaxServiceThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("PrefetchManager needs at least one service "
+                    + "thread, not " + threads);
+        }
+        synchronized (sync) {
+            maxServiceThreads = threads;
+        }
+    }
+
+    /**
+     * Returns the number of prefetch requests waiting to be picked up by a service thread.
+     *
+     * @return an int
+     */
+    public static int getQueueDepth() {
+        synchronized (sync) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Returns the average time in milliseconds that prefetch requests serviced by the service
+     * threads spent waiting in the queue.
+     *
+     * @return a long
+     */
+    public static long getAverageWaitTime() {
+        synchronized (sync) {
+            return requestsServiced == 0 ? 0 : totalWaitTime / requestsServiced;
+        }
+    }
+
+    /**
+     * Returns a summary of the state of the PrefetchManager, for log messages.
+     *
+     * @return a String
+     */
+    public static String getStatistics() {
+        synchronized (sync) {
+            return "PrefetchManager: " + serviceThreads + "/" + maxServiceThreads
+                + " service threads, " + pending.size() + " pending, " + serviced.size()
+                + " being serviced, " + requestsQueued + " queued, " + requestsServiced
+                + " serviced by prefetch (average wait " + getAverageWaitTime() + " ms), "
+                + requestsDropped + " dropped";
+        }
+    }
+
     /**
      * Adds a request to the Set of pending requests, and wakes up a Thread to handle it.
      *
@@ -103,8 +177,18 @@ public final class PrefetchManager
                         //    LOG.debug("addRequest - adding request:                          "
                         //            + request);
                         //}
-                        pending.add(request);
-                        if ((pending.size() + serviced.size()) > (serviceThreads * LOADING)) {
+                        if (pending.add(request)) {
+                            requestsQueued++;
+                            if (pending.size() > MAX_PENDING) {
+                                // Nobody is waiting for a pending request, so drop the oldest.
+                                Iterator<Request> iter = pending.iterator();
+                                iter.next();
+                                iter.remove();
+                                requestsDropped++;
+                            }
+                        }
+                        if (((pending.size() + serviced.size()) > (serviceThreads * LOADING))
+                                && (serviceThreads < maxServiceThreads)) {
                             // There are too many requests for the servicing threads.
                             Thread newThread = new ServiceThread();
                             newThread.setDaemon(true);
@@ -264,18 +348,28 @@ public final class PrefetchManager
     }
 
     /**
-     * Returns a request for a thread to service.
+     * Returns a request for a thread to service, or null if there has been nothing to do for
+     * IDLE_TIMEOUT milliseconds, in which case the calling service thread has been removed from
+     * the count of service threads and should exit.
      *
-     * @return a request to service
+     * @return a request to service, or null
      */
     protected static Request getRequest() {
         Request retval;
         synchronized (sync) {
+            long idleSince = System.currentTimeMillis();
             while (pending.isEmpty()) {
+                long idle = System.currentTimeMillis() - idleSince;
+                if (idle >= IDLE_TIMEOUT) {
+                    serviceThreads--;
+                    LOG.info("getRequest - idle ServiceThread exiting. We now have "
+                            + serviceThreads);
+                    return null;
+                }
                 // There are no requests to get - wait for a notify.
                 //LOG.debug("getRequest - waiting for a request");
                 try {
-                    sync.wait();
+                    sync.wait(IDLE_TIMEOUT - idle);
                 } catch (InterruptedException e) {
                     // Ignore interruption.
                 }
@@ -307,6 +401,11 @@ public final class PrefetchManager
 
             serviced.add(retval);
             pending.remove(retval);
+            requestsServiced++;
+            totalWaitTime += System.currentTimeMillis() - retval.created;
+            if (requestsServiced % 1000 == 0) {
+                LOG.info(getStatistics());
+            }
         }
         return retval;
     }
@@ -317,12 +416,14 @@ public final class PrefetchManager
         private int batchNo;
         private boolean optimise;
         private boolean explain;
+        private long created;
 
         public Request(ResultsBatches result, int batchNo, boolean optimise, boolean explain) {
             this.result = result;
             this.batchNo = batchNo;
             this.optimise = optimise;
             this.explain = explain;
+            this.created = System.currentTimeMillis();
         }
 
         @Override
@@ -345,9 +446,15 @@ public final class PrefetchManager
     {
         @Override
         public void run() {
+            boolean idle = false;
             try {
                 while (true) {
                     Request request = PrefetchManager.getRequest();
+                    if (request == null) {
+                        // getRequest has already removed us from the count of service threads
+                        idle = true;
+                        return;
+                    }
                     //LOG.debug("ServiceThread.run - servicing request                 " + request);
                     try {
                         // Now, we can service this request in a normal manner, outside all locks.
@@ -369,11 +476,16 @@ public final class PrefetchManager
                 LOG.error("Failure of PrefetchManager service thread with error", e);
                 throw e;
             } finally {
-                // Like I said, we REALLY NEED to know if something has gone wrong here, as it is a
-                // BIG BAD BUG.
-                LOG.error("ServiceThread died unexpectedly. PrefetchManager may stop working");
-                // And decrement the count of available ServiceThreads.
-                PrefetchManager.serviceThreads--;
+                if (!idle) {
+                    // Like I said, we REALLY NEED to know if something has gone wrong here, as it
+                    // is a BIG BAD BUG.
+                    LOG.error("ServiceThread died unexpectedly. PrefetchManager may stop "
+                            + "working");
+                    // And decrement the count of available ServiceThreads.
+                    synchronized (sync) {
+                        PrefetchManager.serviceThreads--;
+                    }
+                }
             }
         }
     }
@@ -12,6 +12,7 @@ package org.intermine.objectstore.query;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
@@ -55,6 +56,14 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
     // If sequential gets above a PREFETCH_SEQUENTIAL_THRESHOLD, then we prefetch the batch after
     // the one we are currently using.
 
+    // Limits on the batch size used by streamingIterator(). The batch size is adjusted after each
+    // batch so that fetching a batch takes about STREAMING_TARGET_MILLIS, and is limited so that
+    // a batch holds no more than STREAMING_MAX_CELLS result columns in total.
+    private static final int STREAMING_MIN_BATCH_SIZE = 100;
+    private static final int STREAMING_MAX_BATCH_SIZE = 50000;
+    private static final int STREAMING_MAX_CELLS = 200000;
+    private static final long STREAMING_TARGET_MILLIS = 1000;
+
     /**
      * No argument constructor for testing purposes
      *
@@ -355,6 +364,121 @@ public class Results extends AbstractList<Object> implements LazyCollection<Obje
         return iter;
     }
 
+    /**
+     * Returns a forward-only iterator over the List that reads the rows straight from the
+     * ObjectStore, one batch at a time, without putting them in the batch cache shared by Results
+     * objects for the same query. Only the batch currently being read is held in memory, so this
+     * is suitable for reading very large results once, for example for an export or a
+     * postprocess. The batch size starts at the batch size of this object and then adapts to the
+     * width of the rows and to how long each batch takes to fetch.
+     * <p>
+     * Consecutive batches are read in the same way as by iterator(), so the ObjectStore can
+     * continue each one from the sort key of the last row of the previous one rather than
+     * skipping an ever larger OFFSET.
+     *
+     * @return an Iterator
+     */
+    public Iterator<Object> streamingIterator() {
+        return new StreamingIter();
+    }
+
+    /**
+     * Converts a row fetched from the ObjectStore into an element of this List. Subclasses that
+     * present the rows differently should override this method, which is used by
+     * streamingIterator().
+     *
+     * @param row a ResultsRow
+     * @return the element to return from the iterator
+     */
+    protected Object convertRow(Object row) {
+        return row;
+    }
+
+    private class StreamingIter implements Iterator<Object>
+    {
+        private List<?> batch = Collections.emptyList();
+        private int batchPos = 0;
+        private int nextRow = 0;
+        private int batchSize;
+        private final int maxBatchSize;
+        private boolean finished = false;
+
+        StreamingIter() {
+            int columns = Math.max(1, getQuery().getSelect().size());
+            int maxLimit = getObjectStore().getMaxLimit();
+            maxBatchSize = Math.max(STREAMING_MIN_BATCH_SIZE, Math.min(maxLimit,
+                        Math.min(STREAMING_MAX_BATCH_SIZE, STREAMING_MAX_CELLS / columns)));
+            batchSize = Math.min(maxBatchSize, Math.max(STREAMING_MIN_BATCH_SIZE,
+                        resultsBatches.getBatchSize()));
+        }
+
+        private void fetchBatch() {
+            // The first batch may already have been fetched by someone else.
+            List<Object> cached = null;
+            int requested = batchSize;
+            if (nextRow == 0) {
+                cached = resultsBatches.getBatchFromCache(0);
+                requested = resultsBatches.getBatchSize();
+            }
+            if (cached != null) {
+                batch = cached;
+            } else {
+                long start = System.currentTimeMillis();
+                try {
+                    batch = getObjectStore().execute(getQuery(), nextRow, requested, optimise,
+                            explain, getSequence());
+                } catch (DataChangedException e) {
+                    ConcurrentModificationException e2 = new ConcurrentModificationException(
+                            "ObjectStore error has occurred (in streaming iterator) - data"
+                            + " changed");
+                    e2.initCause(e);
+                    throw e2;
+                } catch (ObjectStoreException e) {
+                    throw new RuntimeException("ObjectStore error has occurred (in streaming"
+                            + " iterator)", e);
+                }
+                adaptBatchSize(batch.size(), requested, System.currentTimeMillis() - start);
+            }
+            batchPos = 0;
+            nextRow += batch.size();
+            if (batch.size() < requested) {
+                finished = true;
+            }
+        }
+
+        private void adaptBatchSize(int rows, int requested, long millis) {
+            if (rows < requested) {
+                return;
+            }
+            if (millis < STREAMING_TARGET_MILLIS / 2) {
+                batchSize = Math.min(maxBatchSize, batchSize * 2);
+            } else if (millis > STREAMING_TARGET_MILLIS * 2) {
+                batchSize = Math.max(STREAMING_MIN_BATCH_SIZE, batchSize / 2);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while ((batchPos >= batch.size()) && (!finished)) {
+                fetchBatch();
+            }
+            return batchPos < batch.size();
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return convertRow(batch.get(batchPos++));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     private class Iter implements Iterator<Object>
     {
         /**
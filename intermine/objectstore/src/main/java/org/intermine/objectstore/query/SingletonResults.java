@@ -70,6 +70,14 @@ public class SingletonResults extends Results implements Set<Object>, Collection
         return rows;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Object convertRow(Object row) {
+        return ((List<?>) row).get(0);
+    }
+
     @Override
     public Spliterator<Object> spliterator() {
         // TODO Auto-generated method stub
@@ -10,29 +10,57 @@ package org.intermine.sql.precompute;
  *
  */
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.log4j.Logger;
 import org.intermine.sql.Database;
-import org.intermine.util.CacheMap;
+import org.intermine.util.BoundedCacheMap;
 
 /**
  * A class that provides an implementation of a cache for String-based SQL query optimisation.
+ * <p>
+ * The cache holds at most a fixed number of original queries, evicting the least recently used
+ * when it is full, and may be used by many threads at once without them queueing on a single
+ * lock. The number of lookups that found and did not find a usable optimised query are counted,
+ * and the contents can be saved to a file and loaded again so that a restarted server does not
+ * have to re-optimise its whole working set.
  *
  * @author Matthew Wakeling
  */
 public class OptimiserCache
 {
+    private static final Logger LOG = Logger.getLogger(OptimiserCache.class);
     /** Maximum number of cache linesets in the cache. */
     public static final int MAX_LINESETS = 1000;
     /** Number of events to happen before an expiration run. */
     public static final int EXPIRE_INTERVAL = 100;
 
+    // Identifies the format of saved cache files
+    private static final int FILE_MAGIC = 0x4f435632;
+    private static final Pattern PRECOMP_TABLE = Pattern.compile(
+            "\\b(?:temporary_)?precomp_\\d+\\b", Pattern.CASE_INSENSITIVE);
+
     // Caches need to be per-database, so we will provide a static method to retrieve a cache object
-    // given a database. We need to be careful about synchronisation in this whole class.
-    private static Map<Database, OptimiserCache> caches = new HashMap<Database, OptimiserCache>();
+    // given a database.
+    private static Map<Database, OptimiserCache> caches
+        = new ConcurrentHashMap<Database, OptimiserCache>();
 
     /**
      * Returns an OptimiserCache object relevant to the database given.
@@ -40,17 +68,14 @@ public class OptimiserCache
      * @param db a Database object to find a cache for
      * @return an OptimiserCache object
      */
-    public static synchronized OptimiserCache getInstance(Database db) {
-        if (!caches.containsKey(db)) {
-            caches.put(db, new OptimiserCache());
-        }
-        return caches.get(db);
+    public static OptimiserCache getInstance(Database db) {
+        return caches.computeIfAbsent(db, k -> new OptimiserCache());
     }
 
     /**
      * used only for testing
      */
-    protected static synchronized void clear() {
+    protected static void clear() {
         caches.clear();
     }
 
@@ -60,17 +85,30 @@ public class OptimiserCache
      */
     protected Map<String, Set<OptimiserCacheLine>> cacheLines;
 
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
     /**
      * Constructor for this object.
      */
     public OptimiserCache() {
-        cacheLines = new CacheMap<String, Set<OptimiserCacheLine>>();
+        this(MAX_LINESETS);
+    }
+
+    /**
+     * Constructor for this object, holding up to the given number of original queries.
+     *
+     * @param maxLinesets the maximum number of original queries to hold
+     */
+    public OptimiserCache(int maxLinesets) {
+        cacheLines = new BoundedCacheMap<String, Set<OptimiserCacheLine>>("OptimiserCache",
+                maxLinesets);
     }
 
     /**
      * Removes all entries from the cache.
      */
-    public synchronized void flush() {
+    public void flush() {
         cacheLines.clear();
     }
 
@@ -81,7 +119,7 @@ public class OptimiserCache
      * @param optimised the optimised SQL string (stripped of LIMIT and OFFSET)
      * @param limit the limit that was used during the optimisation
      */
-    public synchronized void addCacheLine(String original, String optimised, int limit) {
+    public void addCacheLine(String original, String optimised, int limit) {
         if (original.toUpperCase().startsWith("EXPLAIN ")) {
             original = original.substring(8);
         }
@@ -90,8 +128,14 @@ public class OptimiserCache
         }
         Set<OptimiserCacheLine> lines = cacheLines.get(original);
         if (lines == null) {
-            lines = new HashSet<OptimiserCacheLine>();
-            cacheLines.put(original, lines);
+            synchronized (this) {
+                lines = cacheLines.get(original);
+                if (lines == null) {
+                    lines = Collections.newSetFromMap(
+                            new ConcurrentHashMap<OptimiserCacheLine, Boolean>());
+                    cacheLines.put(original, lines);
+                }
+            }
         }
 
         OptimiserCacheLine line = new OptimiserCacheLine(optimised, limit, original);
@@ -106,9 +150,7 @@ public class OptimiserCache
      * @param limit the limit required
      * @return a possible optimised SQL string (minus LIMIT and OFFSET)
      */
-    public synchronized String lookup(String original, int limit) {
-        //LOG.debug("Looking up query \"" + original + "\" with limit " + limit
-        //        + " and offset " + offset + " - ");
+    public String lookup(String original, int limit) {
         boolean originalWasExplain = false;
         if (original.toUpperCase().startsWith("EXPLAIN ")) {
             original = original.substring(8);
@@ -117,7 +159,7 @@ public class OptimiserCache
         Set<OptimiserCacheLine> lines = cacheLines.get(original);
         if (lines == null) {
             // Couldn't find anything.
-            //LOG.debug("Complete cache miss");
+            misses.increment();
             return null;
         }
         double bestScore = Double.POSITIVE_INFINITY;
@@ -130,10 +172,189 @@ public class OptimiserCache
             }
         }
         if (bestScore > 1.0) {
-            //LOG.debug("Cache didn't have anything near enough");
+            // The cache didn't have anything near enough
+            misses.increment();
             return null;
         }
-        //LOG.debug("Cache hit");
+        hits.increment();
         return (originalWasExplain ? "EXPLAIN " : "") + bestLine.getOptimised();
     }
+
+    /**
+     * Returns the number of lookups that found a usable optimised query.
+     *
+     * @return a long
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a usable optimised query.
+     *
+     * @return a long
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of original queries currently held in the cache.
+     *
+     * @return an int
+     */
+    public int size() {
+        return cacheLines.size();
+    }
+
+    /**
+     * Returns a description of the size and hit rate of the cache, suitable for logging.
+     *
+     * @return a String
+     */
+    public String getStatistics() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return "OptimiserCache: " + cacheLines.size() + " queries, " + lookups + " lookups, "
+            + hitCount + " hits (" + (lookups == 0 ? 0 : (100 * hitCount) / lookups) + "%)";
+    }
+
+    /**
+     * Writes the contents of the cache to a file, so that it can be restored with load() after
+     * a restart. The SQL that each precomputed table used by an optimised query was made from is
+     * written with it, so that load() can tell if a table of the same name is still the same
+     * table. Optimised queries that use a precomputed table that is not in the given set are not
+     * written.
+     *
+     * @param file the file to write to, which is replaced
+     * @param precomputedTables the precomputed tables currently present in the database
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file, Set<PrecomputedTable> precomputedTables) throws IOException {
+        Map<String, String> tableSql = getTableSql(precomputedTables);
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)));
+        int count = 0;
+        try {
+            out.writeInt(FILE_MAGIC);
+            for (Map.Entry<String, Set<OptimiserCacheLine>> entry : cacheLines.entrySet()) {
+                for (OptimiserCacheLine line : entry.getValue()) {
+                    Set<String> used = getPrecomputedTables(line.getOptimised());
+                    if (!tableSql.keySet().containsAll(used)) {
+                        continue;
+                    }
+                    out.writeBoolean(true);
+                    out.writeInt(line.getLimit());
+                    writeString(out, entry.getKey());
+                    writeString(out, line.getOptimised());
+                    out.writeInt(used.size());
+                    for (String name : used) {
+                        writeString(out, name);
+                        writeString(out, tableSql.get(name));
+                    }
+                    count++;
+                }
+            }
+            out.writeBoolean(false);
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tempFile + " to " + file);
+            }
+        }
+        LOG.info("Saved " + count + " optimised queries to " + file);
+    }
+
+    /**
+     * Adds the contents of a file written by save() to the cache. Optimised queries that use a
+     * precomputed table that is not in the given set (because it has been dropped since the file
+     * was written), or that is in the set but was made from different SQL (because the database
+     * has been rebuilt and the name reused), are discarded.
+     *
+     * @param file the file to read from
+     * @param precomputedTables the precomputed tables currently present in the database
+     * @return the number of optimised queries loaded
+     * @throws IOException if the file cannot be read or is not a saved cache
+     */
+    public int load(File file, Set<PrecomputedTable> precomputedTables) throws IOException {
+        Map<String, String> tableSql = getTableSql(precomputedTables);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+        int loaded = 0;
+        int discarded = 0;
+        try {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("File " + file + " is not a saved OptimiserCache");
+            }
+            while (in.readBoolean()) {
+                int limit = in.readInt();
+                String original = readString(in);
+                String optimised = readString(in);
+                boolean current = true;
+                int tableCount = in.readInt();
+                for (int i = 0; i < tableCount; i++) {
+                    String name = readString(in);
+                    String sql = readString(in);
+                    if (!sql.equals(tableSql.get(name))) {
+                        current = false;
+                    }
+                }
+                if (current) {
+                    addCacheLine(original, optimised, limit);
+                    loaded++;
+                } else {
+                    discarded++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        LOG.info("Loaded " + loaded + " optimised queries from " + file + ", discarded "
+                + discarded + " that used missing or changed precomputed tables");
+        return loaded;
+    }
+
+    /**
+     * Returns the SQL that each of a set of precomputed tables was made from, by lower-case name.
+     * Temporary precomputed tables are left out, as they do not outlive the server.
+     */
+    private static Map<String, String> getTableSql(Set<PrecomputedTable> precomputedTables) {
+        Map<String, String> tableSql = new HashMap<String, String>();
+        for (PrecomputedTable pt : precomputedTables) {
+            String name = pt.getName().toLowerCase();
+            if (!name.startsWith("temporary_")) {
+                tableSql.put(name, pt.getOriginalSql());
+            }
+        }
+        return tableSql;
+    }
+
+    /**
+     * Returns the lower-case names of the precomputed tables mentioned in an SQL string.
+     */
+    private static Set<String> getPrecomputedTables(String sql) {
+        Set<String> names = new HashSet<String>();
+        Matcher m = PRECOMP_TABLE.matcher(sql);
+        while (m.find()) {
+            names.add(m.group().toLowerCase());
+        }
+        return names;
+    }
+
+    // DataOutput.writeUTF cannot write strings longer than 64k, which SQL can easily exceed
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
 }
@@ -18,6 +18,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -40,6 +41,10 @@ import org.intermine.sql.query.Table;
 /**
  * Manages all the Precomputed tables in a given database.
  *
+ * A manager may be used by several threads at once. The set of tables is replaced rather than
+ * altered when a table is added or deleted, so getPrecomputedTables() can be iterated while other
+ * threads create tables, and tables are created without holding the manager's lock.
+ *
  * @author Andrew Varley
  * @author Matthew Wakeling
  */
@@ -47,7 +52,10 @@ public class PrecomputedTableManager
 {
     private static final Logger LOG = Logger.getLogger(PrecomputedTableManager.class);
 
-    protected TreeSet<PrecomputedTable> precomputedTables = new TreeSet<PrecomputedTable>();
+    protected volatile TreeSet<PrecomputedTable> precomputedTables =
+        new TreeSet<PrecomputedTable>();
+    // category and original SQL of the tables being created by add()
+    private final Set<String> tablesBeingAdded = new HashSet<String>();
     protected Map<String, Map<String, PrecomputedTable>> types
         = new HashMap<String, Map<String, PrecomputedTable>>();
     protected Database database;
@@ -112,8 +120,8 @@ public class PrecomputedTableManager
             if (!(instances.containsKey(conn))) {
                 instances.put(conn, new PrecomputedTableManager(conn));
             }
+            return instances.get(conn);
         }
-        return instances.get(conn);
     }
 
     /**
@@ -129,8 +137,8 @@ public class PrecomputedTableManager
             if (!(instances.containsKey(database))) {
                 instances.put(database, new PrecomputedTableManager(database));
             }
+            return instances.get(database);
         }
-        return instances.get(database);
     }
 
     /**
@@ -162,20 +170,35 @@ public class PrecomputedTableManager
         }
 
         String queryString = pt.getOriginalSql();
-        Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
-
-        if (queryStrings == null) {
-            queryStrings = new HashMap<String, PrecomputedTable>();
-            types.put(pt.getCategory(), queryStrings);
+        String addingKey = pt.getCategory() + "\n" + queryString;
+        synchronized (this) {
+            Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
+            if (((queryStrings != null) && queryStrings.containsKey(queryString))
+                    || !tablesBeingAdded.add(addingKey)) {
+                throw new IllegalArgumentException("Precomputed table " + pt.getName()
+                    + " already exists");
+            }
         }
-
-        if (queryStrings.containsKey(queryString)) {
-            throw new IllegalArgumentException("Precomputed table " + pt.getName()
-                + " already exists");
-        } else {
+        boolean added = false;
+        try {
             addTableToDatabase(pt, indexes, true);
-            precomputedTables.add(pt);
-            queryStrings.put(queryString, pt);
+            added = true;
+        } finally {
+            synchronized (this) {
+                tablesBeingAdded.remove(addingKey);
+                if (added) {
+                    TreeSet<PrecomputedTable> newTables =
+                        new TreeSet<PrecomputedTable>(precomputedTables);
+                    newTables.add(pt);
+                    precomputedTables = newTables;
+                    Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
+                    if (queryStrings == null) {
+                        queryStrings = new HashMap<String, PrecomputedTable>();
+                        types.put(pt.getCategory(), queryStrings);
+                    }
+                    queryStrings.put(queryString, pt);
+                }
+            }
         }
     }
 
@@ -184,12 +207,17 @@ public class PrecomputedTableManager
      *
      * @throws SQLException if something goes wrong
      */
-    public void dropEverything() throws SQLException {
-        Iterator<PrecomputedTable> iter = precomputedTables.iterator();
-        while (iter.hasNext()) {
-            PrecomputedTable pt = iter.next();
-            deleteTableFromDatabase(pt.getName());
-            iter.remove();
+    public synchronized void dropEverything() throws SQLException {
+        TreeSet<PrecomputedTable> newTables = new TreeSet<PrecomputedTable>(precomputedTables);
+        try {
+            Iterator<PrecomputedTable> iter = newTables.iterator();
+            while (iter.hasNext()) {
+                PrecomputedTable pt = iter.next();
+                deleteTableFromDatabase(pt.getName());
+                iter.remove();
+            }
+        } finally {
+            precomputedTables = newTables;
         }
 
         types.clear();
@@ -202,27 +230,32 @@ public class PrecomputedTableManager
      * @param tablesAltered a Set of table names that may have alterations
      * @throws SQLException if something goes wrong
      */
-    public void dropAffected(Set<String> tablesAltered) throws SQLException {
-        Iterator<PrecomputedTable> iter = precomputedTables.iterator();
-        while (iter.hasNext()) {
-            PrecomputedTable pt = iter.next();
-            Query q = pt.getQuery();
-            boolean drop = false;
-            for (AbstractTable table : q.getFrom()) {
-                if (table instanceof Table) {
-                    if (tablesAltered.contains(((Table) table).getName())) {
-                        drop = true;
-                        break;
+    public synchronized void dropAffected(Set<String> tablesAltered) throws SQLException {
+        TreeSet<PrecomputedTable> newTables = new TreeSet<PrecomputedTable>(precomputedTables);
+        try {
+            Iterator<PrecomputedTable> iter = newTables.iterator();
+            while (iter.hasNext()) {
+                PrecomputedTable pt = iter.next();
+                Query q = pt.getQuery();
+                boolean drop = false;
+                for (AbstractTable table : q.getFrom()) {
+                    if (table instanceof Table) {
+                        if (tablesAltered.contains(((Table) table).getName())) {
+                            drop = true;
+                            break;
+                        }
                     }
                 }
+                if (drop) {
+                    deleteTableFromDatabase(pt.getName());
+                    iter.remove();
+                    String queryString = pt.getOriginalSql();
+                    Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
+                    queryStrings.remove(queryString);
+                }
             }
-            if (drop) {
-                deleteTableFromDatabase(pt.getName());
-                iter.remove();
-                String queryString = pt.getOriginalSql();
-                Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
-                queryStrings.remove(queryString);
-            }
+        } finally {
+            precomputedTables = newTables;
         }
     }
 
@@ -234,7 +267,7 @@ public class PrecomputedTableManager
      * @throws NullPointerException if pt is null
      * @throws IllegalArgumentException if pt is not a valid table
      */
-    public void delete(PrecomputedTable pt) throws SQLException {
+    public synchronized void delete(PrecomputedTable pt) throws SQLException {
         if (pt == null) {
             throw new NullPointerException("PrecomputedTable cannot be null");
         }
@@ -243,19 +276,22 @@ public class PrecomputedTableManager
         }
 
         deleteTableFromDatabase(pt.getName());
-        precomputedTables.remove(pt);
+        TreeSet<PrecomputedTable> newTables = new TreeSet<PrecomputedTable>(precomputedTables);
+        newTables.remove(pt);
+        precomputedTables = newTables;
         String queryString = pt.getOriginalSql();
         Map<String, PrecomputedTable> queryStrings = types.get(pt.getCategory());
         queryStrings.remove(queryString);
     }
 
     /**
-     * Get all the precomputed tables in the underlying database.
+     * Get all the precomputed tables in the underlying database. The Set is not altered when
+     * tables are later added or deleted.
      *
-     * @return a Set of PrecomputedTables present in the database
+     * @return an unmodifiable Set of PrecomputedTables present in the database
      */
     public Set<PrecomputedTable> getPrecomputedTables() {
-        return precomputedTables;
+        return Collections.unmodifiableSet(precomputedTables);
     }
 
     /**
@@ -542,7 +578,7 @@ public class PrecomputedTableManager
      * @param sql the original SQL string used to create the PrecomputedTable
      * @return a PrecomputedTable or null
      */
-    public PrecomputedTable lookupSql(String category, String sql) {
+    public synchronized PrecomputedTable lookupSql(String category, String sql) {
         Map<String, PrecomputedTable> queryStrings = types.get(category);
         if (queryStrings != null) {
             return queryStrings.get(sql);
@@ -557,7 +593,7 @@ public class PrecomputedTableManager
      * @param sql the original SQL string used to create the PrecomputedTable
      * @return a PrecomputedTable or null
      */
-    public PrecomputedTable lookupSql(String sql) {
+    public synchronized PrecomputedTable lookupSql(String sql) {
         for (Map<String, PrecomputedTable> queryStrings : types.values()) {
             PrecomputedTable pt = queryStrings.get(sql);
             if (pt != null) {
@@ -573,7 +609,7 @@ public class PrecomputedTableManager
      * @param category a String
      * @return a Map
      */
-    public Map<String, PrecomputedTable> lookupCategory(String category) {
+    public synchronized Map<String, PrecomputedTable> lookupCategory(String category) {
         Map<String, PrecomputedTable> queryStrings = types.get(category);
         if (queryStrings == null) {
             queryStrings = new HashMap<String, PrecomputedTable>();
@@ -12,12 +12,15 @@ package org.intermine.sql.writebatch;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
 
@@ -29,6 +32,13 @@ import org.apache.log4j.Logger;
  * One should create one of these objects with a BatchWriter, which will perform the writes.
  * BatchWriters are database-specific, in that they use different tricks to speed up the write,
  * some of which depend on a certain database product.
+ * <p>
+ * The writes are performed by a background thread, so that the data for the next flush can be
+ * prepared while the previous one is being sent to the database. Flushes are queued in order,
+ * so that (for example) an indirection table is never written before the object tables it was
+ * flushed after, and the queue is bounded by the number of bytes waiting to be written rather
+ * than by the number of flushes. All the writes share the caller's Connection, because they
+ * must all belong to the caller's transaction.
  *
  * @author Matthew Wakeling
  */
@@ -37,13 +47,21 @@ public class Batch
     private static final Logger LOG = Logger.getLogger(Batch.class);
     private static final int OPP_BATCH_SIZE = 10000000;
     private static final int MAX_BATCH_SIZE = 100000000;
+    // Maximum number of bytes of prepared flushes waiting for the background writer. A single
+    // flush larger than this is still accepted when nothing else is waiting.
+    private static final int MAX_QUEUED_SIZE = 50000000;
+    // Per-table timings are logged at info level if the writes since the last batchCommit took
+    // at least this long.
+    private static final long STATS_LOG_THRESHOLD = 10000;
 
     private Map<String, Table> tables = new HashMap<String, Table>();
     private BatchWriter batchWriter;
     private int batchSize = 0;
     private int lastCheckBatchSize = 0;
 
-    private List<FlushJob> flushJobs = Collections.emptyList();
+    // Flushes waiting to be written, including the one being written, in order.
+    private final Deque<QueuedFlush> flushQueue = new ArrayDeque<QueuedFlush>();
+    private long queuedSize = 0;
     private SQLException problem = null;
 
     private volatile int lastDutyCycle = 100;
@@ -221,7 +239,7 @@ public class Batch
         //LOG.error("Flushed", e);
         backgroundFlush(con, filter);
         List<FlushJob> empty = Collections.emptyList();
-        putFlushJobs(empty);
+        putFlushJobs(empty, 0);
     }
 
     /**
@@ -283,7 +301,7 @@ public class Batch
             needBatchCommit = false;
         }
         //long middle = System.currentTimeMillis();
-        putFlushJobs(jobs);
+        putFlushJobs(jobs, oldBatchSize - batchSize);
         //long end = System.currentTimeMillis();
         //if ((end > middle + 10) && (lastDutyCycle < 75)) {
         //    LOG.info("Enqueued " + (oldBatchSize - batchSize) + " of " + oldBatchSize
@@ -315,7 +333,7 @@ public class Batch
         } catch (SQLException e) {
         }
         closed = true;
-        putFlushJobs(CLOSE_DOWN_COMMAND);
+        putFlushJobs(CLOSE_DOWN_COMMAND, 0);
     }
 
     /**
@@ -353,34 +371,43 @@ public class Batch
     }
 
     /**
-     * Returns a List of flush jobs (each as fully-processed as possible) when one becomes
-     * available.
+     * Returns the next queued flush when one becomes available, leaving it at the head of the
+     * queue until finishedFlush is called.
      *
-     * @return a List
+     * @return a QueuedFlush
      */
-    private synchronized List<FlushJob> getFlushJobs() {
-        flushJobs = null;
-        notifyAll();
-        while (flushJobs == null) {
+    private synchronized QueuedFlush getFlushJobs() {
+        while (flushQueue.isEmpty()) {
             if (Thread.interrupted()) {
-                return CLOSE_DOWN_COMMAND;
+                return new QueuedFlush(CLOSE_DOWN_COMMAND, 0);
             }
             try {
                 wait();
             } catch (InterruptedException e) {
             }
         }
-        // By this point, any problem must necessarily have been picked up, so we can reset it.
-        problem = null;
-        return flushJobs;
+        return flushQueue.peekFirst();
+    }
+
+    /**
+     * Removes a flush from the queue once the background writer has finished with it.
+     *
+     * @param flush the QueuedFlush, which must be at the head of the queue
+     */
+    private synchronized void finishedFlush(QueuedFlush flush) {
+        if (flushQueue.peekFirst() == flush) {
+            flushQueue.removeFirst();
+            queuedSize -= flush.size;
+        }
+        notifyAll();
     }
 
     /**
-     * Waits for the flushJobs variable to be empty, which guarantees that the connection is
-     * currently unused.
+     * Waits for the flush queue to be empty, which guarantees that the connection is currently
+     * unused.
      */
     private synchronized void waitForFreeConnection() {
-        while (flushJobs != null) {
+        while (!flushQueue.isEmpty()) {
             try {
                 wait();
             } catch (InterruptedException e) {
@@ -389,24 +416,28 @@ public class Batch
     }
 
     /**
-     * Returns true if the flushJobs variable is empty - that is, the connection is idle.
+     * Returns true if the flush queue is empty - that is, the connection is idle.
      */
     private synchronized boolean isFreeConnection() {
-        return flushJobs == null;
+        return flushQueue.isEmpty();
     }
 
     /**
-     * Puts a List of flush jobs into the flushJobs variable, and tells the writer thread to write
-     * it.
+     * Adds a List of flush jobs to the end of the queue for the writer thread to write, waiting
+     * first for enough of the queue to be written if it is full. An empty List is not queued,
+     * but instead waits for the whole queue to be written.
      *
      * @param jobs a List of jobs
-     * @throws SQLException if the last background flush resulted in an error - note that the
-     * operation will go ahead anyway (although it is likely to throw another exception of its own,
-     * because the transaction will be invalid).
+     * @param size the approximate number of bytes that the jobs will write
+     * @throws SQLException if a background flush resulted in an error - note that the operation
+     * will go ahead anyway (although it is likely to throw another exception of its own, because
+     * the transaction will be invalid).
      */
-    private synchronized void putFlushJobs(List<FlushJob> jobs) throws SQLException {
+    private synchronized void putFlushJobs(List<FlushJob> jobs, long size) throws SQLException {
         long startTime = System.currentTimeMillis();
-        while (flushJobs != null) {
+        boolean waitForAll = jobs.isEmpty() && (jobs != CLOSE_DOWN_COMMAND);
+        while ((!flushQueue.isEmpty())
+                && (waitForAll || (queuedSize + size > MAX_QUEUED_SIZE))) {
             try {
                 wait();
             } catch (InterruptedException e) {
@@ -416,12 +447,15 @@ public class Batch
         if (endTime > startTime + 100) {
             LOG.info("Waited " + (endTime - startTime) + " ms for batch flusher");
         }
-        if ((!jobs.isEmpty()) || (jobs == CLOSE_DOWN_COMMAND)) {
-            flushJobs = jobs;
+        if (!waitForAll) {
+            flushQueue.addLast(new QueuedFlush(jobs, size));
+            queuedSize += size;
             notifyAll();
         }
         if (problem != null) {
-            throw problem;
+            SQLException e = problem;
+            problem = null;
+            throw e;
         }
     }
 
@@ -432,7 +466,9 @@ public class Batch
      * @param problem the SQLException
      */
     private synchronized void reportProblem(SQLException problem) {
-        this.problem = problem;
+        if (this.problem == null) {
+            this.problem = problem;
+        }
     }
 
     /**
@@ -442,8 +478,25 @@ public class Batch
         problem = null;
     }
 
+    /**
+     * A List of flush jobs waiting in the queue, with the number of bytes they will write.
+     */
+    private static class QueuedFlush
+    {
+        private final List<FlushJob> jobs;
+        private final long size;
+
+        QueuedFlush(List<FlushJob> jobs, long size) {
+            this.jobs = jobs;
+            this.size = size;
+        }
+    }
+
     private class BatchFlusher implements Runnable
     {
+        // Bytes written, milliseconds spent and jobs run since the last batchCommit, by table
+        private Map<String, long[]> tableStats = new TreeMap<String, long[]>();
+
         public BatchFlusher() {
         }
 
@@ -452,13 +505,13 @@ public class Batch
             long totalSpent = 0;
             long timeAtLastMessage = flusherStart;
             long spentAtLastMessage = totalSpent;
-            List<FlushJob> jobs = null;
-            while (jobs != CLOSE_DOWN_COMMAND) {
+            QueuedFlush flush = null;
+            while ((flush == null) || (flush.jobs != CLOSE_DOWN_COMMAND)) {
+                flush = getFlushJobs();
                 try {
-                    jobs = getFlushJobs();
                     long start = System.currentTimeMillis();
-                    for (FlushJob job : jobs) {
-                        job.flush();
+                    for (FlushJob job : flush.jobs) {
+                        flushJob(job);
                     }
                     long end = System.currentTimeMillis();
                     totalSpent += end - start;
@@ -474,21 +527,73 @@ public class Batch
                         timeAtLastMessage = end;
                         spentAtLastMessage = totalSpent;
                     }
-                    //LOG.error("Flushed batch at " + end + " - took " + (end - start)
-                    //        + " ms, total " + totalSpent + " of " + (end - flusherStart)
-                    //        + " (duty cycle " + ((100 * totalSpent + ((end - flusherStart) / 2))
-                    //                / (end - flusherStart)) + "%)");
                 } catch (SQLException e) {
                     reportProblem(e);
                 } catch (Throwable t) {
                     SQLException e = new SQLException("Caught a Throwable in the Batch Flusher");
                     e.initCause(t);
                     reportProblem(e);
+                } finally {
+                    finishedFlush(flush);
                 }
-                if (jobs != CLOSE_DOWN_COMMAND) {
-                    jobs = null;
+            }
+        }
+
+        /**
+         * Runs one flush job, recording how long it took against the table it wrote to.
+         *
+         * @param job the FlushJob
+         * @throws SQLException if the job fails
+         */
+        private void flushJob(FlushJob job) throws SQLException {
+            String tableName;
+            long size = 0;
+            if (job instanceof FlushJobPostgresCopyImpl) {
+                tableName = ((FlushJobPostgresCopyImpl) job).getTableName();
+                size = ((FlushJobPostgresCopyImpl) job).getSize();
+            } else if (job instanceof FlushJobBatchCommit) {
+                tableName = "(commit)";
+            } else {
+                tableName = "(statements)";
+            }
+            long start = System.currentTimeMillis();
+            job.flush();
+            long[] stats = tableStats.get(tableName);
+            if (stats == null) {
+                stats = new long[3];
+                tableStats.put(tableName, stats);
+            }
+            stats[0] += size;
+            stats[1] += System.currentTimeMillis() - start;
+            stats[2]++;
+            if (job instanceof FlushJobBatchCommit) {
+                logTableStats();
+            }
+        }
+
+        /**
+         * Logs the bytes written to each table since the last batchCommit, and the rate at
+         * which they were written, and then resets the figures.
+         */
+        private void logTableStats() {
+            long totalTime = 0;
+            StringBuilder message = new StringBuilder("Batch writes since last commit:");
+            for (Map.Entry<String, long[]> entry : tableStats.entrySet()) {
+                long[] stats = entry.getValue();
+                totalTime += stats[1];
+                message.append("\n    ").append(entry.getKey()).append(": ").append(stats[2])
+                    .append(" jobs, ").append(stats[1]).append(" ms");
+                if (stats[0] > 0) {
+                    message.append(", ").append(stats[0]).append(" bytes (")
+                        .append((stats[0] * 1000) / Math.max(stats[1], 1)).append(" bytes/s)");
                 }
             }
+            if (totalTime >= STATS_LOG_THRESHOLD) {
+                LOG.info(message);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug(message);
+            }
+            tableStats.clear();
         }
     }
 }
@@ -61,8 +61,8 @@ public class BatchWriterPostgresCopyImpl extends BatchWriterPreparedStatementImp
                             + " back to prepared statements");
                     super.doInserts(name, table, batches);
                 } else {
-                    PostgresByteArrayOutputStream baos = new PostgresByteArrayOutputStream();
-                    PostgresDataOutputStream dos = new PostgresDataOutputStream(baos);
+                    PostgresCopyBuffer buffer = new PostgresCopyBuffer();
+                    PostgresDataOutputStream dos = new PostgresDataOutputStream(buffer);
                     dos.writeBytes("PGCOPY\n");
                     dos.writeByte(255);
                     dos.writeBytes("\r\n");
@@ -98,8 +98,7 @@ public class BatchWriterPostgresCopyImpl extends BatchWriterPreparedStatementImp
                     String sql = sqlBuffer.toString();
                     dos.writeShort(-1);
                     dos.flush();
-                    batches.add(new FlushJobPostgresCopyImpl(copyManager, sql,
-                                baos.getBuffer(), baos.size()));
+                    batches.add(new FlushJobPostgresCopyImpl(copyManager, sql, buffer));
                 }
             } catch (IOException e) {
                 throw new SQLException(e.toString());
@@ -210,8 +209,8 @@ public class BatchWriterPostgresCopyImpl extends BatchWriterPreparedStatementImp
                             + " back to prepared statements");
                     super.doIndirectionInserts(name, table, batches);
                 } else {
-                    PostgresByteArrayOutputStream baos = new PostgresByteArrayOutputStream();
-                    DataOutputStream dos = new DataOutputStream(baos);
+                    PostgresCopyBuffer buffer = new PostgresCopyBuffer();
+                    DataOutputStream dos = new DataOutputStream(buffer);
                     dos.writeBytes("PGCOPY\n");
                     dos.writeByte(255);
                     dos.writeBytes("\r\n");
@@ -229,8 +228,7 @@ public class BatchWriterPostgresCopyImpl extends BatchWriterPreparedStatementImp
                         + table.getRightColName() + ") FROM STDIN BINARY";
                     dos.writeShort(-1);
                     dos.flush();
-                    batches.add(new FlushJobPostgresCopyImpl(copyManager, sql,
-                                baos.getBuffer(), baos.size()));
+                    batches.add(new FlushJobPostgresCopyImpl(copyManager, sql, buffer));
                 }
             } catch (IOException e) {
                 throw new SQLException(e.toString());
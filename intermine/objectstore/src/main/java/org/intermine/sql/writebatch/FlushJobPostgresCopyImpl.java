@@ -13,18 +13,22 @@ package org.intermine.sql.writebatch;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.sql.SQLException;
+import org.postgresql.copy.CopyIn;
 import org.postgresql.copy.CopyManager;
 
 /**
- * An implementation of the FlushJob interface that represents a batch created in a Statement.
+ * An implementation of the FlushJob interface that sends data to the database with the PostgreSQL
+ * COPY command.
  *
  * @author Matthew Wakeling
  */
 public class FlushJobPostgresCopyImpl implements FlushJob
 {
     private CopyManager copyManager;
+    private String tableName;
     private String sql;
     private byte[] data;
+    private PostgresCopyBuffer buffer;
     private int size;
 
     /**
@@ -38,16 +42,37 @@ public class FlushJobPostgresCopyImpl implements FlushJob
     public FlushJobPostgresCopyImpl(CopyManager copyManager, String sql, byte[] data, int size) {
         this.copyManager = copyManager;
         this.sql = sql;
+        // The statement is "COPY tablename (columns...) FROM STDIN BINARY"
+        int nameEnd = sql.indexOf(' ', 5);
+        this.tableName = (nameEnd == -1) ? sql : sql.substring(5, nameEnd);
         this.data = data;
         this.size = size;
     }
 
+    /**
+     * Constructor for this class, taking the COPY data in a PostgresCopyBuffer. The chunks of the
+     * buffer are sent to the database as they are, and returned to the pool afterwards.
+     *
+     * @param copyManager the CopyManager to use
+     * @param sql the SQL String containing the COPY command
+     * @param buffer a PostgresCopyBuffer of COPY data
+     */
+    public FlushJobPostgresCopyImpl(CopyManager copyManager, String sql,
+            PostgresCopyBuffer buffer) {
+        this(copyManager, sql, null, buffer.size());
+        this.buffer = buffer;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void flush() throws SQLException {
         try {
-            copyManager.copyIn(sql, new ByteArrayInputStream(data, 0, size));
+            if (buffer == null) {
+                copyManager.copyIn(sql, new ByteArrayInputStream(data, 0, size));
+            } else {
+                copyFromBuffer();
+            }
             copyManager = null;
             sql = null;
             data = null;
@@ -61,6 +86,41 @@ public class FlushJobPostgresCopyImpl implements FlushJob
                     + sql + ", data size = " + size);
             e2.initCause(e);
             throw e2;
+        } finally {
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+        }
+    }
+
+    private void copyFromBuffer() throws SQLException {
+        CopyIn copyIn = copyManager.copyIn(sql);
+        try {
+            buffer.writeTo(copyIn);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
         }
     }
+
+    /**
+     * Returns the name of the table that this job writes to.
+     *
+     * @return the table name
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the number of bytes of COPY data that this job writes.
+     *
+     * @return the size of the data
+     */
+    public int getSize() {
+        return size;
+    }
 }
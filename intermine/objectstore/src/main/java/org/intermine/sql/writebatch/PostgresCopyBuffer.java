@@ -0,0 +1,153 @@
+package org.intermine.sql.writebatch;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.postgresql.copy.CopyIn;
+
+/**
+ * An OutputStream that collects COPY data in a list of fixed-size chunks, for sending to the
+ * database in a FlushJobPostgresCopyImpl.
+ * <p>
+ * Unlike a ByteArrayOutputStream, the data is never copied when the buffer grows, and no single
+ * array larger than a chunk is allocated, so writing a table with large text columns does not
+ * need twice the memory of the data or create arrays that the garbage collector has trouble
+ * placing. Chunks are returned to a small shared pool by release() once the data has been sent,
+ * so that successive flushes reuse the same memory. This class is not thread-safe.
+ *
+ * @author agent
+ */
+public class PostgresCopyBuffer extends OutputStream
+{
+    /** The size of each chunk in bytes. */
+    public static final int CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 64;
+
+    private static final ConcurrentLinkedQueue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger(0);
+
+    private List<byte[]> chunks = new ArrayList<byte[]>();
+    private byte[] current = null;
+    private int pos = CHUNK_SIZE;
+    private int size = 0;
+
+    private static byte[] allocateChunk() {
+        byte[] chunk = POOL.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        POOL_SIZE.decrementAndGet();
+        return chunk;
+    }
+
+    private void nextChunk() {
+        if (chunks == null) {
+            throw new IllegalStateException("PostgresCopyBuffer has been released");
+        }
+        current = allocateChunk();
+        chunks.add(current);
+        pos = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) {
+        if (pos == CHUNK_SIZE) {
+            nextChunk();
+        }
+        current[pos++] = (byte) b;
+        size++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (pos == CHUNK_SIZE) {
+                nextChunk();
+            }
+            int toCopy = Math.min(len, CHUNK_SIZE - pos);
+            System.arraycopy(b, off, current, pos, toCopy);
+            pos += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            size += toCopy;
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to this buffer.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the contents of this buffer as a single array.
+     *
+     * @return a byte array
+     */
+    public byte[] toByteArray() {
+        byte[] retval = new byte[size];
+        int o = 0;
+        for (byte[] chunk : chunks) {
+            int len = Math.min(CHUNK_SIZE, size - o);
+            System.arraycopy(chunk, 0, retval, o, len);
+            o += len;
+        }
+        return retval;
+    }
+
+    /**
+     * Sends the contents of this buffer to a COPY operation, one chunk at a time.
+     *
+     * @param copyIn the CopyIn to write to
+     * @throws SQLException if the database reports an error
+     */
+    public void writeTo(CopyIn copyIn) throws SQLException {
+        int o = 0;
+        for (byte[] chunk : chunks) {
+            int len = Math.min(CHUNK_SIZE, size - o);
+            copyIn.writeToCopy(chunk, 0, len);
+            o += len;
+        }
+    }
+
+    /**
+     * Returns the chunks of this buffer to the pool. The buffer cannot be used afterwards.
+     */
+    public void release() {
+        if (chunks != null) {
+            for (byte[] chunk : chunks) {
+                if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+                    POOL.offer(chunk);
+                } else {
+                    POOL_SIZE.decrementAndGet();
+                }
+            }
+            chunks = null;
+            current = null;
+            pos = CHUNK_SIZE;
+        }
+    }
+}
@@ -27,6 +27,11 @@ import org.intermine.util.SensibleByteArrayOutputStream;
  */
 public class PostgresDataOutputStream extends DataOutputStream
 {
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+    private int scratchPos = 0;
+
     /**
      * @see DataOutputStream
      *
@@ -70,25 +75,8 @@ public class PostgresDataOutputStream extends DataOutputStream
      */
     protected int writeLargeUTF(Collection<String> strs) throws IOException {
         int utflen = 0;
-        int c;
-
         for (String str : strs) {
-            int strlen = str.length();
-            for (int i = 0; i < strlen; i++) {
-                if (!Character.isBmpCodePoint(Character.codePointAt(str, i))) {
-                    utflen += 4;
-                    i++;
-                    continue;
-                }
-                c = str.charAt(i);
-                if ((c >= 0x0001) && (c <= 0x007F)) {
-                    utflen++;
-                } else if (c > 0x07FF) {
-                    utflen += 3;
-                } else {
-                    utflen += 2;
-                }
-            }
+            utflen += utf8Length(str);
         }
 
         if (out instanceof SensibleByteArrayOutputStream) {
@@ -98,35 +86,78 @@ public class PostgresDataOutputStream extends DataOutputStream
 
         writeInt(utflen);
 
+        // Encode straight from the String into the stream rather than through String.getBytes(),
+        // which would create a copy of every large value. This is standard UTF-8, not the
+        // modified UTF-8 of DataOutput.writeUTF - see
+        // https://github.com/intermine/intermine/issues/1532
         for (String str : strs) {
-            write(str.getBytes());
-            //commented out because it's modified utf-8 incompatible with standard UTF-8
-            //Ref  https://github.com/intermine/intermine/issues/1532
-            /*
             int strlen = str.length();
-            int i = 0;
-            for (i = 0; i < strlen; i++) {
-                c = str.charAt(i);
-                if (!((c >= 0x0001) && (c <= 0x007F))) {
-                    break;
+            for (int i = 0; i < strlen; i++) {
+                if (scratchPos > SCRATCH_SIZE - 4) {
+                    flushScratch();
+                }
+                char c = str.charAt(i);
+                if (c < 0x80) {
+                    scratch[scratchPos++] = (byte) c;
+                } else if (c < 0x800) {
+                    scratch[scratchPos++] = (byte) (0xC0 | (c >> 6));
+                    scratch[scratchPos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    int codePoint = Character.codePointAt(str, i);
+                    if (Character.isSupplementaryCodePoint(codePoint)) {
+                        scratch[scratchPos++] = (byte) (0xF0 | (codePoint >> 18));
+                        scratch[scratchPos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        scratch[scratchPos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        scratch[scratchPos++] = (byte) (0x80 | (codePoint & 0x3F));
+                        i++;
+                    } else {
+                        // An unpaired surrogate cannot be encoded
+                        scratch[scratchPos++] = (byte) '?';
+                    }
+                } else {
+                    scratch[scratchPos++] = (byte) (0xE0 | (c >> 12));
+                    scratch[scratchPos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    scratch[scratchPos++] = (byte) (0x80 | (c & 0x3F));
                 }
-                writeByte((byte) c);
             }
+        }
+        flushScratch();
+        return utflen + 4;
+    }
+
+    private void flushScratch() throws IOException {
+        if (scratchPos > 0) {
+            write(scratch, 0, scratchPos);
+            scratchPos = 0;
+        }
+    }
 
-            for (; i < strlen; i++) {
-                c = str.charAt(i);
-                if ((c >= 0x0001) && (c <= 0x007F)) {
-                    writeByte((byte) c);
-                } else if (c > 0x07FF) {
-                    writeByte((byte) (0xE0 | ((c >> 12) & 0x0F)));
-                    writeByte((byte) (0x80 | ((c >>  6) & 0x3F)));
-                    writeByte((byte) (0x80 | ((c >>  0) & 0x3F)));
+    /**
+     * Returns the number of bytes that a String occupies in UTF-8, as written by writeLargeUTF.
+     *
+     * @param str the String
+     * @return the number of bytes
+     */
+    static int utf8Length(String str) {
+        int utflen = 0;
+        int strlen = str.length();
+        for (int i = 0; i < strlen; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                utflen++;
+            } else if (c < 0x800) {
+                utflen += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isSupplementaryCodePoint(Character.codePointAt(str, i))) {
+                    utflen += 4;
+                    i++;
                 } else {
-                    writeByte((byte) (0xC0 | ((c >>  6) & 0x1F)));
-                    writeByte((byte) (0x80 | ((c >>  0) & 0x3F)));
+                    utflen++;
                 }
-            }*/
+            } else {
+                utflen += 3;
+            }
         }
-        return utflen + 4;
+        return utflen;
     }
 }
@@ -0,0 +1,76 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Task;
+import org.intermine.objectstore.intermine.ClobFileStore;
+import org.intermine.sql.Database;
+import org.intermine.sql.DatabaseFactory;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * Task to write the large clobs of a finished database, such as the residues of chromosomes, to
+ * the memory-mapped files named by the clobFileDir property of the ObjectStore.
+ *
+ * @author agent
+ */
+public class WriteClobFilesTask extends Task
+{
+    protected String database;
+    protected String clobFileDir;
+    protected int minLength = 100000;
+
+    /**
+     * Set the ObjectStore alias
+     * @param osName the ObjectStore alias
+     */
+    public void setOsName(String osName) {
+        this.database = PropertiesUtil.getProperties().getProperty(osName + ".db");
+        this.clobFileDir = PropertiesUtil.getProperties().getProperty(osName + ".clobFileDir");
+    }
+
+    /**
+     * Set the length of the shortest clob to write to a file, by default 100000
+     * @param minLength a number of characters
+     */
+    public void setMinLength(int minLength) {
+        this.minLength = minLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() {
+        if (database == null) {
+            throw new BuildException("database attribute is not set");
+        }
+        if (clobFileDir == null) {
+            log("clobFileDir is not set for the objectstore, not writing clob files");
+            return;
+        }
+
+        Database db = null;
+        try {
+            db = DatabaseFactory.getDatabase(database);
+            ClobFileStore.write(db, new File(clobFileDir), minLength);
+        } catch (Exception e) {
+            throw new BuildException(e);
+        } finally {
+            if (db != null) {
+                db.shutdown();
+            }
+        }
+    }
+}
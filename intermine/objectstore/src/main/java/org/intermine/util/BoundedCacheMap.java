@@ -0,0 +1,405 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a Map implementation designed specifically for people intending to create a cache, as
+ * an alternative to CacheMap for caches that should not be left to the mercy of the garbage
+ * collector. The map holds at most a fixed number of entries, and evicts the least recently used
+ * entry when it is full.
+ * <p>
+ * The map is split into a number of independently locked segments, so that concurrent access
+ * from many threads does not queue on a single monitor. Each segment can optionally keep a small
+ * frequency sketch of the keys it has seen (as in the TinyLFU admission policy), in which case a
+ * new entry is only admitted to a full segment if its key has been requested at least as often
+ * as the entry it would evict. This stops one-off lookups (for example a large export) from
+ * flushing out the working set.
+ * <p>
+ * Null values are permitted, so the map can be used for negative caching. Hits, misses,
+ * evictions and rejected admissions are counted and can be read while the map is in use.
+ * The entrySet(), keySet() and values() methods return unmodifiable snapshots.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author intermine
+ */
+public class BoundedCacheMap<K, V> extends AbstractMap<K, V>
+{
+    private static final Object NULL_VALUE = new Object();
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final String name;
+    private final int maxEntries;
+    private final Segment<K>[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Constructs a new, empty <tt>BoundedCacheMap</tt> with plain LRU eviction.
+     *
+     * @param name the name of the map - printed out in log messages
+     * @param maxEntries the maximum number of entries to hold
+     * @throws IllegalArgumentException if maxEntries is not positive
+     */
+    public BoundedCacheMap(String name, int maxEntries) {
+        this(name, maxEntries, false);
+    }
+
+    /**
+     * Constructs a new, empty <tt>BoundedCacheMap</tt>.
+     *
+     * @param name the name of the map - printed out in log messages
+     * @param maxEntries the maximum number of entries to hold
+     * @param frequencyAdmission if true, only admit a new entry to a full map if its key has been
+     * requested at least as often as the entry it would displace
+     * @throws IllegalArgumentException if maxEntries is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCacheMap(String name, int maxEntries, boolean frequencyAdmission) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive for cache " + name
+                    + ": " + maxEntries);
+        }
+        this.name = name;
+        this.maxEntries = maxEntries;
+        int segmentCount = 1;
+        while ((segmentCount < MAX_SEGMENTS)
+                && (segmentCount * 2 * MIN_SEGMENT_SIZE <= maxEntries)) {
+            segmentCount *= 2;
+        }
+        segments = (Segment<K>[]) new Segment<?>[segmentCount];
+        segmentMask = segmentCount - 1;
+        int segmentSize = (maxEntries + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<K>(segmentSize, frequencyAdmission);
+        }
+    }
+
+    private static int spread(Object key) {
+        int h = (key == null) ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Segment<K> segmentFor(int hash) {
+        return segments[hash & segmentMask];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V unmask(Object value) {
+        return (value == NULL_VALUE) ? null : (V) value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V get(Object key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * Returns the value mapped to the given key, or the given default if there is no mapping. The
+     * check is atomic, so a null return value with a null default may mean either a cached null
+     * or a miss; use a non-null default to tell them apart.
+     *
+     * @param key the key
+     * @param defaultValue the value to return if the key is not present
+     * @return the mapped value, which may be null, or defaultValue
+     */
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        int hash = spread(key);
+        Segment<K> segment = segmentFor(hash);
+        Object value;
+        synchronized (segment) {
+            value = segment.get(key);
+            segment.recordAccess(hash);
+        }
+        if (value == null) {
+            misses.increment();
+            return defaultValue;
+        }
+        hits.increment();
+        return unmask(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Segment<K> segment = segmentFor(spread(key));
+        synchronized (segment) {
+            return segment.containsKey(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V put(K key, V value) {
+        int hash = spread(key);
+        Segment<K> segment = segmentFor(hash);
+        synchronized (segment) {
+            return unmask(putInSegment(segment, hash, key, value));
+        }
+    }
+
+    /**
+     * Maps the given key to the given value if it is not already mapped to a non-null value,
+     * atomically. The value may still not be admitted to a full map, in which case null is
+     * returned as if it had been.
+     *
+     * @param key the key
+     * @param value the value to add
+     * @return the value already mapped to the key, or null if there was none
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        int hash = spread(key);
+        Segment<K> segment = segmentFor(hash);
+        synchronized (segment) {
+            V old = unmask(segment.get(key));
+            if (old != null) {
+                return old;
+            }
+            putInSegment(segment, hash, key, value);
+            return null;
+        }
+    }
+
+    // The caller must hold the lock on the segment
+    private Object putInSegment(Segment<K> segment, int hash, K key, V value) {
+        segment.recordAccess(hash);
+        if (!segment.containsKey(key) && (segment.size() >= segment.capacity)) {
+            Iterator<K> eldest = segment.keySet().iterator();
+            K victim = eldest.next();
+            if (!segment.admit(hash, spread(victim))) {
+                rejections.increment();
+                return null;
+            }
+            eldest.remove();
+            evictions.increment();
+        }
+        return segment.put(key, (value == null) ? NULL_VALUE : value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V remove(Object key) {
+        Segment<K> segment = segmentFor(spread(key));
+        synchronized (segment) {
+            return unmask(segment.remove(key));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (Segment<K> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<K> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the entries in the map. Taking the snapshot does not
+     * count as an access for the purposes of eviction.
+     *
+     * @return a Set of entries
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> entries = new LinkedHashSet<Map.Entry<K, V>>();
+        for (Segment<K> segment : segments) {
+            synchronized (segment) {
+                for (Map.Entry<K, Object> entry : segment.entrySet()) {
+                    V value = unmask(entry.getValue());
+                    entries.add(new SimpleImmutableEntry<K, V>(entry.getKey(), value));
+                }
+            }
+        }
+        return Collections.unmodifiableSet(entries);
+    }
+
+    /**
+     * Returns the maximum number of entries this map will hold.
+     *
+     * @return an int
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return a long
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find an entry.
+     *
+     * @return a long
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries that have been evicted to make room for new ones.
+     *
+     * @return a long
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of entries that were not admitted because their key was requested less
+     * often than the entry they would have evicted.
+     *
+     * @return a long
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Returns a one-line summary of the size and counters of this map, for log messages.
+     *
+     * @return a String
+     */
+    public String getStatistics() {
+        return name + ": size " + size() + "/" + maxEntries + ", hits " + getHits()
+            + ", misses " + getMisses() + ", evictions " + getEvictions() + ", rejections "
+            + getRejections();
+    }
+
+    /**
+     * One independently locked part of the map. The LinkedHashMap is in access order, so the
+     * first key is always the least recently used.
+     *
+     * @param <K> the type of keys
+     */
+    private static final class Segment<K> extends LinkedHashMap<K, Object>
+    {
+        private static final long serialVersionUID = 1L;
+        private static final int COUNTER_MAX = 15;
+        private static final int DEPTH = 4;
+
+        private final int capacity;
+        private final int[] counts;
+        private final int countMask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        Segment(int capacity, boolean frequencyAdmission) {
+            super(16, 0.75F, true);
+            this.capacity = capacity;
+            if (frequencyAdmission) {
+                int width = 16;
+                while (width < capacity * 2) {
+                    width *= 2;
+                }
+                counts = new int[width];
+                countMask = width - 1;
+                sampleSize = capacity * 10;
+            } else {
+                counts = null;
+                countMask = 0;
+                sampleSize = 0;
+            }
+        }
+
+        private int index(int hash, int i) {
+            int h = hash * (0x9e3779b9 + 2 * i);
+            return (h ^ (h >>> 15)) & countMask;
+        }
+
+        void recordAccess(int hash) {
+            if (counts == null) {
+                return;
+            }
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (counts[index] < COUNTER_MAX) {
+                    counts[index]++;
+                    added = true;
+                }
+            }
+            if (added && (++additions >= sampleSize)) {
+                // Age the sketch, so that keys that were popular a long time ago do not keep
+                // out keys that are popular now.
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] >>>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int frequency = COUNTER_MAX;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counts[index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        boolean admit(int candidateHash, int victimHash) {
+            if (counts == null) {
+                return true;
+            }
+            return frequency(candidateHash) >= frequency(victimHash);
+        }
+    }
+}
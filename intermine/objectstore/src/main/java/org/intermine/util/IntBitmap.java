@@ -0,0 +1,685 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * This is a compressed set of ints, organised in the same way as a Roaring bitmap. The ints are
+ * split into chunks by their top 16 bits, and each chunk that contains anything is held either
+ * as a sorted array of the bottom 16 bits (when it holds up to 4096 ints) or as a 65536-bit
+ * bitmap (when it holds more). Sparse sets therefore use about two bytes per int, and dense sets
+ * such as ranges of object ids use about one eighth of a byte per int.
+ * <p>
+ * As well as adding, removing and testing single ints, the class provides fast intersection,
+ * union and difference of whole sets, which work a chunk at a time without visiting the ints
+ * individually where a chunk is a bitmap. Iteration is in ascending order of the ints when
+ * treated as unsigned, which is ascending order for the non-negative ints used as ids.
+ * This class is not thread-safe.
+ *
+ * @author intermine
+ */
+public class IntBitmap
+{
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    // Sorted top 16 bits of each chunk
+    private char[] highs = new char[4];
+    // For each chunk, a char[] of sorted bottom 16 bits or a long[] bitmap
+    private Object[] containers = new Object[4];
+    // For each chunk, the number of ints in it
+    private int[] cardinalities = new int[4];
+    private int chunks = 0;
+    private int size = 0;
+
+    /**
+     * Constructor for this class. Creates an empty set.
+     */
+    public IntBitmap() {
+    }
+
+    /**
+     * Constructor for this class. Creates a set containing the given ints.
+     *
+     * @param ints an array of ints
+     */
+    public IntBitmap(int[] ints) {
+        addAll(ints);
+    }
+
+    private static char high(int i) {
+        return (char) (i >>> 16);
+    }
+
+    private static char low(int i) {
+        return (char) i;
+    }
+
+    private int chunkIndex(char high) {
+        return Arrays.binarySearch(highs, 0, chunks, high);
+    }
+
+    private void insertChunk(int index, char high, Object container, int cardinality) {
+        if (chunks == highs.length) {
+            int newLength = chunks * 2;
+            highs = Arrays.copyOf(highs, newLength);
+            containers = Arrays.copyOf(containers, newLength);
+            cardinalities = Arrays.copyOf(cardinalities, newLength);
+        }
+        System.arraycopy(highs, index, highs, index + 1, chunks - index);
+        System.arraycopy(containers, index, containers, index + 1, chunks - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, chunks - index);
+        highs[index] = high;
+        containers[index] = container;
+        cardinalities[index] = cardinality;
+        chunks++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(highs, index + 1, highs, index, chunks - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, chunks - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, chunks - index - 1);
+        chunks--;
+        containers[chunks] = null;
+    }
+
+    private void appendChunk(char high, Object container, int cardinality) {
+        if (cardinality > 0) {
+            insertChunk(chunks, high, container, cardinality);
+            size += cardinality;
+        }
+    }
+
+    /**
+     * Adds an int to the set.
+     *
+     * @param i any int
+     * @return true if the int was not already present
+     */
+    public boolean add(int i) {
+        char high = high(i);
+        char low = low(i);
+        int index = chunkIndex(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, high, new char[] {low}, 1);
+            size++;
+            return true;
+        }
+        Object container = containers[index];
+        int cardinality = cardinalities[index];
+        if (container instanceof long[]) {
+            long[] bitmap = (long[]) container;
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            bitmap[low >>> 6] |= bit;
+        } else {
+            char[] array = (char[]) container;
+            int pos = Arrays.binarySearch(array, 0, cardinality, low);
+            if (pos >= 0) {
+                return false;
+            }
+            pos = -pos - 1;
+            if (cardinality == ARRAY_MAX) {
+                long[] bitmap = toBitmap(array, cardinality);
+                bitmap[low >>> 6] |= 1L << low;
+                containers[index] = bitmap;
+            } else {
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+                    containers[index] = array;
+                }
+                System.arraycopy(array, pos, array, pos + 1, cardinality - pos);
+                array[pos] = low;
+            }
+        }
+        cardinalities[index]++;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds all the given ints to the set.
+     *
+     * @param ints an array of ints
+     */
+    public void addAll(int[] ints) {
+        for (int i : ints) {
+            add(i);
+        }
+    }
+
+    /**
+     * Adds all the ints returned by an IntIterator to the set.
+     *
+     * @param iter an IntIterator
+     */
+    public void addAll(IntIterator iter) {
+        while (iter.hasNext()) {
+            add(iter.next());
+        }
+    }
+
+    /**
+     * Adds all the Integers in a Collection to the set.
+     *
+     * @param ints a Collection of Integers, none of which may be null
+     */
+    public void addAll(Collection<Integer> ints) {
+        for (Integer i : ints) {
+            add(i.intValue());
+        }
+    }
+
+    /**
+     * Removes an int from the set.
+     *
+     * @param i any int
+     * @return true if the int was present
+     */
+    public boolean remove(int i) {
+        char low = low(i);
+        int index = chunkIndex(high(i));
+        if (index < 0) {
+            return false;
+        }
+        Object container = containers[index];
+        int cardinality = cardinalities[index];
+        if (container instanceof long[]) {
+            long[] bitmap = (long[]) container;
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            bitmap[low >>> 6] &= ~bit;
+            if (cardinality - 1 <= ARRAY_MAX) {
+                containers[index] = toArray(bitmap, cardinality - 1);
+            }
+        } else {
+            char[] array = (char[]) container;
+            int pos = Arrays.binarySearch(array, 0, cardinality, low);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(array, pos + 1, array, pos, cardinality - pos - 1);
+        }
+        size--;
+        if (cardinality == 1) {
+            removeChunk(index);
+        } else {
+            cardinalities[index]--;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the given int is present in this set.
+     *
+     * @param i any int
+     * @return true or false
+     */
+    public boolean contains(int i) {
+        int index = chunkIndex(high(i));
+        if (index < 0) {
+            return false;
+        }
+        return containerContains(containers[index], cardinalities[index], low(i));
+    }
+
+    private static boolean containerContains(Object container, int cardinality, char low) {
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, cardinality, low) >= 0;
+    }
+
+    /**
+     * Returns the number of ints present.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the set is empty.
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all ints from the set.
+     */
+    public void clear() {
+        Arrays.fill(containers, null);
+        chunks = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the contents of the set as an array, in unsigned ascending order.
+     *
+     * @return an array of ints
+     */
+    public int[] toArray() {
+        int[] retval = new int[size];
+        int o = 0;
+        IntIterator iter = iterator();
+        while (iter.hasNext()) {
+            retval[o++] = iter.next();
+        }
+        return retval;
+    }
+
+    /**
+     * Returns an iterator over the ints in the set, in unsigned ascending order. The set must not
+     * be changed while the iterator is in use.
+     *
+     * @return an IntIterator
+     */
+    public IntIterator iterator() {
+        return new IntIterator() {
+            private int chunk = 0;
+            // Position in an array container, or bit position in a bitmap container
+            private int pos = 0;
+            private long word = 0;
+            private int next;
+            private boolean hasNext = advance();
+
+            private boolean advance() {
+                while (chunk < chunks) {
+                    int base = highs[chunk] << 16;
+                    Object container = containers[chunk];
+                    if (container instanceof long[]) {
+                        long[] bitmap = (long[]) container;
+                        while ((word == 0) && (pos < BITMAP_WORDS)) {
+                            word = bitmap[pos++];
+                        }
+                        if (word != 0) {
+                            next = base + ((pos - 1) << 6) + Long.numberOfTrailingZeros(word);
+                            word &= word - 1;
+                            return true;
+                        }
+                    } else if (pos < cardinalities[chunk]) {
+                        next = base + ((char[]) container)[pos++];
+                        return true;
+                    }
+                    chunk++;
+                    pos = 0;
+                    word = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public int next() {
+                if (!hasNext) {
+                    throw new NoSuchElementException();
+                }
+                int retval = next;
+                hasNext = advance();
+                return retval;
+            }
+        };
+    }
+
+    /**
+     * Returns a new set containing the ints present in both of the given sets.
+     *
+     * @param a an IntBitmap
+     * @param b an IntBitmap
+     * @return a new IntBitmap
+     */
+    public static IntBitmap and(IntBitmap a, IntBitmap b) {
+        IntBitmap retval = new IntBitmap();
+        int ai = 0;
+        int bi = 0;
+        while ((ai < a.chunks) && (bi < b.chunks)) {
+            if (a.highs[ai] < b.highs[bi]) {
+                ai++;
+            } else if (a.highs[ai] > b.highs[bi]) {
+                bi++;
+            } else {
+                Object ac = a.containers[ai];
+                Object bc = b.containers[bi];
+                if ((ac instanceof long[]) && (bc instanceof long[])) {
+                    long[] words = new long[BITMAP_WORDS];
+                    long[] aw = (long[]) ac;
+                    long[] bw = (long[]) bc;
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] = aw[w] & bw[w];
+                    }
+                    retval.appendBitmap(a.highs[ai], words);
+                } else if (ac instanceof long[]) {
+                    retval.appendFiltered(b.highs[bi], (char[]) bc, b.cardinalities[bi], ac,
+                            a.cardinalities[ai], true);
+                } else {
+                    retval.appendFiltered(a.highs[ai], (char[]) ac, a.cardinalities[ai], bc,
+                            b.cardinalities[bi], true);
+                }
+                ai++;
+                bi++;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns a new set containing the ints present in either of the given sets.
+     *
+     * @param a an IntBitmap
+     * @param b an IntBitmap
+     * @return a new IntBitmap
+     */
+    public static IntBitmap or(IntBitmap a, IntBitmap b) {
+        IntBitmap retval = new IntBitmap();
+        int ai = 0;
+        int bi = 0;
+        while ((ai < a.chunks) || (bi < b.chunks)) {
+            if ((bi >= b.chunks) || ((ai < a.chunks) && (a.highs[ai] < b.highs[bi]))) {
+                retval.appendChunk(a.highs[ai], copy(a.containers[ai]), a.cardinalities[ai]);
+                ai++;
+            } else if ((ai >= a.chunks) || (a.highs[ai] > b.highs[bi])) {
+                retval.appendChunk(b.highs[bi], copy(b.containers[bi]), b.cardinalities[bi]);
+                bi++;
+            } else {
+                Object ac = a.containers[ai];
+                Object bc = b.containers[bi];
+                if ((ac instanceof char[]) && (bc instanceof char[])
+                        && (a.cardinalities[ai] + b.cardinalities[bi] <= ARRAY_MAX)) {
+                    retval.appendMerged(a.highs[ai], (char[]) ac, a.cardinalities[ai],
+                            (char[]) bc, b.cardinalities[bi]);
+                } else {
+                    long[] words = toBitmap(ac, a.cardinalities[ai]);
+                    orInto(words, bc, b.cardinalities[bi]);
+                    retval.appendBitmap(a.highs[ai], words);
+                }
+                ai++;
+                bi++;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns a new set containing the ints present in the first set but not the second.
+     *
+     * @param a an IntBitmap
+     * @param b an IntBitmap
+     * @return a new IntBitmap
+     */
+    public static IntBitmap andNot(IntBitmap a, IntBitmap b) {
+        IntBitmap retval = new IntBitmap();
+        int bi = 0;
+        for (int ai = 0; ai < a.chunks; ai++) {
+            while ((bi < b.chunks) && (b.highs[bi] < a.highs[ai])) {
+                bi++;
+            }
+            Object ac = a.containers[ai];
+            if ((bi >= b.chunks) || (b.highs[bi] != a.highs[ai])) {
+                retval.appendChunk(a.highs[ai], copy(ac), a.cardinalities[ai]);
+            } else if (ac instanceof char[]) {
+                retval.appendFiltered(a.highs[ai], (char[]) ac, a.cardinalities[ai],
+                        b.containers[bi], b.cardinalities[bi], false);
+            } else {
+                long[] words = ((long[]) ac).clone();
+                Object bc = b.containers[bi];
+                if (bc instanceof long[]) {
+                    long[] bw = (long[]) bc;
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] &= ~bw[w];
+                    }
+                } else {
+                    char[] array = (char[]) bc;
+                    for (int o = 0; o < b.cardinalities[bi]; o++) {
+                        words[array[o] >>> 6] &= ~(1L << array[o]);
+                    }
+                }
+                retval.appendBitmap(a.highs[ai], words);
+            }
+        }
+        return retval;
+    }
+
+    private static Object copy(Object container) {
+        if (container instanceof long[]) {
+            return ((long[]) container).clone();
+        }
+        return ((char[]) container).clone();
+    }
+
+    private static long[] toBitmap(Object container, int cardinality) {
+        if (container instanceof long[]) {
+            return ((long[]) container).clone();
+        }
+        long[] words = new long[BITMAP_WORDS];
+        orInto(words, container, cardinality);
+        return words;
+    }
+
+    private static void orInto(long[] words, Object container, int cardinality) {
+        if (container instanceof long[]) {
+            long[] other = (long[]) container;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] |= other[w];
+            }
+        } else {
+            char[] array = (char[]) container;
+            for (int o = 0; o < cardinality; o++) {
+                words[array[o] >>> 6] |= 1L << array[o];
+            }
+        }
+    }
+
+    private static char[] toArray(long[] words, int cardinality) {
+        char[] array = new char[cardinality];
+        int o = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                array[o++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Appends a bitmap chunk, converting it to an array chunk if it is sparse enough.
+     */
+    private void appendBitmap(char high, long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality <= ARRAY_MAX) {
+            appendChunk(high, toArray(words, cardinality), cardinality);
+        } else {
+            appendChunk(high, words, cardinality);
+        }
+    }
+
+    /**
+     * Appends an array chunk holding those ints of an array that are present (or absent, if keep
+     * is false) in another container.
+     */
+    private void appendFiltered(char high, char[] array, int cardinality, Object other,
+            int otherCardinality, boolean keep) {
+        char[] result = new char[cardinality];
+        int o = 0;
+        for (int i = 0; i < cardinality; i++) {
+            if (containerContains(other, otherCardinality, array[i]) == keep) {
+                result[o++] = array[i];
+            }
+        }
+        appendChunk(high, (o == cardinality) ? result : Arrays.copyOf(result, o), o);
+    }
+
+    /**
+     * Appends an array chunk holding the union of two sorted arrays.
+     */
+    private void appendMerged(char high, char[] a, int aCardinality, char[] b,
+            int bCardinality) {
+        char[] result = new char[aCardinality + bCardinality];
+        int ai = 0;
+        int bi = 0;
+        int o = 0;
+        while ((ai < aCardinality) && (bi < bCardinality)) {
+            if (a[ai] < b[bi]) {
+                result[o++] = a[ai++];
+            } else if (a[ai] > b[bi]) {
+                result[o++] = b[bi++];
+            } else {
+                result[o++] = a[ai++];
+                bi++;
+            }
+        }
+        while (ai < aCardinality) {
+            result[o++] = a[ai++];
+        }
+        while (bi < bCardinality) {
+            result[o++] = b[bi++];
+        }
+        appendChunk(high, (o == result.length) ? result : Arrays.copyOf(result, o), o);
+    }
+
+    /**
+     * Writes this set to a DataOutput, in a form that can be read back by readFrom().
+     *
+     * @param out the DataOutput to write to
+     * @throws IOException if the DataOutput does
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(chunks);
+        for (int c = 0; c < chunks; c++) {
+            out.writeChar(highs[c]);
+            out.writeInt(cardinalities[c]);
+            if (containers[c] instanceof long[]) {
+                out.writeBoolean(true);
+                for (long word : (long[]) containers[c]) {
+                    out.writeLong(word);
+                }
+            } else {
+                out.writeBoolean(false);
+                char[] array = (char[]) containers[c];
+                for (int o = 0; o < cardinalities[c]; o++) {
+                    out.writeChar(array[o]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a set written by writeTo().
+     *
+     * @param in the DataInput to read from
+     * @return a new IntBitmap
+     * @throws IOException if the DataInput does, or the data is not a valid set
+     */
+    public static IntBitmap readFrom(DataInput in) throws IOException {
+        IntBitmap retval = new IntBitmap();
+        int chunkCount = in.readInt();
+        int previousHigh = -1;
+        for (int c = 0; c < chunkCount; c++) {
+            char high = in.readChar();
+            int cardinality = in.readInt();
+            if ((high <= previousHigh) || (cardinality < 1) || (cardinality > 65536)) {
+                throw new IOException("Invalid IntBitmap chunk " + c);
+            }
+            previousHigh = high;
+            if (in.readBoolean()) {
+                long[] bitmap = new long[BITMAP_WORDS];
+                for (int o = 0; o < BITMAP_WORDS; o++) {
+                    bitmap[o] = in.readLong();
+                }
+                retval.appendChunk(high, bitmap, cardinality);
+            } else {
+                char[] array = new char[cardinality];
+                for (int o = 0; o < cardinality; o++) {
+                    array[o] = in.readChar();
+                }
+                retval.appendChunk(high, array, cardinality);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IntBitmap) {
+            IntBitmap other = (IntBitmap) o;
+            if ((other.size != size) || (other.chunks != chunks)) {
+                return false;
+            }
+            IntIterator iter = iterator();
+            IntIterator otherIter = other.iterator();
+            while (iter.hasNext()) {
+                if (iter.next() != otherIter.next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        IntIterator iter = iterator();
+        while (iter.hasNext()) {
+            hashCode = 31 * hashCode + iter.next();
+        }
+        return hashCode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder retval = new StringBuilder("[");
+        IntIterator iter = iterator();
+        boolean needComma = false;
+        while (iter.hasNext()) {
+            if (needComma) {
+                retval.append(", ");
+            }
+            needComma = true;
+            retval.append(iter.next());
+        }
+        retval.append("]");
+        return retval.toString();
+    }
+}
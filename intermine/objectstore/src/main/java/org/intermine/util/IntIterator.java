@@ -0,0 +1,35 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * An iterator over primitive ints, used by the int collections in this package so that
+ * iterating does not create an Integer for every element.
+ *
+ * @author intermine
+ */
+public interface IntIterator
+{
+    /**
+     * Returns true if the iteration has more elements.
+     *
+     * @return true or false
+     */
+    boolean hasNext();
+
+    /**
+     * Returns the next element in the iteration.
+     *
+     * @return an int
+     * @throws java.util.NoSuchElementException if there are no more elements
+     */
+    int next();
+}
@@ -0,0 +1,291 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * This is a growable list of ints, backed by a single int array. It uses four bytes per element
+ * rather than the twenty or so of an ArrayList of Integers. This class is not thread-safe.
+ *
+ * @author intermine
+ */
+public class IntList
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] elements;
+    private int size = 0;
+
+    /**
+     * Constructor for this class. Creates an empty list.
+     */
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for this class. Creates an empty list with room for the given number of
+     * elements before it needs to grow.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public IntList(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity is negative: " + initialCapacity);
+        }
+        elements = new int[initialCapacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            int newCapacity = Math.max(capacity, elements.length + (elements.length >> 1) + 1);
+            elements = Arrays.copyOf(elements, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Appends an int to the end of the list.
+     *
+     * @param i any int
+     */
+    public void add(int i) {
+        ensureCapacity(size + 1);
+        elements[size++] = i;
+    }
+
+    /**
+     * Appends all the given ints to the end of the list.
+     *
+     * @param ints an array of ints
+     */
+    public void addAll(int[] ints) {
+        ensureCapacity(size + ints.length);
+        System.arraycopy(ints, 0, elements, size, ints.length);
+        size += ints.length;
+    }
+
+    /**
+     * Appends all the ints in another IntList to the end of this list.
+     *
+     * @param list an IntList
+     */
+    public void addAll(IntList list) {
+        ensureCapacity(size + list.size);
+        System.arraycopy(list.elements, 0, elements, size, list.size);
+        size += list.size;
+    }
+
+    /**
+     * Appends all the ints returned by an IntIterator to the end of the list.
+     *
+     * @param iter an IntIterator
+     */
+    public void addAll(IntIterator iter) {
+        while (iter.hasNext()) {
+            add(iter.next());
+        }
+    }
+
+    /**
+     * Returns the int at the given position in the list.
+     *
+     * @param index the position
+     * @return an int
+     */
+    public int get(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    /**
+     * Replaces the int at the given position in the list.
+     *
+     * @param index the position
+     * @param i the new int
+     * @return the int previously at that position
+     */
+    public int set(int index, int i) {
+        checkIndex(index);
+        int old = elements[index];
+        elements[index] = i;
+        return old;
+    }
+
+    /**
+     * Removes the int at the given position in the list, moving later elements down.
+     *
+     * @param index the position
+     * @return the int that was removed
+     */
+    public int removeAt(int index) {
+        checkIndex(index);
+        int old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return old;
+    }
+
+    /**
+     * Returns the position of the first occurrence of the given int, or -1 if it is not present.
+     *
+     * @param i any int
+     * @return an index, or -1
+     */
+    public int indexOf(int i) {
+        for (int o = 0; o < size; o++) {
+            if (elements[o] == i) {
+                return o;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the given int is present in the list. This is a linear search.
+     *
+     * @param i any int
+     * @return true or false
+     */
+    public boolean contains(int i) {
+        return indexOf(i) != -1;
+    }
+
+    /**
+     * Sorts the list into ascending order.
+     */
+    public void sort() {
+        Arrays.sort(elements, 0, size);
+    }
+
+    /**
+     * Returns the number of ints in the list.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the list is empty.
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all ints from the list. The backing array is kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Shrinks the backing array to the size of the list.
+     */
+    public void trimToSize() {
+        if (elements.length > size) {
+            elements = Arrays.copyOf(elements, size);
+        }
+    }
+
+    /**
+     * Returns a copy of the contents of the list as an array.
+     *
+     * @return an array of ints
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    /**
+     * Returns an iterator over the ints in the list, in order. The list must not be changed while
+     * the iterator is in use.
+     *
+     * @return an IntIterator
+     */
+    public IntIterator iterator() {
+        return new IntIterator() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public int next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return elements[next++];
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IntList) {
+            IntList other = (IntList) o;
+            if (other.size != size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (elements[i] != other.elements[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (int i = 0; i < size; i++) {
+            hashCode = 31 * hashCode + elements[i];
+        }
+        return hashCode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder retval = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                retval.append(", ");
+            }
+            retval.append(elements[i]);
+        }
+        retval.append("]");
+        return retval.toString();
+    }
+}
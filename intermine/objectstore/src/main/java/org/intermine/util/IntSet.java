@@ -0,0 +1,375 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * This is a hash set of ints, using open addressing into a single int array so that no object
+ * is created per element. Unlike IntPresentSet it makes no assumption about how closely spaced
+ * the ints are, so it is suitable for sparse sets such as the ids of the objects fetched in one
+ * batch. This class is not thread-safe.
+ *
+ * @author intermine
+ */
+public class IntSet
+{
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.6F;
+
+    private int[] table;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+    // FREE marks an empty slot, so the int 0 is recorded separately
+    private boolean containsFree = false;
+
+    /**
+     * Constructor for this class. Creates an empty set.
+     */
+    public IntSet() {
+        this(16);
+    }
+
+    /**
+     * Constructor for this class. Creates an empty set with room for the given number of ints
+     * before it needs to grow.
+     *
+     * @param expectedSize the number of ints expected
+     */
+    public IntSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Returns the size of hash table needed to hold the given number of ints.
+     *
+     * @param expectedSize the number of ints expected
+     * @return a power of two
+     */
+    static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of an int, so that closely-spaced ints do not cluster in the table.
+     *
+     * @param i any int
+     * @return a hash code
+     */
+    static int hash(int i) {
+        int h = i * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        allocate(capacity);
+        for (int key : old) {
+            if (key != FREE) {
+                int slot = hash(key) & mask;
+                while (table[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = key;
+            }
+        }
+    }
+
+    /**
+     * Adds an int to the set.
+     *
+     * @param i any int
+     * @return true if the int was not already present
+     */
+    public boolean add(int i) {
+        if (i == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = hash(i) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == i) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = i;
+        size++;
+        if (size > threshold) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all the given ints to the set.
+     *
+     * @param ints an array of ints
+     */
+    public void addAll(int[] ints) {
+        for (int i : ints) {
+            add(i);
+        }
+    }
+
+    /**
+     * Adds all the ints returned by an IntIterator to the set.
+     *
+     * @param iter an IntIterator
+     */
+    public void addAll(IntIterator iter) {
+        while (iter.hasNext()) {
+            add(iter.next());
+        }
+    }
+
+    /**
+     * Adds all the Integers in a Collection to the set.
+     *
+     * @param ints a Collection of Integers, none of which may be null
+     */
+    public void addAll(Collection<Integer> ints) {
+        for (Integer i : ints) {
+            add(i.intValue());
+        }
+    }
+
+    /**
+     * Returns whether the given int is present in this set.
+     *
+     * @param i any int
+     * @return true or false
+     */
+    public boolean contains(int i) {
+        if (i == FREE) {
+            return containsFree;
+        }
+        int slot = hash(i) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == i) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes an int from the set.
+     *
+     * @param i any int
+     * @return true if the int was present
+     */
+    public boolean remove(int i) {
+        if (i == FREE) {
+            if (containsFree) {
+                containsFree = false;
+                size--;
+                return true;
+            }
+            return false;
+        }
+        int slot = hash(i) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == i) {
+                size--;
+                // Shift later entries of the probe sequence back, so that there are no gaps
+                // between an entry and its home slot.
+                int gap = slot;
+                int next = (gap + 1) & mask;
+                while (table[next] != FREE) {
+                    int home = hash(table[next]) & mask;
+                    if (((next - home) & mask) >= ((next - gap) & mask)) {
+                        table[gap] = table[next];
+                        gap = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                table[gap] = FREE;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes every int from this set that is not present in the given set.
+     *
+     * @param other an IntSet
+     */
+    public void retainAll(IntSet other) {
+        IntIterator iter = iterator();
+        IntList toRemove = new IntList();
+        while (iter.hasNext()) {
+            int i = iter.next();
+            if (!other.contains(i)) {
+                toRemove.add(i);
+            }
+        }
+        for (int o = 0; o < toRemove.size(); o++) {
+            remove(toRemove.get(o));
+        }
+    }
+
+    /**
+     * Returns the number of ints present.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the set is empty.
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all ints from the set.
+     */
+    public void clear() {
+        Arrays.fill(table, FREE);
+        containsFree = false;
+        size = 0;
+    }
+
+    /**
+     * Returns the contents of the set as an array, in no particular order.
+     *
+     * @return an array of ints
+     */
+    public int[] toArray() {
+        int[] retval = new int[size];
+        int o = 0;
+        if (containsFree) {
+            retval[o++] = FREE;
+        }
+        for (int key : table) {
+            if (key != FREE) {
+                retval[o++] = key;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns an iterator over the ints in the set, in no particular order. The set must not be
+     * changed while the iterator is in use.
+     *
+     * @return an IntIterator
+     */
+    public IntIterator iterator() {
+        return new IntIterator() {
+            private boolean doneFree = !containsFree;
+            private int slot = nextSlot(0);
+
+            private int nextSlot(int from) {
+                while ((from < table.length) && (table[from] == FREE)) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return (!doneFree) || (slot < table.length);
+            }
+
+            @Override
+            public int next() {
+                if (!doneFree) {
+                    doneFree = true;
+                    return FREE;
+                }
+                if (slot >= table.length) {
+                    throw new NoSuchElementException();
+                }
+                int retval = table[slot];
+                slot = nextSlot(slot + 1);
+                return retval;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IntSet) {
+            IntSet other = (IntSet) o;
+            if (other.size != size) {
+                return false;
+            }
+            IntIterator iter = iterator();
+            while (iter.hasNext()) {
+                if (!other.contains(iter.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        for (int key : table) {
+            hashCode += key;
+        }
+        return hashCode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        int[] sorted = toArray();
+        Arrays.sort(sorted);
+        StringBuilder retval = new StringBuilder("[");
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0) {
+                retval.append(", ");
+            }
+            retval.append(sorted[i]);
+        }
+        retval.append("]");
+        return retval.toString();
+    }
+}
@@ -0,0 +1,365 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This is a hash map from int to Object, using open addressing into an int array and an Object
+ * array so that neither the keys nor the entries need an object each. A HashMap from Integer
+ * uses around 50 bytes per mapping on top of the value, this class uses around 12. Null values
+ * are permitted. This class is not thread-safe.
+ *
+ * @param <V> the type of mapped values
+ * @author intermine
+ */
+public class IntToObjectMap<V>
+{
+    private static final Object NULL_VALUE = new Object();
+    private static final float LOAD_FACTOR = 0.6F;
+
+    private int[] keys;
+    // A null in values marks an empty slot, null values are stored as NULL_VALUE
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private int size = 0;
+
+    /**
+     * Constructor for this class. Creates an empty map.
+     */
+    public IntToObjectMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor for this class. Creates an empty map with room for the given number of mappings
+     * before it needs to grow.
+     *
+     * @param expectedSize the number of mappings expected
+     */
+    public IntToObjectMap(int expectedSize) {
+        allocate(IntSet.tableSizeFor(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = IntSet.hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slotFor(int key) {
+        int slot = IntSet.hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V unmask(Object value) {
+        return (value == NULL_VALUE) ? null : (V) value;
+    }
+
+    /**
+     * Creates a mapping in the map, replacing any existing mapping for the key.
+     *
+     * @param key any int
+     * @param value the value, which may be null
+     * @return the previous value, or null if there was none
+     */
+    public V put(int key, V value) {
+        Object masked = (value == null) ? NULL_VALUE : value;
+        int slot = IntSet.hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                Object old = values[slot];
+                values[slot] = masked;
+                return unmask(old);
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = masked;
+        size++;
+        if (size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Copies all the mappings from another map into this one.
+     *
+     * @param map an IntToObjectMap
+     */
+    public void putAll(IntToObjectMap<? extends V> map) {
+        for (int i = 0; i < map.keys.length; i++) {
+            if (map.values[i] != null) {
+                put(map.keys[i], IntToObjectMap.<V>unmask(map.values[i]));
+            }
+        }
+    }
+
+    /**
+     * Copies all the mappings from a Map into this one.
+     *
+     * @param map a Map from Integer, with no null keys
+     */
+    public void putAll(Map<Integer, ? extends V> map) {
+        for (Map.Entry<Integer, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey().intValue(), entry.getValue());
+        }
+    }
+
+    /**
+     * Retrieves a mapping from the map.
+     *
+     * @param key any int
+     * @return the mapped value, or null if there is no mapping or the mapping is to null
+     */
+    public V get(int key) {
+        int slot = slotFor(key);
+        return (slot == -1) ? null : IntToObjectMap.<V>unmask(values[slot]);
+    }
+
+    /**
+     * Retrieves a mapping from the map, or the given default if there is no mapping.
+     *
+     * @param key any int
+     * @param defaultValue the value to return if the key is not present
+     * @return the mapped value, which may be null, or defaultValue
+     */
+    public V getOrDefault(int key, V defaultValue) {
+        int slot = slotFor(key);
+        return (slot == -1) ? defaultValue : IntToObjectMap.<V>unmask(values[slot]);
+    }
+
+    /**
+     * Returns whether there is a mapping for the given key.
+     *
+     * @param key any int
+     * @return true or false
+     */
+    public boolean containsKey(int key) {
+        return slotFor(key) != -1;
+    }
+
+    /**
+     * Removes a mapping from the map.
+     *
+     * @param key any int
+     * @return the value that was mapped, or null if there was none
+     */
+    public V remove(int key) {
+        int slot = slotFor(key);
+        if (slot == -1) {
+            return null;
+        }
+        Object old = values[slot];
+        size--;
+        // Shift later entries of the probe sequence back, so that there are no gaps between an
+        // entry and its home slot.
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = IntSet.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        return unmask(old);
+    }
+
+    /**
+     * Returns the number of mappings present.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the map is empty.
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all mappings from the map.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the keys of the map as an array, in no particular order.
+     *
+     * @return an array of ints
+     */
+    public int[] keys() {
+        int[] retval = new int[size];
+        int o = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                retval[o++] = keys[i];
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the values of the map as a List, in the same order as keys().
+     *
+     * @return a new List
+     */
+    public List<V> values() {
+        List<V> retval = new ArrayList<V>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                retval.add(IntToObjectMap.<V>unmask(values[i]));
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns an iterator over the mappings in the map, in no particular order. The same Entry
+     * object is returned on each call to next(), so it must not be kept. The map must not be
+     * changed while the iterator is in use.
+     *
+     * @return an EntryIterator
+     */
+    public EntryIterator<V> entryIterator() {
+        return new EntryIterator<V>(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        int[] sortedKeys = keys();
+        Arrays.sort(sortedKeys);
+        StringBuilder retval = new StringBuilder("{");
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (i > 0) {
+                retval.append(", ");
+            }
+            retval.append(sortedKeys[i]).append(" -> ").append(get(sortedKeys[i]));
+        }
+        retval.append("}");
+        return retval.toString();
+    }
+
+    /**
+     * An iterator over the mappings in an IntToObjectMap. The iterator itself holds the current
+     * mapping, to avoid creating an object per entry.
+     *
+     * @param <V> the type of mapped values
+     */
+    public static final class EntryIterator<V>
+    {
+        private final IntToObjectMap<V> map;
+        private int nextSlot;
+        private int key;
+        private V value;
+
+        /**
+         * Constructor for this class.
+         *
+         * @param map the map to iterate over
+         */
+        EntryIterator(IntToObjectMap<V> map) {
+            this.map = map;
+            nextSlot = findFrom(0);
+        }
+
+        private int findFrom(int from) {
+            while ((from < map.values.length) && (map.values[from] == null)) {
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * Returns true if there are more mappings.
+         *
+         * @return true or false
+         */
+        public boolean hasNext() {
+            return nextSlot < map.values.length;
+        }
+
+        /**
+         * Moves to the next mapping.
+         */
+        public void next() {
+            if (nextSlot >= map.values.length) {
+                throw new NoSuchElementException();
+            }
+            key = map.keys[nextSlot];
+            value = IntToObjectMap.<V>unmask(map.values[nextSlot]);
+            nextSlot = findFrom(nextSlot + 1);
+        }
+
+        /**
+         * Returns the key of the current mapping.
+         *
+         * @return an int
+         */
+        public int getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the value of the current mapping.
+         *
+         * @return the value, which may be null
+         */
+        public V getValue() {
+            return value;
+        }
+    }
+}
@@ -115,6 +115,33 @@ public abstract class ReferenceMap<K, V> implements Map<K, V>
         return null;
     }
 
+    /**
+     * Returns the value mapped to the given key, or the given default if there is no mapping or
+     * the value has been garbage-collected. Unlike calling get() and containsKey() in turn, this
+     * looks at the Reference only once, so a cached null cannot be confused with a collected
+     * value.
+     *
+     * @param key the key
+     * @param defaultValue the value to return if the key is not present
+     * @return the mapped value, which may be null, or defaultValue
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        expungeStaleEntries();
+        Reference<Object> ref = subMap.get(key);
+        if (ref != null) {
+            Object value = ref.get();
+            if (value instanceof NullValue) {
+                return null;
+            }
+            if (value != null) {
+                return (V) value;
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * {@inheritDoc}
      */
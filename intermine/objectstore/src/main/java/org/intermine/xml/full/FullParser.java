@@ -58,11 +58,27 @@ public final class FullParser
         }
 
         FullHandler handler = new FullHandler();
-        SAXParser.parse(new InputSource(is), handler);
+        parse(is, handler);
 
         return handler.getItems();
     }
 
+    /**
+     * Parse a InterMine Full XML file, passing each Item to the given handler as it is read.
+     * This allows a file that is too large to fit in memory to be processed, by overriding
+     * FullHandler.finishedItem() to deal with each Item rather than collecting them.
+     *
+     * @param is the InputStream to parse
+     * @param handler the FullHandler to receive the Items
+     * @throws Exception if there is an error while parsing
+     */
+    public static void parse(InputStream is, FullHandler handler) throws Exception {
+        if (is == null) {
+            throw new NullPointerException("InputStream cannot be null");
+        }
+        SAXParser.parse(new InputSource(is), handler);
+    }
+
     /**
      * Create business objects from a collection of Items.  If there are any problems, throw an
      * exception
@@ -91,9 +107,28 @@ public final class FullParser
      */
     public static List<FastPathObject> realiseObjects(Collection<Item> items, Model model,
             boolean useIdentifier, boolean abortOnError) throws ClassNotFoundException {
-        // map from id to outline object
-        Map<String, FastPathObject> objMap = new LinkedHashMap<String, FastPathObject>();
+        return realiseObjects(items, model, useIdentifier, abortOnError,
+                new LinkedHashMap<String, FastPathObject>());
+    }
 
+    /**
+     * Create business objects from a collection of Items, some of which may refer to objects
+     * that have already been created. This allows the Items in a file to be realised a part at a
+     * time.
+     *
+     * @param items a collection of items to realise
+     * @param model the parent model
+     * @param useIdentifier if true, set the id of each new object using the identifier of the Item
+     * @param abortOnError if true, throw an exception if there is a problem.  If false, log the
+     * problem and continue if possible
+     * @param objMap a map from item identifier to object, holding any objects outside the given
+     * items that they refer to. The objects created for items with identifiers are added to it
+     * @return a collection of realised business objects
+     * @throws ClassNotFoundException if one of the items has a class that isn't in the model
+     */
+    public static List<FastPathObject> realiseObjects(Collection<Item> items, Model model,
+            boolean useIdentifier, boolean abortOnError, Map<String, FastPathObject> objMap)
+        throws ClassNotFoundException {
         List<FastPathObject> result = new ArrayList<FastPathObject>();
         for (Item item : items) {
             if (item.getIdentifier() != null) {
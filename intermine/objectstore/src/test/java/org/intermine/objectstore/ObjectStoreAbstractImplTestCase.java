@@ -91,6 +91,18 @@ public class ObjectStoreAbstractImplTestCase extends ObjectStoreTestCase {
         }
     }
 
+    /**
+     * Sets the maximum estimated time of queries in an ObjectStore, for subclasses in other
+     * packages.
+     *
+     * @return the previous maximum time
+     */
+    protected static long setMaxTime(ObjectStoreAbstractImpl osai, long maxTime) {
+        long before = osai.maxTime;
+        osai.maxTime = maxTime;
+        return before;
+    }
+
     public void testTooMuchTime(ObjectStoreAbstractImpl osai) throws Exception {
         // try to run a query that takes longer than max amount of time
         long before = osai.maxTime;
@@ -6,6 +6,7 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.query.Clob;
+import org.intermine.objectstore.query.ClobFile;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.Query;
@@ -294,6 +295,10 @@ public class ObjectStoreWriterDummyImpl implements ObjectStoreWriter
     public Clob createClob() {
         throw new RuntimeException("Not implemented");
     }
+
+    public ClobFile getClobFile(Clob clob) {
+        return os.getClobFile(clob);
+    }
     
     public void replaceClob(Clob clob, String text) {
         throw new RuntimeException("Not implemented");
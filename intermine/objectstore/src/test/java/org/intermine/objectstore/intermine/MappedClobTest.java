@@ -0,0 +1,95 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MappedClobTest extends TestCase
+{
+    private File dir;
+
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("mappedclob").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testTwoBits() throws Exception {
+        checkRoundTrip(randomText("ACGT", 10001));
+    }
+
+    public void testFourBits() throws Exception {
+        checkRoundTrip(randomText("ACGTNacgtnRYKM", 10003));
+    }
+
+    public void testEightBits() throws Exception {
+        checkRoundTrip(randomText("ABCDEFGHIJKLMNOPQRSTUVWXYZ", 9999));
+    }
+
+    public void testEmpty() throws Exception {
+        checkRoundTrip("");
+    }
+
+    public void testNotAClobFile() throws Exception {
+        File file = new File(dir, "1.clob");
+        Files.write(file.toPath(), new byte[64]);
+        try {
+            MappedClob.open(file);
+            fail("Expected an IOException");
+        } catch (java.io.IOException e) {
+            // as expected
+        }
+    }
+
+    private void checkRoundTrip(String text) throws Exception {
+        File raw = new File(dir, "raw");
+        Files.write(raw.toPath(), text.getBytes(StandardCharsets.ISO_8859_1));
+        boolean[] seen = new boolean[256];
+        for (int i = 0; i < text.length(); i++) {
+            seen[text.charAt(i)] = true;
+        }
+        File file = new File(dir, "1.clob");
+        MappedClob.write(raw, file, seen);
+        MappedClob mapped = MappedClob.open(file);
+
+        assertEquals(text.length(), mapped.length());
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(text.charAt(i), mapped.charAt(i));
+        }
+        StringBuilder sb = new StringBuilder();
+        mapped.appendTo(sb, 0, text.length());
+        assertEquals(text, sb.toString());
+        if (text.length() > 10) {
+            sb = new StringBuilder("x");
+            mapped.appendTo(sb, 3, text.length() - 5);
+            assertEquals("x" + text.substring(3, text.length() - 5), sb.toString());
+        }
+    }
+
+    private static String randomText(String alphabet, int length) {
+        Random random = new Random(length);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
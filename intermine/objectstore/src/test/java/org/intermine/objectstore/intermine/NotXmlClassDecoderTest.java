@@ -0,0 +1,152 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import net.sf.cglib.proxy.Factory;
+
+import org.intermine.metadata.FieldDescriptor;
+import org.intermine.metadata.Model;
+import org.intermine.metadata.ReferenceDescriptor;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.testmodel.Bank;
+import org.intermine.model.testmodel.Broke;
+import org.intermine.model.testmodel.Company;
+import org.intermine.objectstore.proxy.ProxyCollection;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.util.DynamicBean;
+import org.intermine.util.DynamicUtil;
+
+public class NotXmlClassDecoderTest extends TestCase
+{
+    private static final String D = NotXmlParser.DELIM;
+    private static final String NOTXML = D + Company.class.getName() + " " + Broke.class.getName()
+        + D + "aname" + D + "Company" + D + "dA" + D + "avatNumber" + D + "1,234"
+        + D + "adebt" + D + "100" + D + "ainterestRate" + D + "0.5"
+        + D + "rbank" + D + "42" + D + "aid" + D + "7";
+
+    private Model model;
+    private Class<? extends FastPathObject> clazz;
+
+    public void setUp() throws Exception {
+        model = Model.getInstanceByName("testmodel");
+        clazz = DynamicUtil.createObject(new HashSet<Class<?>>(Arrays.asList(Company.class,
+                        Broke.class))).getClass();
+    }
+
+    public void testDecode() throws Exception {
+        InterMineObject o = (InterMineObject) DynamicUtil.createObject(clazz);
+        Map<String, Object> valueMap = ((DynamicBean) ((Factory) o).getCallback(0)).getMap();
+        new NotXmlClassDecoder(clazz, model).decode(NotXmlParser.split(NOTXML), null, o, valueMap,
+                false);
+
+        assertEquals("Company" + D + "A", ((Company) o).getName());
+        assertEquals(1234, ((Company) o).getVatNumber());
+        assertEquals(100, ((Broke) o).getDebt());
+        assertEquals(0.5, ((Broke) o).getInterestRate(), 0.0);
+        assertEquals(Integer.valueOf(7), o.getId());
+        ProxyReference bank = (ProxyReference) valueMap.get("bank");
+        assertEquals(Integer.valueOf(42), bank.getId());
+        assertTrue(bank.toString(), bank.toString().endsWith("class " + Bank.class.getName()
+                    + ">"));
+        assertTrue(valueMap.get("departments") instanceof ProxyCollection);
+    }
+
+    public void testDecodeFetchFromInterMineObject() throws Exception {
+        InterMineObject o = (InterMineObject) DynamicUtil.createObject(clazz);
+        Map<String, Object> valueMap = ((DynamicBean) ((Factory) o).getCallback(0)).getMap();
+        new NotXmlClassDecoder(clazz, model).decode(NotXmlParser.split(NOTXML), null, o, valueMap,
+                true);
+
+        String bank = valueMap.get("bank").toString();
+        assertTrue(bank, bank.endsWith("interface " + InterMineObject.class.getName() + ">"));
+    }
+
+    public void testUnknownField() throws Exception {
+        InterMineObject o = (InterMineObject) DynamicUtil.createObject(clazz);
+        try {
+            new NotXmlClassDecoder(clazz, model).decode(NotXmlParser.split(NOTXML + D + "aflibble"
+                        + D + "1"), null, o, null, false);
+            fail("Expected a RuntimeException");
+        } catch (RuntimeException e) {
+            assertEquals("failed to get field flibble for object of class "
+                    + Company.class.getName() + " " + Broke.class.getName(), e.getMessage());
+        }
+    }
+
+    public void testDecodeMatchesStringToObject() throws Exception {
+        String[] a = NotXmlParser.split(NOTXML);
+        InterMineObject expected = (InterMineObject) DynamicUtil.createObject(clazz);
+        Map<String, Object> expectedMap = ((DynamicBean) ((Factory) expected).getCallback(0))
+            .getMap();
+        decodeWithStringToObject(a, expected, expectedMap);
+        InterMineObject decoded = (InterMineObject) DynamicUtil.createObject(clazz);
+        Map<String, Object> decodedMap = ((DynamicBean) ((Factory) decoded).getCallback(0))
+            .getMap();
+        new NotXmlClassDecoder(clazz, model).decode(a, null, decoded, decodedMap, false);
+
+        assertEquals(expectedMap.keySet(), decodedMap.keySet());
+        for (Map.Entry<String, Object> entry : expectedMap.entrySet()) {
+            Object value = decodedMap.get(entry.getKey());
+            if (entry.getValue() instanceof ProxyReference) {
+                assertEquals(entry.getKey(), ((ProxyReference) entry.getValue()).getId(),
+                        ((ProxyReference) value).getId());
+            } else if (entry.getValue() instanceof ProxyCollection) {
+                assertTrue(entry.getKey(), value instanceof ProxyCollection);
+            } else {
+                assertEquals(entry.getKey(), entry.getValue(), value);
+            }
+        }
+    }
+
+    // What NotXmlParser did for each object before NotXmlClassDecoder
+    private void decodeWithStringToObject(String[] a, InterMineObject obj,
+            Map<String, Object> valueMap) {
+        Map<String, FieldDescriptor> fields = model.getFieldDescriptorsForClass(clazz);
+        Map<String, TypeUtil.FieldInfo> fieldInfos = TypeUtil.getFieldInfos(clazz);
+        for (int i = 2; i < a.length; i += 2) {
+            if (a[i].startsWith("a")) {
+                String fieldName = a[i].substring(1).intern();
+                Class<?> fieldClass = fieldInfos.get(fieldName).getType();
+                String firstString = (i + 1 == a.length ? "" : a[i + 1]);
+                StringBuilder string = null;
+                while ((i + 2 < a.length) && (a[i + 2].startsWith(NotXmlParser.ENCODED_DELIM))) {
+                    i++;
+                    if (string == null) {
+                        string = new StringBuilder(firstString);
+                    }
+                    string.append(D).append(a[i + 1].substring(1));
+                }
+                valueMap.put(fieldName, TypeUtil.stringToObject(fieldClass,
+                            (string == null ? firstString : string.toString())));
+            } else if (a[i].startsWith("r")) {
+                String fieldName = a[i].substring(1).intern();
+                ReferenceDescriptor ref = (ReferenceDescriptor) fields.get(fieldName);
+                @SuppressWarnings("unchecked")
+                Class<? extends InterMineObject> type = (Class<? extends InterMineObject>) ref
+                    .getReferencedClassDescriptor().getType();
+                valueMap.put(fieldName, new ProxyReference(null, Integer.valueOf(a[i + 1]),
+                            type));
+            }
+        }
+        for (Map.Entry<String, Class<?>> collEntry : model.getCollectionsForClass(clazz)
+                .entrySet()) {
+            valueMap.put(collEntry.getKey(), new ProxyCollection<Object>(null, obj,
+                        collEntry.getKey(), collEntry.getValue()));
+        }
+    }
+}
@@ -10,6 +10,7 @@ package org.intermine.objectstore.intermine;
  *
  */
 
+import java.util.Arrays;
 import java.util.Map;
 
 import junit.framework.TestCase;
@@ -99,6 +100,17 @@ public class NotXmlTest extends TestCase
         assertEquals(e.getId(), reparsed.getId());
     }
 
+    public void testSplit() throws Exception {
+        String d = NotXmlParser.DELIM;
+        String[] inputs = new String[] {"", "abc", d, d + d, d + "Employee" + d + "aname" + d,
+            d + "Employee" + d + "aname" + d + d + "aage" + d + "3",
+            d + "Employee" + d + "aname" + d + "a" + d + "dbc" + d + d, "$_" + d + "^"};
+        for (String input : inputs) {
+            assertEquals(input, Arrays.asList(NotXmlParser.SPLITTER.split(input)),
+                    Arrays.asList(NotXmlParser.split(input)));
+        }
+    }
+
     public void testSplitPerformance() throws Exception {
         StringBuilder sb = new StringBuilder(49999997);
         for (int i = 0; i < 1000000; i++) {
@@ -116,6 +128,11 @@ public class NotXmlTest extends TestCase
         }
         System.out.println("SPLIT took " + (System.currentTimeMillis() - time) + " ms");
         time = System.currentTimeMillis();
+        for (int o = 0; o < 10; o++) {
+            NotXmlParser.split(s);
+        }
+        System.out.println("INDEXOF SPLIT took " + (System.currentTimeMillis() - time) + " ms");
+        time = System.currentTimeMillis();
         for (int o = 0; o < 10; o++) {
             String res[] = new String[1000000];
             for (int i = 0; i < 1000000; i++) {
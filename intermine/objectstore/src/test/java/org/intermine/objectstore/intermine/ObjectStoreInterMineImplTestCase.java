@@ -922,6 +922,50 @@ public class ObjectStoreInterMineImplTestCase extends ObjectStoreAbstractImplTes
         Assert.assertTrue(r5.isSingleBatch());
     }
 
+    @Test
+    public void testCursor() throws Exception {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.addToSelect(new QueryField(qc, "name"));
+        List<Object> expected = new ArrayList<Object>(os.execute(q, 1000, true, false, false));
+        // a fetch size smaller than the number of rows, so that several batches are converted
+        ResultsCursor cursor = ((ObjectStoreInterMineImpl) os).executeCursor(q, 3, true, true);
+        List<Object> got = new ArrayList<Object>();
+        while (cursor.hasNext()) {
+            got.add(cursor.next());
+        }
+        Assert.assertEquals(expected, got);
+        Assert.assertFalse(cursor.hasNext());
+        // closing again does nothing
+        cursor.close();
+
+        ResultsCursor cursor2 = ((ObjectStoreInterMineImpl) os).executeCursor(q, 3, false, false);
+        Assert.assertEquals(expected.get(0), cursor2.next());
+        cursor2.close();
+        Assert.assertFalse(cursor2.hasNext());
+    }
+
+    @Test
+    public void testCursorTooMuchTime() throws Exception {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        long before = setMaxTime((ObjectStoreInterMineImpl) os, -1);
+        try {
+            ((ObjectStoreInterMineImpl) os).executeCursor(q, 3, true, true);
+            Assert.fail("Expected: ObjectStoreQueryDurationException");
+        } catch (ObjectStoreQueryDurationException e) {
+        } finally {
+            setMaxTime((ObjectStoreInterMineImpl) os, before);
+        }
+        // without explain the time is not checked
+        ResultsCursor cursor = ((ObjectStoreInterMineImpl) os).executeCursor(q, 3, true, false);
+        cursor.close();
+    }
+
     @Test
     public void testBatchesCacheSmallToLarge() throws Exception {
         Query q = new Query();
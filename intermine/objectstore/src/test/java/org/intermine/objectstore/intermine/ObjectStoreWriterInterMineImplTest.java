@@ -10,6 +10,12 @@ package org.intermine.objectstore.intermine;
  *
  */
 
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.intermine.model.InterMineObject;
 import org.intermine.model.testmodel.Address;
 import org.intermine.model.testmodel.Bank;
@@ -17,7 +23,9 @@ import org.intermine.model.testmodel.Broke;
 import org.intermine.model.testmodel.SimpleObject;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.objectstore.query.ObjectStoreBag;
 import org.intermine.objectstore.query.QueryClass;
+import org.intermine.sql.DatabaseUtil;
 import org.junit.*;
 
 public class ObjectStoreWriterInterMineImplTest extends ObjectStoreWriterTestCase
@@ -70,5 +78,44 @@ public class ObjectStoreWriterInterMineImplTest extends ObjectStoreWriterTestCas
         // Now try and do something normal.
         writer.getObjectById(new Integer(2));
     }
-}
 
+    @Test
+    public void testBatchCommitDeletesSavedBagBitmap() throws Exception {
+        ObjectStoreInterMineImpl parent = (ObjectStoreInterMineImpl) writer.getObjectStore();
+        Connection c = parent.getDatabase().getConnection();
+        try {
+            Assume.assumeTrue(DatabaseUtil.tableExists(c, BagBitmapCache.BAG_BITMAP_TABLE_NAME));
+            ObjectStoreBag osb = writer.createObjectStoreBag();
+            Collection<Integer> elements = new ArrayList<Integer>();
+            for (int i = 0; i < BagBitmapCache.MIN_SAVED_SIZE; i++) {
+                elements.add(Integer.valueOf(i));
+            }
+            writer.addAllToBag(osb, elements);
+            parent.getBagBitmap(osb);
+            Assert.assertTrue(hasSavedBitmap(c, osb));
+
+            writer.beginTransaction();
+            writer.addToBag(osb, Integer.valueOf(BagBitmapCache.MIN_SAVED_SIZE));
+            writer.batchCommitTransaction();
+            writer.commitTransaction();
+            Assert.assertFalse(hasSavedBitmap(c, osb));
+            Assert.assertEquals(BagBitmapCache.MIN_SAVED_SIZE + 1,
+                    parent.getBagBitmap(osb).size());
+        } finally {
+            c.close();
+        }
+    }
+
+    private static boolean hasSavedBitmap(Connection c, ObjectStoreBag osb) throws Exception {
+        Statement s = c.createStatement();
+        try {
+            ResultSet r = s.executeQuery("SELECT COUNT(*) FROM "
+                    + BagBitmapCache.BAG_BITMAP_TABLE_NAME + " WHERE "
+                    + ObjectStoreInterMineImpl.BAGID_COLUMN + " = " + osb.getBagId());
+            r.next();
+            return r.getInt(1) > 0;
+        } finally {
+            s.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.query.ResultsRow;
+
+public class SharedResultsCacheTest extends TestCase
+{
+    private File dir;
+
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("resultscache").toFile();
+    }
+
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public void testOffHeapStore() throws Exception {
+        doTestStore(new OffHeapResultsCacheStore(1000));
+    }
+
+    public void testDiskStore() throws Exception {
+        doTestStore(new DiskResultsCacheStore(dir, 1000));
+        // a second store on the same directory sees the same values and versions
+        DiskResultsCacheStore other = new DiskResultsCacheStore(dir, 1000);
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, other.get("key1")));
+        assertEquals("v2", other.getVersion("table Employee"));
+    }
+
+    private void doTestStore(ResultsCacheStore store) throws Exception {
+        assertNull(store.get("key1"));
+        store.put("key1", new byte[] {1, 2, 3});
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, store.get("key1")));
+        assertNull(store.get("key2"));
+        assertNull(store.getVersion("table Employee"));
+        store.setVersion("table Employee", "v1");
+        store.setVersion("table Employee", "v2");
+        assertEquals("v2", store.getVersion("table Employee"));
+        // too big to be stored
+        store.put("key2", new byte[2000]);
+        assertNull(store.get("key2"));
+    }
+
+    public void testOffHeapEviction() throws Exception {
+        OffHeapResultsCacheStore store = new OffHeapResultsCacheStore(250);
+        store.put("key1", new byte[100]);
+        store.put("key2", new byte[100]);
+        store.get("key1");
+        store.put("key3", new byte[100]);
+        assertNotNull(store.get("key1"));
+        assertNull(store.get("key2"));
+        assertNotNull(store.get("key3"));
+    }
+
+    public void testDiskEviction() throws Exception {
+        DiskResultsCacheStore store = new DiskResultsCacheStore(dir, 250);
+        store.put("key1", new byte[100]);
+        store.put("key2", new byte[100]);
+        store.put("key3", new byte[100]);
+        long now = System.currentTimeMillis();
+        File[] files = new File(dir, "values").listFiles();
+        assertEquals(3, files.length);
+        for (File file : files) {
+            file.setLastModified(now - 100000);
+        }
+        store.get("key2");
+        store.get("key3");
+        store.cleanup();
+        assertNull(store.get("key1"));
+        assertNotNull(store.get("key2"));
+        assertNotNull(store.get("key3"));
+    }
+
+    public void testCodec() throws Exception {
+        List<ResultsRow<Object>> rows = new ArrayList<ResultsRow<Object>>();
+        ResultsRow<Object> row = new ResultsRow<Object>();
+        row.add("Employee1");
+        row.add(null);
+        row.add(Integer.valueOf(42));
+        row.add(Long.valueOf(1L << 40));
+        row.add(Short.valueOf((short) 7));
+        row.add(Boolean.TRUE);
+        row.add(Float.valueOf(1.5F));
+        row.add(Double.valueOf(2.25));
+        row.add(new BigDecimal("3.14159265358979323846"));
+        row.add(new Date(1234567890L));
+        row.add(String.class);
+        rows.add(row);
+        ResultsRow<Object> row2 = new ResultsRow<Object>();
+        row2.add(Boolean.FALSE);
+        rows.add(row2);
+        byte[] data = ResultsRowCodec.encode(rows);
+        assertEquals(rows, ResultsRowCodec.decode(data, null));
+    }
+
+    public void testCodecUnsupported() throws Exception {
+        ResultsRow<Object> row = new ResultsRow<Object>();
+        row.add(new Object());
+        assertNull(ResultsRowCodec.encode(Collections.singletonList(row)));
+    }
+
+    public void testCache() throws Exception {
+        SharedResultsCache cache = new SharedResultsCache(new OffHeapResultsCacheStore(1000),
+                "db1", 50, 1000);
+        Set<Object> components = new HashSet<Object>(Arrays.asList("Employee", "Department"));
+        String key = cache.getKey("SELECT 1", components);
+        assertEquals(key, cache.getKey("SELECT 1", components));
+        assertFalse(key.equals(cache.getKey("SELECT 2", components)));
+        assertFalse(key.equals(new SharedResultsCache(new OffHeapResultsCacheStore(1000), "db2",
+                        50, 1000).getKey("SELECT 1", components)));
+
+        ResultsRow<Object> row = new ResultsRow<Object>();
+        row.add("Employee1");
+        List<ResultsRow<Object>> rows = Collections.singletonList(row);
+        // too quick to be worth storing
+        cache.put(key, rows, 10);
+        assertNull(cache.get(key, null));
+        cache.put(key, rows, 100);
+        assertEquals(rows, cache.get(key, null));
+
+        cache.componentsAltered(Collections.<Object>singleton("Department"));
+        String newKey = cache.getKey("SELECT 1", components);
+        assertFalse(key.equals(newKey));
+        assertNull(cache.get(newKey, null));
+        // queries that do not read the altered table are not affected
+        Set<Object> employee = Collections.<Object>singleton("Employee");
+        assertEquals(cache.getKey("SELECT 1", employee), cache.getKey("SELECT 1", employee));
+        assertTrue(cache.getKey("SELECT 1", employee).endsWith("table Employee=0"));
+    }
+
+    public void testVersionTtl() throws Exception {
+        OffHeapResultsCacheStore store = new OffHeapResultsCacheStore(1000);
+        SharedResultsCache cache = new SharedResultsCache(store, "db1", 50, 100);
+        SharedResultsCache otherServer = new SharedResultsCache(store, "db1", 50, 100);
+        Set<Object> components = Collections.<Object>singleton("Employee");
+        String key = cache.getKey("SELECT 1", components);
+        otherServer.componentsAltered(components);
+        // the version read from the store is still used
+        assertEquals(key, cache.getKey("SELECT 1", components));
+        Thread.sleep(150);
+        assertEquals(otherServer.getKey("SELECT 1", components),
+                cache.getKey("SELECT 1", components));
+        assertFalse(key.equals(cache.getKey("SELECT 1", components)));
+    }
+
+    public void testDisabledWhenStoreFails() throws Exception {
+        final OffHeapResultsCacheStore offHeap = new OffHeapResultsCacheStore(1000);
+        ResultsCacheStore store = new ResultsCacheStore() {
+            public byte[] get(String key) {
+                return offHeap.get(key);
+            }
+
+            public void put(String key, byte[] value) {
+                offHeap.put(key, value);
+            }
+
+            public String getVersion(String component) {
+                return offHeap.getVersion(component);
+            }
+
+            public void setVersion(String component, String version) throws IOException {
+                throw new IOException("read-only");
+            }
+        };
+        SharedResultsCache cache = new SharedResultsCache(store, "db1", 50, 1000);
+        Set<Object> components = Collections.<Object>singleton("Employee");
+        String key = cache.getKey("SELECT 1", components);
+        ResultsRow<Object> row = new ResultsRow<Object>();
+        row.add("Employee1");
+        cache.put(key, Collections.singletonList(row), 100);
+        assertNotNull(cache.get(key, null));
+
+        cache.componentsAltered(components);
+        assertTrue(cache.isDisabled());
+        assertNull(cache.getKey("SELECT 1", components));
+        assertNull(cache.get(key, null));
+    }
+}
@@ -341,6 +341,51 @@ public class ResultsTest extends TestCase
         assertEquals(50, count);
     }
 
+    public void testStreamingIterator() throws Exception {
+        Query q = new Query();
+        q.addFrom(new QueryClass(Department.class));
+        ObjectStoreDummyImpl os2 = new ObjectStoreDummyImpl();
+        os2.setResultsSize(250);
+
+        Results res = os2.execute(q, 20, true, true, true);
+        int count = 0;
+        Iterator iter = res.streamingIterator();
+        while (iter.hasNext()) {
+            count++;
+            iter.hasNext();
+            Object row = iter.next();
+            assertTrue(row instanceof ResultsRow);
+        }
+        assertEquals(250, count);
+        assertFalse(iter.hasNext());
+        // The rows should not have gone into the shared batch cache
+        assertEquals(0, res.resultsBatches.batches.size());
+    }
+
+    public void testStreamingIteratorPropagatesObjectStoreException() throws Exception {
+        Query q = new Query();
+        q.addFrom(new QueryClass(Department.class));
+        ObjectStoreDummyImpl os2 = new ObjectStoreDummyImpl();
+        os2.setResultsSize(1000);
+        os2.setPoisonRowNo(700);
+        Results res = os2.execute(q, 1, true, true, true);
+
+        int count = 0;
+        try {
+            Iterator iter = res.streamingIterator();
+            while (iter.hasNext()) {
+                iter.next();
+                count++;
+            }
+            fail("Expected RuntimeException containing ObjectStoreException - count = " + count);
+        } catch (RuntimeException e) {
+            if (!(e.getCause() instanceof ObjectStoreException)) {
+                fail("Expected RuntimeException to contain an ObjectStoreException");
+            }
+        }
+        assertTrue(count < 700);
+    }
+
     public void testResultsInfo() throws Exception {
         Query q = new Query();
         q.addFrom(new QueryClass(Department.class));
@@ -10,8 +10,15 @@ package org.intermine.sql.precompute;
  *
  */
 
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import junit.framework.TestCase;
 
+import org.intermine.sql.query.Query;
+
 public class OptimiserCacheTest extends TestCase
 {
     public OptimiserCacheTest(String arg1) {
@@ -28,4 +35,63 @@ public class OptimiserCacheTest extends TestCase
         assertNull(cache.lookup("original1", 10));
         assertNull(cache.lookup("somethingelse", 1000));
     }
+
+    public void testHitsAndMisses() throws Exception {
+        OptimiserCache cache = new OptimiserCache();
+        cache.addCacheLine("original1", "optimised1_1", 1000);
+        assertEquals("optimised1_1", cache.lookup("original1", 1000));
+        assertEquals("EXPLAIN optimised1_1", cache.lookup("EXPLAIN original1", 1000));
+        assertNull(cache.lookup("original1", 10));
+        assertNull(cache.lookup("somethingelse", 1000));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testEviction() throws Exception {
+        OptimiserCache cache = new OptimiserCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.addCacheLine("original" + i, "optimised" + i, 1000);
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals("optimised999", cache.lookup("original999", 1000));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        OptimiserCache cache = new OptimiserCache();
+        cache.addCacheLine("original1", "optimised1_1", 1000);
+        cache.addCacheLine("original1", "optimised1_2", 16000);
+        cache.addCacheLine("original2", "SELECT a FROM precomp_1", 1000);
+        cache.addCacheLine("original3", "SELECT a FROM precomp_2", 1000);
+        cache.addCacheLine("original4", "SELECT a FROM temporary_precomp_1", 1000);
+        File file = File.createTempFile("optimisercache", ".dat");
+        try {
+            Set<PrecomputedTable> tables = new HashSet<PrecomputedTable>();
+            tables.add(new PrecomputedTable(new Query("SELECT a FROM b"), "SELECT a FROM b",
+                        "precomp_1", null, null));
+            tables.add(new PrecomputedTable(new Query("SELECT a FROM c"), "SELECT a FROM c",
+                        "precomp_2", null, null));
+            cache.save(file, tables);
+            tables.remove(new PrecomputedTable(new Query("SELECT a FROM c"), "SELECT a FROM c",
+                        "precomp_2", null, null));
+            OptimiserCache loaded = new OptimiserCache();
+            assertEquals(3, loaded.load(file, tables));
+            assertEquals("optimised1_1", loaded.lookup("original1", 1000));
+            assertEquals("optimised1_2", loaded.lookup("original1", 16000));
+            assertEquals("SELECT a FROM precomp_1", loaded.lookup("original2", 1000));
+            assertNull(loaded.lookup("original3", 1000));
+            assertNull(loaded.lookup("original4", 1000));
+            assertEquals(2, new OptimiserCache().load(file,
+                        Collections.<PrecomputedTable>emptySet()));
+
+            // A rebuilt database can reuse the name of a table for a different query
+            Set<PrecomputedTable> rebuilt = Collections.singleton(new PrecomputedTable(
+                        new Query("SELECT a FROM d"), "SELECT a FROM d", "precomp_1", null,
+                        null));
+            loaded = new OptimiserCache();
+            assertEquals(2, loaded.load(file, rebuilt));
+            assertNull(loaded.lookup("original2", 1000));
+        } finally {
+            file.delete();
+        }
+    }
 }
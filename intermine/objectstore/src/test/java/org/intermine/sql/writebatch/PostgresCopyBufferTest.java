@@ -0,0 +1,78 @@
+package org.intermine.sql.writebatch;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PostgresCopyBufferTest extends TestCase
+{
+    public PostgresCopyBufferTest(String arg) {
+        super(arg);
+    }
+
+    public void testWriteAcrossChunks() throws Exception {
+        PostgresCopyBuffer buffer = new PostgresCopyBuffer();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] block = new byte[PostgresCopyBuffer.CHUNK_SIZE / 3 + 7];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) i;
+        }
+        for (int i = 0; i < 10; i++) {
+            buffer.write(i);
+            expected.write(i);
+            buffer.write(block, 3, block.length - 3);
+            expected.write(block, 3, block.length - 3);
+        }
+        assertEquals(expected.size(), buffer.size());
+        assertTrue(Arrays.equals(expected.toByteArray(), buffer.toByteArray()));
+        buffer.release();
+        try {
+            buffer.write(1);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testLargeUTF() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("aéກ𝜅");
+        }
+        String large = sb.toString();
+        PostgresCopyBuffer buffer = new PostgresCopyBuffer();
+        PostgresDataOutputStream dos = new PostgresDataOutputStream(buffer);
+        int written = dos.writeLargeUTF(large);
+        dos.flush();
+        byte[] expected = large.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length + 4, written);
+        assertEquals(expected.length + 4, buffer.size());
+        byte[] output = buffer.toByteArray();
+        assertEquals(expected.length, ((output[0] & 0xFF) << 24) | ((output[1] & 0xFF) << 16)
+                | ((output[2] & 0xFF) << 8) | (output[3] & 0xFF));
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(output, 4, output.length)));
+    }
+
+    public void testUnpairedSurrogate() throws Exception {
+        String input = "a\ud835b\udf05";
+        PostgresCopyBuffer buffer = new PostgresCopyBuffer();
+        PostgresDataOutputStream dos = new PostgresDataOutputStream(buffer);
+        assertEquals(8, dos.writeLargeUTF(input));
+        dos.flush();
+        byte[] output = buffer.toByteArray();
+        assertEquals(4, output[3]);
+        assertEquals("a?b?", new String(output, 4, 4, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,111 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class BoundedCacheMapTest extends TestCase
+{
+    public BoundedCacheMapTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testPutGet() throws Exception {
+        BoundedCacheMap<Integer, Integer> cm = new BoundedCacheMap<Integer, Integer>("test", 10);
+
+        cm.put(5, 40);
+        cm.put(763, 67);
+        cm.put(2, null);
+
+        assertEquals(new Integer(40), cm.get(5));
+        assertEquals(new Integer(67), cm.get(763));
+        assertNull(cm.get(2));
+        assertTrue(cm.containsKey(2));
+        assertFalse(cm.containsKey(3));
+        assertNull(cm.getOrDefault(2, -1));
+        assertEquals(new Integer(-1), cm.getOrDefault(3, -1));
+        assertEquals(3, cm.size());
+
+        assertEquals(new Integer(40), cm.remove(5));
+        assertFalse(cm.containsKey(5));
+        assertEquals(2, cm.size());
+        assertEquals(2, cm.entrySet().size());
+
+        cm.clear();
+        assertTrue(cm.isEmpty());
+    }
+
+    public void testPutIfAbsent() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 10);
+
+        assertNull(cm.putIfAbsent(1, "one"));
+        assertEquals("one", cm.putIfAbsent(1, "uno"));
+        assertEquals("one", cm.get(1));
+
+        cm.put(2, null);
+        assertNull(cm.putIfAbsent(2, "two"));
+        assertEquals("two", cm.get(2));
+    }
+
+    public void testLruEviction() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 3);
+
+        cm.put(1, "one");
+        cm.put(2, "two");
+        cm.put(3, "three");
+        // Touch 1 so that 2 is the least recently used
+        cm.get(1);
+        cm.put(4, "four");
+
+        assertEquals(3, cm.size());
+        assertTrue(cm.containsKey(1));
+        assertFalse(cm.containsKey(2));
+        assertTrue(cm.containsKey(3));
+        assertTrue(cm.containsKey(4));
+        assertEquals(1, cm.getEvictions());
+        assertEquals(1, cm.getHits());
+    }
+
+    public void testSizeBound() throws Exception {
+        BoundedCacheMap<Integer, Integer> cm = new BoundedCacheMap<Integer, Integer>("test", 1000);
+        for (int i = 0; i < 100000; i++) {
+            cm.put(i, i);
+        }
+        assertTrue(cm.size() <= 1000);
+        assertTrue(cm.containsKey(99999));
+    }
+
+    public void testFrequencyAdmission() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 2,
+                true);
+
+        cm.put(1, "one");
+        cm.put(2, "two");
+        for (int i = 0; i < 5; i++) {
+            cm.get(1);
+            cm.get(2);
+        }
+        // A key seen once should not displace keys that are used often
+        cm.put(3, "three");
+        assertFalse(cm.containsKey(3));
+        assertTrue(cm.containsKey(1));
+        assertTrue(cm.containsKey(2));
+        assertEquals(1, cm.getRejections());
+
+        // Once it is asked for often enough, it gets in
+        for (int i = 0; i < 10; i++) {
+            cm.get(3);
+        }
+        cm.put(3, "three");
+        assertTrue(cm.containsKey(3));
+        assertEquals(2, cm.size());
+    }
+}
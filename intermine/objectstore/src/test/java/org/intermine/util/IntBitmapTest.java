@@ -0,0 +1,141 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class IntBitmapTest extends TestCase
+{
+    public IntBitmapTest(String arg1) {
+        super(arg1);
+    }
+
+    public void test() throws Exception {
+        IntBitmap bitmap = new IntBitmap();
+
+        assertTrue(bitmap.add(42));
+        assertTrue(bitmap.add(28673452));
+        assertTrue(bitmap.add(0));
+        assertFalse(bitmap.add(42));
+
+        assertEquals(3, bitmap.size());
+        assertTrue(bitmap.contains(42));
+        assertTrue(bitmap.contains(28673452));
+        assertFalse(bitmap.contains(63));
+        assertEquals("[0, 42, 28673452]", bitmap.toString());
+
+        assertTrue(bitmap.remove(42));
+        assertFalse(bitmap.remove(42));
+        assertEquals("[0, 28673452]", bitmap.toString());
+    }
+
+    public void testDenseAndSparse() throws Exception {
+        IntBitmap bitmap = new IntBitmap();
+        // Dense enough to turn a chunk into a bitmap and back again
+        for (int i = 100000; i < 110000; i++) {
+            bitmap.add(i);
+        }
+        assertEquals(10000, bitmap.size());
+        assertTrue(bitmap.contains(100000));
+        assertTrue(bitmap.contains(109999));
+        assertFalse(bitmap.contains(110000));
+        for (int i = 100000; i < 109000; i++) {
+            assertTrue(bitmap.remove(i));
+        }
+        assertEquals(1000, bitmap.size());
+        int[] contents = bitmap.toArray();
+        assertEquals(109000, contents[0]);
+        assertEquals(109999, contents[999]);
+    }
+
+    public void testAgainstTreeSet() throws Exception {
+        Random random = new Random(1234);
+        IntBitmap a = new IntBitmap();
+        IntBitmap b = new IntBitmap();
+        TreeSet<Integer> ea = new TreeSet<Integer>();
+        TreeSet<Integer> eb = new TreeSet<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            // Mix of dense and sparse chunks
+            int value = (random.nextBoolean() ? random.nextInt(20000)
+                    : random.nextInt(10000000));
+            if (random.nextInt(4) == 0) {
+                assertEquals(ea.remove(value), a.remove(value));
+            } else {
+                assertEquals(ea.add(value), a.add(value));
+            }
+            value = random.nextInt(300000);
+            assertEquals(eb.add(value), b.add(value));
+        }
+        assertEquals(ea, contents(a));
+        assertEquals(eb, contents(b));
+
+        TreeSet<Integer> expected = new TreeSet<Integer>(ea);
+        expected.retainAll(eb);
+        assertEquals(expected, contents(IntBitmap.and(a, b)));
+        assertEquals(expected, contents(IntBitmap.and(b, a)));
+
+        expected = new TreeSet<Integer>(ea);
+        expected.addAll(eb);
+        assertEquals(expected, contents(IntBitmap.or(a, b)));
+        assertEquals(IntBitmap.or(a, b), IntBitmap.or(b, a));
+
+        expected = new TreeSet<Integer>(ea);
+        expected.removeAll(eb);
+        assertEquals(expected, contents(IntBitmap.andNot(a, b)));
+        expected = new TreeSet<Integer>(eb);
+        expected.removeAll(ea);
+        assertEquals(expected, contents(IntBitmap.andNot(b, a)));
+    }
+
+    public void testWriteAndRead() throws Exception {
+        IntBitmap bitmap = new IntBitmap();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(i);
+        }
+        bitmap.add(100000);
+        bitmap.add(5000000);
+        bitmap.add(Integer.MAX_VALUE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.writeTo(new DataOutputStream(bytes));
+        IntBitmap read = IntBitmap.readFrom(new DataInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(bitmap, read);
+        assertEquals(10003, read.size());
+        read.add(10000);
+        assertTrue(read.contains(10000));
+
+        bytes = new ByteArrayOutputStream();
+        new IntBitmap().writeTo(new DataOutputStream(bytes));
+        assertTrue(IntBitmap.readFrom(new DataInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()))).isEmpty());
+    }
+
+    private static TreeSet<Integer> contents(IntBitmap bitmap) {
+        TreeSet<Integer> retval = new TreeSet<Integer>();
+        int last = -1;
+        IntIterator iter = bitmap.iterator();
+        while (iter.hasNext()) {
+            int i = iter.next();
+            assertTrue(i > last);
+            last = i;
+            retval.add(i);
+        }
+        assertEquals(bitmap.size(), retval.size());
+        return retval;
+    }
+}
@@ -0,0 +1,57 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class IntListTest extends TestCase
+{
+    public IntListTest(String arg1) {
+        super(arg1);
+    }
+
+    public void test() throws Exception {
+        IntList list = new IntList(2);
+        list.add(5);
+        list.add(3);
+        list.add(9);
+        list.addAll(new int[] {1, 3});
+
+        assertEquals(5, list.size());
+        assertEquals("[5, 3, 9, 1, 3]", list.toString());
+        assertEquals(9, list.get(2));
+        assertEquals(1, list.indexOf(3));
+        assertFalse(list.contains(7));
+
+        assertEquals(9, list.set(2, 7));
+        assertEquals(5, list.removeAt(0));
+        assertEquals("[3, 7, 1, 3]", list.toString());
+
+        list.sort();
+        assertEquals("[1, 3, 3, 7]", list.toString());
+        IntIterator iter = list.iterator();
+        int total = 0;
+        while (iter.hasNext()) {
+            total += iter.next();
+        }
+        assertEquals(14, total);
+
+        try {
+            list.get(4);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(0, list.toArray().length);
+    }
+}
@@ -0,0 +1,83 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class IntSetTest extends TestCase
+{
+    public IntSetTest(String arg1) {
+        super(arg1);
+    }
+
+    public void test() throws Exception {
+        IntSet set = new IntSet();
+
+        assertTrue(set.add(42));
+        assertTrue(set.add(0));
+        assertTrue(set.add(-28673452));
+        assertFalse(set.add(42));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(-28673452));
+        assertFalse(set.contains(63));
+        assertEquals("[-28673452, 0, 42]", set.toString());
+
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertEquals("[-28673452, 42]", set.toString());
+    }
+
+    public void testAgainstHashSet() throws Exception {
+        Random random = new Random(2345);
+        IntSet set = new IntSet();
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int i = 0; i < 200000; i++) {
+            int value = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (int i = -100; i < 4900; i++) {
+            assertEquals(expected.contains(i), set.contains(i));
+        }
+        Set<Integer> iterated = new HashSet<Integer>();
+        IntIterator iter = set.iterator();
+        while (iter.hasNext()) {
+            assertTrue(iterated.add(iter.next()));
+        }
+        assertEquals(expected, iterated);
+
+        IntSet other = new IntSet();
+        other.addAll(new int[] {1, 2, 3, 4000});
+        set.retainAll(other);
+        expected.retainAll(iterated(other));
+        assertEquals(expected, iterated(set));
+    }
+
+    private static Set<Integer> iterated(IntSet set) {
+        Set<Integer> retval = new HashSet<Integer>();
+        for (int i : set.toArray()) {
+            retval.add(i);
+        }
+        return retval;
+    }
+}
@@ -0,0 +1,80 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IntToObjectMapTest extends TestCase
+{
+    public IntToObjectMapTest(String arg1) {
+        super(arg1);
+    }
+
+    public void test() throws Exception {
+        IntToObjectMap<String> map = new IntToObjectMap<String>();
+
+        assertNull(map.put(5, "five"));
+        assertNull(map.put(0, null));
+        assertNull(map.put(-763, "minus"));
+        assertEquals("five", map.put(5, "FIVE"));
+
+        assertEquals(3, map.size());
+        assertEquals("FIVE", map.get(5));
+        assertNull(map.get(0));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(1));
+        assertEquals("none", map.getOrDefault(1, "none"));
+        assertNull(map.getOrDefault(0, "none"));
+        assertEquals("{-763 -> minus, 0 -> null, 5 -> FIVE}", map.toString());
+
+        assertEquals("minus", map.remove(-763));
+        assertFalse(map.containsKey(-763));
+        assertEquals(2, map.size());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.entryIterator().hasNext());
+    }
+
+    public void testAgainstHashMap() throws Exception {
+        Random random = new Random(7654);
+        IntToObjectMap<Integer> map = new IntToObjectMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        Map<Integer, Integer> iterated = new HashMap<Integer, Integer>();
+        IntToObjectMap.EntryIterator<Integer> iter = map.entryIterator();
+        while (iter.hasNext()) {
+            iter.next();
+            assertNull(iterated.put(iter.getKey(), iter.getValue()));
+        }
+        assertEquals(expected, iterated);
+
+        IntToObjectMap<Integer> copy = new IntToObjectMap<Integer>(10);
+        copy.putAll(map);
+        int[] keys = copy.keys();
+        assertEquals(expected.size(), keys.length);
+        for (int key : keys) {
+            assertEquals(expected.get(key), copy.get(key));
+        }
+    }
+}
@@ -50,7 +50,7 @@ public abstract class HttpExporterBase
         executor = im.getPathQueryExecutor(profile);
         executor.setBatchSize(BATCH_SIZE);
         try {
-            return executor.execute(pathQuery);
+            return executor.execute(pathQuery, true);
         } catch (ObjectStoreException e) {
             throw new RuntimeException(e);
         }
@@ -11,11 +11,12 @@ package org.intermine.web.logic.widget;
  */
 
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.math3.distribution.HypergeometricDistribution;
 
 /**
  * Calculate enrichment of an attribute applied to members of a sample that is a subset of a larger
@@ -24,7 +25,8 @@ import org.apache.commons.math3.distribution.HypergeometricDistribution;
  * occurrences in the population as a whole.  Thus a low p-value indicates that the attribute may
  * be characteristic of the items in the sample.
  *
- * Enrichment is implemented using a Hypergeometric test.
+ * Enrichment is implemented using a Hypergeometric test. The p-values are calculated and corrected
+ * in arrays of doubles, and only those reported are converted to BigDecimals.
  *
  * @author Julie Sullivan
  * @author Richard Smith
@@ -60,20 +62,30 @@ public final class EnrichmentCalculation
         Map<String, PopulationInfo> annotatedPopulationInfo =
             input.getAnnotatedCountsInPopulation();
 
-        Map<String, BigDecimal> rawResults =
-                getRawResults(sampleSize, populationSize, sampleCounts, annotatedPopulationInfo);
+        int attributeCount = sampleCounts.size();
+        String[] attributes = new String[attributeCount];
+        double[] pValues = new double[attributeCount];
+        getRawResults(sampleSize, populationSize, sampleCounts, annotatedPopulationInfo,
+                attributes, pValues);
         ErrorCorrection.Strategy strategy = getStrategy(errorCorrection);
 
-        Map<String, BigDecimal> correctedResults = ErrorCorrection.adjustPValues(strategy,
-                rawResults, maxValue, input.getTestCount());
+        sortByPValue(attributes, pValues);
+        int reported = ErrorCorrection.adjustPValues(strategy, pValues, maxValue.doubleValue(),
+                input.getTestCount());
+        Map<String, BigDecimal> correctedResults = new LinkedHashMap<String, BigDecimal>();
+        for (int i = 0; i < reported; i++) {
+            correctedResults.put(attributes[i], new BigDecimal(pValues[i]));
+        }
         if (extraCorrectionCoefficient && correctionCoefficient.isApplicable()) {
             correctionCoefficient.apply(
                     correctedResults, population, annotatedPopulationInfo, maxValue);
         }
+        // the adjusted p-values are not always in the order of the raw p-values, for example
+        // Benjamini Hochberg can give a later attribute a smaller value
         Map<String, BigDecimal> sortedCorrectedResults = ErrorCorrection.sortMap(correctedResults);
         // record the number of items in the sample that had any values for any attribute
         // used for the "not analysed" total
-        int analysedTotal = rawResults.isEmpty() ? 0 : sampleSize;
+        int analysedTotal = (attributeCount == 0) ? 0 : sampleSize;
 
         EnrichmentResults results = new EnrichmentResults(sortedCorrectedResults,
                 input.getAnnotatedCountsInSample(), input.getLabels(), analysedTotal,
@@ -82,23 +94,46 @@ public final class EnrichmentCalculation
         return results;
     }
 
-    private static Map<String, BigDecimal> getRawResults(int sampleSize,
-            int populationSize, Map<String, Integer> sampleCounts,
-            Map<String, PopulationInfo> annotatedPopulationInfo) {
-        Map<String, BigDecimal> rawResults = new HashMap<String, BigDecimal>();
+    private static void getRawResults(int sampleSize, int populationSize,
+            Map<String, Integer> sampleCounts, Map<String, PopulationInfo> annotatedPopulationInfo,
+            String[] attributes, double[] pValues) {
+        int i = 0;
         for (Map.Entry<String, Integer> entry : sampleCounts.entrySet()) {
             String attribute = entry.getKey();
 
-            Integer sampleCount = entry.getValue();
+            int sampleCount = entry.getValue().intValue();
             PopulationInfo pi = annotatedPopulationInfo.get(attribute);
-            Integer populationCount = (pi != null) ? pi.getSize() : 0;
+            int populationCount = (pi != null) ? pi.getSize() : 0;
+
+            attributes[i] = attribute;
+            pValues[i] = Hypergeometric.upperCumulativeProbability(populationSize,
+                    populationCount, sampleSize, sampleCount);
+            i++;
+        }
+    }
 
-            HypergeometricDistribution h =
-                new HypergeometricDistribution(populationSize, populationCount, sampleSize);
-            Double pValue = h.upperCumulativeProbability(sampleCount);
-            rawResults.put(attribute, new BigDecimal(pValue));
+    /**
+     * Sort the attributes and their p-values together, smallest p-value first.
+     */
+    private static void sortByPValue(final String[] attributes, final double[] pValues) {
+        Integer[] order = new Integer[pValues.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(pValues[a.intValue()], pValues[b.intValue()]);
+            }
+        });
+        String[] sortedAttributes = new String[attributes.length];
+        double[] sortedPValues = new double[pValues.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedAttributes[i] = attributes[order[i].intValue()];
+            sortedPValues[i] = pValues[order[i].intValue()];
         }
-        return rawResults;
+        System.arraycopy(sortedAttributes, 0, attributes, 0, attributes.length);
+        System.arraycopy(sortedPValues, 0, pValues, 0, pValues.length);
     }
 
     private static ErrorCorrection.Strategy getStrategy(String errorCorrection) {
@@ -11,16 +11,21 @@ package org.intermine.web.logic.widget;
  */
 
 import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.log4j.Logger;
+import org.intermine.modelproduction.MetadataManager;
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.util.CacheMap;
+import org.intermine.util.BoundedCacheMap;
 
 /**
  * Executes queries and summarises data for a specific EnrichmentWidgetLdr ready for calculation.
@@ -37,18 +42,21 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     private Map<String, String> labels = null;
     private static final int BATCH_SIZE = 20000;
 
-    // population queries that don't involve bags can be cached between widget executions
-    private static CacheMap<String, PopulationInfo> populationCache = new CacheMap<String,
-        PopulationInfo>();
-    private static CacheMap<String, Map<String, PopulationInfo>> populationCountsCache =
-        new CacheMap<String, Map<String, PopulationInfo>>();
-
-    // TODO population counts and sizes are no longer cached
-
-    // TODO make a static cache from populate query to size and populationCounts maps,
-    // this should only have a few entries per widget depending on the organism composition
-    // of bags and other parameters, e.g. GO namespace.  But log cache size for a bit to make
-    // sure.  This should be a CacheMap, old cache was just a standard Map.
+    private static final Logger LOG = Logger.getLogger(EnrichmentInputWidgetLdr.class);
+    private static final int POPULATION_CACHE_SIZE = 500;
+    // each entry holds a count for every attribute value, e.g. every GO term
+    private static final int POPULATION_COUNTS_CACHE_SIZE = 50;
+
+    // population queries that don't involve bags are cached between widget executions until the
+    // production database is rebuilt, which changes its serial number
+    private static final Map<String, PopulationInfo> POPULATION_CACHE =
+        new BoundedCacheMap<String, PopulationInfo>("enrichment population sizes",
+                POPULATION_CACHE_SIZE);
+    private static final Map<String, Map<String, PopulationInfo>> POPULATION_COUNTS_CACHE =
+        new BoundedCacheMap<String, Map<String, PopulationInfo>>("enrichment population counts",
+                POPULATION_COUNTS_CACHE_SIZE);
+    private static String cachedRelease = null;
+    private boolean releaseChecked = false;
 
     /**
      * Construct with an EnrichmentWidgetLdr that contains queries needed for specific widget tests.
@@ -65,8 +73,9 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     public Map<String, PopulationInfo> getAnnotatedCountsInPopulation() {
         if (populationCounts == null) {
             Query query = ldr.getPopulationQuery(false);
+            boolean cacheable = isCacheable();
 
-            populationCounts = populationCountsCache.get(query.toString());
+            populationCounts = cacheable ? POPULATION_COUNTS_CACHE.get(query.toString()) : null;
             if (populationCounts == null) {
                 populationCounts = new HashMap<String, PopulationInfo>();
 
@@ -92,7 +101,10 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
                     }
                     populationCounts.put(identifier, new PopulationInfo(count, geneLengthAverage));
                 }
-                populationCountsCache.put(query.toString(), populationCounts);
+                populationCounts = Collections.unmodifiableMap(populationCounts);
+                if (cacheable) {
+                    POPULATION_COUNTS_CACHE.put(query.toString(), populationCounts);
+                }
             }
         }
         return populationCounts;
@@ -138,7 +150,8 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     @Override
     public PopulationInfo getPopulationInfo() {
         Query q = ldr.getPopulationQuery(true);
-        PopulationInfo populationInfo = populationCache.get(q.toString());
+        boolean cacheable = isCacheable();
+        PopulationInfo populationInfo = cacheable ? POPULATION_CACHE.get(q.toString()) : null;
         if (populationInfo == null) {
             int size = 0;
             float extraAttribute = 0;
@@ -152,7 +165,9 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
                 }
             }
             populationInfo = new PopulationInfo(size, extraAttribute);
-            populationCache.put(q.toString(), populationInfo);
+            if (cacheable) {
+                POPULATION_CACHE.put(q.toString(), populationInfo);
+            }
         }
         return populationInfo;
     }
@@ -169,6 +184,44 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
         return populationCounts.keySet().size();
     }
 
+    /**
+     * Returns true if the population queries of this widget can be cached, which is when they
+     * do not depend on the contents of a list. The caches are emptied if the production database
+     * has been rebuilt since they were filled.
+     */
+    private boolean isCacheable() {
+        if (!ldr.isPopulationCacheable()) {
+            return false;
+        }
+        if (!releaseChecked) {
+            checkRelease(os);
+            releaseChecked = true;
+        }
+        return true;
+    }
+
+    private static synchronized void checkRelease(ObjectStore os) {
+        if (!(os instanceof ObjectStoreInterMineImpl)) {
+            return;
+        }
+        String release;
+        try {
+            release = MetadataManager.retrieve(((ObjectStoreInterMineImpl) os).getDatabase(),
+                    MetadataManager.SERIAL_NUMBER);
+        } catch (SQLException e) {
+            LOG.warn("Could not read the serial number of the production database", e);
+            return;
+        }
+        if ((release != null) && !release.equals(cachedRelease)) {
+            if (cachedRelease != null) {
+                LOG.info("Production database has changed, emptying enrichment population caches");
+            }
+            POPULATION_CACHE.clear();
+            POPULATION_COUNTS_CACHE.clear();
+            cachedRelease = release;
+        }
+    }
+
     private int calcTotal(Query q) {
         Object[] o = os.executeSingleton(q).toArray();
         if (o.length == 0) {
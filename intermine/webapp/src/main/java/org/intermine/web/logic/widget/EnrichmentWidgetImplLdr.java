@@ -354,6 +354,24 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
         return getQuery(actionLocal, null);
     }
 
+    /**
+     * Returns true if the population queries do not depend on the contents of any list, so that
+     * their results can be cached between requests.
+     *
+     * @return true if the population queries can be cached
+     */
+    public boolean isPopulationCacheable() {
+        if ((populationBag != null) || (populationIds != null)) {
+            return false;
+        }
+        for (PathConstraint pathConstraint : config.getPathConstraints()) {
+            if (WidgetConfigUtil.isListConstraint(pathConstraint)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @param keys the keys to the records to be exported
      * @return the query representing the records to be exported
@@ -86,6 +86,55 @@ public final class ErrorCorrection
         }
     }
 
+    /**
+     * Adjust p-values in place, without the overhead of BigDecimals and maps. The p-values must
+     * be sorted in ascending order, and are adjusted in the same way as by the Map version of
+     * this method, including the treatment of tied p-values.
+     *
+     * @param errorCorrection which error correction to use
+     * @param pValues the raw p-values in ascending order, replaced by the adjusted p-values
+     * @param max maximum value to display, selected by user
+     * @param testCount number of tests, eg. total number of go terms in database
+     * @return the number of adjusted p-values, from the start of the array, to report
+     */
+    public static int adjustPValues(Strategy errorCorrection, double[] pValues, double max,
+            int testCount) {
+        double lastValue = Double.NaN;
+        // rank of the current p-value, shared by tied p-values
+        int rank = 0;
+        for (int i = 0; i < pValues.length; i++) {
+            double p = pValues[i];
+            if ((i == 0) || (p != lastValue)) {
+                rank = i;
+            }
+            lastValue = p;
+            double adjustedP;
+            switch (errorCorrection) {
+                case NONE:
+                    adjustedP = p;
+                    break;
+                case BONFERRONI:
+                    adjustedP = Math.min(p * testCount, 1.0);
+                    break;
+                case BENJAMINI_HOCHBERG:
+                    adjustedP = Math.min(p * testCount / (rank + 1), 1.0);
+                    break;
+                case HOLM_BONFERRONI:
+                    adjustedP = p * (testCount - rank);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported strategy: "
+                            + errorCorrection);
+            }
+            if (adjustedP > max) {
+                // the p-values are in ascending order, so stop at the first one that is too large
+                return i;
+            }
+            pValues[i] = adjustedP;
+        }
+        return pValues.length;
+    }
+
     /**
      * Sort the map by values.
      *
@@ -0,0 +1,114 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The upper tail of the hypergeometric distribution, for enrichment tests.
+ *
+ * An enrichment widget performs one test per attribute value, all with the same population and
+ * sample size, so rather than creating a distribution object per test the probabilities are
+ * calculated from a table of log-factorials shared by all tests. The table grows to the size of
+ * the largest population seen, and is never shrunk.
+ *
+ * @author agent
+ */
+public final class Hypergeometric
+{
+    // terms smaller than this fraction of the sum so far make no difference to a double
+    private static final double NEGLIGIBLE = 1.0E-17;
+
+    private static volatile double[] logFactorials = new double[] {0.0};
+
+    private Hypergeometric() {
+        // hidden constructor
+    }
+
+    /**
+     * Returns the probability of a sample containing at least sampleCount items with an attribute,
+     * P(X &gt;= sampleCount), which is the p-value of the enrichment of the attribute in the
+     * sample.
+     *
+     * @param populationSize the size of the population, N
+     * @param populationCount the number of items in the population with the attribute, M
+     * @param sampleSize the size of the sample, n
+     * @param sampleCount the number of items in the sample with the attribute, k
+     * @return the probability
+     */
+    public static double upperCumulativeProbability(int populationSize, int populationCount,
+            int sampleSize, int sampleCount) {
+        if ((populationCount < 0) || (sampleSize < 0) || (populationCount > populationSize)
+                || (sampleSize > populationSize)) {
+            throw new IllegalArgumentException("Invalid hypergeometric distribution: population "
+                    + populationSize + ", annotated " + populationCount + ", sample "
+                    + sampleSize);
+        }
+        int lower = Math.max(0, sampleSize + populationCount - populationSize);
+        int upper = Math.min(populationCount, sampleSize);
+        if (sampleCount <= lower) {
+            return 1.0;
+        }
+        if (sampleCount > upper) {
+            return 0.0;
+        }
+        double[] table = getLogFactorials(populationSize);
+        int others = populationSize - populationCount;
+
+        // Start from the largest term in the tail, which cannot underflow unless the whole tail
+        // is negligible, and work outwards from it using the ratio between consecutive terms.
+        int mode = (int) ((((long) sampleSize) + 1) * (((long) populationCount) + 1)
+                / (((long) populationSize) + 2));
+        int start = Math.max(sampleCount, Math.min(mode, upper));
+        double first = Math.exp(table[populationCount] - table[start]
+                - table[populationCount - start] + table[others] - table[sampleSize - start]
+                - table[others - sampleSize + start] - table[populationSize]
+                + table[sampleSize] + table[populationSize - sampleSize]);
+        double sum = first;
+        double term = first;
+        for (int x = start; (x < upper) && (term > sum * NEGLIGIBLE); x++) {
+            term *= ((double) (populationCount - x)) * (sampleSize - x)
+                / (((double) (x + 1)) * (others - sampleSize + x + 1));
+            sum += term;
+        }
+        term = first;
+        for (int x = start; (x > sampleCount) && (term > sum * NEGLIGIBLE); x--) {
+            term *= ((double) x) * (others - sampleSize + x)
+                / (((double) (populationCount - x + 1)) * (sampleSize - x + 1));
+            sum += term;
+        }
+        return Math.min(sum, 1.0);
+    }
+
+    /**
+     * Returns a table of log(i!) for i from 0 to at least n.
+     *
+     * @param n the largest number needed
+     * @return an array that must not be altered
+     */
+    static double[] getLogFactorials(int n) {
+        double[] table = logFactorials;
+        if (table.length > n) {
+            return table;
+        }
+        synchronized (Hypergeometric.class) {
+            table = logFactorials;
+            if (table.length <= n) {
+                double[] newTable = new double[n + 1];
+                System.arraycopy(table, 0, newTable, 0, table.length);
+                for (int i = table.length; i <= n; i++) {
+                    newTable[i] = newTable[i - 1] + Math.log(i);
+                }
+                logFactorials = newTable;
+                table = newTable;
+            }
+            return table;
+        }
+    }
+}
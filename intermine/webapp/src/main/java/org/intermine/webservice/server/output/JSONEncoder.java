@@ -0,0 +1,201 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Encodes a tree of Maps, Lists and values as JSON into a buffer that is reused for every
+ * result, from which it is copied straight to the output.
+ *
+ * The JSON is exactly the same as the toString() of a JSONObject or JSONArray made from the
+ * tree, but without the copies of every map, list and string that those classes make. Like a
+ * JSONObject, map entries with null values are left out. A HashMap with String keys is written
+ * in its own iteration order, which is the order of a JSONObject copy of it, as long as the copy
+ * has the same number of entries.
+ *
+ * @author agent
+ */
+public class JSONEncoder extends Writer
+{
+    private char[] buffer = new char[1024];
+    private int length = 0;
+
+    /**
+     * Encodes a value, replacing the previous contents of the buffer. If the value cannot be
+     * encoded, because it contains a number that is not valid in JSON, the buffer contains
+     * "null", which is what JSONObject.toString() returns in that case.
+     *
+     * @param value a Map, List or value
+     */
+    public void encode(Object value) {
+        length = 0;
+        try {
+            writeValue(value);
+        } catch (JSONException e) {
+            length = 0;
+            write("null");
+        }
+    }
+
+    /**
+     * Copies the encoded value to a writer.
+     *
+     * @param out the writer
+     */
+    public void writeTo(PrintWriter out) {
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Returns the encoded value.
+     *
+     * @return a String of JSON
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    private void writeValue(Object value) {
+        if ((value == null) || value.equals(null)) {
+            write("null");
+        } else if (value instanceof String) {
+            quote((String) value);
+        } else if (value instanceof Map<?, ?>) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection<?>) {
+            writeCollection((Collection<?>) value);
+        } else if ((value instanceof Integer) || (value instanceof Long)
+                || (value instanceof Boolean)) {
+            write(value.toString());
+        } else {
+            // Anything else is rare, so leave it to the JSON library
+            write(JSONObject.valueToString(JSONObject.wrap(value)));
+        }
+    }
+
+    private void writeMap(Map<?, ?> map) {
+        if ((map.getClass() != HashMap.class) || map.containsValue(null)) {
+            // A JSONObject copies the entries with values into a new HashMap, which iterates in
+            // a different order to any other kind of map, or to a HashMap of a different size.
+            Map<String, Object> copy = new HashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getValue() != null) {
+                    copy.put(String.valueOf(entry.getKey()), entry.getValue());
+                }
+            }
+            map = copy;
+        }
+        write('{');
+        boolean needComma = false;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (needComma) {
+                write(',');
+            }
+            quote(String.valueOf(entry.getKey()));
+            write(':');
+            writeValue(entry.getValue());
+            needComma = true;
+        }
+        write('}');
+    }
+
+    private void writeCollection(Collection<?> collection) {
+        write('[');
+        boolean needComma = false;
+        for (Object value : collection) {
+            if (needComma) {
+                write(',');
+            }
+            writeValue(value);
+            needComma = true;
+        }
+        write(']');
+    }
+
+    private void quote(String string) {
+        try {
+            JSONObject.quote(string, this);
+        } catch (IOException e) {
+            // writing to the buffer cannot fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int c) {
+        ensureCapacity(1);
+        buffer[length++] = (char) c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(char[] chars, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(chars, off, buffer, length, len);
+        length += len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String str, int off, int len) {
+        ensureCapacity(len);
+        str.getChars(off, off + len, buffer, length);
+        length += len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Does nothing, as the encoded value is kept until it is replaced.
+     */
+    @Override
+    public void flush() {
+        // nothing to do
+    }
+
+    /**
+     * Does nothing, as the buffer is reused.
+     */
+    @Override
+    public void close() {
+        // nothing to do
+    }
+}
@@ -206,6 +206,16 @@ public class JSONFormatter extends Formatter
         return buffer.toString();
     }
 
+    /**
+     * Returns true if result items are quoted, so that they cannot be written without being
+     * formatted by formatResult().
+     *
+     * @return true or false
+     */
+    boolean isQuotingResults() {
+        return shouldQuote;
+    }
+
     /** Signal that we have started printing results and that it isn't safe to print headers. **/
     protected void declarePrinted() {
         hasPrintedSomething = true;
@@ -49,6 +49,11 @@ public abstract class JSONResultProcessor extends ResultProcessor
     @Override
     public void write(Iterator<List<ResultElement>> resultIt, Output output) {
         Iterator<? extends Object> objIter = getResultsIterator(resultIt);
+        if ((objIter instanceof JSONValueIterator<?>) && (output instanceof StreamedOutput)
+                && ((StreamedOutput) output).canStreamJSON()) {
+            writeStreamed((JSONValueIterator<?>) objIter, (StreamedOutput) output);
+            return;
+        }
         if (!objIter.hasNext()) { // address bug which means json results with < 1 results fail
             output.addResultItem(Collections.EMPTY_LIST);
         }
@@ -70,4 +75,22 @@ public abstract class JSONResultProcessor extends ResultProcessor
         }
     }
 
+    /**
+     * Writes the results straight to the output from the trees of values they are built from,
+     * with a single reused buffer, rather than making a JSONObject and a String for each one.
+     * This writes the same characters as the general case.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeStreamed(JSONValueIterator<?> objIter, StreamedOutput output) {
+        if (!objIter.hasNext()) {
+            output.addResultItem(Collections.EMPTY_LIST);
+            return;
+        }
+        JSONEncoder encoder = new JSONEncoder();
+        while (objIter.hasNext()) {
+            encoder.encode(objIter.nextValue());
+            output.addResultItem(encoder, objIter.hasNext());
+        }
+    }
+
 }
@@ -13,7 +13,7 @@ package org.intermine.webservice.server.output;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,7 +35,7 @@ import org.json.JSONObject;
  * @author Alexis Kalderimis
  *
  */
-public class JSONResultsIterator implements Iterator<JSONObject>
+public class JSONResultsIterator implements JSONValueIterator<JSONObject>
 {
 
     private static final String CLASS_KEY = "class";
@@ -45,6 +45,8 @@ public class JSONResultsIterator implements Iterator<JSONObject>
     private final ExportResultsIterator subIter;
     private List<ResultElement> holdOver;
     private final List<Path> viewPaths = new ArrayList<Path>();
+    // Path.hashCode() is constant, so look the paths up by identity
+    private final Map<Path, List<Path>> decomposedPaths = new IdentityHashMap<Path, List<Path>>();
     protected transient Map<String, Object> currentMap;
     protected transient List<Map<String, Object>> currentArray;
     private Model model;
@@ -77,6 +79,13 @@ public class JSONResultsIterator implements Iterator<JSONObject>
      * {@inheritDoc}
      */
     public JSONObject next() {
+        return new JSONObject(nextValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Object> nextValue() {
         Map<String, Object> nextJsonMap = new HashMap<String, Object>();
         Integer lastId = null;
 
@@ -98,8 +107,7 @@ public class JSONResultsIterator implements Iterator<JSONObject>
                 lastId = currentId;
             }
         }
-        JSONObject nextObj = new JSONObject(nextJsonMap);
-        return nextObj;
+        return nextJsonMap;
     }
 
     private void addRowToJsonMap(List<ResultElement> results,
@@ -312,7 +320,11 @@ public class JSONResultsIterator implements Iterator<JSONObject>
     protected void addReferencedCellToJsonMap(ResultElement cell, Path column,
             Map<String, Object> objectMap) {
         currentMap = objectMap;
-        List<Path> columnSections = column.decomposePath();
+        List<Path> columnSections = decomposedPaths.get(column);
+        if (columnSections == null) {
+            columnSections = column.decomposePath();
+            decomposedPaths.put(column, columnSections);
+        }
         for (Path section : columnSections) {
             if (section.isRootPath()) {
                 continue;
@@ -11,7 +11,6 @@ package org.intermine.webservice.server.output;
  */
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.intermine.api.InterMineAPI;
@@ -24,7 +23,7 @@ import org.json.JSONArray;
  * @author Alexis Kalderimis
  *
  */
-public class JSONRowIterator implements Iterator<JSONArray>
+public class JSONRowIterator implements JSONValueIterator<JSONArray>
 {
 
     private final ExportResultsIterator subIter;
@@ -53,14 +52,18 @@ public class JSONRowIterator implements Iterator<JSONArray>
 
     @Override
     public JSONArray next() {
+        return new JSONArray(nextValue());
+    }
+
+    @Override
+    public List<Object> nextValue() {
         List<ResultElement> row = subIter.next();
         List<Object> jsonRow = new ArrayList<Object>();
         for (int i = 0; i < row.size(); i++) {
             ResultElement re = row.get(i);
-            jsonRow.add(tableCellFormatter.toJSON(re));
+            jsonRow.add(tableCellFormatter.toMap(re));
         }
-        JSONArray next = new JSONArray(jsonRow);
-        return next;
+        return jsonRow;
     }
 
     @Override
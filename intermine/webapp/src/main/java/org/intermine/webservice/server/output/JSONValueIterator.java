@@ -0,0 +1,32 @@
+package org.intermine.webservice.server.output;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Iterator;
+
+/**
+ * An iterator of JSON results that can also return each result as the plain tree of Maps,
+ * Lists and values it is built from, so that it can be written by a JSONEncoder without
+ * creating JSONObjects and JSONArrays.
+ *
+ * @param <E> the type of JSON object returned by next()
+ * @author agent
+ */
+public interface JSONValueIterator<E> extends Iterator<E>
+{
+    /**
+     * Returns the next result as a tree of Maps, Lists and values. This is an alternative to
+     * next(), and the JSON written for it by a JSONEncoder is the same as next().toString().
+     *
+     * @return a Map or a List
+     */
+    Object nextValue();
+}
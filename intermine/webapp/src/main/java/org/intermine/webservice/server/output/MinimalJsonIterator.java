@@ -21,7 +21,7 @@ import org.json.JSONArray;
  * @author Alexis Kalderimis
  *
  */
-public class MinimalJsonIterator implements Iterator<JSONArray>
+public class MinimalJsonIterator implements JSONValueIterator<JSONArray>
 {
     private final Iterator<List<ResultElement>> subIter;
 
@@ -35,6 +35,11 @@ public class MinimalJsonIterator implements Iterator<JSONArray>
 
     @Override
     public JSONArray next() {
+        return new JSONArray(nextValue());
+    }
+
+    @Override
+    public List<Object> nextValue() {
         List<ResultElement> row = subIter.next();
         List<Object> jsonRow = new ArrayList<Object>();
         for (int i = 0; i < row.size(); i++) {
@@ -51,8 +56,7 @@ public class MinimalJsonIterator implements Iterator<JSONArray>
                 jsonRow.add(field);
             }
         }
-        JSONArray next = new JSONArray(jsonRow);
-        return next;
+        return jsonRow;
     }
 
     @Override
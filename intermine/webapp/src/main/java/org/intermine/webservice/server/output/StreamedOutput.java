@@ -70,6 +70,10 @@ public class StreamedOutput extends Output
 
     private void writeLn(String s) {
         writer.print(s);
+        endLine();
+    }
+
+    private void endLine() {
         if (separator == null) {
             writer.println();
         } else {
@@ -87,6 +91,36 @@ public class StreamedOutput extends Output
         resultsCount++;
     }
 
+    /**
+     * Returns true if JSON result items can be written with addResultItem(JSONEncoder, boolean),
+     * which is the case when the formatter is a JSONResultFormatter that writes them unchanged.
+     *
+     * @return true or false
+     */
+    public boolean canStreamJSON() {
+        return (formatter instanceof JSONResultFormatter)
+            && !((JSONResultFormatter) formatter).isQuotingResults();
+    }
+
+    /**
+     * Writes a JSON result item straight from the buffer of an encoder, without making a String
+     * of it. The output is the same as addResultItem() with a list of the JSON, followed by an
+     * empty String if there is another item to come.
+     *
+     * @param item an encoder holding the JSON of the item
+     * @param hasMore true if another item follows this one
+     */
+    public void addResultItem(JSONEncoder item, boolean hasMore) {
+        ensureHeaderIsPrinted();
+        ((JSONFormatter) formatter).declarePrinted();
+        item.writeTo(writer);
+        if (hasMore) {
+            writer.print(',');
+        }
+        endLine();
+        resultsCount++;
+    }
+
     /** Returns associated writer
      * @return writer
      * **/
@@ -304,7 +304,6 @@ public class QueryResultService extends AbstractQueryService
     }
 
     private void runResults(PathQuery pq,  int firstResult, int maxResults) {
-        final boolean canGoFaster;
         final Iterator<List<ResultElement>> it;
         final String summaryPath = getOptionalParameter("summaryPath");
         if (isNotBlank(summaryPath)) {
@@ -323,17 +322,21 @@ public class QueryResultService extends AbstractQueryService
                     attributes.put("filteredCount", r.size());
                 }
                 it = new FilteringResultIterator(r, firstResult, maxResults, filterTerm);
-                canGoFaster = false;
             } catch (ObjectStoreQueryDurationException e) {
                 throw new ServiceException("Query would take too long to run");
             } catch (ObjectStoreException e) {
                 throw new ServiceException("Problem getting summary.", e);
             }
         } else {
-            canGoFaster = maxResults > (BATCH_SIZE * 2);
             executor.setBatchSize(BATCH_SIZE);
             try {
-                it = executor.execute(pq, firstResult, maxResults);
+                // Large exports read the rows from a database cursor, which runs the query once
+                // rather than once per batch
+                if (maxResults > (BATCH_SIZE * 2)) {
+                    it = executor.executeCursor(pq, firstResult, maxResults);
+                } else {
+                    it = executor.execute(pq, firstResult, maxResults);
+                }
             } catch (ObjectStoreQueryDurationException e) {
                 throw new ServiceException("Query would take too long to run");
             } catch (ObjectStoreException e) {
@@ -342,17 +345,13 @@ public class QueryResultService extends AbstractQueryService
         }
 
         ResultProcessor processor = makeResultProcessor();
-        if (it.hasNext()) { // Prime the batch fetching pumps
-            try {
-                if (canGoFaster) {
-                    // Going faster means writing to the DB. Don't do this if it is pointless.
-                    ((ExportResultsIterator) it).goFaster();
-                }
+        try {
+            if (it.hasNext()) {
                 processor.write(it, output);
-            } finally {
-                if (canGoFaster) {
-                    ((ExportResultsIterator) it).releaseGoFaster();
-                }
+            }
+        } finally {
+            if (it instanceof ExportResultsIterator) {
+                ((ExportResultsIterator) it).close();
             }
         }
     }
@@ -399,7 +398,8 @@ public class QueryResultService extends AbstractQueryService
                 request).getInput();
         // Table format doesn't actually fetch any rows but we want it to trigger a query in
         // ObjectStore so results are in cache when Row processors need to fetch them. We need
-        // to set a limit here to prevent runResults() from calling goFaster() and precomputing.
+        // to set a limit here to prevent runResults() from reading the rows through a database
+        // cursor, which does not put them in the cache.
         if (getFormat() == Format.TABLE) {
             qri.setLimit(WebServiceRequestParser.MIN_LIMIT);
         }
@@ -71,6 +71,29 @@ public class ErrorCorrectionTest
         checkValues(actual, bonferroniHolm);
     }
 
+    @Test
+    public void testArraysSameAsMaps() throws Exception {
+        double[] sorted = new double[] {0.0000000000000000000099, 0.00000000001, 0.00000000001,
+            0.000001, 0.2, 1};
+        Map<String, BigDecimal> results = new LinkedHashMap<String, BigDecimal>();
+        for (int i = 0; i < sorted.length; i++) {
+            results.put("T" + i, new BigDecimal(sorted[i]));
+        }
+        for (ErrorCorrection.Strategy strategy : ErrorCorrection.Strategy.values()) {
+            for (double maxValue : new double[] {1.0, 0.05}) {
+                Map<String, BigDecimal> expected = ErrorCorrection.adjustPValues(strategy,
+                        results, maxValue, 10);
+                double[] actual = sorted.clone();
+                int reported = ErrorCorrection.adjustPValues(strategy, actual, maxValue, 10);
+                assertEquals(strategy + " " + maxValue, expected.size(), reported);
+                for (int i = 0; i < reported; i++) {
+                    double e = expected.get("T" + i).doubleValue();
+                    assertEquals(strategy + " " + maxValue + " T" + i, e, actual[i], e * 1.0E-12);
+                }
+            }
+        }
+    }
+
     private void checkValues(Map<String, BigDecimal> actual, Map<String, String> expected) {
         for (Map.Entry<String, BigDecimal> entry : actual.entrySet()) {
             String adjustedPvalue = entry.getValue().toPlainString();
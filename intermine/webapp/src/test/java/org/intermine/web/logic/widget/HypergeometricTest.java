@@ -0,0 +1,57 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+
+public class HypergeometricTest extends TestCase
+{
+    public HypergeometricTest(String arg) {
+        super(arg);
+    }
+
+    public void testSameAsCommonsMath() throws Exception {
+        int[][] cases = new int[][] {{10, 4, 5}, {100, 30, 20}, {5000, 12, 40}, {20000, 800, 300},
+            {20000, 3, 3}, {20000, 19000, 500}, {7, 7, 3}, {30, 0, 10}};
+        for (int[] c : cases) {
+            HypergeometricDistribution h = new HypergeometricDistribution(c[0], c[1], c[2]);
+            for (int k = 0; k <= Math.min(c[1], c[2]) + 1; k++) {
+                double expected = h.upperCumulativeProbability(k);
+                double actual = Hypergeometric.upperCumulativeProbability(c[0], c[1], c[2], k);
+                String message = c[0] + ", " + c[1] + ", " + c[2] + ", " + k;
+                if (expected > 1.0E-300) {
+                    assertEquals(message, expected, actual, expected * 1.0E-9);
+                } else {
+                    assertEquals(message, 0.0, actual, 1.0E-290);
+                }
+            }
+        }
+    }
+
+    public void testLogFactorials() throws Exception {
+        double[] table = Hypergeometric.getLogFactorials(20);
+        assertEquals(0.0, table[0], 0.0);
+        assertEquals(0.0, table[1], 0.0);
+        assertEquals(Math.log(3628800.0), table[10], 1.0E-12);
+        assertTrue(Hypergeometric.getLogFactorials(5).length >= 21);
+    }
+
+    public void testInvalid() throws Exception {
+        try {
+            Hypergeometric.upperCumulativeProbability(10, 11, 5, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.intermine.webservice.server.output;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.intermine.api.results.ExportResultsIterator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Runs the JSONResultsIterator tests again, checking that the JSON written by a JSONEncoder for
+ * every object is identical to that of the JSONObject returned by next().
+ *
+ * @author agent
+ */
+public class JSONEncoderTest extends JSONResultsIteratorTest
+{
+    public JSONEncoderTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    protected JSONResultsIterator makeIterator(ExportResultsIterator it) {
+        return new JSONResultsIterator(it) {
+            private final JSONEncoder encoder = new JSONEncoder();
+
+            @Override
+            public JSONObject next() {
+                Map<String, Object> value = nextValue();
+                JSONObject expected = new JSONObject(value);
+                encoder.encode(value);
+                assertEquals(expected.toString(), encoder.toString());
+                return expected;
+            }
+        };
+    }
+
+    public void testValues() throws Exception {
+        List<Object> values = Arrays.<Object>asList("a \"quoted\" string\n</script> ",
+                Integer.valueOf(-3), Long.valueOf(1234567890123L), Boolean.TRUE,
+                Double.valueOf(1.5), Double.valueOf(2.0), Double.valueOf(1.0E20), Float.valueOf(0.1F),
+                new BigDecimal("12.3400"), Character.valueOf('c'), new Date(0L), JSONObject.NULL,
+                null, new ArrayList<Object>(), new HashMap<String, Object>());
+        JSONEncoder encoder = new JSONEncoder();
+        encoder.encode(values);
+        assertEquals(new JSONArray(values).toString(), encoder.toString());
+        for (Object value : values) {
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("key", value);
+            encoder.encode(map);
+            assertEquals(new JSONObject(map).toString(), encoder.toString());
+        }
+    }
+
+    public void testInvalidNumber() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("value", Double.valueOf(Double.NaN));
+        JSONEncoder encoder = new JSONEncoder();
+        encoder.encode(map);
+        assertEquals(String.valueOf(new JSONObject(map).toString()), encoder.toString());
+    }
+
+    public void testMapOrder() throws Exception {
+        JSONEncoder encoder = new JSONEncoder();
+        for (int size = 1; size < 40; size++) {
+            // Leaving out a null value can make the copy in a JSONObject a smaller table
+            Map<String, Object> map = new HashMap<String, Object>();
+            Map<String, Object> linked = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < size; i++) {
+                map.put("key" + (i * 7), i == 0 ? null : (Object) ("value" + i));
+                linked.put("key" + (size - i), "value" + i);
+            }
+            List<Object> list = new ArrayList<Object>();
+            list.add(map);
+            list.add(linked);
+            encoder.encode(list);
+            assertEquals(new JSONArray(list).toString(), encoder.toString());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.intermine.webservice.server.output;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -126,4 +128,26 @@ public class JSONObjResultProcessorTest extends TestCase {
 
     }
 
+    public void testWriteStreamed() throws Exception {
+        MemoryOutput memory = new MemoryOutput();
+        new JSONObjResultProcessor().write(iterator, memory);
+        JSONObjectFormatter formatter = new JSONObjectFormatter();
+        StringBuilder expected = new StringBuilder("{\"results\":[\n");
+        for (List<String> item : memory.getResults()) {
+            expected.append(formatter.formatResult(item)).append("\n");
+        }
+        expected.append("],\"executionTime\"");
+
+        setUp();
+        StringWriter sw = new StringWriter();
+        StreamedOutput out = new StreamedOutput(new PrintWriter(sw), new JSONObjectFormatter(),
+                "\n");
+        assertTrue(out.canStreamJSON());
+        new JSONObjResultProcessor().write(iterator, out);
+        out.flush();
+
+        assertTrue(sw.toString(), sw.toString().startsWith(expected.toString()));
+        assertEquals(5, out.getResultsCount());
+    }
+
 }
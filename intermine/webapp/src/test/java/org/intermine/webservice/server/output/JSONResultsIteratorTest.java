@@ -211,7 +211,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name", "Manager.age");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -238,7 +238,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Employee.name", "Employee.end");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -267,6 +267,10 @@ public class JSONResultsIteratorTest extends TestCase {
         return getIterator(pq, DEFAULT_LIMIT);
     }
 
+    protected JSONResultsIterator makeIterator(ExportResultsIterator it) {
+        return new JSONResultsIterator(it);
+    }
+
     public void testMultipleSimpleObjects() throws Exception {
         os.setResultsSize(6);
 
@@ -301,7 +305,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Employee.name", "Employee.age", "Employee.id");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq, 10));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq, 10));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -355,7 +359,7 @@ public class JSONResultsIteratorTest extends TestCase {
         pq.setOuterJoinStatus("Company.departments", OuterJoinStatus.OUTER);
         pq.setOuterJoinStatus("Company.departments.employees", OuterJoinStatus.OUTER);
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -455,7 +459,7 @@ public class JSONResultsIteratorTest extends TestCase {
         pq.setOuterJoinStatus("Company.departments", OuterJoinStatus.OUTER);
         pq.setOuterJoinStatus("Company.departments.employees", OuterJoinStatus.OUTER);
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -555,7 +559,7 @@ public class JSONResultsIteratorTest extends TestCase {
         row.add(address);
         os.addRow(row);
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -582,7 +586,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Department.name", "Department.company.CEO.name", "Department.company.CEO.address.address");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         try {
             List<JSONObject> got = new ArrayList<JSONObject>();
@@ -648,7 +652,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name", "Manager.age", "Manager.department.name", "Manager.department.employees.name", "Manager.department.employees.age");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -679,7 +683,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name", "Manager.department.employees.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         try {
             List<JSONObject> got = new ArrayList<JSONObject>();
@@ -713,7 +717,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.department.employees.name", "Manager.department.employees.age");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         try {
             List<JSONObject> got = new ArrayList<JSONObject>();
@@ -804,7 +808,7 @@ public class JSONResultsIteratorTest extends TestCase {
         pq.setOuterJoinStatus("Company.departments", OuterJoinStatus.OUTER);
         pq.setOuterJoinStatus("Company.contractors", OuterJoinStatus.OUTER);
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -891,7 +895,7 @@ public class JSONResultsIteratorTest extends TestCase {
         pq.setOuterJoinStatus("Company.departments", OuterJoinStatus.INNER);
         pq.setOuterJoinStatus("Company.contractors", OuterJoinStatus.INNER);
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -923,7 +927,7 @@ public class JSONResultsIteratorTest extends TestCase {
                 "Employee.department.manager.department.company.name",
                 "Employee.department.company.contractors.companys.address.address");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         assert(!jsonIter.hasNext());
 
@@ -1017,7 +1021,7 @@ public class JSONResultsIteratorTest extends TestCase {
                 "Employee.department.manager.department.company.name",
                 "Employee.department.company.contractors.companys.address.address");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -1048,7 +1052,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Department.employees.name", "Department.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         try {
             List<JSONObject> got = new ArrayList<JSONObject>();
@@ -1086,7 +1090,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Company.name", "Company.departments.employees.name", "Company.departments.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         try {
             List<JSONObject> got = new ArrayList<JSONObject>();
@@ -1123,7 +1127,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name", "Manager.department.employees.name", "Manager.department.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         try {
             List<JSONObject> got = new ArrayList<JSONObject>();
@@ -1249,7 +1253,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Department.name", "Department.employees.name", "Department.employees.age");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq, 10));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq, 10));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -1334,7 +1338,7 @@ public class JSONResultsIteratorTest extends TestCase {
             "Department.company.vatNumber"
         );
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         List<String> names = new ArrayList<String>();
@@ -1500,7 +1504,7 @@ public class JSONResultsIteratorTest extends TestCase {
             "Department.employees.age"
         );
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq, 10));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq, 10));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -1524,7 +1528,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Company.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
 
         try {
@@ -1553,7 +1557,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Company.name", "Company.contractors.oldComs.departments.manager.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
 
         try {
@@ -1586,7 +1590,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Department.name", "Department.company.contractors.personalAddress.address");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
 
         try {
@@ -1632,7 +1636,7 @@ public class JSONResultsIteratorTest extends TestCase {
 
         String jsonString = "{class: 'Types', objectId: 100, dateObjType: '2008-07-06'}";
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         List<JSONObject> got = new ArrayList<JSONObject>();
         for (JSONObject gotRow : new IteratorIterable<JSONObject>(jsonIter)) {
@@ -1665,7 +1669,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         assertTrue(jsonIter.isCellValidForPath(re, manP));
         assertTrue(jsonIter.isCellValidForPath(re, empsP));
@@ -1685,7 +1689,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         assertTrue(jsonIter.aIsaB("Manager", "Employee"));
         assertTrue(! jsonIter.aIsaB("Employee", "Manager"));
@@ -1739,7 +1743,7 @@ public class JSONResultsIteratorTest extends TestCase {
         PathQuery pq = new PathQuery(model);
         pq.addViews("Manager.name");
 
-        JSONResultsIterator jsonIter = new JSONResultsIterator(getIterator(pq));
+        JSONResultsIterator jsonIter = makeIterator(getIterator(pq));
 
         jsonMap.put("objectId", 1000);
         try {
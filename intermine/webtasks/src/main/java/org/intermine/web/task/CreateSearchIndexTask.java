@@ -37,6 +37,16 @@ public class CreateSearchIndexTask extends Task
     protected String osAlias = null;
     protected ObjectStore os;
     private ClassLoader classLoader;
+    private boolean incremental = false;
+
+    /**
+     * Set whether to update the existing index with only the objects that have changed since it
+     * was built, rather than building the whole index again.
+     * @param incremental true to update the existing index
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
 
     /**
      * Set the alias of the main object store.
@@ -115,7 +125,11 @@ public class CreateSearchIndexTask extends Task
         //index and save. Deleting previous index happens within itself
         try {
             IndexHandler indexHandler = new SolrIndexHandler();
-            indexHandler.createIndex(objectStore, classKeys);
+            if (incremental) {
+                indexHandler.updateIndex(objectStore, classKeys);
+            } else {
+                indexHandler.createIndex(objectStore, classKeys);
+            }
 
         } catch (Exception e) {
             System.out .println("Creating keyword index failed");
@@ -276,6 +276,16 @@ class DBModelPlugin implements Plugin<Project> {
             }
         }
 
+        project.task('writeClobFiles') {
+            group TaskConstants.TASK_GROUP
+            description "Writes large clobs, such as chromosome sequences, to the memory-mapped files set by clobFileDir. Run once the database is complete."
+            dependsOn 'initConfig', 'copyMineProperties', 'copyDefaultInterMineProperties', 'jar'
+
+            doLast {
+                dbUtils.writeClobFiles(config.objectStoreName)
+            }
+        }
+
         project.task('buildUnitTestDB') {
             description "Build the database for the webapp"
             dependsOn 'initConfig', 'copyMineProperties', 'copyDefaultInterMineProperties', 'copyGenomicModel', 'jar', 'copyGenomicKeys'
@@ -115,6 +115,19 @@ class DBModelUtils {
         ant.analyse(osname: objectStoreName, model: modelName)
     }
 
+    protected writeClobFiles = { objectStoreName ->
+        System.out.println("Writing large clobs of objectstore ${objectStoreName} to files")
+
+        def ant = new AntBuilder()
+        ant.taskdef(name: 'writeClobFiles', classname: 'org.intermine.task.WriteClobFilesTask') {
+            classpath {
+                dirset(dir: buildResourcesMainDir) // intermine.properties
+                pathelement(path: project.configurations.getByName("compile").asPath)
+            }
+        }
+        ant.writeClobFiles(osname: objectStoreName)
+    }
+
     protected createIndexes = { objectStoreName, attributeIndexes ->
         System.out.println("Creating search indexes for objectstore ${objectStoreName}")
 